@@ -377,4 +377,22 @@ public interface ClientConfig extends Config {
     @Property("cuba.gui.validationNotificationType")
     @Default("TRAY")
     String getValidationNotificationType();
+
+    /**
+     * @return maximum estimated memory in kilobytes occupied by parsed screen descriptors in the cache
+     */
+    @Property("cuba.gui.screenXmlCacheMaxMemoryKb")
+    @DefaultInt(32768)
+    int getScreenXmlCacheMaxMemoryKb();
+
+    /**
+     * @return whether descriptors of all registered screens are parsed on application start and cached by resource
+     * path. If true, changes of descriptor files are picked up only after the screen XML cache is cleared.
+     * <p>
+     * This only warms up the cache of parsed descriptors: message packs and included frames are still resolved
+     * when a screen is opened.
+     */
+    @Property("cuba.gui.precompileScreenLayouts")
+    @DefaultBoolean(false)
+    boolean getPrecompileScreenLayouts();
 }
\ No newline at end of file
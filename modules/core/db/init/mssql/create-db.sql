@@ -602,6 +602,21 @@ create index IDX_SYS_FTS_QUEUE_IDXHOST_CRTS on SYS_FTS_QUEUE (INDEXING_HOST, CRE
 
 ------------------------------------------------------------------------------------------------------------
 
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID uniqueidentifier not null,
+    CREATE_TS datetime,
+    --
+    SERVER_ID varchar(255) not null,
+    SEQ_NUM bigint not null,
+    CONTENT image,
+    --
+    primary key nonclustered (ID)
+)^
+
+create clustered index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
+
+------------------------------------------------------------------------------------------------------------
+
 create table SEC_SCREEN_HISTORY (
     ID uniqueidentifier,
     CREATE_TS datetime,
@@ -618,6 +618,21 @@ create index IDX_SYS_FTS_QUEUE_IDXHOST_CRTS on SYS_FTS_QUEUE (INDEXING_HOST, CRE
 
 /**********************************************************************************************/
 
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID varchar(32) not null,
+    CREATE_TS datetime(3),
+    --
+    SERVER_ID varchar(190) not null,
+    SEQ_NUM bigint not null,
+    CONTENT longblob,
+    --
+    primary key (ID)
+)^
+
+create index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
+
+/**********************************************************************************************/
+
 create table SEC_SCREEN_HISTORY (
     ID varchar(32),
     CREATE_TS datetime(3),
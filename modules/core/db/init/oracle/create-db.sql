@@ -205,6 +205,19 @@ create table SYS_FTS_QUEUE (
 )^
 create index IDX_SYS_FTS_QUEUE_IDXHOST_CRTS on SYS_FTS_QUEUE (INDEXING_HOST, CREATE_TS)^
 
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID varchar2(32) not null,
+    CREATE_TS timestamp,
+    --
+    SERVER_ID varchar2(255) not null,
+    SEQ_NUM number(19) not null,
+    CONTENT blob,
+    --
+    primary key (ID)
+)^
+
+create index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
+
 create table SYS_JMX_INSTANCE (
     ID varchar2(32) not null,
     CREATE_TS timestamp,
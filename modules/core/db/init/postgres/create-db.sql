@@ -584,6 +584,21 @@ create index IDX_SYS_FTS_QUEUE_IDXHOST_CRTS on SYS_FTS_QUEUE (INDEXING_HOST, CRE
 
 ------------------------------------------------------------------------------------------------------------
 
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID uuid,
+    CREATE_TS timestamp,
+    --
+    SERVER_ID varchar(255) not null,
+    SEQ_NUM bigint not null,
+    CONTENT bytea,
+    --
+    primary key (ID)
+)^
+
+create index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
+
+------------------------------------------------------------------------------------------------------------
+
 create table SEC_SCREEN_HISTORY (
     ID uuid,
     CREATE_TS timestamp,
@@ -0,0 +1,12 @@
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID varchar(36) not null,
+    CREATE_TS timestamp,
+    --
+    SERVER_ID varchar(255) not null,
+    SEQ_NUM bigint not null,
+    CONTENT longvarbinary,
+    --
+    primary key (ID)
+)^
+
+create index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
@@ -0,0 +1,12 @@
+create table SYS_ENTITY_CHANGED_EVENT (
+    ID varchar(32) not null,
+    CREATE_TS datetime(3),
+    --
+    SERVER_ID varchar(190) not null,
+    SEQ_NUM bigint not null,
+    CONTENT longblob,
+    --
+    primary key (ID)
+)^
+
+create index IDX_SYS_ENT_CH_EVENT_SERVER on SYS_ENTITY_CHANGED_EVENT (SERVER_ID, SEQ_NUM)^
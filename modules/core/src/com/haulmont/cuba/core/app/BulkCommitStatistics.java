@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.CommitContext;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of commits performed by {@link RdbmsStore} in the bulk mode, see {@link CommitContext#setBulk(boolean)}.
+ */
+@Component(BulkCommitStatistics.NAME)
+public class BulkCommitStatistics {
+
+    public static final String NAME = "cuba_BulkCommitStatistics";
+
+    protected final AtomicLong commits = new AtomicLong();
+    protected final AtomicLong persisted = new AtomicLong();
+    protected final AtomicLong merged = new AtomicLong();
+    protected final AtomicLong removed = new AtomicLong();
+    protected final AtomicLong reloaded = new AtomicLong();
+    protected final AtomicLong notReloaded = new AtomicLong();
+    protected final AtomicLong reloadQueries = new AtomicLong();
+    protected final AtomicLong time = new AtomicLong();
+
+    protected void commitPerformed(int persistedCount, int mergedCount, int removedCount, long millis) {
+        commits.incrementAndGet();
+        persisted.addAndGet(persistedCount);
+        merged.addAndGet(mergedCount);
+        removed.addAndGet(removedCount);
+        time.addAndGet(millis);
+    }
+
+    protected void instancesReloaded(int reloadedCount, int notReloadedCount, int queryCount) {
+        reloaded.addAndGet(reloadedCount);
+        notReloaded.addAndGet(notReloadedCount);
+        reloadQueries.addAndGet(queryCount);
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getPersisted() {
+        return persisted.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public long getRemoved() {
+        return removed.get();
+    }
+
+    /**
+     * @return number of instances reloaded after commits
+     */
+    public long getReloaded() {
+        return reloaded.get();
+    }
+
+    /**
+     * @return number of saved instances that were not returned by the reload queries, e.g. because of security
+     * constraints
+     */
+    public long getNotReloaded() {
+        return notReloaded.get();
+    }
+
+    public long getReloadQueries() {
+        return reloadQueries.get();
+    }
+
+    /**
+     * @return average time of a bulk commit in milliseconds, including reloading
+     */
+    public double getAverageTime() {
+        long count = commits.get();
+        return count == 0 ? 0 : (double) time.get() / count;
+    }
+
+    public void reset() {
+        commits.set(0);
+        persisted.set(0);
+        merged.set(0);
+        removed.set(0);
+        reloaded.set(0);
+        notReloaded.set(0);
+        reloadQueries.set(0);
+        time.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("commits=%d, persisted=%d, merged=%d, removed=%d, reloaded=%d, not reloaded=%d, " +
+                        "reload queries=%d, average time=%.1f ms",
+                getCommits(), getPersisted(), getMerged(), getRemoved(), getReloaded(), getNotReloaded(),
+                getReloadQueries(), getAverageTime());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.cuba.core.app.execution.ExecutionContext;
+import com.haulmont.cuba.core.app.execution.ExecutionContextHolder;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.concurrent.*;
+
+/**
+ * INTERNAL.
+ * Bounded thread pool used by {@link CrossDataStoreReferenceLoader} to load references of different properties
+ * concurrently.
+ * <p>
+ * Tasks are executed with the security context and the execution context (see
+ * {@link com.haulmont.cuba.core.app.execution.Executions}) of the submitting thread, so JDBC statements of the tasks
+ * are canceled together with the submitting thread's work. If the pool is disabled, its queue is full,
+ * or the task is submitted from a pool thread (nested loading), the task is executed in the calling thread.
+ */
+@Component(CrossDataStoreReferenceExecutor.NAME)
+public class CrossDataStoreReferenceExecutor {
+
+    public static final String NAME = "cuba_CrossDataStoreReferenceExecutor";
+
+    private static final ThreadLocal<Boolean> workerThread = new ThreadLocal<>();
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected volatile ThreadPoolExecutor executor;
+
+    /**
+     * @return true if tasks can be executed concurrently by the calling thread
+     */
+    public boolean isAvailable() {
+        return serverConfig.getCrossDataStoreReferenceLoadingThreads() > 0 && workerThread.get() == null;
+    }
+
+    /**
+     * Submits the task for execution. Falls back to execution in the calling thread if the pool is not available.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        ExecutionContext executionContext = ExecutionContextHolder.getCurrentContext();
+        Callable<T> wrapper = () -> {
+            Boolean previous = workerThread.get();
+            SecurityContext previousSecurityContext = AppContext.getSecurityContext();
+            ExecutionContext previousExecutionContext = ExecutionContextHolder.getCurrentContext();
+            workerThread.set(Boolean.TRUE);
+            AppContext.setSecurityContext(securityContext);
+            ExecutionContextHolder.setCurrentContext(executionContext);
+            try {
+                return task.call();
+            } finally {
+                ExecutionContextHolder.setCurrentContext(previousExecutionContext);
+                AppContext.setSecurityContext(previousSecurityContext);
+                workerThread.set(previous);
+            }
+        };
+        if (isAvailable()) {
+            try {
+                return getExecutor().submit(wrapper);
+            } catch (RejectedExecutionException e) {
+                // queue is full or the pool is stopped
+            }
+        }
+        FutureTask<T> futureTask = new FutureTask<>(wrapper);
+        futureTask.run();
+        return futureTask;
+    }
+
+    protected ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    int poolSize = Math.max(serverConfig.getCrossDataStoreReferenceLoadingThreads(), 1);
+                    result = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(Math.max(serverConfig.getCrossDataStoreReferenceLoadingQueueCapacity(), 1)),
+                            new ThreadFactoryBuilder().setNameFormat("CrossDataStoreReferenceLoader-%d").setDaemon(true).build(),
+                            new ThreadPoolExecutor.AbortPolicy());
+                    result.allowCoreThreadTimeOut(true);
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -30,6 +30,9 @@ import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -56,6 +59,9 @@ public class CrossDataStoreReferenceLoader {
     @Inject
     private ServerConfig serverConfig;
 
+    @Inject
+    private CrossDataStoreReferenceExecutor executor;
+
     private MetaClass metaClass;
 
     private View view;
@@ -113,43 +119,76 @@ public class CrossDataStoreReferenceLoader {
         if (crossPropertiesMap.isEmpty())
             return;
 
-        Set<Entity> affectedEntities = getAffectedEntities(entities, crossPropertiesMap);
+        Map<CrossDataStoreProperty, Set<Entity>> affectedEntities = getAffectedEntities(entities, crossPropertiesMap);
         if (affectedEntities.isEmpty())
             return;
 
-        List<EntityCrossDataStoreProperty> entityCrossDataStorePropertyList = new ArrayList<>();
-        for (Entity affectedEntity : affectedEntities) {
-            for (CrossDataStoreProperty crossDataStoreProperty : crossPropertiesMap.get(affectedEntity.getClass())) {
-                entityCrossDataStorePropertyList.add(new EntityCrossDataStoreProperty(affectedEntity, crossDataStoreProperty));
+        if (affectedEntities.size() == 1) {
+            Map.Entry<CrossDataStoreProperty, Set<Entity>> entry = affectedEntities.entrySet().iterator().next();
+            if (entry.getValue().size() == 1) {
+                loadOne(new EntityCrossDataStoreProperty(entry.getValue().iterator().next(), entry.getKey()));
+                return;
             }
         }
-        if (entityCrossDataStorePropertyList.size() == 1) {
-            loadOne(entityCrossDataStorePropertyList.get(0));
+
+        Map<ReferenceKey, Entity> loadedReferences = new ConcurrentHashMap<>();
+        if (joinTransaction || affectedEntities.size() == 1 || !executor.isAvailable()) {
+            affectedEntities.forEach((crossProp, affected) -> loadMany(crossProp, affected, loadedReferences));
         } else {
-            entityCrossDataStorePropertyList.stream()
-                    .collect(Collectors.groupingBy(EntityCrossDataStoreProperty::getCrossProp))
-                    .forEach((ap, eapList) ->
-                            loadMany(ap, eapList.stream().map(eap -> eap.entity).collect(Collectors.toList()))
-                    );
+            // load references of different properties concurrently and populate the entities in the calling thread
+            List<Future<?>> futures = new ArrayList<>(affectedEntities.size());
+            affectedEntities.forEach((crossProp, affected) -> {
+                List<Object> idList = getIdList(crossProp, affected);
+                futures.add(executor.submit(() -> {
+                    loadReferences(crossProp, idList, loadedReferences);
+                    return null;
+                }));
+            });
+            for (Future<?> future : futures) {
+                waitFor(future);
+            }
+            affectedEntities.forEach((crossProp, affected) -> setReferences(crossProp, affected, loadedReferences));
         }
     }
 
-    private Set<Entity> getAffectedEntities(Collection<? extends Entity> entities,
+    private void waitFor(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading cross-datastore references", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException("Error loading cross-datastore references", cause);
+        }
+    }
+
+    private Map<CrossDataStoreProperty, Set<Entity>> getAffectedEntities(Collection<? extends Entity> entities,
                                             Map<Class<? extends Entity>, List<CrossDataStoreProperty>> crossPropertiesMap) {
-        Set<Entity> resultSet = new HashSet<>();
+        Map<Class<? extends Entity>, Map<MetaProperty, CrossDataStoreProperty>> propertyIndex = new HashMap<>();
+        crossPropertiesMap.forEach((entityClass, crossProperties) -> {
+            Map<MetaProperty, CrossDataStoreProperty> classIndex = new IdentityHashMap<>();
+            for (CrossDataStoreProperty crossProperty : crossProperties) {
+                classIndex.put(crossProperty.property, crossProperty);
+            }
+            propertyIndex.put(entityClass, classIndex);
+        });
+
+        Map<CrossDataStoreProperty, Set<Entity>> result = new LinkedHashMap<>();
         for (Entity entity : entities) {
             metadataTools.traverseAttributesByView(view, entity, new EntityAttributeVisitor() {
                 @Override
                 public void visit(Entity entity, MetaProperty property) {
-                    List<CrossDataStoreProperty> crossProperties = crossPropertiesMap.get(entity.getClass());
-                    if (crossProperties != null) {
-                        crossProperties.stream()
-                                .filter(ap -> ap.property == property)
-                                .forEach(ap -> {
-                                    if (entity.getValue(ap.relatedPropertyName) != null) {
-                                        resultSet.add(entity);
-                                    }
-                                });
+                    Map<MetaProperty, CrossDataStoreProperty> classIndex = propertyIndex.get(entity.getClass());
+                    if (classIndex != null) {
+                        CrossDataStoreProperty crossProperty = classIndex.get(property);
+                        if (crossProperty != null && entity.getValue(crossProperty.relatedPropertyName) != null) {
+                            result.computeIfAbsent(crossProperty, k -> Sets.newIdentityHashSet()).add(entity);
+                        }
                     }
                 }
 
@@ -159,7 +198,7 @@ public class CrossDataStoreReferenceLoader {
                 }
             });
         }
-        return resultSet;
+        return result;
     }
 
     private void loadOne(EntityCrossDataStoreProperty entityCrossDataStoreProperty) {
@@ -176,29 +215,55 @@ public class CrossDataStoreReferenceLoader {
         entity.setValue(aProp.property.getName(), relatedEntity);
     }
 
-    private void loadMany(CrossDataStoreProperty crossDataStoreProperty, List<Entity> entities) {
-        int offset = 0, limit = serverConfig.getCrossDataStoreReferenceLoadingBatchSize();
-        while (true) {
-            int end = offset + limit;
-            List<Entity> batch = entities.subList(offset, Math.min(end, entities.size()));
-            loadBatch(crossDataStoreProperty, batch);
-            if (end >= entities.size())
-                break;
-            else
-                offset += limit;
-        }
+    private void loadMany(CrossDataStoreProperty crossDataStoreProperty, Collection<Entity> entities,
+                          Map<ReferenceKey, Entity> loadedReferences) {
+        loadReferences(crossDataStoreProperty, getIdList(crossDataStoreProperty, entities), loadedReferences);
+        setReferences(crossDataStoreProperty, entities, loadedReferences);
     }
 
-    private void loadBatch(CrossDataStoreProperty crossDataStoreProperty, List<Entity> entities) {
-        List<Object> idList = entities.stream()
+    private List<Object> getIdList(CrossDataStoreProperty crossDataStoreProperty, Collection<Entity> entities) {
+        return entities.stream()
                 .map(e -> e.getValue(crossDataStoreProperty.relatedPropertyName))
                 .filter(Objects::nonNull)
                 .distinct()
                 .collect(Collectors.toList());
+    }
 
-        if (idList.isEmpty())
-            return;
+    /**
+     * Loads entities with the given ids in batches, skipping the ids already loaded for another property with the
+     * same entity class and view.
+     */
+    private void loadReferences(CrossDataStoreProperty crossDataStoreProperty, List<Object> idList,
+                                Map<ReferenceKey, Entity> loadedReferences) {
+        List<Object> notLoadedIds = idList.stream()
+                .filter(id -> !loadedReferences.containsKey(new ReferenceKey(crossDataStoreProperty, id)))
+                .collect(Collectors.toList());
 
+        int limit = Math.max(serverConfig.getCrossDataStoreReferenceLoadingBatchSize(), 1);
+        for (int offset = 0; offset < notLoadedIds.size(); offset += limit) {
+            List<Object> batch = notLoadedIds.subList(offset, Math.min(offset + limit, notLoadedIds.size()));
+            for (Entity loadedEntity : loadBatch(crossDataStoreProperty, batch)) {
+                Object id = loadedEntity.getId() instanceof IdProxy
+                        ? ((IdProxy) loadedEntity.getId()).getNN() : loadedEntity.getId();
+                loadedReferences.put(new ReferenceKey(crossDataStoreProperty, id), loadedEntity);
+            }
+        }
+    }
+
+    private void setReferences(CrossDataStoreProperty crossDataStoreProperty, Collection<Entity> entities,
+                               Map<ReferenceKey, Entity> loadedReferences) {
+        for (Entity entity : entities) {
+            Object relatedPropertyValue = entity.getValue(crossDataStoreProperty.relatedPropertyName);
+            if (relatedPropertyValue == null)
+                continue;
+            Entity loadedEntity = loadedReferences.get(new ReferenceKey(crossDataStoreProperty, relatedPropertyValue));
+            if (loadedEntity != null) {
+                entity.setValue(crossDataStoreProperty.property.getName(), loadedEntity);
+            }
+        }
+    }
+
+    private List<Entity> loadBatch(CrossDataStoreProperty crossDataStoreProperty, List<Object> idList) {
         MetaClass cdsrMetaClass = crossDataStoreProperty.property.getRange().asClass();
         LoadContext<Entity> loadContext = new LoadContext<>(cdsrMetaClass);
 
@@ -233,19 +298,35 @@ public class CrossDataStoreReferenceLoader {
         loadContext.setView(crossDataStoreProperty.viewProperty.getView());
         loadContext.setJoinTransaction(joinTransaction);
 
-        List<Entity> loadedEntities = dataManager.loadList(loadContext);
+        return dataManager.loadList(loadContext);
+    }
 
-        for (Entity entity : entities) {
-            Object relatedPropertyValue = entity.getValue(crossDataStoreProperty.relatedPropertyName);
-            loadedEntities.stream()
-                    .filter(e -> {
-                        Object id = e.getId() instanceof IdProxy ? ((IdProxy) e.getId()).getNN() : e.getId();
-                        return id.equals(relatedPropertyValue);
-                    })
-                    .findAny()
-                    .ifPresent(e ->
-                            entity.setValue(crossDataStoreProperty.property.getName(), e)
-                    );
+    /**
+     * Key of a loaded reference in the cache shared by properties within one {@link #processEntities} call.
+     */
+    private static class ReferenceKey {
+
+        private final MetaClass metaClass;
+        private final View view;
+        private final Object id;
+
+        private ReferenceKey(CrossDataStoreProperty crossDataStoreProperty, Object id) {
+            this.metaClass = crossDataStoreProperty.property.getRange().asClass();
+            this.view = crossDataStoreProperty.viewProperty.getView();
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ReferenceKey that = (ReferenceKey) o;
+            return metaClass == that.metaClass && view == that.view && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * metaClass.hashCode() + System.identityHashCode(view)) + id.hashCode();
         }
     }
 
@@ -259,10 +340,6 @@ public class CrossDataStoreReferenceLoader {
             this.crossProp = crossDataStoreProperty;
         }
 
-        public CrossDataStoreProperty getCrossProp() {
-            return crossProp;
-        }
-
         @Override
         public String toString() {
             return entity + " -> " + crossProp;
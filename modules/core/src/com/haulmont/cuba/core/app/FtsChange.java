@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.FtsChangeType;
+import com.haulmont.cuba.core.entity.IdProxy;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Change of an entity instance to be indexed by the Full Text Search engine.
+ *
+ * @see FtsSender#enqueue(Collection)
+ */
+public class FtsChange {
+
+    protected final Entity entity;
+    protected final String entityName;
+    protected final Object entityId;
+    protected final FtsChangeType changeType;
+    protected final long timestamp;
+
+    public FtsChange(Entity entity, FtsChangeType changeType) {
+        this.entity = entity;
+        this.entityName = entity.getMetaClass().getName();
+        this.entityId = null;
+        this.changeType = changeType;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public FtsChange(String entityName, Object entityId, FtsChangeType changeType) {
+        this.entity = null;
+        this.entityName = entityName;
+        this.entityId = entityId;
+        this.changeType = changeType;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    protected FtsChange(FtsChange change, FtsChangeType changeType, long timestamp) {
+        this.entity = change.entity;
+        this.entityName = change.entityName;
+        this.entityId = change.entityId;
+        this.changeType = changeType;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return changed instance or null if the change was created for an entity name and id
+     */
+    @Nullable
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public Object getEntityId() {
+        if (entity != null) {
+            Object id = entity.getId();
+            return id instanceof IdProxy ? ((IdProxy) id).get() : id;
+        }
+        return entityId;
+    }
+
+    public FtsChangeType getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * @return time when the change was registered
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Merges several changes of the same instance into one: the last change wins, except that an insertion
+     * followed by updates remains an insertion.
+     *
+     * @return changes in the order of the first change of each instance
+     */
+    public static List<FtsChange> coalesce(Collection<FtsChange> changes) {
+        Map<Object, FtsChange> result = new LinkedHashMap<>(changes.size());
+        for (FtsChange change : changes) {
+            Object key = change.getKey();
+            FtsChange existing = result.get(key);
+            if (existing == null) {
+                result.put(key, change);
+            } else {
+                FtsChangeType changeType = change.changeType;
+                if (existing.changeType == FtsChangeType.INSERT && changeType == FtsChangeType.UPDATE) {
+                    changeType = FtsChangeType.INSERT;
+                }
+                // keep the time of the first change to measure the indexing lag
+                result.put(key, new FtsChange(change, changeType, existing.timestamp));
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    protected Object getKey() {
+        Object id = getEntityId();
+        if (id == null) {
+            // id is not assigned yet, only the same instance can be merged
+            return entity != null ? new IdentityKey(entity) : this;
+        }
+        return Arrays.asList(entityName, id);
+    }
+
+    @Override
+    public String toString() {
+        return entityName + "-" + getEntityId() + ":" + changeType;
+    }
+
+    protected static class IdentityKey {
+        protected final Object object;
+
+        protected IdentityKey(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IdentityKey && ((IdentityKey) o).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
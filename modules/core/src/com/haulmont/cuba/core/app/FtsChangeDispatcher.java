@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.security.app.Authentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * INTERNAL.
+ * Passes entity changes collected on transaction commit to {@link FtsSender} in batches.
+ * <p>
+ * By default, all changes of a transaction are coalesced and enqueued by one {@link FtsSender#enqueue(Collection)}
+ * call inside the transaction. If {@link ServerConfig#getFtsAsyncEnqueue()} is true, the changes are put into
+ * a bounded in-memory queue after the commit, and a background thread enqueues them in batches of several
+ * transactions in a separate transaction. When the queue is full, the committing thread waits for
+ * {@link ServerConfig#getFtsAsyncOfferTimeoutMs()} and then enqueues its changes itself.
+ */
+@Component(FtsChangeDispatcher.NAME)
+public class FtsChangeDispatcher {
+
+    public static final String NAME = "cuba_FtsChangeDispatcher";
+
+    private static final Logger log = LoggerFactory.getLogger(FtsChangeDispatcher.class);
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    @Inject
+    protected Persistence persistence;
+
+    @Inject
+    protected Authentication authentication;
+
+    protected volatile FtsSender ftsSender;
+
+    protected volatile BlockingQueue<FtsChange> queue;
+    protected volatile Thread worker;
+
+    protected final LongAdder received = new LongAdder();
+    protected final LongAdder enqueued = new LongAdder();
+    protected final LongAdder coalesced = new LongAdder();
+    protected final LongAdder batches = new LongAdder();
+    protected final LongAdder callerEnqueues = new LongAdder();
+    protected final LongAdder failures = new LongAdder();
+    protected volatile long lastLag;
+
+    /**
+     * Passes the changes of the current transaction to {@link FtsSender}, synchronously or asynchronously
+     * depending on {@link ServerConfig#getFtsAsyncEnqueue()}.
+     */
+    public void dispatch(Collection<FtsChange> changes) {
+        if (changes.isEmpty())
+            return;
+        FtsSender sender = getFtsSender();
+        if (sender == null)
+            return;
+
+        received.add(changes.size());
+        List<FtsChange> coalescedChanges = coalesce(changes);
+        if (!serverConfig.getFtsAsyncEnqueue()) {
+            sender.enqueue(coalescedChanges);
+            enqueued.add(coalescedChanges.size());
+            batches.increment();
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    offer(coalescedChanges);
+                }
+            });
+        } else {
+            offer(coalescedChanges);
+        }
+    }
+
+    /**
+     * @return number of changes waiting in the queue
+     */
+    public int getQueueSize() {
+        BlockingQueue<FtsChange> queue = this.queue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return age of the oldest change waiting in the queue in milliseconds
+     */
+    public long getQueueLag() {
+        BlockingQueue<FtsChange> queue = this.queue;
+        FtsChange oldest = queue != null ? queue.peek() : null;
+        return oldest != null ? System.currentTimeMillis() - oldest.getTimestamp() : 0;
+    }
+
+    public String printStatistics() {
+        return String.format("mode=%s, queue size=%d, queue lag=%d ms, last batch lag=%d ms, received=%d, " +
+                        "enqueued=%d, coalesced=%d, batches=%d, enqueued by committing threads=%d, failed batches=%d",
+                serverConfig.getFtsAsyncEnqueue() ? "async" : "sync", getQueueSize(), getQueueLag(), lastLag,
+                received.sum(), enqueued.sum(), coalesced.sum(), batches.sum(),
+                callerEnqueues.sum(), failures.sum());
+    }
+
+    protected List<FtsChange> coalesce(Collection<FtsChange> changes) {
+        List<FtsChange> result = FtsChange.coalesce(changes);
+        coalesced.add(changes.size() - result.size());
+        return result;
+    }
+
+    protected void offer(List<FtsChange> changes) {
+        BlockingQueue<FtsChange> queue = getQueue();
+        long deadline = System.currentTimeMillis() + serverConfig.getFtsAsyncOfferTimeoutMs();
+        for (int i = 0; i < changes.size(); i++) {
+            boolean offered;
+            try {
+                offered = queue.offer(changes.get(i), Math.max(deadline - System.currentTimeMillis(), 0),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                offered = false;
+            }
+            if (!offered) {
+                log.debug("FTS change queue is full, enqueueing {} changes in the committing thread",
+                        changes.size() - i);
+                callerEnqueues.increment();
+                send(changes.subList(i, changes.size()));
+                return;
+            }
+        }
+    }
+
+    protected void processQueue() {
+        BlockingQueue<FtsChange> queue = this.queue;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                FtsChange first = queue.take();
+                int batchSize = Math.max(serverConfig.getFtsAsyncBatchSize(), 1);
+                if (queue.size() < batchSize - 1) {
+                    // wait for changes of concurrent transactions
+                    try {
+                        Thread.sleep(serverConfig.getFtsAsyncBatchDelayMs());
+                    } catch (InterruptedException e) {
+                        // send the taken changes before exit
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                List<FtsChange> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                send(coalesce(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                log.error("Error processing FTS change queue", e);
+            }
+        }
+    }
+
+    protected void send(List<FtsChange> changes) {
+        if (changes.isEmpty())
+            return;
+        FtsSender sender = getFtsSender();
+        if (sender == null)
+            return;
+        try {
+            authentication.withSystemUser(() -> {
+                Transaction tx = persistence.createTransaction();
+                try {
+                    sender.enqueue(changes);
+                    tx.commit();
+                } finally {
+                    tx.end();
+                }
+                return null;
+            });
+            enqueued.add(changes.size());
+            batches.increment();
+            lastLag = System.currentTimeMillis() - changes.get(0).getTimestamp();
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Error enqueueing {} changes for FTS", changes.size(), e);
+        }
+    }
+
+    protected BlockingQueue<FtsChange> getQueue() {
+        BlockingQueue<FtsChange> result = queue;
+        if (result == null) {
+            synchronized (this) {
+                result = queue;
+                if (result == null) {
+                    result = new LinkedBlockingQueue<>(Math.max(serverConfig.getFtsAsyncQueueCapacity(), 1));
+                    queue = result;
+                    worker = new ThreadFactoryBuilder().setNameFormat("FtsChangeDispatcher-%d").setDaemon(true).build()
+                            .newThread(this::processQueue);
+                    worker.start();
+                }
+            }
+        }
+        return result;
+    }
+
+    protected FtsSender getFtsSender() {
+        if (ftsSender == null) {
+            if (AppBeans.containsBean(FtsSender.NAME)) {
+                ftsSender = AppBeans.get(FtsSender.NAME);
+            } else {
+                log.error("Error enqueueing changes for FTS: " + FtsSender.NAME + " bean not found");
+            }
+        }
+        return ftsSender;
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        Thread worker = this.worker;
+        if (worker != null) {
+            worker.interrupt();
+            List<FtsChange> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                log.info("Enqueueing {} remaining changes for FTS", remaining.size());
+                send(coalesce(remaining));
+            }
+        }
+    }
+}
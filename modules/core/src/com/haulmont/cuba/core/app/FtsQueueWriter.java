@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.entity.FtsQueue;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.core.global.UserSessionSource;
+import com.haulmont.cuba.core.global.UuidProvider;
+import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes {@link FtsChange}s to the {@code SYS_FTS_QUEUE} table by one JDBC batch in the current transaction.
+ * <p>
+ * {@link FtsSender} implementations can use this bean in {@link FtsSender#enqueue(Collection)} after filtering out
+ * the changes of instances that are not indexed. The bean doesn't check FTS configuration itself.
+ */
+@Component(FtsQueueWriter.NAME)
+public class FtsQueueWriter {
+
+    public static final String NAME = "cuba_FtsQueueWriter";
+
+    private static final Logger log = LoggerFactory.getLogger(FtsQueueWriter.class);
+
+    protected static final String INSERT_SQL = "insert into SYS_FTS_QUEUE (ID, CREATE_TS, CREATED_BY, ENTITY_ID, " +
+            "STRING_ENTITY_ID, INT_ENTITY_ID, LONG_ENTITY_ID, ENTITY_NAME, CHANGE_TYPE, SOURCE_HOST, FAKE) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Inject
+    protected Persistence persistence;
+
+    @Inject
+    protected TimeSource timeSource;
+
+    @Inject
+    protected UserSessionSource userSessionSource;
+
+    @Inject
+    protected ServerInfoAPI serverInfo;
+
+    /**
+     * Writes the changes to the queue with the current server as the source host.
+     *
+     * @return number of written queue records
+     */
+    public int write(Collection<FtsChange> changes) {
+        return write(changes, serverInfo.getServerId());
+    }
+
+    /**
+     * Writes the changes to the queue. Changes of instances without an identifier are skipped.
+     *
+     * @param sourceHost value of the {@link FtsQueue#getSourceHost()} attribute
+     * @return number of written queue records
+     */
+    public int write(Collection<FtsChange> changes, @Nullable String sourceHost) {
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        Date createTs = timeSource.currentTimestamp();
+        String createdBy = userSessionSource.checkCurrentUserSession() ?
+                userSessionSource.getUserSession().getUser().getLogin() : null;
+
+        for (FtsChange change : changes) {
+            Object entityId = change.getEntityId();
+            if (entityId == null) {
+                log.debug("Skipping FTS change without an entity id: {}", change);
+                continue;
+            }
+            FtsQueue record = new FtsQueue();
+            record.setObjectEntityId(entityId);
+
+            rows.add(new Object[]{
+                    toSql(UuidProvider.createUuid()),
+                    toSql(createTs),
+                    createdBy,
+                    toSql(record.getEntityId()),
+                    record.getStringEntityId(),
+                    record.getIntEntityId(),
+                    record.getLongEntityId(),
+                    change.getEntityName(),
+                    change.getChangeType().getId(),
+                    sourceHost,
+                    false
+            });
+        }
+        if (rows.isEmpty())
+            return 0;
+
+        DbTypeConverter converter = persistence.getDbTypeConverter();
+        int[] paramTypes = {
+                converter.getSqlType(UUID.class),
+                converter.getSqlType(Date.class),
+                Types.VARCHAR,
+                converter.getSqlType(UUID.class),
+                Types.VARCHAR,
+                Types.INTEGER,
+                Types.BIGINT,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.VARCHAR,
+                Types.BOOLEAN
+        };
+        try {
+            new QueryRunner().batch(persistence.getEntityManager().getConnection(), INSERT_SQL,
+                    rows.toArray(new Object[0][]), paramTypes);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error writing FTS queue", e);
+        }
+        return rows.size();
+    }
+
+    protected Object toSql(@Nullable Object value) {
+        return value != null ? persistence.getDbTypeConverter().getSqlObject(value) : null;
+    }
+}
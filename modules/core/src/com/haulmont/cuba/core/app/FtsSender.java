@@ -19,6 +19,8 @@ package com.haulmont.cuba.core.app;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.FtsChangeType;
 
+import java.util.Collection;
+
 /**
  * Interface that is used to enqueue changed entities for indexing in Full Text Search engine.
  * It is implemented outside CUBA in the FTS app component.
@@ -31,6 +33,23 @@ public interface FtsSender {
 
     void enqueue(String entityName, Object entityId, FtsChangeType changeType);
 
+    /**
+     * Enqueues several changes at once. The platform passes all changes of a transaction, or a batch of changes of
+     * several transactions in the asynchronous mode, to this method.
+     * <p>
+     * The default implementation enqueues the changes one by one. Implementations should override it to store
+     * the queue records in a batch, e.g. by passing the changes of indexed instances to {@link FtsQueueWriter}.
+     */
+    default void enqueue(Collection<FtsChange> changes) {
+        for (FtsChange change : changes) {
+            if (change.getEntity() != null) {
+                enqueue(change.getEntity(), change.getChangeType());
+            } else {
+                enqueue(change.getEntityName(), change.getEntityId(), change.getChangeType());
+            }
+        }
+    }
+
     void enqueueFake(String entityName, Object entityId);
 
     void emptyQueue(String entityName);
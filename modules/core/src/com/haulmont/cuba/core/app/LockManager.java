@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.app;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.EntityManager;
@@ -25,20 +26,31 @@ import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.LockDescriptor;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.security.entity.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps pessimistic locks in memory and propagates them to the cluster.
+ * <p>
+ * In the lease-based mode enabled by {@link ServerConfig#getLeaseBasedLocks()}, each lock is owned by the node which
+ * created it. Lock changes are sent to the cluster in batches which also renew the lease of the sending node. If a
+ * node owning locks has sent nothing for a half of the lease duration, {@link #expireLocks()} renews the lease by
+ * sending all locks of the node, so the locks removed by other nodes after a lapsed lease are restored. If a node stops
+ * renewing its lease, other nodes remove its locks. The cluster state is transferred in a compact binary form.
+ */
 @Component(LockManagerAPI.NAME)
 public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
@@ -73,11 +85,68 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         }
     }
 
+    /**
+     * Lock held in memory together with the node owning it.
+     */
+    private static class Lock {
+
+        private static final Comparator<Lock> SINCE_ORDER = Comparator
+                .comparingLong((Lock lock) -> lock.info.getSince().getTime())
+                .thenComparingLong(lock -> lock.seq);
+
+        private static final AtomicLong sequence = new AtomicLong();
+
+        private final LockKey key;
+        private final LockInfo info;
+        private final String node;
+        private final long seq = sequence.incrementAndGet();
+
+        private Lock(LockKey key, LockInfo info, @Nullable String node) {
+            this.key = key;
+            this.info = info;
+            this.node = node;
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(LockManager.class);
 
+    private static final int STATE_FORMAT_MAGIC = 0x4C4B5301;
+
     private volatile Map<String, LockDescriptor> config;
 
-    private Map<LockKey, LockInfo> locks = new ConcurrentHashMap<>();
+    private Map<LockKey, Lock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Locks of each name ordered by the time of locking, used to find expired locks without scanning all locks.
+     */
+    private Map<String, NavigableSet<Lock>> locksByName = new ConcurrentHashMap<>();
+
+    /**
+     * Keys of the locks owned by each node in the lease-based mode.
+     */
+    private Map<String, Set<LockKey>> locksByNode = new ConcurrentHashMap<>();
+
+    /**
+     * Time until which the leases of other nodes are valid.
+     */
+    private Map<String, Long> leases = new ConcurrentHashMap<>();
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Queue<LockChange> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private volatile long lastFlushTs;
+    private volatile ScheduledExecutorService flushExecutor;
+
+    private final LongAdder lockRequests = new LongAdder();
+    private final LongAdder lockConflicts = new LongAdder();
+    private final LongAdder unlocks = new LongAdder();
+    private final LongAdder holdTimeMs = new LongAdder();
+    private final LongAdder expiredLocks = new LongAdder();
+    private final LongAdder leaseExpiredLocks = new LongAdder();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder sentChanges = new LongAdder();
 
     @Inject
     private Persistence persistence;
@@ -88,12 +157,24 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Inject
     private UserSessionSource userSessionSource;
 
+    @Inject
+    private TimeSource timeSource;
+
+    @Inject
+    private ServerConfig serverConfig;
+
     private ClusterManagerAPI clusterManager;
 
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
         this.clusterManager.addListener(LockInfo.class, this);
+        this.clusterManager.addListener(LockChangesMsg.class, new ClusterListenerAdapter<LockChangesMsg>() {
+            @Override
+            public void receive(LockChangesMsg message) {
+                receiveChanges(message);
+            }
+        });
     }
 
     private Map<String, LockDescriptor> getConfig() {
@@ -124,12 +205,14 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     @Override
     public LockInfo lock(String name, String id) {
+        lockRequests.increment();
         LockKey key = new LockKey(name, id);
 
-        LockInfo lockInfo = locks.get(key);
-        if (lockInfo != null) {
-            log.debug("Already locked: " + lockInfo);
-            return lockInfo;
+        Lock lock = locks.get(key);
+        if (lock != null) {
+            lockConflicts.increment();
+            log.debug("Already locked: " + lock.info);
+            return lock.info;
         }
 
         LockDescriptor ld = getConfig().get(name);
@@ -137,11 +220,23 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             return new LockNotSupported();
         }
 
-        lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
-        locks.put(key, lockInfo);
+        boolean leaseBased = serverConfig.getLeaseBasedLocks();
+        LockInfo lockInfo = new LockInfo(userSessionSource.getUserSession().getCurrentOrSubstitutedUser(), name, id);
+        Lock newLock = new Lock(key, lockInfo, leaseBased ? nodeId : null);
+        lock = locks.putIfAbsent(key, newLock);
+        if (lock != null) {
+            lockConflicts.increment();
+            log.debug("Already locked: " + lock.info);
+            return lock.info;
+        }
+        addToIndexes(newLock);
         log.debug("Locked " + name + "/" + id);
 
-        clusterManager.send(lockInfo);
+        if (leaseBased) {
+            sendChange(LockChange.locked(lockInfo));
+        } else {
+            send(lockInfo);
+        }
 
         return null;
     }
@@ -159,11 +254,17 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     @Override
     public void unlock(String name, String id) {
-        LockInfo lockInfo = locks.remove(new LockKey(name, id));
-        if (lockInfo != null) {
+        Lock lock = removeLock(new LockKey(name, id));
+        if (lock != null) {
+            unlocks.increment();
+            holdTimeMs.add(Math.max(timeSource.currentTimeMillis() - lock.info.getSince().getTime(), 0));
             log.debug("Unlocked " + name + "/" + id);
 
-            clusterManager.send(new LockInfo(null, name, id));
+            if (serverConfig.getLeaseBasedLocks()) {
+                sendChange(LockChange.unlocked(name, id));
+            } else {
+                send(new LockInfo(null, name, id));
+            }
         }
     }
 
@@ -184,37 +285,92 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             return new LockNotSupported();
         }
 
-        return locks.get(new LockKey(name, id));
+        Lock lock = locks.get(new LockKey(name, id));
+        return lock != null ? lock.info : null;
     }
 
     @Override
     public List<LockInfo> getCurrentLocks() {
-        return new ArrayList<>(locks.values());
+        List<LockInfo> list = new ArrayList<>(locks.size());
+        for (Lock lock : locks.values()) {
+            list.add(lock.info);
+        }
+        return list;
     }
 
     @Override
     public void expireLocks() {
         log.debug("Expiring locks");
-        ArrayList<LockKey> list = new ArrayList<>(locks.keySet());
-        for (LockKey key : list) {
-            LockInfo lockInfo = locks.get(key);
-            if (lockInfo != null) {
-                LockDescriptor ld = getConfig().get(key.name);
-                if (ld == null) {
-                    log.debug("Lock " + key.name + "/" + key.id + " configuration not found, remove it");
-                    locks.remove(key);
-                } else {
-                    Integer timeoutSec = ld.getTimeoutSec();
-                    if (timeoutSec != null && timeoutSec > 0) {
-                        Date since = lockInfo.getSince();
-                        if (since.getTime() + timeoutSec * 1000 < AppBeans.get(TimeSource.class).currentTimestamp().getTime()) {
-                            log.debug("Lock " + key.name + "/" + key.id + " expired");
-                            locks.remove(key);
-                        }
-                    }
+        long now = timeSource.currentTimeMillis();
+        Map<String, LockDescriptor> config = getConfig();
+
+        for (Map.Entry<String, NavigableSet<Lock>> entry : locksByName.entrySet()) {
+            String name = entry.getKey();
+            LockDescriptor ld = config.get(name);
+            if (ld == null) {
+                for (Lock lock : entry.getValue()) {
+                    log.debug("Lock " + name + "/" + lock.key.id + " configuration not found, remove it");
+                    removeLock(lock);
                 }
+                continue;
+            }
+            Integer timeoutSec = ld.getTimeoutSec();
+            if (timeoutSec == null || timeoutSec <= 0)
+                continue;
+
+            // locks are ordered by the time of locking, so stop at the first lock which is not expired
+            for (Lock lock : entry.getValue()) {
+                if (lock.info.getSince().getTime() + timeoutSec * 1000L >= now)
+                    break;
+                if (removeLock(lock)) {
+                    expiredLocks.increment();
+                    log.debug("Lock " + name + "/" + lock.key.id + " expired");
+                }
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : leases.entrySet()) {
+            if (entry.getValue() < now && leases.remove(entry.getKey(), entry.getValue())) {
+                expireLease(entry.getKey());
             }
         }
+
+        if (serverConfig.getLeaseBasedLocks()) {
+            renewLease(now);
+        }
+    }
+
+    /**
+     * Sends the locks of this node to the cluster if they have not been sent for a half of the lease duration.
+     * A node without locks does not need a lease.
+     */
+    private void renewLease(long now) {
+        Set<LockKey> ownedKeys = locksByNode.get(nodeId);
+        if (ownedKeys == null || ownedKeys.isEmpty())
+            return;
+        if (now - lastFlushTs < serverConfig.getLockLeaseDurationSec() * 1000L / 2)
+            return;
+        flushChanges(true);
+    }
+
+    private void expireLease(String node) {
+        Set<LockKey> keys = locksByNode.get(node);
+        int count = 0;
+        if (keys != null) {
+            for (LockKey key : new ArrayList<>(keys)) {
+                Lock lock = locks.get(key);
+                if (lock != null && node.equals(lock.node) && removeLock(lock)) {
+                    count++;
+                }
+            }
+        }
+        leaseExpiredLocks.add(count);
+        if (count > 0) {
+            log.info("Lease of cluster node {} has expired, {} of its locks are removed", node, count);
+        } else {
+            // nodes without locks do not renew their leases
+            log.debug("Lease of cluster node {} has expired", node);
+        }
     }
 
     @Override
@@ -222,29 +378,224 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         config = null;
     }
 
+    @Override
+    public String printStatistics() {
+        long unlockCount = unlocks.sum();
+        return "Locks: " + locks.size() + "\n" +
+                "Lock requests: " + lockRequests.sum() + "\n" +
+                "Lock conflicts: " + lockConflicts.sum() + "\n" +
+                "Unlocks: " + unlockCount + "\n" +
+                "Average hold time (ms): " + (unlockCount == 0 ? 0 : holdTimeMs.sum() / unlockCount) + "\n" +
+                "Expired locks: " + expiredLocks.sum() + "\n" +
+                "Locks of expired leases: " + leaseExpiredLocks.sum() + "\n" +
+                "Leases of other nodes: " + leases.size() + "\n" +
+                "Sent messages: " + sentMessages.sum() + "\n" +
+                "Sent changes: " + sentChanges.sum() + "\n";
+    }
+
     @Override
     public void receive(LockInfo message) {
         LockKey key = new LockKey(message.getEntityName(), message.getEntityId());
         if (message.getUser() != null) {
-            LockInfo lockInfo = locks.get(key);
-            if (lockInfo == null || lockInfo.getSince().before(message.getSince())) {
-                locks.put(key, message);
-            }
+            putLock(new Lock(key, message, null));
         } else {
-            locks.remove(key);
+            removeLock(key);
+        }
+    }
+
+    private void receiveChanges(LockChangesMsg message) {
+        if (nodeId.equals(message.node))
+            return;
+
+        leases.put(message.node, timeSource.currentTimeMillis() + message.leaseDurationMs);
+        for (LockChange change : message.changes) {
+            LockKey key = new LockKey(change.entityName, change.entityId);
+            if (change.locked) {
+                putLock(new Lock(key, change.toLockInfo(this), message.node));
+            } else {
+                removeLock(key);
+            }
+        }
+    }
+
+    /**
+     * Puts the lock received from the cluster unless a more recent lock exists.
+     */
+    private void putLock(Lock lock) {
+        Lock[] replaced = new Lock[1];
+        Lock result = locks.compute(lock.key, (key, existing) -> {
+            if (existing == null || existing.info.getSince().before(lock.info.getSince())) {
+                replaced[0] = existing;
+                return lock;
+            }
+            return existing;
+        });
+        if (result == lock) {
+            if (replaced[0] != null) {
+                removeFromIndexes(replaced[0]);
+            }
+            addToIndexes(lock);
+        }
+    }
+
+    @Nullable
+    private Lock removeLock(LockKey key) {
+        Lock lock = locks.remove(key);
+        if (lock != null) {
+            removeFromIndexes(lock);
+        }
+        return lock;
+    }
+
+    private boolean removeLock(Lock lock) {
+        if (locks.remove(lock.key, lock)) {
+            removeFromIndexes(lock);
+            return true;
+        }
+        // the lock has been already replaced or removed, only clean up the indexes
+        removeFromIndexes(lock);
+        return false;
+    }
+
+    private void addToIndexes(Lock lock) {
+        locksByName.computeIfAbsent(lock.key.name, name -> new ConcurrentSkipListSet<>(Lock.SINCE_ORDER)).add(lock);
+        if (lock.node != null) {
+            locksByNode.computeIfAbsent(lock.node, node -> ConcurrentHashMap.newKeySet()).add(lock.key);
+        }
+    }
+
+    private void removeFromIndexes(Lock lock) {
+        NavigableSet<Lock> byName = locksByName.get(lock.key.name);
+        if (byName != null) {
+            byName.remove(lock);
+        }
+        if (lock.node != null) {
+            Set<LockKey> byNode = locksByNode.get(lock.node);
+            if (byNode != null) {
+                Lock current = locks.get(lock.key);
+                if (current == null || !lock.node.equals(current.node)) {
+                    byNode.remove(lock.key);
+                }
+            }
+        }
+    }
+
+    private void send(Serializable message) {
+        sentMessages.increment();
+        clusterManager.send(message);
+    }
+
+    /**
+     * Adds the change to the batch sent to the cluster after the configured delay.
+     *
+     * @param change lock change
+     */
+    private void sendChange(LockChange change) {
+        pendingChanges.add(change);
+        int delay = serverConfig.getLockChangesBatchDelayMs();
+        if (delay <= 0) {
+            flushChanges();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                getFlushExecutor().schedule(this::flushChanges, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushChanges();
+            }
+        }
+    }
+
+    private void flushChanges() {
+        flushChanges(false);
+    }
+
+    /**
+     * Sends the pending changes in a single message.
+     *
+     * @param withOwnedLocks whether to add all locks of this node to the message. They are added after the pending
+     *                       changes and sending is serialized, so a lock removed later is not restored by the message.
+     */
+    private void flushChanges(boolean withOwnedLocks) {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+            List<LockChange> changes = new ArrayList<>();
+            LockChange change;
+            while ((change = pendingChanges.poll()) != null) {
+                changes.add(change);
+            }
+            if (withOwnedLocks) {
+                Set<LockKey> ownedKeys = locksByNode.getOrDefault(nodeId, Collections.emptySet());
+                for (LockKey key : ownedKeys) {
+                    Lock lock = locks.get(key);
+                    if (lock != null && nodeId.equals(lock.node)) {
+                        changes.add(LockChange.locked(lock.info));
+                    }
+                }
+            }
+            if (changes.isEmpty())
+                return;
+
+            lastFlushTs = timeSource.currentTimeMillis();
+            sentChanges.add(changes.size());
+            send(new LockChangesMsg(nodeId, serverConfig.getLockLeaseDurationSec() * 1000L, changes));
+        }
+    }
+
+    private ScheduledExecutorService getFlushExecutor() {
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = flushExecutor;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("LockChangesSender-%d")
+                            .setDaemon(true)
+                            .build());
+                    flushExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        if (!pendingChanges.isEmpty()) {
+            flushChanges();
         }
     }
 
     @Override
     public byte[] getState() {
-        List<LockInfo> list = new ArrayList<>(locks.values());
+        if (!serverConfig.getLeaseBasedLocks()) {
+            List<LockInfo> list = getCurrentLocks();
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try {
+                ObjectOutputStream oos = new ObjectOutputStream(bos);
+                oos.writeObject(list);
+            } catch (IOException e) {
+                log.error("Error serializing LockInfo list", e);
+                return new byte[0];
+            }
+            return bos.toByteArray();
+        }
 
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try {
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(list);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeInt(STATE_FORMAT_MAGIC);
+            out.writeUTF(nodeId);
+            out.writeLong(serverConfig.getLockLeaseDurationSec() * 1000L);
+            List<Lock> list = new ArrayList<>(locks.values());
+            out.writeInt(list.size());
+            for (Lock lock : list) {
+                writeNullableUTF(out, lock.node);
+                LockChange.locked(lock.info).write(out);
+            }
         } catch (IOException e) {
-            log.error("Error serializing LockInfo list", e);
+            log.error("Error serializing locks", e);
             return new byte[0];
         }
         return bos.toByteArray();
@@ -255,6 +606,11 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         if (state == null || state.length == 0)
             return;
 
+        if (state.length >= 4 && readInt(state) == STATE_FORMAT_MAGIC) {
+            setCompactState(state);
+            return;
+        }
+
         List<LockInfo> list;
         ByteArrayInputStream bis = new ByteArrayInputStream(state);
         try {
@@ -269,4 +625,130 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             receive(lockInfo);
         }
     }
-}
\ No newline at end of file
+
+    private void setCompactState(byte[] state) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            in.readInt();
+            String sender = in.readUTF();
+            long leaseDurationMs = in.readLong();
+            long leaseExpiration = timeSource.currentTimeMillis() + leaseDurationMs;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String node = readNullableUTF(in);
+                LockChange change = LockChange.read(in);
+                if (node != null && !nodeId.equals(node)) {
+                    // the leases of the sender and of the nodes it knows are valid at least for one lease duration
+                    leases.putIfAbsent(node, leaseExpiration);
+                }
+                putLock(new Lock(new LockKey(change.entityName, change.entityId), change.toLockInfo(this), node));
+            }
+            leases.putIfAbsent(sender, leaseExpiration);
+        } catch (IOException e) {
+            log.error("Error deserializing locks", e);
+        }
+    }
+
+    private User createUser(UUID id, @Nullable String login, @Nullable String name) {
+        User user = metadata.create(User.class);
+        user.setId(id);
+        user.setLogin(login);
+        user.setName(name);
+        return user;
+    }
+
+    private static int readInt(byte[] bytes) {
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    private static void writeNullableUTF(DataOutput out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullableUTF(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Compact form of a lock or unlock operation sent to the cluster in the lease-based mode.
+     */
+    private static class LockChange implements Serializable {
+
+        private static final long serialVersionUID = -6014735713571380413L;
+
+        private final boolean locked;
+        private final String entityName;
+        private final String entityId;
+        private final long since;
+        private final UUID userId;
+        private final String userLogin;
+        private final String userName;
+
+        private LockChange(boolean locked, String entityName, String entityId, long since,
+                           @Nullable UUID userId, @Nullable String userLogin, @Nullable String userName) {
+            this.locked = locked;
+            this.entityName = entityName;
+            this.entityId = entityId;
+            this.since = since;
+            this.userId = userId;
+            this.userLogin = userLogin;
+            this.userName = userName;
+        }
+
+        private static LockChange locked(LockInfo lockInfo) {
+            User user = lockInfo.getUser();
+            return new LockChange(true, lockInfo.getEntityName(), lockInfo.getEntityId(),
+                    lockInfo.getSince().getTime(), user.getId(), user.getLogin(), user.getName());
+        }
+
+        private static LockChange unlocked(String entityName, String entityId) {
+            return new LockChange(false, entityName, entityId, 0, null, null, null);
+        }
+
+        private LockInfo toLockInfo(LockManager lockManager) {
+            User user = lockManager.createUser(userId, userLogin, userName);
+            return new LockInfo(user, entityName, entityId, new Date(since));
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeUTF(entityName);
+            writeNullableUTF(out, entityId);
+            out.writeLong(since);
+            out.writeLong(userId.getMostSignificantBits());
+            out.writeLong(userId.getLeastSignificantBits());
+            writeNullableUTF(out, userLogin);
+            writeNullableUTF(out, userName);
+        }
+
+        private static LockChange read(DataInput in) throws IOException {
+            String entityName = in.readUTF();
+            String entityId = readNullableUTF(in);
+            long since = in.readLong();
+            UUID userId = new UUID(in.readLong(), in.readLong());
+            String userLogin = readNullableUTF(in);
+            String userName = readNullableUTF(in);
+            return new LockChange(true, entityName, entityId, since, userId, userLogin, userName);
+        }
+    }
+
+    /**
+     * Batch of lock changes made on a cluster node. Also renews the lease of the node.
+     */
+    private static class LockChangesMsg implements Serializable {
+
+        private static final long serialVersionUID = 2237519264716224374L;
+
+        private final String node;
+        private final long leaseDurationMs;
+        private final List<LockChange> changes;
+
+        private LockChangesMsg(String node, long leaseDurationMs, List<LockChange> changes) {
+            this.node = node;
+            this.leaseDurationMs = leaseDurationMs;
+            this.changes = changes;
+        }
+    }
+}
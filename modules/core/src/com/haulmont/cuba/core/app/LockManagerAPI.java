@@ -85,4 +85,9 @@ public interface LockManagerAPI {
     void expireLocks();
 
     void reloadConfiguration();
+
+    /**
+     * @return lock requests, conflicts, expirations and cluster messages statistics
+     */
+    String printStatistics();
 }
\ No newline at end of file
@@ -21,11 +21,14 @@ import com.haulmont.cuba.core.global.GlobalConfig;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.MetadataTools;
 import com.haulmont.cuba.core.global.Stores;
+import com.haulmont.cuba.core.sys.NumberIdCache;
 import com.haulmont.cuba.core.sys.NumberIdSequence;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Generates ids for entities with long/integer PK using database sequences.
@@ -50,6 +53,11 @@ public class NumberIdWorker implements NumberIdSequence {
     @Inject
     protected GlobalConfig config;
 
+    @Inject
+    protected NumberIdCache numberIdCache;
+
+    protected Set<String> checkedSequences = ConcurrentHashMap.newKeySet();
+
     @Override
     public Long createLongId(String entityName, String sequenceName) {
         Sequence sequence = Sequence.withName(getSequenceName(entityName, sequenceName))
@@ -65,9 +73,14 @@ public class NumberIdWorker implements NumberIdSequence {
         Sequence sequence = Sequence.withName(getSequenceName(entityName, sequenceName))
                 .setStore(getDataStore(entityName))
                 .setStartValue(0)
-                .setIncrement(config.getNumberIdCacheSize());
+                .setIncrement(numberIdCache.getCacheSize(entityName));
 
-        return sequences.createNextValue(sequence);
+        long value = sequences.createNextValue(sequence);
+        if (!checkedSequences.contains(sequence.getName())) {
+            checkIncrement(entityName, sequence);
+            checkedSequences.add(sequence.getName());
+        }
+        return value;
     }
 
     /**
@@ -75,6 +88,24 @@ public class NumberIdWorker implements NumberIdSequence {
      */
     public void reset() {
         ((SequencesImpl) sequences).reset();
+        checkedSequences.clear();
+    }
+
+    /**
+     * Checks that the existing database sequence reserves the cached number of ids. The sequence keeps the increment
+     * it was created with, so if the cache size has been increased afterwards, the cached ids would be duplicated.
+     */
+    protected void checkIncrement(String entityName, Sequence sequence) {
+        if (!(sequences instanceof SequencesImpl)) {
+            return;
+        }
+        Long increment = ((SequencesImpl) sequences).getIncrementInDatabase(sequence);
+        if (increment != null && increment < sequence.getIncrement()) {
+            throw new IllegalStateException(String.format(
+                    "Sequence %s has increment %d but %d ids of %s are cached. Change the increment of the sequence " +
+                            "in the database to %d or decrease the cache size",
+                    sequence.getName(), increment, sequence.getIncrement(), entityName, sequence.getIncrement()));
+        }
     }
 
     protected String getDataStore(String entityName) {
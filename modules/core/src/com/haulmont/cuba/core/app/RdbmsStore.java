@@ -29,6 +29,7 @@ import com.haulmont.cuba.core.app.queryresults.QueryResultsManagerAPI;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.EntityFetcher;
+import com.haulmont.cuba.core.sys.jdbc.ReadReplicaRouting;
 import com.haulmont.cuba.core.sys.persistence.EntityChangedEventManager;
 import com.haulmont.cuba.security.entity.ConstraintOperationType;
 import com.haulmont.cuba.security.entity.EntityAttrAccess;
@@ -39,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -101,6 +103,14 @@ public class RdbmsStore implements DataStore {
     @Inject
     protected EntityChangedEventManager entityChangedEventManager;
 
+    @Inject
+    protected BulkCommitStatistics bulkCommitStatistics;
+
+    /**
+     * Maximum number of identifiers in a query reloading instances saved in the bulk mode.
+     */
+    protected static final int BULK_RELOAD_CHUNK_SIZE = 500;
+
     protected String storeName;
 
     public RdbmsStore(String storeName) {
@@ -123,7 +133,7 @@ public class RdbmsStore implements DataStore {
 
         E result = null;
         boolean needToApplyInMemoryReadConstraints = needToApplyInMemoryReadConstraints(context);
-        try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+        try (Transaction tx = getLoadTransaction(context.isJoinTransaction(), isReadReplicaAllowed(context))) {
             final EntityManager em = persistence.getEntityManager(storeName);
 
             if (!context.isSoftDeletion())
@@ -204,7 +214,7 @@ public class RdbmsStore implements DataStore {
 
         List<E> resultList;
         boolean needToApplyInMemoryReadConstraints = needToApplyInMemoryReadConstraints(context);
-        try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+        try (Transaction tx = getLoadTransaction(context.isJoinTransaction(), isReadReplicaAllowed(context))) {
             EntityManager em = persistence.getEntityManager(storeName);
             em.setSoftDeletion(context.isSoftDeletion());
             persistence.getEntityManagerContext(storeName).setDbHints(context.getDbHints());
@@ -283,7 +293,7 @@ public class RdbmsStore implements DataStore {
 
         if (security.hasInMemoryConstraints(metaClass, ConstraintOperationType.READ, ConstraintOperationType.ALL)) {
             List resultList;
-            try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+            try (Transaction tx = getLoadTransaction(context.isJoinTransaction(), isReadReplicaAllowed(context))) {
                 EntityManager em = persistence.getEntityManager(storeName);
                 em.setSoftDeletion(context.isSoftDeletion());
                 persistence.getEntityManagerContext(storeName).setDbHints(context.getDbHints());
@@ -314,7 +324,7 @@ public class RdbmsStore implements DataStore {
             context.getQuery().setQueryString(transformer.getResult());
 
             Number result;
-            try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+            try (Transaction tx = getLoadTransaction(context.isJoinTransaction(), isReadReplicaAllowed(context))) {
                 EntityManager em = persistence.getEntityManager(storeName);
                 em.setSoftDeletion(context.isSoftDeletion());
                 persistence.getEntityManagerContext(storeName).setDbHints(context.getDbHints());
@@ -336,8 +346,11 @@ public class RdbmsStore implements DataStore {
             log.debug("commit: commitInstances=" + context.getCommitInstances()
                     + ", removeInstances=" + context.getRemoveInstances());
 
+        long startTime = System.currentTimeMillis();
         Set<Entity> saved = new HashSet<>();
         List<Entity> persisted = new ArrayList<>();
+        List<Entity> bulkReloaded = new ArrayList<>();
+        int removedCount = 0;
         List<BaseGenericIdEntity> identityEntitiesToStoreDynamicAttributes = new ArrayList<>();
         List<CategoryAttributeValue> attributeValuesToRemove = new ArrayList<>();
 
@@ -365,7 +378,9 @@ public class RdbmsStore implements DataStore {
                     if (isAuthorizationRequired(context))
                         checkOperationPermitted(entity, ConstraintOperationType.CREATE);
 
-                    if (!context.isDiscardCommitted()) {
+                    if (isReloadedAfterBulkCommit(context, entity, true)) {
+                        bulkReloaded.add(entity);
+                    } else if (!context.isDiscardCommitted()) {
                         View view = getViewFromContextOrNull(context, entity);
                         entityFetcher.fetch(entity, view, true);
                         attributeSecurity.afterPersist(entity, view);
@@ -395,8 +410,12 @@ public class RdbmsStore implements DataStore {
                     Entity merged = em.merge(entity);
                     saved.add(merged);
 
-                    entityFetcher.fetch(merged, getViewFromContext(context, entity));
-                    attributeSecurity.afterMerge(merged);
+                    if (isReloadedAfterBulkCommit(context, entity, false)) {
+                        bulkReloaded.add(merged);
+                    } else {
+                        entityFetcher.fetch(merged, getViewFromContext(context, entity));
+                        attributeSecurity.afterMerge(merged);
+                    }
 
                     if (isAuthorizationRequired(context))
                         checkOperationPermitted(merged, ConstraintOperationType.UPDATE);
@@ -410,9 +429,7 @@ public class RdbmsStore implements DataStore {
                 }
             }
 
-            for (BaseGenericIdEntity entity : entitiesToStoreDynamicAttributes) {
-                dynamicAttributesManagerAPI.storeDynamicAttributes(entity);
-            }
+            dynamicAttributesManagerAPI.storeDynamicAttributes(entitiesToStoreDynamicAttributes);
 
             // remove
             for (Entity entity : context.getRemoveInstances()) {
@@ -436,6 +453,7 @@ public class RdbmsStore implements DataStore {
 
                 em.remove(e);
                 saved.add(e);
+                removedCount++;
 
                 if (entityHasDynamicAttributes(entity)) {
                     Map<String, CategoryAttributeValue> dynamicAttributes = ((BaseGenericIdEntity) entity).getDynamicAttributes();
@@ -453,13 +471,14 @@ public class RdbmsStore implements DataStore {
                                 attributeValuesToRemove.add(categoryAttributeValue);
                             }
                             saved.add(categoryAttributeValue);
+                            removedCount++;
                         }
                     }
                 }
             }
 
             if (!context.isDiscardCommitted() && isAuthorizationRequired(context) && userSessionSource.getUserSession().hasConstraints()) {
-                security.calculateFilteredData(saved);
+                security.calculateFilteredData(getNotReloaded(saved, bulkReloaded));
             }
 
             if (context.isJoinTransaction()) {
@@ -468,7 +487,7 @@ public class RdbmsStore implements DataStore {
                 for (Entity entity : saved) {
                     em.detach(entity);
                 }
-                entityChangedEventManager.publish(events);
+                entityChangedEventManager.publish(events, storeName);
             }
 
             tx.commit();
@@ -486,29 +505,42 @@ public class RdbmsStore implements DataStore {
 
         if (!identityEntitiesToStoreDynamicAttributes.isEmpty()) {
             try (Transaction tx = getSaveTransaction(storeName, context.isJoinTransaction())) {
-                for (BaseGenericIdEntity entity : identityEntitiesToStoreDynamicAttributes) {
-                    dynamicAttributesManagerAPI.storeDynamicAttributes(entity);
-                }
+                dynamicAttributesManagerAPI.storeDynamicAttributes(identityEntitiesToStoreDynamicAttributes);
                 tx.commit();
             }
         }
 
+        Set<Entity> result = getNotReloaded(saved, bulkReloaded);
+
         if (!context.isDiscardCommitted() && isAuthorizationRequired(context) && userSessionSource.getUserSession().hasConstraints()) {
-            security.applyConstraints(saved);
+            security.applyConstraints(result);
         }
 
         if (!context.isDiscardCommitted()) {
             if (isAuthorizationRequired(context)) {
-                for (Entity entity : saved) {
+                for (Entity entity : result) {
                     if (!persisted.contains(entity)) {
                         attributeSecurity.afterCommit(entity);
                     }
                 }
             }
-            updateReferences(persisted, saved);
+            if (!bulkReloaded.isEmpty()) {
+                result.addAll(reloadBulkCommitted(context, bulkReloaded));
+            }
+            updateReferences(persisted, result);
         }
 
-        return context.isDiscardCommitted() ? Collections.emptySet() : saved;
+        if (context.isBulk()) {
+            long time = System.currentTimeMillis() - startTime;
+            bulkCommitStatistics.commitPerformed(persisted.size(), saved.size() - persisted.size() - removedCount,
+                    removedCount, time);
+            if (log.isDebugEnabled()) {
+                log.debug("bulk commit: persisted={}, merged={}, removed={}, time={}ms", persisted.size(),
+                        saved.size() - persisted.size() - removedCount, removedCount, time);
+            }
+        }
+
+        return context.isDiscardCommitted() ? Collections.emptySet() : result;
     }
 
     @Override
@@ -530,7 +562,7 @@ public class RdbmsStore implements DataStore {
 
         List<KeyValueEntity> entities = new ArrayList<>();
 
-        try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+        try (Transaction tx = getLoadTransaction(context.isJoinTransaction(), isReadReplicaAllowed(queryParser))) {
             EntityManager em = persistence.getEntityManager(storeName);
             em.setSoftDeletion(context.isSoftDeletion());
 
@@ -582,6 +614,91 @@ public class RdbmsStore implements DataStore {
         return entities;
     }
 
+    /**
+     * @return true if the instance saved in the bulk mode is reloaded after the commit instead of being fetched in
+     * the transaction. New instances without explicitly specified views and instances with composite keys are
+     * processed as in the regular mode.
+     */
+    protected boolean isReloadedAfterBulkCommit(CommitContext context, Entity entity, boolean isNew) {
+        if (!context.isBulk() || context.isDiscardCommitted()) {
+            return false;
+        }
+        if (metadataTools.hasCompositePrimaryKey(metadata.getClassNN(entity.getClass()))) {
+            return false;
+        }
+        return !isNew || context.getViews().get(entity) != null;
+    }
+
+    protected Set<Entity> getNotReloaded(Set<Entity> saved, List<Entity> bulkReloaded) {
+        if (bulkReloaded.isEmpty()) {
+            return saved;
+        }
+        Set<Entity> result = new HashSet<>(saved);
+        for (Entity entity : bulkReloaded) {
+            result.remove(entity);
+        }
+        return result;
+    }
+
+    /**
+     * Reloads instances saved in the bulk mode with their views. Instances are loaded by {@link #loadList(LoadContext)}
+     * in chunks of {@link #BULK_RELOAD_CHUNK_SIZE} identifiers, one query for each chunk of instances having the same
+     * class and view, so security constraints and attribute access are applied as on regular loading.
+     *
+     * @return reloaded instances. Instances that cannot be loaded by the current user are omitted.
+     */
+    protected List<Entity> reloadBulkCommitted(CommitContext context, List<Entity> entities) {
+        Map<MetaClass, Map<View, List<Entity>>> groups = new LinkedHashMap<>();
+        for (Entity entity : entities) {
+            MetaClass metaClass = metadata.getClassNN(entity.getClass());
+            View view = context.getViews().get(entity);
+            if (view == null) {
+                view = viewRepository.getView(metaClass, View.LOCAL);
+            }
+            groups.computeIfAbsent(metaClass, k -> new IdentityHashMap<>())
+                    .computeIfAbsent(view, k -> new ArrayList<>())
+                    .add(entity);
+        }
+
+        List<Entity> result = new ArrayList<>(entities.size());
+        int queryCount = 0;
+        for (Map.Entry<MetaClass, Map<View, List<Entity>>> classEntry : groups.entrySet()) {
+            MetaClass metaClass = classEntry.getKey();
+            String queryString = String.format("select e from %s e where e.%s in :ids",
+                    metaClass.getName(), metadataTools.getPrimaryKeyName(metaClass));
+
+            for (Map.Entry<View, List<Entity>> viewEntry : classEntry.getValue().entrySet()) {
+                List<Entity> group = viewEntry.getValue();
+                for (int i = 0; i < group.size(); i += BULK_RELOAD_CHUNK_SIZE) {
+                    List<Entity> chunk = group.subList(i, Math.min(i + BULK_RELOAD_CHUNK_SIZE, group.size()));
+
+                    List<Object> ids = new ArrayList<>(chunk.size());
+                    boolean dynamicAttributes = false;
+                    for (Entity entity : chunk) {
+                        Object id = entity.getId();
+                        ids.add(id instanceof IdProxy ? ((IdProxy) id).getNN() : id);
+                        dynamicAttributes |= entityHasDynamicAttributes(entity);
+                    }
+
+                    LoadContext<Entity> loadContext = new LoadContext<>(metaClass)
+                            .setView(viewEntry.getKey())
+                            .setSoftDeletion(context.isSoftDeletion())
+                            .setLoadDynamicAttributes(dynamicAttributes)
+                            .setAuthorizationRequired(context.isAuthorizationRequired())
+                            .setJoinTransaction(context.isJoinTransaction());
+                    loadContext.setQueryString(queryString).setParameter("ids", ids);
+
+                    result.addAll(loadList(loadContext));
+                    queryCount++;
+                }
+            }
+        }
+
+        bulkCommitStatistics.instancesReloaded(result.size(), entities.size() - result.size(), queryCount);
+        log.debug("bulk commit: {} instances reloaded by {} queries", result.size(), queryCount);
+        return result;
+    }
+
     protected View getViewFromContext(CommitContext context, Entity entity) {
         View view = context.getViews().get(entity);
         if (view == null) {
@@ -1005,12 +1122,61 @@ public class RdbmsStore implements DataStore {
     }
 
     protected Transaction getLoadTransaction(boolean useCurrentTransaction) {
+        return getLoadTransaction(useCurrentTransaction, false);
+    }
+
+    /**
+     * @param useCurrentTransaction join the current transaction
+     * @param readReplicaAllowed    whether the load operation can be executed on a replica of the data store. It is
+     *                              done only if a new read-only transaction is started outside of a write transaction.
+     */
+    protected Transaction getLoadTransaction(boolean useCurrentTransaction, boolean readReplicaAllowed) {
+        if (useCurrentTransaction)
+            return persistence.getTransaction(storeName);
+
         TransactionParams txParams = new TransactionParams();
         if (serverConfig.getUseReadOnlyTransactionForLoad()) {
             txParams.setReadOnly(true);
         }
-        return useCurrentTransaction ?
-                persistence.getTransaction(storeName) : persistence.createTransaction(storeName, txParams);
+        if (readReplicaAllowed && txParams.isReadOnly() && serverConfig.getUseReadReplicaForLoad()
+                && !isInWriteTransaction()) {
+            return ReadReplicaRouting.createTransaction(() -> persistence.createTransaction(storeName, txParams));
+        }
+        return persistence.createTransaction(storeName, txParams);
+    }
+
+    /**
+     * Replicas can lag behind the primary, and the rows read from them would get into the shared entity cache and
+     * the query cache and be returned to later loads. So loads of cacheable entities, including the entities of
+     * the view, cacheable queries and loads using previous query results are executed on the primary.
+     */
+    protected boolean isReadReplicaAllowed(LoadContext<?> context) {
+        if (!context.getPrevQueries().isEmpty()) {
+            return false;
+        }
+        if (context.getQuery() != null && context.getQuery().isCacheable()) {
+            return false;
+        }
+        return !needToApplyByPredicate(context, metaClass -> metadataTools.isCacheable(metaClass));
+    }
+
+    /**
+     * Value queries are executed on the primary if they select cacheable entities, see
+     * {@link #isReadReplicaAllowed(LoadContext)}.
+     */
+    protected boolean isReadReplicaAllowed(QueryParser queryParser) {
+        for (String entityName : queryParser.getAllEntityNames()) {
+            MetaClass metaClass = metadata.getClass(entityName);
+            if (metaClass == null || metadataTools.isCacheable(metaClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean isInWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
     }
 
     protected Transaction getSaveTransaction(String storeName, boolean useCurrentTransaction) {
@@ -20,12 +20,16 @@ package com.haulmont.cuba.core.app;
  * Represents sequence with name, store, start value and increment.
  * Default data store for sequence is MAIN data store.
  * Default start value 1, and default increment 1.
+ * <p>
+ * If the allocation size is greater than 1, the database sequence is incremented by {@code increment * allocationSize}
+ * and the values between are handed out from memory. See {@link #setAllocationSize(int)}.
  */
 public class Sequence {
     protected String name;
     protected String dataStore;
     protected long startValue = 1;
     protected long increment = 1;
+    protected int allocationSize = 1;
 
     private Sequence(String sequenceName) {
         this.name = sequenceName;
@@ -50,6 +54,19 @@ public class Sequence {
         return this;
     }
 
+    /**
+     * Sets the number of values reserved in the database at once. The values are handed out from memory by
+     * {@link Sequences#createNextValue(Sequence)}, and the next block is reserved in background before the current
+     * one is used up. Values not handed out before restart are lost, so the sequence can have gaps.
+     * <p>
+     * The allocation size defines the increment of the database sequence when it is created, so it should be the
+     * same for all usages of the sequence and should not be changed for the existing sequence.
+     */
+    public Sequence setAllocationSize(int allocationSize) {
+        this.allocationSize = allocationSize;
+        return this;
+    }
+
     public String getName() {
         return name;
     }
@@ -65,4 +82,8 @@ public class Sequence {
     public long getIncrement() {
         return increment;
     }
+
+    public int getAllocationSize() {
+        return allocationSize;
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.sys.BlockAllocator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage statistics of a sequence collected by {@link SequencesImpl}.
+ */
+public class SequenceStatistics extends BlockAllocator.Statistics {
+
+    protected final AtomicLong databaseValues = new AtomicLong();
+    protected final AtomicLong databaseTime = new AtomicLong();
+
+    protected void databaseValuesObtained(int count, long nanos) {
+        databaseValues.addAndGet(count);
+        databaseTime.addAndGet(nanos);
+    }
+
+    /**
+     * @return number of values obtained from the database, including the blocks reserved for allocation
+     */
+    public long getDatabaseValues() {
+        return databaseValues.get();
+    }
+
+    /**
+     * @return average time of obtaining a value from the database in milliseconds
+     */
+    public double getAverageDatabaseTime() {
+        long count = databaseValues.get();
+        return count == 0 ? 0 : databaseTime.get() / 1_000_000.0 / count;
+    }
+
+    /**
+     * @return number of blocks reserved in the database for allocation
+     */
+    public long getAllocatedBlocks() {
+        return getReservedBlocks();
+    }
+
+    @Override
+    public String toString() {
+        return "SequenceStatistics{" +
+                "databaseValues=" + getDatabaseValues() +
+                ", averageDatabaseTime=" + getAverageDatabaseTime() +
+                ", allocatedValues=" + getAllocatedValues() +
+                ", allocatedBlocks=" + getAllocatedBlocks() +
+                ", prefetches=" + getPrefetches() +
+                ", waits=" + getWaits() +
+                '}';
+    }
+}
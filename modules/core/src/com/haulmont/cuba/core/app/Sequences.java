@@ -34,6 +34,16 @@ public interface Sequences {
      */
     long createNextValue(Sequence sequence);
 
+    /**
+     * Returns the given number of next sequence values. The values are obtained in one transaction and, if
+     * the sequence has the allocation size greater than 1, from memory.
+     *
+     * @param sequence  sequence object
+     * @param count     number of values
+     * @return          next values in the order of generation
+     */
+    long[] getNextValues(Sequence sequence, int count);
+
     /**
      * Returns the current value of the sequence. For some implementations
      * {@link #createNextValue(Sequence)} must be called at least once beforehand.
@@ -23,22 +23,24 @@ import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.global.Stores;
+import com.haulmont.cuba.core.sys.BlockAllocator;
 import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import com.haulmont.cuba.core.sys.persistence.SequenceSupport;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrTokenizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -46,22 +48,55 @@ import java.util.regex.Pattern;
 @Component(Sequences.NAME)
 public class SequencesImpl implements Sequences {
 
+    private static final Logger log = LoggerFactory.getLogger(SequencesImpl.class);
+
     @Inject
     protected Persistence persistence;
 
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
     protected Set<String> existingSequences = ConcurrentHashMap.newKeySet();
 
+    protected ConcurrentMap<String, String[]> nextValueStatements = new ConcurrentHashMap<>();
+    protected ConcurrentMap<String, Allocator> allocators = new ConcurrentHashMap<>();
+    protected ConcurrentMap<String, SequenceStatistics> statistics = new ConcurrentHashMap<>();
+
+    protected volatile ExecutorService allocationExecutor;
+
     protected static final Pattern SEQ_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
 
+    protected static final int ALLOCATION_THREADS = 2;
+
     @Override
     public long createNextValue(Sequence sequence) {
         Preconditions.checkNotNull(sequence, "Sequence can't be null");
         checkSequenceName(sequence.getName());
+        if (sequence.getAllocationSize() > 1) {
+            return getAllocator(sequence).next();
+        }
         String sqlScript = getSequenceSupport(sequence).getNextValueSql(sequence.getName());
         return getResult(sequence, sqlScript);
     }
 
+    @Override
+    public long[] getNextValues(Sequence sequence, int count) {
+        Preconditions.checkNotNull(sequence, "Sequence can't be null");
+        Preconditions.checkArgument(count >= 0, "Count can't be negative");
+        checkSequenceName(sequence.getName());
+        if (sequence.getAllocationSize() > 1) {
+            Allocator allocator = getAllocator(sequence);
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = allocator.next();
+            }
+            return values;
+        }
+        if (count == 0) {
+            return new long[0];
+        }
+        String sqlScript = getSequenceSupport(sequence).getNextValueSql(sequence.getName());
+        return getResults(sequence, sqlScript, count);
+    }
+
     @Override
     public long getCurrentValue(Sequence sequence) {
         Preconditions.checkNotNull(sequence, "Sequence can't be null");
@@ -75,12 +110,20 @@ public class SequencesImpl implements Sequences {
         Preconditions.checkNotNull(sequence, "Sequence can't be null");
         checkSequenceName(sequence.getName());
         String sqlScript = getSequenceSupport(sequence).modifySequenceSql(sequence.getName(), value);
+        Allocator allocator = null;
+        BlockAllocator.Block block = null;
         lock.readLock().lock();
         try {
             Transaction tx = persistence.getTransaction(getDataStore(sequence));
             try {
                 checkSequenceExists(sequence);
                 executeScript(sequence, sqlScript);
+                if (sequence.getAllocationSize() > 1) {
+                    allocator = getAllocator(sequence);
+                    block = allocator.reserveBlockAfter(value);
+                } else {
+                    allocators.remove(sequence.getName());
+                }
                 tx.commit();
             } finally {
                 tx.end();
@@ -88,6 +131,11 @@ public class SequencesImpl implements Sequences {
         } finally {
             lock.readLock().unlock();
         }
+        // the allocator is reset after releasing the lock, because the allocator acquires the lock when switching
+        // blocks while holding its monitor
+        if (allocator != null) {
+            allocator.reset(block);
+        }
     }
 
     @Override
@@ -108,6 +156,7 @@ public class SequencesImpl implements Sequences {
             try {
                 executeScript(sequence, sqlScript);
                 existingSequences.remove(sequenceName);
+                allocators.remove(sequenceName);
 
                 tx.commit();
             } finally {
@@ -118,33 +167,93 @@ public class SequencesImpl implements Sequences {
         }
     }
 
+    /**
+     * Returns the increment of the database sequence. It differs from the increment defined by the sequence object
+     * if the sequence was created earlier with other parameters.
+     *
+     * @param sequence sequence object
+     * @return increment or null if it can not be obtained for the database
+     */
+    @Nullable
+    public Long getIncrementInDatabase(Sequence sequence) {
+        Preconditions.checkNotNull(sequence, "Sequence can't be null");
+        checkSequenceName(sequence.getName());
+        String sqlScript = getSequenceSupport(sequence).getIncrementSql(sequence.getName());
+        if (sqlScript == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Transaction tx = persistence.getTransaction(getDataStore(sequence));
+            try {
+                checkSequenceExists(sequence);
+                Long increment = (Long) executeScript(sequence, sqlScript);
+                tx.commit();
+                return increment;
+            } finally {
+                tx.end();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /**
      * INTERNAL. Used by tests.
      */
     public void reset() {
         existingSequences.clear();
+        allocators.clear();
+    }
+
+    /**
+     * @return usage statistics of the sequence or null if the sequence has not been used yet
+     */
+    @Nullable
+    public SequenceStatistics getStatistics(String sequenceName) {
+        return statistics.get(sequenceName);
+    }
+
+    /**
+     * @return usage statistics of all used sequences by sequence names
+     */
+    public Map<String, SequenceStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * @return usage statistics of all used sequences as text
+     */
+    public String printStatistics() {
+        if (statistics.isEmpty()) {
+            return "No sequences have been used";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, SequenceStatistics> entry : new TreeMap<>(statistics).entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    protected SequenceStatistics getSequenceStatistics(String sequenceName) {
+        return statistics.computeIfAbsent(sequenceName, name -> new SequenceStatistics());
     }
 
     protected long getResult(Sequence sequence, String sqlScript) {
+        return getResults(sequence, sqlScript, 1)[0];
+    }
+
+    protected long[] getResults(Sequence sequence, String sqlScript, int count) {
         lock.readLock().lock();
         try {
             Transaction tx = persistence.getTransaction(getDataStore(sequence));
             try {
                 checkSequenceExists(sequence);
-                Object value = executeScript(sequence, sqlScript);
+                long start = System.nanoTime();
+                long[] values = executeScript(sequence, sqlScript, count);
+                getSequenceStatistics(sequence.getName()).databaseValuesObtained(count, System.nanoTime() - start);
                 tx.commit();
-                if (value instanceof Long)
-                    return (Long) value;
-                else if (value instanceof BigDecimal)
-                    return ((BigDecimal) value).longValue();
-                else if (value instanceof BigInteger)
-                    return ((BigInteger) value).longValue();
-                else if (value instanceof String)
-                    return Long.parseLong((String) value);
-                else if (value == null)
-                    throw new IllegalStateException("No value returned");
-                else
-                    throw new IllegalStateException("Unsupported value type: " + value.getClass());
+                return values;
             } finally {
                 tx.end();
             }
@@ -173,7 +282,7 @@ public class SequencesImpl implements Sequences {
                     Query query = em.createNativeQuery(sequenceSupport.sequenceExistsSql(sequenceName));
                     List list = query.getResultList();
                     if (list.isEmpty()) {
-                        query = em.createNativeQuery(sequenceSupport.createSequenceSql(sequenceName, sequence.getStartValue(), sequence.getIncrement()));
+                        query = em.createNativeQuery(sequenceSupport.createSequenceSql(sequenceName, sequence.getStartValue(), getDatabaseIncrement(sequence)));
                         query.executeUpdate();
                     }
                     existingSequences.add(sequenceName);
@@ -190,6 +299,50 @@ public class SequencesImpl implements Sequences {
         }
     }
 
+    /**
+     * Executes the script the given number of times using the same prepared statements.
+     *
+     * @return the value returned by the last query of the script for each execution
+     */
+    protected long[] executeScript(Sequence sequence, String sqlScript, int count) {
+        EntityManager em = persistence.getEntityManager(getDataStore(sequence));
+        String[] sqls = nextValueStatements.computeIfAbsent(sqlScript,
+                script -> new StrTokenizer(script, SequenceSupport.SQL_DELIMITER).getTokenArray());
+        Connection connection = em.getConnection();
+        List<PreparedStatement> statements = new ArrayList<>(sqls.length);
+        long[] values = new long[count];
+        try {
+            for (String sql : sqls) {
+                statements.add(connection.prepareStatement(sql));
+            }
+            for (int i = 0; i < count; i++) {
+                boolean returned = false;
+                for (PreparedStatement statement : statements) {
+                    if (statement.execute()) {
+                        ResultSet rs = statement.getResultSet();
+                        try {
+                            if (rs.next()) {
+                                values[i] = rs.getLong(1);
+                                returned = true;
+                            }
+                        } finally {
+                            DbUtils.closeQuietly(rs);
+                        }
+                    }
+                }
+                if (!returned)
+                    throw new IllegalStateException("No value returned");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error executing SQL for getting next number", e);
+        } finally {
+            for (PreparedStatement statement : statements) {
+                DbUtils.closeQuietly(statement);
+            }
+        }
+        return values;
+    }
+
     protected Object executeScript(Sequence sequence, String sqlScript) {
         EntityManager em = persistence.getEntityManager(getDataStore(sequence));
         StrTokenizer tokenizer = new StrTokenizer(sqlScript, SequenceSupport.SQL_DELIMITER);
@@ -216,6 +369,44 @@ public class SequencesImpl implements Sequences {
     }
 
 
+    protected long getDatabaseIncrement(Sequence sequence) {
+        return sequence.getAllocationSize() > 1 ? sequence.getIncrement() * sequence.getAllocationSize() : sequence.getIncrement();
+    }
+
+    /**
+     * Returns the allocator of the sequence. The allocator is replaced if the sequence is requested with another
+     * increment, allocation size or data store.
+     */
+    protected Allocator getAllocator(Sequence sequence) {
+        Allocator allocator = allocators.get(sequence.getName());
+        if (allocator != null && allocator.matches(sequence)) {
+            return allocator;
+        }
+        return allocators.compute(sequence.getName(),
+                (name, existing) -> existing != null && existing.matches(sequence) ? existing : new Allocator(sequence));
+    }
+
+    protected ExecutorService getAllocationExecutor() {
+        ExecutorService executor = allocationExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = allocationExecutor;
+                if (executor == null) {
+                    executor = BlockAllocator.createExecutor("SequenceAllocation-%d", ALLOCATION_THREADS);
+                    allocationExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        if (allocationExecutor != null) {
+            allocationExecutor.shutdownNow();
+        }
+    }
+
     protected SequenceSupport getSequenceSupport(Sequence sequence) {
         return DbmsSpecificFactory.getSequenceSupport(getDataStore(sequence));
     }
@@ -231,4 +422,84 @@ public class SequencesImpl implements Sequences {
             throw new IllegalArgumentException(
                     String.format("Invalid sequence name: '%s'. It can contain only alphanumeric characters and underscores", sequenceName));
     }
+
+    /**
+     * Hands out values of a sequence from blocks reserved in the database.
+     * <p>
+     * The size of the blocks is determined by the increment of the database sequence, which can differ from
+     * {@code increment * allocationSize} if the sequence was created with other parameters.
+     */
+    protected class Allocator extends BlockAllocator {
+
+        protected final Sequence sequence;
+
+        protected volatile Integer blockSize;
+
+        protected Allocator(Sequence sequence) {
+            super(sequence.getName(), getSequenceStatistics(sequence.getName()));
+            this.sequence = Sequence.withName(sequence.getName())
+                    .setStore(sequence.getDataStore())
+                    .setStartValue(sequence.getStartValue())
+                    .setIncrement(sequence.getIncrement())
+                    .setAllocationSize(sequence.getAllocationSize());
+        }
+
+        protected boolean matches(Sequence other) {
+            return sequence.getIncrement() == other.getIncrement()
+                    && sequence.getAllocationSize() == other.getAllocationSize()
+                    && getDataStore(sequence).equals(getDataStore(other));
+        }
+
+        @Override
+        protected Block reserveBlock() {
+            String sqlScript = getSequenceSupport(sequence).getNextValueSql(sequence.getName());
+            long first = getResult(sequence, sqlScript);
+            return new Block(first, getBlockSize(), sequence.getIncrement());
+        }
+
+        /**
+         * Reserves a block continuing the value set as current. The values between the set value and the value
+         * returned by the database are not handed out by the database anymore, so they are included in the block.
+         */
+        protected Block reserveBlockAfter(long value) {
+            Block reserved = reserveBlockWithStatistics();
+            long increment = sequence.getIncrement();
+            long first = value + increment;
+            long last = reserved.getFirst() + (reserved.getSize() - 1) * increment;
+            if (last < first) {
+                return reserved;
+            }
+            return new Block(first, Math.toIntExact((last - first) / increment + 1), increment);
+        }
+
+        @Override
+        protected Executor getExecutor() {
+            return getAllocationExecutor();
+        }
+
+        protected int getBlockSize() {
+            Integer size = blockSize;
+            if (size == null) {
+                size = determineBlockSize();
+                blockSize = size;
+            }
+            return size;
+        }
+
+        protected int determineBlockSize() {
+            Long increment = getIncrementInDatabase(sequence);
+            if (increment == null || increment == getDatabaseIncrement(sequence)) {
+                return sequence.getAllocationSize();
+            }
+            if (increment < sequence.getIncrement() || increment % sequence.getIncrement() != 0) {
+                throw new IllegalStateException(String.format(
+                        "Sequence %s has increment %d which is not a multiple of the sequence increment %d",
+                        sequence.getName(), increment, sequence.getIncrement()));
+            }
+            int size = Math.toIntExact(increment / sequence.getIncrement());
+            log.warn("Sequence {} has increment {} instead of {}, allocating {} values at once",
+                    sequence.getName(), increment, getDatabaseIncrement(sequence), size);
+            return size;
+        }
+    }
 }
@@ -131,6 +131,40 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(true)
     boolean getImmutableFileStorage();
 
+    /**
+     * A deduplicating file storage keeps identical file contents once: files of descriptors are hard links to
+     * content-addressed blobs. Existing files can be deduplicated by the {@code cuba_FileStorageMBean}.
+     * Storage directories on file systems without hard links or POSIX attributes (e.g. on Windows) keep files
+     * without deduplication.
+     *
+     * @return whether file storage deduplicates file contents.
+     */
+    @Property("cuba.fileStorageDeduplication")
+    @DefaultBoolean(false)
+    boolean getFileStorageDeduplication();
+
+    /**
+     * @return number of threads copying files to secondary {@link FileStorageAPI} storage directories.
+     */
+    @Property("cuba.fileStorageReplicationThreads")
+    @DefaultInt(5)
+    int getFileStorageReplicationThreads();
+
+    /**
+     * @return maximum number of copies to secondary storage directories waiting for a free thread. When the queue is
+     * full, the thread saving a file makes the copies itself.
+     */
+    @Property("cuba.fileStorageReplicationQueueCapacity")
+    @DefaultInt(1000)
+    int getFileStorageReplicationQueueCapacity();
+
+    /**
+     * @return number of attempts to copy a file to a secondary storage directory before giving up until restart.
+     */
+    @Property("cuba.fileStorageReplicationMaxAttempts")
+    @DefaultInt(10)
+    int getFileStorageReplicationMaxAttempts();
+
     /**
      * @return Scheduled tasks execution control.
      */
@@ -207,6 +241,23 @@ public interface ServerConfig extends Config {
     @DefaultString("CUBA.Platform")
     String getKeyForSecurityTokenEncryption();
 
+    /**
+     * @return whether security tokens are written in the compact binary format. Tokens in the JSON format are read
+     * in any case. Disabled by default until all nodes of a cluster can read the binary format, enable it after
+     * all nodes are upgraded.
+     */
+    @Property("cuba.binarySecurityToken")
+    @DefaultBoolean(false)
+    boolean getBinarySecurityToken();
+
+    /**
+     * @return whether security tokens are encrypted in the authenticated AES/GCM mode with a random IV, so a modified
+     * token is rejected. Tokens written in the default mode cannot be read when this mode is enabled.
+     */
+    @Property("cuba.authenticatedSecurityToken")
+    @DefaultBoolean(false)
+    boolean getAuthenticatedSecurityToken();
+
     /**
      * Indicates that {@code DataManager} should always apply security restrictions on the middleware.
      */
@@ -262,6 +313,31 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(false)
     boolean getLogInternalServiceInvocation();
 
+    /**
+     * @return whether pessimistic locks are owned by the cluster nodes which created them and are kept while the
+     * nodes renew their leases. Lock changes are sent to the cluster in batches.
+     */
+    @Property("cuba.leaseBasedLocks")
+    @DefaultBoolean(false)
+    boolean getLeaseBasedLocks();
+
+    /**
+     * @return duration of the lease of a cluster node for its pessimistic locks. The lease is renewed by lock changes
+     * and by the lock expiration check if nothing has been sent for a half of the duration, so the duration should be
+     * longer than twice the check interval (1 minute).
+     */
+    @Property("cuba.lockLeaseDurationSec")
+    @DefaultInt(180)
+    int getLockLeaseDurationSec();
+
+    /**
+     * @return delay of sending lock changes to the cluster in the lease-based mode, changes made during the delay are
+     * sent in a single message
+     */
+    @Property("cuba.lockChangesBatchDelayMs")
+    @DefaultInt(100)
+    int getLockChangesBatchDelayMs();
+
     /**
      * @return batch size for loading related entities from different data stores
      */
@@ -270,6 +346,25 @@ public interface ServerConfig extends Config {
     @DefaultInt(50)
     int getCrossDataStoreReferenceLoadingBatchSize();
 
+    /**
+     * @return number of threads loading references from different data stores concurrently.
+     * 0 (default) means that references are loaded sequentially in the calling thread.
+     * <p>
+     * Loading tasks get the security and execution contexts of the calling thread, but not other thread-bound
+     * state, e.g. the current transaction. Enable only if the data stores do not rely on such state.
+     */
+    @Property("cuba.crossDataStoreReferenceLoadingThreads")
+    @DefaultInt(0)
+    int getCrossDataStoreReferenceLoadingThreads();
+
+    /**
+     * @return maximum number of pending concurrent loading tasks. When the queue is full, references are loaded
+     * in the calling thread.
+     */
+    @Property("cuba.crossDataStoreReferenceLoadingQueueCapacity")
+    @DefaultInt(100)
+    int getCrossDataStoreReferenceLoadingQueueCapacity();
+
     /**
      * @return use read-only transactions in {@code DataManager} load operations and do not commit them
      */
@@ -278,6 +373,19 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(true)
     boolean getUseReadOnlyTransactionForLoad();
 
+    /**
+     * @return route {@code DataManager} load operations which start their own read-only transaction outside of
+     * a write transaction to replicas of the data store, if replicas are configured by the
+     * {@code cuba.dataSourceReplicaJndiNames} property.
+     * <p>
+     * Rows read from a lagging replica would get into the shared entity cache and the query cache, so loads of
+     * cacheable entities (including the entities of the view) and cacheable queries are always executed on the
+     * primary data source.
+     */
+    @Property("cuba.useReadReplicaForLoad")
+    @DefaultBoolean(true)
+    boolean getUseReadReplicaForLoad();
+
     /**
      * @return whether to store REST API OAuth tokens in the database
      */
@@ -308,4 +416,123 @@ public interface ServerConfig extends Config {
     @Property("cuba.implicitConversionOfJpqlParams")
     @DefaultBoolean(false)
     boolean getImplicitConversionOfJpqlParams();
-}
\ No newline at end of file
+
+    /**
+     * @return maximum number of transformed JPQL query plans cached by {@link com.haulmont.cuba.core.sys.QueryPlanCache}.
+     * 0 disables the cache.
+     */
+    @Property("cuba.queryPlanCache.maxSize")
+    @DefaultInt(1000)
+    int getQueryPlanCacheMaxSize();
+
+    /**
+     * @return if true, {@link com.haulmont.cuba.core.app.events.EntityChangedEvent}s of the main data store are
+     * recorded in the {@code SYS_ENTITY_CHANGED_EVENT} table by the transaction which changes entities and dispatched
+     * asynchronously after commit in background threads of the same cluster node, in separate transactions of the
+     * system session. Events not dispatched before the server is stopped are dispatched after its restart. Otherwise
+     * (by default), and always for additional data stores, the events are sent synchronously before commit.
+     * <p>
+     * In the asynchronous mode, {@code @EventListener} and {@code @TransactionalEventListener(phase = BEFORE_COMMIT)}
+     * handlers are invoked after the changes are committed and cannot roll them back. Such handlers are reported
+     * to the log at startup.
+     */
+    @Property("cuba.entityChangedEventsAsync")
+    @DefaultBoolean(false)
+    boolean getEntityChangedEventsAsync();
+
+    /**
+     * @return number of threads dispatching {@code EntityChangedEvent}s in the asynchronous mode. Events of the same
+     * entity instance are always dispatched by the same thread in the order of commits.
+     */
+    @Property("cuba.entityChangedEventsAsyncThreads")
+    @DefaultInt(2)
+    int getEntityChangedEventsAsyncThreads();
+
+    /**
+     * @return maximum number of {@code EntityChangedEvent}s dispatched in one transaction in the asynchronous mode
+     */
+    @Property("cuba.entityChangedEventsAsyncBatchSize")
+    @DefaultInt(100)
+    int getEntityChangedEventsAsyncBatchSize();
+
+    /**
+     * @return maximum number of attempts to dispatch a batch of {@code EntityChangedEvent}s in the asynchronous mode.
+     * Records of the batch failed after all attempts are kept in the table and dispatched again after restart.
+     */
+    @Property("cuba.entityChangedEventsAsyncMaxAttempts")
+    @DefaultInt(5)
+    int getEntityChangedEventsAsyncMaxAttempts();
+
+    /**
+     * @return if true, execution time, fetch time and row counts of JDBC statements are collected by
+     * {@link com.haulmont.cuba.core.sys.jdbc.SqlStatistics}. Can be changed at runtime by the
+     * {@code SqlStatistics} JMX bean.
+     */
+    @Property("cuba.sqlStatistics.enabled")
+    @DefaultBoolean(false)
+    boolean getSqlStatisticsEnabled();
+
+    /**
+     * @return statements executed and fetched longer than this number of milliseconds are written to the slow query log
+     */
+    @Property("cuba.sqlStatistics.slowQueryThresholdMs")
+    @DefaultLong(1000)
+    long getSqlStatisticsSlowQueryThresholdMs();
+
+    /**
+     * @return number of the latest slow queries kept in memory
+     */
+    @Property("cuba.sqlStatistics.slowQueryLogSize")
+    @DefaultInt(100)
+    int getSqlStatisticsSlowQueryLogSize();
+
+    /**
+     * @return maximum number of distinct normalized statements for which aggregates are kept. When the limit is
+     * reached, a tenth of the statements with the least total time is discarded.
+     */
+    @Property("cuba.sqlStatistics.maxStatements")
+    @DefaultInt(1000)
+    int getSqlStatisticsMaxStatements();
+
+    /**
+     * @return whether entity changes are passed to {@link FtsSender} asynchronously after the transaction commit.
+     * If false, the changes are enqueued in one batch inside the committing transaction.
+     * <p>
+     * In the asynchronous mode, {@link FtsSender} receives the committed entity instances in another thread as
+     * detached objects, so it must not modify them or load their unfetched attributes. The queued changes are kept
+     * only in memory and are lost if the server stops abnormally before they are enqueued, in which case
+     * the affected entities must be reindexed.
+     */
+    @Property("cuba.ftsAsyncEnqueue")
+    @DefaultBoolean(false)
+    boolean getFtsAsyncEnqueue();
+
+    /**
+     * @return maximum number of entity changes waiting to be passed to {@link FtsSender} in the asynchronous mode
+     */
+    @Property("cuba.ftsAsyncQueueCapacity")
+    @DefaultInt(10000)
+    int getFtsAsyncQueueCapacity();
+
+    /**
+     * @return maximum number of entity changes passed to {@link FtsSender} at once in the asynchronous mode
+     */
+    @Property("cuba.ftsAsyncBatchSize")
+    @DefaultInt(500)
+    int getFtsAsyncBatchSize();
+
+    /**
+     * @return how long to wait for more changes before passing an incomplete batch to {@link FtsSender}
+     */
+    @Property("cuba.ftsAsyncBatchDelayMs")
+    @DefaultInt(200)
+    int getFtsAsyncBatchDelayMs();
+
+    /**
+     * @return how long a committing thread waits for free space in the full queue. After the timeout, the changes
+     * are enqueued by the committing thread itself.
+     */
+    @Property("cuba.ftsAsyncOfferTimeoutMs")
+    @DefaultInt(1000)
+    int getFtsAsyncOfferTimeoutMs();
+}
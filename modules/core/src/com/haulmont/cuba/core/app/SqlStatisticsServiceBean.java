@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.SlowSqlQueryInfo;
+import com.haulmont.cuba.core.global.SqlStatementInfo;
+import com.haulmont.cuba.core.sys.jdbc.SqlStatistics;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service(SqlStatisticsService.NAME)
+public class SqlStatisticsServiceBean implements SqlStatisticsService {
+
+    @Inject
+    protected SqlStatistics sqlStatistics;
+
+    @Override
+    public boolean isEnabled() {
+        return sqlStatistics.isEnabled();
+    }
+
+    @Override
+    public List<SqlStatementInfo> getTopStatements(int count, @Nullable String orderBy) {
+        return sqlStatistics.getTopStatements(count, orderBy).stream()
+                .map(statement -> new SqlStatementInfo(statement.getSql(), statement.getExecutionCount(),
+                        statement.getErrorCount(), statement.getTotalTime(), statement.getExecutionTime(),
+                        statement.getFetchTime(), statement.getAverageTime(), statement.getMaxTime(),
+                        statement.getRowCount(), formatParameterShapes(statement)))
+                .collect(Collectors.toList());
+    }
+
+    protected String formatParameterShapes(SqlStatistics.StatementStatistics statement) {
+        return statement.getParameterShapes().entrySet().stream()
+                .map(entry -> entry.getKey() + ": " + entry.getValue())
+                .collect(Collectors.joining("; "));
+    }
+
+    @Override
+    public List<SlowSqlQueryInfo> getSlowQueries() {
+        return sqlStatistics.getSlowQueries().stream()
+                .map(query -> new SlowSqlQueryInfo(new Date(query.getTs()), query.getSql(), query.getParameterShape(),
+                        query.getExecutionTime(), query.getFetchTime(), query.getRowCount(), query.isFailed(),
+                        query.getUser(), query.getThread()))
+                .collect(Collectors.toList());
+    }
+}
@@ -47,7 +47,7 @@ import static java.lang.String.format;
 
 @Component(DynamicAttributesManagerAPI.NAME)
 public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
-    public static final int MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH = 100;
+    public static final int MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH = 500;
 
     private static final Logger log = LoggerFactory.getLogger(DynamicAttributesManager.class);
 
@@ -190,12 +190,54 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
 
     @Override
     public void storeDynamicAttributes(BaseGenericIdEntity entity) {
+        storeDynamicAttributes(Collections.singletonList(entity));
+    }
+
+    @Override
+    public void storeDynamicAttributes(Collection<? extends BaseGenericIdEntity> entities) {
+        if (entities.isEmpty())
+            return;
+
         try (Transaction tx = persistence.getTransaction()) {
-            doStoreDynamicAttributes(entity);
+            loadStoredAttributeValues(entities);
+            for (BaseGenericIdEntity entity : entities) {
+                doStoreDynamicAttributes(entity);
+            }
             tx.commit();
         }
     }
 
+    /**
+     * Loads the stored attribute values of the entities into the persistence context by one query for
+     * {@link #MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH} values, so merging and removing them does not select each
+     * value separately.
+     */
+    protected void loadStoredAttributeValues(Collection<? extends BaseGenericIdEntity> entities) {
+        List<UUID> ids = new ArrayList<>();
+        for (BaseGenericIdEntity entity : entities) {
+            Map<String, CategoryAttributeValue> dynamicAttributes = entity.getDynamicAttributes();
+            if (dynamicAttributes != null) {
+                for (CategoryAttributeValue categoryAttributeValue : dynamicAttributes.values()) {
+                    if (PersistenceHelper.isDetached(categoryAttributeValue)) {
+                        ids.add(categoryAttributeValue.getId());
+                    }
+                }
+            }
+        }
+        // a single value is selected by merge anyway
+        if (ids.size() < 2) {
+            return;
+        }
+
+        EntityManager em = persistence.getEntityManager();
+        for (int i = 0; i < ids.size(); i += MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH) {
+            List<UUID> currentIds = ids.subList(i, Math.min(i + MAX_ENTITIES_FOR_ATTRIBUTE_VALUES_BATCH, ids.size()));
+            em.createQuery("select v from sys$CategoryAttributeValue v where v.id in :ids", CategoryAttributeValue.class)
+                    .setParameter("ids", currentIds)
+                    .getResultList();
+        }
+    }
+
     @Override
     public <E extends BaseGenericIdEntity> void fetchDynamicAttributes(List<E> entities, @Nonnull Set<Class> dependentClasses) {
         Set<BaseGenericIdEntity> toProcess = new HashSet<>();
@@ -263,21 +305,31 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
                     if (entity instanceof BaseDbGeneratedIdEntity && categoryAttributeValue.getObjectEntityId() == null) {
                         categoryAttributeValue.setObjectEntityId(referenceToEntitySupport.getReferenceId(entity));
                     }
-                    CategoryAttributeValue mergedCategoryAttributeValue = em.merge(categoryAttributeValue);
-                    mergedCategoryAttributeValue.setCategoryAttribute(categoryAttributeValue.getCategoryAttribute());
-
-                    //copy transient fields (for nested CAVs as well)
-                    mergedCategoryAttributeValue.setTransientEntityValue(categoryAttributeValue.getTransientEntityValue());
-                    mergedCategoryAttributeValue.setTransientCollectionValue(categoryAttributeValue.getTransientCollectionValue());
-                    if (BooleanUtils.isTrue(categoryAttributeValue.getCategoryAttribute().getIsCollection()) && categoryAttributeValue.getChildValues() != null) {
-                        for (CategoryAttributeValue childCAV : categoryAttributeValue.getChildValues()) {
+                    CategoryAttributeValue mergedCategoryAttributeValue;
+                    if (PersistenceHelper.isNew(categoryAttributeValue)) {
+                        // merge of a new instance selects it by id, so a copy is persisted instead
+                        mergedCategoryAttributeValue = copyNewAttributeValue(categoryAttributeValue);
+                        em.persist(mergedCategoryAttributeValue);
+                    } else {
+                        mergedCategoryAttributeValue = em.merge(categoryAttributeValue);
+                        mergedCategoryAttributeValue.setCategoryAttribute(categoryAttributeValue.getCategoryAttribute());
+
+                        //copy transient fields (for nested CAVs as well)
+                        mergedCategoryAttributeValue.setTransientEntityValue(categoryAttributeValue.getTransientEntityValue());
+                        mergedCategoryAttributeValue.setTransientCollectionValue(categoryAttributeValue.getTransientCollectionValue());
+                        if (BooleanUtils.isTrue(categoryAttributeValue.getCategoryAttribute().getIsCollection())
+                                && categoryAttributeValue.getChildValues() != null
+                                && mergedCategoryAttributeValue.getChildValues() != null) {
+                            Map<UUID, CategoryAttributeValue> mergedChildValues = new HashMap<>();
                             for (CategoryAttributeValue mergedChildCAV : mergedCategoryAttributeValue.getChildValues()) {
-                                if (mergedChildCAV.getId().equals(childCAV.getId())) {
+                                mergedChildValues.put(mergedChildCAV.getId(), mergedChildCAV);
+                            }
+                            for (CategoryAttributeValue childCAV : categoryAttributeValue.getChildValues()) {
+                                CategoryAttributeValue mergedChildCAV = mergedChildValues.get(childCAV.getId());
+                                if (mergedChildCAV != null) {
                                     mergedChildCAV.setTransientEntityValue(childCAV.getTransientEntityValue());
-                                    break;
                                 }
                             }
-
                         }
                     }
 
@@ -295,6 +347,20 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
         }
     }
 
+    /**
+     * Creates a copy of a new attribute value to be persisted, so the instance passed by the caller does not become
+     * managed.
+     */
+    protected CategoryAttributeValue copyNewAttributeValue(CategoryAttributeValue categoryAttributeValue) {
+        MetadataTools tools = metadata.getTools();
+        CategoryAttributeValue copy = tools.copy(categoryAttributeValue);
+        copy.setEntity(tools.copy(categoryAttributeValue.getEntity()));
+        copy.setEntityValue(tools.copy(categoryAttributeValue.getEntityValue()));
+        copy.setTransientEntityValue(categoryAttributeValue.getTransientEntityValue());
+        copy.setTransientCollectionValue(categoryAttributeValue.getTransientCollectionValue());
+        return copy;
+    }
+
     /**
      * Removes nested {@code CategoryAttributeValue} entities for items that were removed from the collection value
      * and creates new child {@code CategoryAttributeValue} instances for just added collection value items.
@@ -352,6 +418,7 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
 
         List<Object> ids = entities.stream()
                 .map(e -> referenceToEntitySupport.getReferenceId(e))
+                .distinct()
                 .collect(Collectors.toList());
 
         Multimap<Object, CategoryAttributeValue> allAttributeValues = HashMultimap.create();
@@ -65,4 +65,9 @@ public interface DynamicAttributesManagerAPI {
      * Store dynamic attributes from the entity to database
      */
     void storeDynamicAttributes(BaseGenericIdEntity entity);
+
+    /**
+     * Store dynamic attributes of several entities to database in a single transaction
+     */
+    void storeDynamicAttributes(Collection<? extends BaseGenericIdEntity> entities);
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.contracts.Id;
 
 import javax.annotation.Nullable;
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -28,7 +29,9 @@ import java.util.stream.Collectors;
  *
  * @see EntityChangedEvent#getChanges()
  */
-public class AttributeChanges {
+public class AttributeChanges implements Serializable {
+
+    private static final long serialVersionUID = 2395146305282813014L;
 
     private Set<Change> changes;
     private Map<String, AttributeChanges> embeddedChanges;
@@ -148,7 +151,9 @@ public class AttributeChanges {
      * INTERNAL.
      * Contains name and old value of a changed attribute.
      */
-    public static class Change {
+    public static class Change implements Serializable {
+
+        private static final long serialVersionUID = -4528722637816543816L;
 
         public final String name;
         public final Object oldValue;
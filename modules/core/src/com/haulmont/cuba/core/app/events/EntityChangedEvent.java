@@ -27,6 +27,9 @@ import org.springframework.context.ApplicationEvent;
 import org.springframework.core.ResolvableType;
 import org.springframework.core.ResolvableTypeProvider;
 
+import javax.annotation.Nullable;
+import java.util.UUID;
+
 /**
  * A Spring application event of the middle tier that is sent right after an entity is changed in the data store.
  * <p>
@@ -65,6 +68,7 @@ public class EntityChangedEvent<E extends Entity<K>, K> extends ApplicationEvent
     private Id<E, K> entityId;
     private Type type;
     private AttributeChanges changes;
+    private UUID userId;
 
     /**
      * INTERNAL.
@@ -76,6 +80,15 @@ public class EntityChangedEvent<E extends Entity<K>, K> extends ApplicationEvent
         this.changes = changes;
     }
 
+    /**
+     * INTERNAL.
+     */
+    public EntityChangedEvent(Object source, Id<E, K> entityId, Type type, AttributeChanges changes,
+                              @Nullable UUID userId) {
+        this(source, entityId, type, changes);
+        this.userId = userId;
+    }
+
     /**
      * Returns the entity id.
      */
@@ -104,6 +117,16 @@ public class EntityChangedEvent<E extends Entity<K>, K> extends ApplicationEvent
         return changes;
     }
 
+    /**
+     * Returns the id of the user who changed the entity if the event is dispatched asynchronously after commit in
+     * the system session (see {@code cuba.entityChangedEventsAsync}). Returns null if the event is sent in the
+     * transaction changing the entity, as the user session of this transaction is available to the handler.
+     */
+    @Nullable
+    public UUID getUserId() {
+        return userId;
+    }
+
     /**
      * INTERNAL.
      */
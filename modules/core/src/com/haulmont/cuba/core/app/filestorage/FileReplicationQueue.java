@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable queue of file copies to secondary storage roots used by {@link FileStorage}.
+ * <p>
+ * A task is appended to the journal before it is executed and marked as done after the copy is made, so the tasks
+ * not completed before shutdown are executed again when the queue is created next time. Copies are made by a bounded
+ * number of threads; when all threads are busy and the queue is full, the thread adding a task makes the copy itself.
+ * Failed copies are repeated with exponential delay up to the maximum number of attempts, after that the task stays
+ * in the journal until restart.
+ */
+public class FileReplicationQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(FileReplicationQueue.class);
+
+    public static final String JOURNAL_FILE = "replication.journal";
+
+    protected static final String ADD = "ADD";
+    protected static final String DONE = "DONE";
+    protected static final String NULL_VALUE = "-";
+
+    protected static final long RETRY_DELAY_MS = 1000;
+    protected static final long MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    /**
+     * Copies the file of the task, throws an exception if the copy is not made.
+     */
+    public interface Replicator {
+        void replicate(Task task) throws Exception;
+    }
+
+    protected final File journalFile;
+    protected final int maxAttempts;
+    protected final Replicator replicator;
+
+    protected final ThreadPoolExecutor executor;
+    protected final ScheduledExecutorService retryExecutor;
+
+    protected final Map<Long, Task> pendingTasks = new ConcurrentHashMap<>();
+    protected final Map<Long, Task> failedTasks = new ConcurrentHashMap<>();
+    protected final AtomicLong taskIds = new AtomicLong();
+
+    protected final AtomicLong completedCount = new AtomicLong();
+    protected final AtomicLong failedAttemptsCount = new AtomicLong();
+
+    protected Writer journalWriter;
+
+    public FileReplicationQueue(File journalFile, int threads, int capacity, int maxAttempts, Replicator replicator) {
+        this.journalFile = journalFile;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.replicator = replicator;
+
+        int poolSize = Math.max(threads, 1);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(capacity, 1)),
+                new ThreadFactoryBuilder().setNameFormat("FileStorageReplication-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("FileStorageReplicationRetry-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Reads the journal and executes the tasks which have not been completed.
+     */
+    public void start() {
+        List<Task> recovered = readJournal();
+        rewriteJournal(recovered);
+        if (!recovered.isEmpty()) {
+            log.info("Resuming replication of {} files", recovered.size());
+        }
+        for (Task task : recovered) {
+            pendingTasks.put(task.getId(), task);
+            executor.execute(() -> execute(task));
+        }
+    }
+
+    /**
+     * Registers the task in the journal and schedules its execution.
+     */
+    public void add(File source, File target, @Nullable File blob, String user) {
+        Task task = new Task(taskIds.incrementAndGet(), System.currentTimeMillis(), source, target, blob, user);
+        pendingTasks.put(task.getId(), task);
+        appendJournal(formatAddEntry(task));
+        executor.execute(() -> execute(task));
+    }
+
+    protected void execute(Task task) {
+        try {
+            replicator.replicate(task);
+        } catch (Exception e) {
+            failedAttemptsCount.incrementAndGet();
+            int attempts = task.incrementAttempts();
+            if (attempts < maxAttempts) {
+                long delay = Math.min(RETRY_DELAY_MS << Math.min(attempts - 1, 20), MAX_RETRY_DELAY_MS);
+                log.warn("Error replicating {} into {}, attempt {} of {}, retrying in {} ms: {}",
+                        task.getSource(), task.getTarget(), attempts, maxAttempts, delay, e.toString());
+                try {
+                    retryExecutor.schedule(() -> executor.execute(() -> execute(task)), delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException re) {
+                    log.debug("Replication queue is stopped, {} will be replicated after restart", task.getSource());
+                }
+            } else {
+                log.error("Error replicating {} into {}, giving up after {} attempts until restart",
+                        task.getSource(), task.getTarget(), attempts, e);
+                pendingTasks.remove(task.getId());
+                failedTasks.put(task.getId(), task);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            pendingTasks.remove(task.getId());
+            if (pendingTasks.isEmpty()) {
+                // keep the journal short, only the failed tasks must survive restart
+                rewriteJournal(new ArrayList<>(failedTasks.values()));
+            } else {
+                appendJournal(DONE + "\t" + task.getId());
+            }
+        }
+        completedCount.incrementAndGet();
+    }
+
+    protected synchronized void appendJournal(String line) {
+        try {
+            if (journalWriter == null) {
+                journalWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+            }
+            journalWriter.write(line);
+            journalWriter.write('\n');
+            journalWriter.flush();
+        } catch (IOException e) {
+            log.error("Unable to write replication journal {}", journalFile, e);
+        }
+    }
+
+    protected synchronized void rewriteJournal(Collection<Task> tasks) {
+        closeJournal();
+        try {
+            FileUtils.forceMkdirParent(journalFile);
+            File tempFile = new File(journalFile.getPath() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                for (Task task : tasks) {
+                    writer.write(formatAddEntry(task));
+                    writer.write('\n');
+                }
+            }
+            Files.move(tempFile.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to write replication journal {}", journalFile, e);
+        }
+    }
+
+    protected String formatAddEntry(Task task) {
+        return ADD + "\t" + task.getId() + "\t" + task.getCreateTs() + "\t" + task.getSource() + "\t" + task.getTarget()
+                + "\t" + (task.getBlob() != null ? task.getBlob().getPath() : NULL_VALUE) + "\t" + task.getUser();
+    }
+
+    protected List<Task> readJournal() {
+        Map<Long, Task> tasks = new LinkedHashMap<>();
+        if (!journalFile.exists()) {
+            return new ArrayList<>();
+        }
+        try {
+            for (String line : FileUtils.readLines(journalFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length == 7 && ADD.equals(parts[0])) {
+                    long id = Long.parseLong(parts[1]);
+                    File blob = NULL_VALUE.equals(parts[5]) ? null : new File(parts[5]);
+                    tasks.put(id, new Task(id, Long.parseLong(parts[2]), new File(parts[3]), new File(parts[4]),
+                            blob, parts[6]));
+                } else if (parts.length == 2 && DONE.equals(parts[0])) {
+                    tasks.remove(Long.parseLong(parts[1]));
+                } else if (!line.isEmpty()) {
+                    // the last line can be incomplete if the server has been stopped while writing it
+                    log.warn("Skipping invalid line of replication journal {}: {}", journalFile, line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.error("Unable to read replication journal {}", journalFile, e);
+        }
+        tasks.keySet().stream().max(Long::compare).ifPresent(taskIds::set);
+        return new ArrayList<>(tasks.values());
+    }
+
+    protected synchronized void closeJournal() {
+        if (journalWriter != null) {
+            try {
+                journalWriter.close();
+            } catch (IOException e) {
+                log.warn("Unable to close replication journal {}", journalFile, e);
+            }
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * Stops execution of the tasks. Not completed tasks remain in the journal.
+     */
+    public void stop() {
+        retryExecutor.shutdownNow();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeJournal();
+    }
+
+    /**
+     * @return number of tasks waiting for execution or retry
+     */
+    public int getSize() {
+        return pendingTasks.size();
+    }
+
+    /**
+     * @return age in milliseconds of the oldest task waiting for execution or retry, 0 if there are no such tasks
+     */
+    public long getLag() {
+        long now = System.currentTimeMillis();
+        return pendingTasks.values().stream()
+                .mapToLong(task -> now - task.getCreateTs())
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * @return number of tasks failed after all attempts
+     */
+    public int getFailedCount() {
+        return failedTasks.size();
+    }
+
+    /**
+     * @return number of completed tasks
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return number of failed attempts
+     */
+    public long getFailedAttemptsCount() {
+        return failedAttemptsCount.get();
+    }
+
+    /**
+     * Copy of a file to a secondary storage root.
+     */
+    public static class Task {
+        protected final long id;
+        protected final long createTs;
+        protected final File source;
+        protected final File target;
+        protected final File blob;
+        protected final String user;
+        protected int attempts;
+
+        public Task(long id, long createTs, File source, File target, @Nullable File blob, String user) {
+            this.id = id;
+            this.createTs = createTs;
+            this.source = source;
+            this.target = target;
+            this.blob = blob;
+            this.user = user;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getCreateTs() {
+            return createTs;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        /**
+         * @return content-addressed blob in the secondary root if the storage is deduplicating
+         */
+        @Nullable
+        public File getBlob() {
+            return blob;
+        }
+
+        /**
+         * @return user who saved the file, for the storage log
+         */
+        public String getUser() {
+            return user;
+        }
+
+        protected synchronized int incrementAttempts() {
+            return ++attempts;
+        }
+    }
+}
@@ -21,9 +21,9 @@ import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.*;
-import com.haulmont.cuba.core.sys.AppContext;
-import com.haulmont.cuba.core.sys.SecurityContext;
 import com.haulmont.cuba.security.global.UserSession;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -31,17 +31,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 
@@ -50,6 +56,25 @@ public class FileStorage implements FileStorageAPI {
 
     private static final Logger log = LoggerFactory.getLogger(FileStorage.class);
 
+    /**
+     * Directory of content-addressed blobs in each storage root, used if the storage is deduplicating.
+     */
+    public static final String BLOBS_DIR = "blobs";
+
+    /**
+     * Suffix of the file keeping the content hash of a deduplicated file, i.e. the name of its blob.
+     */
+    public static final String HASH_SUFFIX = ".sha256";
+
+    /**
+     * Maximum size of contents hashed in memory before writing, so saving a duplicate doesn't write it to the disk.
+     */
+    protected static final int DEDUPLICATION_BUFFER_SIZE = 1024 * 1024;
+
+    protected static final String LINK_SUFFIX = ".link";
+    protected static final String COPY_SUFFIX = ".copy";
+    protected static final String UPLOAD_SUFFIX = ".upload";
+
     @Inject
     protected UserSessionSource userSessionSource;
 
@@ -61,14 +86,48 @@ public class FileStorage implements FileStorageAPI {
 
     protected boolean isImmutableFileStorage;
 
-    protected ExecutorService writeExecutor = Executors.newFixedThreadPool(5,
-            new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build());
+    protected boolean isDeduplicatingFileStorage;
+
+    protected ExecutorService logExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("FileStorageLog-%d").setDaemon(true).build());
+
+    protected volatile FileReplicationQueue replicationQueue;
 
     protected volatile File[] storageRoots;
 
+    protected final Map<File, Boolean> deduplicationSupport = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void init() {
         this.isImmutableFileStorage = configuration.getConfig(ServerConfig.class).getImmutableFileStorage();
+        this.isDeduplicatingFileStorage = configuration.getConfig(ServerConfig.class).getFileStorageDeduplication();
+
+        if (getStorageRoots().length > 1) {
+            // resume copying to secondary storages
+            getReplicationQueue();
+        }
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     */
+    public FileReplicationQueue getReplicationQueue() {
+        if (replicationQueue == null) {
+            synchronized (this) {
+                if (replicationQueue == null) {
+                    ServerConfig serverConfig = configuration.getConfig(ServerConfig.class);
+                    FileReplicationQueue queue = new FileReplicationQueue(
+                            new File(getStorageRoots()[0], FileReplicationQueue.JOURNAL_FILE),
+                            serverConfig.getFileStorageReplicationThreads(),
+                            serverConfig.getFileStorageReplicationQueueCapacity(),
+                            serverConfig.getFileStorageReplicationMaxAttempts(),
+                            this::replicate);
+                    queue.start();
+                    replicationQueue = queue;
+                }
+            }
+        }
+        return replicationQueue;
     }
 
     /**
@@ -116,16 +175,32 @@ public class FileStorage implements FileStorageAPI {
         final File file = new File(dir, getFileName(fileDescr));
         checkFileExists(file);
 
+        if (isLinkedFile(file)) {
+            // the file is a link to a blob shared with other files, so it must not be overwritten in place
+            try {
+                deleteLinkedFile(roots[0], file);
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, file.getAbsolutePath(), e);
+            }
+        }
+
         long size = 0;
+        String hash = null;
         OutputStream os = null;
         try {
-            os = FileUtils.openOutputStream(file);
-            size = IOUtils.copyLarge(inputStream, os);
-            os.flush();
+            if (isDeduplicatingFileStorage && isDeduplicationSupported(roots[0])) {
+                hash = saveDeduplicated(roots[0], file, inputStream);
+                size = file.length();
+            } else {
+                os = FileUtils.openOutputStream(file);
+                size = IOUtils.copyLarge(inputStream, os);
+                os.flush();
+            }
             writeLog(file, false);
         } catch (IOException e) {
             IOUtils.closeQuietly(os);
             FileUtils.deleteQuietly(file);
+            deleteContentHash(file);
 
             throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, file.getAbsolutePath(), e);
         } finally {
@@ -134,33 +209,391 @@ public class FileStorage implements FileStorageAPI {
 
         // Copy file to secondary storages asynchronously
 
-        final SecurityContext securityContext = AppContext.getSecurityContext();
-        for (int i = 1; i < roots.length; i++) {
-            if (!roots[i].exists()) {
-                log.error("Error saving {} into {} : directory doesn't exist", fileDescr, roots[i]);
+        if (roots.length > 1) {
+            String user = getLogUser();
+            FileReplicationQueue queue = getReplicationQueue();
+            for (int i = 1; i < roots.length; i++) {
+                File fileCopy = new File(getStorageDir(roots[i], fileDescr), getFileName(fileDescr));
+                File blobCopy = hash != null ? getBlobFile(roots[i], hash) : null;
+                queue.add(file, fileCopy, blobCopy, user);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Executes the task of {@link FileReplicationQueue}.
+     */
+    protected void replicate(FileReplicationQueue.Task task) throws IOException {
+        File file = task.getSource();
+        File fileCopy = task.getTarget();
+        if (!file.exists()) {
+            log.debug("File {} has been removed before copying to {}", file, fileCopy);
+            return;
+        }
+        File copyRoot = fileCopy.getParentFile().getParentFile().getParentFile().getParentFile();
+        if (!copyRoot.exists()) {
+            throw new IOException("Directory " + copyRoot + " doesn't exist");
+        }
+        copyFile(file, fileCopy, isDeduplicationSupported(copyRoot) ? task.getBlob() : null);
+        writeLog(fileCopy, false, task.getUser());
+    }
+
+    /**
+     * Copies the file to a secondary storage. If the secondary storage already has the blob with the same contents,
+     * the copy is linked to the blob instead of copying the contents.
+     */
+    protected void copyFile(File file, File fileCopy, @Nullable File blobCopy) throws IOException {
+        if (isLinkedFile(fileCopy)) {
+            Files.delete(fileCopy.toPath());
+            deleteContentHash(fileCopy);
+        }
+        if (blobCopy != null) {
+            FileUtils.forceMkdirParent(fileCopy);
+            try {
+                if (linkToExistingBlob(fileCopy, blobCopy)) {
+                    return;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("Unable to link {} to {}: {}", fileCopy, blobCopy, e.toString());
+            }
+        }
+        copyVerified(file, fileCopy);
+        if (blobCopy != null) {
+            deduplicate(fileCopy, blobCopy);
+        }
+    }
+
+    /**
+     * Copies the file through a temporary file which replaces the target only if its checksum matches the checksum
+     * of the source.
+     */
+    protected void copyVerified(File file, File fileCopy) throws IOException {
+        File tempFile = new File(fileCopy.getParentFile(), fileCopy.getName() + COPY_SUFFIX);
+        try {
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            try (InputStream inputStream = new DigestInputStream(FileUtils.openInputStream(file), digest);
+                 OutputStream outputStream = FileUtils.openOutputStream(tempFile)) {
+                IOUtils.copyLarge(inputStream, outputStream);
+            }
+            String checksum = Hex.encodeHexString(digest.digest());
+            if (!checksum.equals(getContentHash(tempFile))) {
+                throw new IOException("Checksum of " + fileCopy + " doesn't match checksum of " + file);
+            }
+            tempFile.setLastModified(file.lastModified());
+            Files.move(tempFile.toPath(), fileCopy.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Saves the contents as a hard link to the content-addressed blob. Contents not larger than
+     * {@link #DEDUPLICATION_BUFFER_SIZE} are hashed in memory, so a duplicate is not written to the disk at all.
+     * Larger contents are hashed while writing them to a temporary file, which becomes the blob if there is no blob
+     * with the same contents yet and is discarded otherwise.
+     *
+     * @return hash of the contents
+     */
+    protected String saveDeduplicated(File rootDir, File file, InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[DEDUPLICATION_BUFFER_SIZE];
+        int length = IOUtils.read(inputStream, buffer);
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        File tempFile = new File(file.getParentFile(), file.getName() + UPLOAD_SUFFIX);
+        try {
+            String hash;
+            if (length < buffer.length) {
+                digest.update(buffer, 0, length);
+                hash = Hex.encodeHexString(digest.digest());
+                if (linkToExistingBlob(file, getBlobFile(rootDir, hash))) {
+                    return hash;
+                }
+                try (OutputStream outputStream = FileUtils.openOutputStream(tempFile)) {
+                    outputStream.write(buffer, 0, length);
+                }
+            } else {
+                try (OutputStream outputStream = new DigestOutputStream(FileUtils.openOutputStream(tempFile), digest)) {
+                    outputStream.write(buffer);
+                    IOUtils.copyLarge(inputStream, outputStream);
+                }
+                hash = Hex.encodeHexString(digest.digest());
+            }
+            linkTempFile(tempFile, file, getBlobFile(rootDir, hash));
+            return hash;
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Replaces the file with a hard link to the blob. If there is no such blob yet, the temporary file with the
+     * contents becomes the blob.
+     */
+    protected void linkTempFile(File tempFile, File file, File blob) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (linkToExistingBlob(file, blob)) {
+                return;
+            }
+            Files.createDirectories(blob.toPath().getParent());
+            try {
+                Files.createLink(blob.toPath(), tempFile.toPath());
+            } catch (FileAlreadyExistsException e) {
+                // the blob has been created concurrently
                 continue;
             }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeContentHash(file, blob.getName());
+            return;
+        }
+        log.warn("Unable to deduplicate {}: blob {} is changed concurrently", file, blob);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-            File copyDir = getStorageDir(roots[i], fileDescr);
-            final File fileCopy = new File(copyDir, getFileName(fileDescr));
-
-            writeExecutor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        AppContext.setSecurityContext(securityContext);
-                        FileUtils.copyFile(file, fileCopy, true);
-                        writeLog(fileCopy, false);
-                    } catch (Exception e) {
-                        log.error("Error saving {} into {} : {}", fileDescr, fileCopy.getAbsolutePath(), e.getMessage());
-                    } finally {
-                        AppContext.setSecurityContext(null);
-                    }
+    /**
+     * Makes the file a hard link to the blob with the same contents, or registers the file as the blob if there is no
+     * such blob yet. If the file system doesn't support hard links, the file is left as is.
+     */
+    protected void deduplicate(File file, File blob) {
+        try {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                if (linkToExistingBlob(file, blob)) {
+                    return;
                 }
-            });
+                Files.createDirectories(blob.toPath().getParent());
+                try {
+                    Files.createLink(blob.toPath(), file.toPath());
+                    writeContentHash(file, blob.getName());
+                    return;
+                } catch (FileAlreadyExistsException e) {
+                    // the blob has been created concurrently
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Unable to deduplicate {}: {}", file, e.toString());
         }
+    }
 
-        return size;
+    /**
+     * Atomically replaces the file with a hard link to the blob.
+     *
+     * @return false if the blob doesn't exist
+     */
+    protected boolean linkToExistingBlob(File file, File blob) throws IOException {
+        Path blobPath = blob.toPath();
+        Path filePath = file.toPath();
+        if (!Files.exists(blobPath)) {
+            return false;
+        }
+        if (Files.exists(filePath) && Files.isSameFile(filePath, blobPath)) {
+            writeContentHash(file, blob.getName());
+            return true;
+        }
+        Path linkPath = filePath.resolveSibling(filePath.getFileName() + LINK_SUFFIX);
+        Files.deleteIfExists(linkPath);
+        try {
+            Files.createLink(linkPath, blobPath);
+        } catch (NoSuchFileException e) {
+            // the blob has been removed concurrently
+            return false;
+        }
+        Files.move(linkPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writeContentHash(file, blob.getName());
+        return true;
+    }
+
+    /**
+     * Returns the blob of the file if the file is its last reference. The blob is found by the content hash saved
+     * along with the file, so the file is not read.
+     */
+    @Nullable
+    protected File findLastReferencedBlob(File rootDir, File file) {
+        String hash = readContentHash(file);
+        if (hash == null || getLinkCount(file) != 2) {
+            return null;
+        }
+        try {
+            File blob = getBlobFile(rootDir, hash);
+            return blob.exists() && Files.isSameFile(blob.toPath(), file.toPath()) ? blob : null;
+        } catch (IOException e) {
+            log.warn("Unable to find blob of {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    protected void deleteLinkedFile(File rootDir, File file) throws IOException {
+        File blob = findLastReferencedBlob(rootDir, file);
+        Files.delete(file.toPath());
+        deleteContentHash(file);
+        if (blob != null) {
+            removeUnusedBlob(blob);
+        }
+    }
+
+    /**
+     * @return whether the file can be a hard link to a blob shared with other files
+     */
+    protected boolean isLinkedFile(File file) {
+        return getContentHashFile(file).exists() || getLinkCount(file) > 1;
+    }
+
+    protected File getContentHashFile(File file) {
+        return new File(file.getParentFile(), file.getName() + HASH_SUFFIX);
+    }
+
+    protected void writeContentHash(File file, String hash) throws IOException {
+        FileUtils.writeStringToFile(getContentHashFile(file), hash, StandardCharsets.US_ASCII);
+    }
+
+    @Nullable
+    protected String readContentHash(File file) {
+        File hashFile = getContentHashFile(file);
+        if (!hashFile.exists()) {
+            return null;
+        }
+        try {
+            return StringUtils.trimToNull(FileUtils.readFileToString(hashFile, StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            log.warn("Unable to read content hash of {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    protected void deleteContentHash(File file) {
+        FileUtils.deleteQuietly(getContentHashFile(file));
+    }
+
+    /**
+     * Checks that the file system of the storage root supports hard links and reports the number of links of a file,
+     * which is needed to remove unused blobs. File systems without POSIX attributes, e.g. on Windows, don't report it,
+     * so such storage roots keep files without deduplication.
+     */
+    protected boolean isDeduplicationSupported(File rootDir) {
+        if (!rootDir.exists()) {
+            return false;
+        }
+        return deduplicationSupport.computeIfAbsent(rootDir, dir -> {
+            File blobsDir = getBlobsDir(dir);
+            File probe = new File(blobsDir, "probe-" + UUID.randomUUID());
+            File probeLink = new File(blobsDir, probe.getName() + LINK_SUFFIX);
+            boolean supported;
+            try {
+                Files.createDirectories(blobsDir.toPath());
+                Files.write(probe.toPath(), new byte[0]);
+                Files.createLink(probeLink.toPath(), probe.toPath());
+                supported = getLinkCount(probe) == 2;
+            } catch (IOException | UnsupportedOperationException e) {
+                supported = false;
+            } finally {
+                FileUtils.deleteQuietly(probeLink);
+                FileUtils.deleteQuietly(probe);
+            }
+            if (!supported) {
+                log.warn("File system of {} doesn't support hard links or doesn't report the number of links, " +
+                        "files are stored without deduplication", dir);
+            }
+            return supported;
+        });
+    }
+
+    protected void removeUnusedBlob(File blob) {
+        if (getLinkCount(blob) == 1 && !blob.delete()) {
+            log.warn("Unable to delete blob {}", blob);
+        }
+    }
+
+    /**
+     * @return number of hard links to the file, or -1 if the file system doesn't provide it
+     */
+    protected int getLinkCount(File file) {
+        try {
+            return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    protected String getContentHash(File file) throws IOException {
+        try (InputStream inputStream = FileUtils.openInputStream(file)) {
+            return DigestUtils.sha256Hex(inputStream);
+        }
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     */
+    public File getBlobsDir(File rootDir) {
+        return new File(rootDir, BLOBS_DIR);
+    }
+
+    protected File getBlobFile(File rootDir, String hash) {
+        return new File(getBlobsDir(rootDir), hash.substring(0, 2) + "/" + hash);
+    }
+
+    /**
+     * INTERNAL. Replaces the files of all storage roots having identical contents with hard links to content-addressed
+     * blobs and removes the blobs which are not referenced anymore. Used to migrate an existing storage to the
+     * deduplicating mode.
+     *
+     * @return description of the result
+     */
+    public String deduplicateFiles() {
+        StringBuilder sb = new StringBuilder();
+        for (File root : getStorageRoots()) {
+            if (!root.exists()) {
+                sb.append(root).append(": directory doesn't exist\n");
+                continue;
+            }
+            if (!isDeduplicationSupported(root)) {
+                sb.append(root).append(": file system doesn't support deduplication\n");
+                continue;
+            }
+            Path blobsPath = getBlobsDir(root).toPath();
+
+            int processed = 0;
+            int linked = 0;
+            long savedBytes = 0;
+            for (File file : FileUtils.listFiles(root, null, true)) {
+                if (root.equals(file.getParentFile())
+                        || file.toPath().startsWith(blobsPath)
+                        || file.getName().endsWith(LINK_SUFFIX)
+                        || file.getName().endsWith(COPY_SUFFIX)
+                        || file.getName().endsWith(UPLOAD_SUFFIX)
+                        || file.getName().endsWith(HASH_SUFFIX)
+                        || isLinkedFile(file)) {
+                    continue;
+                }
+                processed++;
+                try {
+                    long length = file.length();
+                    File blob = getBlobFile(root, getContentHash(file));
+                    if (linkToExistingBlob(file, blob)) {
+                        linked++;
+                        savedBytes += length;
+                    } else {
+                        deduplicate(file, blob);
+                    }
+                } catch (IOException | UnsupportedOperationException e) {
+                    log.warn("Unable to deduplicate {}: {}", file, e.toString());
+                }
+            }
+
+            int removed = 0;
+            if (Files.isDirectory(blobsPath)) {
+                for (File blob : FileUtils.listFiles(blobsPath.toFile(), null, true)) {
+                    if (getLinkCount(blob) == 1 && blob.delete()) {
+                        removed++;
+                    }
+                }
+            }
+
+            sb.append(root).append(": processed ").append(processed).append(" files, linked ").append(linked)
+                    .append(" duplicates (").append(savedBytes).append(" bytes), removed ").append(removed)
+                    .append(" unused blobs\n");
+        }
+        return sb.toString();
     }
 
     protected void checkFileExists(File file) throws FileStorageException {
@@ -193,7 +626,20 @@ public class FileStorage implements FileStorageAPI {
         saveStream(fileDescr, new ByteArrayInputStream(data));
     }
 
-    protected synchronized void writeLog(File file, boolean remove) {
+    protected void writeLog(File file, boolean remove) {
+        writeLog(file, remove, getLogUser());
+    }
+
+    protected String getLogUser() {
+        UserSession userSession = userSessionSource.getUserSession();
+        return userSession.getUser().getLogin() + "--" + userSession.getUser().getId().toString();
+    }
+
+    /**
+     * Writes the record to the log of the storage root. The record is appended by a single background thread, so
+     * threads saving files don't wait for each other.
+     */
+    protected void writeLog(File file, boolean remove, String user) {
         File rootDir;
         try {
             rootDir = file.getParentFile().getParentFile().getParentFile().getParentFile();
@@ -204,21 +650,26 @@ public class FileStorage implements FileStorageAPI {
 
         SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
 
-        UserSession userSession = userSessionSource.getUserSession();
-        String userLogin = userSession.getUser().getLogin();
-        String userId = userSession.getUser().getId().toString();
-
         StringBuilder sb = new StringBuilder();
         sb.append(df.format(timeSource.currentTimestamp())).append(" ");
 
-        sb.append("[").append(userLogin).append("--").append(userId).append("] ");
+        sb.append("[").append(user).append("] ");
         sb.append(remove ? "REMOVE" : "CREATE").append(" ");
         sb.append("\"").append(file.getAbsolutePath()).append("\"\n");
 
         File logFile = new File(rootDir, "storage.log");
+        String record = sb.toString();
+        try {
+            logExecutor.execute(() -> appendLog(logFile, record));
+        } catch (RejectedExecutionException e) {
+            appendLog(logFile, record);
+        }
+    }
+
+    protected void appendLog(File logFile, String record) {
         try {
             try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
-                IOUtils.write(sb.toString(), fos, StandardCharsets.UTF_8);
+                IOUtils.write(record, fos, StandardCharsets.UTF_8);
             }
         } catch (IOException e) {
             log.error("Unable to write log", e);
@@ -239,10 +690,15 @@ public class FileStorage implements FileStorageAPI {
             File dir = getStorageDir(root, fileDescr);
             File file = new File(dir, getFileName(fileDescr));
             if (file.exists()) {
+                File blob = findLastReferencedBlob(root, file);
                 if (!file.delete()) {
                     throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, "Unable to delete file " + file.getAbsolutePath());
                 } else {
+                    deleteContentHash(file);
                     writeLog(file, true);
+                    if (blob != null) {
+                        removeUnusedBlob(blob);
+                    }
                 }
             }
         }
@@ -338,6 +794,14 @@ public class FileStorage implements FileStorageAPI {
 
     @PreDestroy
     protected void stopWriteExecutor() {
-        writeExecutor.shutdown();
+        if (replicationQueue != null) {
+            replicationQueue.stop();
+        }
+        logExecutor.shutdown();
+        try {
+            logExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
@@ -41,4 +41,42 @@ public interface AmazonS3Config extends Config {
     @Property("cuba.amazonS3.chunkSize")
     @DefaultInt(8192)
     int getChunkSize();
+
+    /**
+     * Custom service endpoint, e.g. {@code http://localhost:9000} for a local S3-compatible storage.
+     * Objects are addressed in path style: {@code <endpoint>/<bucket>/<key>}.
+     * If not set, the virtual-hosted endpoint of Amazon S3 is used.
+     */
+    @Property("cuba.amazonS3.endpointUrl")
+    String getEndpointUrl();
+
+    /**
+     * Size in bytes of the parts of multipart uploads and of the ranges of parallel downloads.
+     * Files not larger than the part size are uploaded by a single request. Amazon S3 doesn't accept parts
+     * smaller than 5 MB, so lower values are ignored for uploads.
+     */
+    @Property("cuba.amazonS3.partSize")
+    @DefaultInt(8 * 1024 * 1024)
+    int getPartSize();
+
+    /**
+     * Maximum number of parts or ranges of a single file transferred concurrently.
+     */
+    @Property("cuba.amazonS3.parallelism")
+    @DefaultInt(4)
+    int getParallelism();
+
+    /**
+     * Maximum number of threads transferring parts and ranges of all files. Parts exceeding it wait for a free thread.
+     */
+    @Property("cuba.amazonS3.transferThreads")
+    @DefaultInt(16)
+    int getTransferThreads();
+
+    /**
+     * Number of attempts to repeat a part upload or a range download after an I/O error or a server error response.
+     */
+    @Property("cuba.amazonS3.maxRetries")
+    @DefaultInt(3)
+    int getMaxRetries();
 }
\ No newline at end of file
@@ -17,45 +17,111 @@
 
 package com.haulmont.cuba.core.app.filestorage.amazon;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.app.filestorage.amazon.auth.AWS4SignerBase;
 import com.haulmont.cuba.core.app.filestorage.amazon.auth.AWS4SignerForAuthorizationHeader;
 import com.haulmont.cuba.core.app.filestorage.amazon.auth.AWS4SignerForChunkedUpload;
+import com.haulmont.cuba.core.app.filestorage.amazon.util.BinaryUtils;
 import com.haulmont.cuba.core.app.filestorage.amazon.util.HttpUtils;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.FileStorageException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 
+/**
+ * File storage keeping files in Amazon S3 or in an S3-compatible storage.
+ * <p>
+ * Files larger than {@link AmazonS3Config#getPartSize()} are uploaded by multipart upload and downloaded by ranged
+ * requests; up to {@link AmazonS3Config#getParallelism()} parts of a file are transferred concurrently by a pool of
+ * {@link AmazonS3Config#getTransferThreads()} threads shared by all transfers. Each request is repeated on
+ * I/O errors and server errors, a multipart upload that cannot be completed is aborted.
+ */
 public class AmazonS3FileStorage implements FileStorageAPI {
 
+    private static final Logger log = LoggerFactory.getLogger(AmazonS3FileStorage.class);
+
+    /**
+     * Minimal size of a part of a multipart upload accepted by Amazon S3, except the last part.
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    protected static final long RETRY_DELAY_MS = 200;
+
     @Inject
     protected AmazonS3Config amazonS3Config;
 
+    protected volatile ExecutorService transferExecutor;
+
+    protected final AtomicLong uploadedBytes = new AtomicLong();
+    protected final AtomicLong uploadedParts = new AtomicLong();
+    protected final AtomicLong abortedUploads = new AtomicLong();
+    protected final AtomicLong downloadedBytes = new AtomicLong();
+    protected final AtomicLong downloadedRanges = new AtomicLong();
+    protected final AtomicLong retriedRequests = new AtomicLong();
+
+    @PreDestroy
+    public void shutdown() {
+        if (transferExecutor != null) {
+            transferExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public long saveStream(FileDescriptor fileDescr, InputStream inputStream) throws FileStorageException {
         Preconditions.checkNotNullArgument(fileDescr.getSize());
 
-        int chunkSize = amazonS3Config.getChunkSize();
+        if (fileDescr.getSize() > getUploadPartSize()) {
+            return saveMultipart(fileDescr, inputStream);
+        }
+
         long fileSize = fileDescr.getSize();
         URL amazonUrl = getAmazonUrl(fileDescr);
+
+        // the file is not larger than a part, so it is kept in memory to repeat the request
+        byte[] data;
+        try {
+            data = IOUtils.toByteArray(inputStream, fileSize);
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e);
+        }
+
+        HttpUtils.HttpResponse httpResponse = executeWithRetries(
+                "save file " + getFileName(fileDescr), () -> putChunked(amazonUrl, data));
+        if (!httpResponse.isStatusOk()) {
+            String message = String.format("Could not save file %s. %s",
+                    getFileName(fileDescr), getInputStreamContent(httpResponse));
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+        IOUtils.closeQuietly(httpResponse.getInputStream());
+
+        uploadedBytes.addAndGet(fileSize);
+        return fileDescr.getSize();
+    }
+
+    /**
+     * Uploads the data by a single chunked PUT request. The request is signed on each call, so it can be repeated.
+     */
+    protected HttpUtils.HttpResponse putChunked(URL amazonUrl, byte[] data) {
+        int chunkSize = amazonS3Config.getChunkSize();
+        long fileSize = data.length;
         // set the markers indicating we're going to send the upload as a series
         // of chunks:
         //   -- 'x-amz-content-sha256' is the fixed marker indicating chunked
@@ -101,11 +167,10 @@ public class AmazonS3FileStorage implements FileStorageAPI {
 
             // get the request stream and start writing the user data as chunks, as outlined
             // above;
+            InputStream inputStream = new ByteArrayInputStream(data);
             int bytesRead;
             byte[] buffer = new byte[chunkSize];
             DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-            //guarantees that it will read as many bytes as possible, this may not always be the case for
-            //subclasses of InputStream
             while ((bytesRead = IOUtils.read(inputStream, buffer, 0, chunkSize)) > 0) {
                 // process into a chunk
                 byte[] chunk = signer.constructSignedChunk(bytesRead, buffer);
@@ -122,19 +187,225 @@ public class AmazonS3FileStorage implements FileStorageAPI {
             outputStream.close();
 
             // make the call to Amazon S3
-            HttpUtils.HttpResponse httpResponse = HttpUtils.executeHttpRequest(connection);
-            if (!httpResponse.isStatusOk()) {
-                String message = String.format("Could not save file %s. %s",
-                        getFileName(fileDescr), getInputStreamContent(httpResponse));
-                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
-            }
+            return HttpUtils.executeHttpRequest(connection);
         } catch (IOException e) {
             throw new RuntimeException("Error when sending chunked upload request", e);
         }
+    }
+
+    /**
+     * Uploads the stream by parts. Parts are read from the stream sequentially and sent concurrently, the number of
+     * parts kept in memory is limited by the parallelism.
+     */
+    protected long saveMultipart(FileDescriptor fileDescr, InputStream inputStream) throws FileStorageException {
+        URL amazonUrl = getAmazonUrl(fileDescr);
+        int partSize = getUploadPartSize();
+        int parallelism = getParallelism();
+        long startTime = System.currentTimeMillis();
+
+        String uploadId = initiateMultipartUpload(fileDescr, amazonUrl);
 
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<String>> parts = new ArrayList<>();
+        long size = 0;
+        try {
+            int partNumber = 1;
+            while (true) {
+                permits.acquire();
+                if (parts.stream().anyMatch(this::isFailed)) {
+                    permits.release();
+                    break;
+                }
+
+                byte[] buffer = new byte[partSize];
+                int bytesRead = IOUtils.read(inputStream, buffer, 0, partSize);
+                if (bytesRead == 0 && partNumber > 1) {
+                    permits.release();
+                    break;
+                }
+                byte[] data = bytesRead < partSize ? Arrays.copyOf(buffer, bytesRead) : buffer;
+                size += bytesRead;
+
+                int number = partNumber++;
+                parts.add(getTransferExecutor().submit(() -> {
+                    try {
+                        return uploadPart(fileDescr, amazonUrl, uploadId, number, data);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+
+                if (bytesRead < partSize) {
+                    break;
+                }
+            }
+
+            List<String> eTags = new ArrayList<>(parts.size());
+            for (Future<String> part : parts) {
+                eTags.add(part.get());
+            }
+            completeMultipartUpload(fileDescr, amazonUrl, uploadId, eTags);
+        } catch (ExecutionException e) {
+            abortMultipartUpload(fileDescr, amazonUrl, uploadId, parts);
+            if (e.getCause() instanceof FileStorageException) {
+                throw (FileStorageException) e.getCause();
+            }
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortMultipartUpload(fileDescr, amazonUrl, uploadId, parts);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e);
+        } catch (FileStorageException e) {
+            abortMultipartUpload(fileDescr, amazonUrl, uploadId, parts);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            abortMultipartUpload(fileDescr, amazonUrl, uploadId, parts);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e);
+        }
+
+        log.debug("Uploaded {} bytes of file {} in {} parts in {} ms",
+                size, getFileName(fileDescr), parts.size(), System.currentTimeMillis() - startTime);
         return fileDescr.getSize();
     }
 
+    protected boolean isFailed(Future<?> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        try {
+            future.get();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    protected String initiateMultipartUpload(FileDescriptor fileDescr, URL amazonUrl) throws FileStorageException {
+        Map<String, String> parameters = Collections.singletonMap("uploads", "");
+
+        HttpUtils.HttpResponse httpResponse = executeWithRetries(
+                "initiate upload of " + getFileName(fileDescr), () -> {
+                    Map<String, String> headers = new HashMap<>();
+                    headers.put("x-amz-storage-class", "REDUCED_REDUNDANCY");
+                    headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
+
+                    String authorization = createAuthorizationHeader(amazonUrl, "POST", headers,
+                            parameters, AWS4SignerBase.EMPTY_BODY_SHA256);
+
+                    headers.put("Authorization", authorization);
+                    return HttpUtils.invokeBinaryHttpRequest(
+                            getRequestUrl(amazonUrl, parameters), "POST", headers, new byte[0]);
+                });
+
+        String content = getInputStreamContent(httpResponse);
+        String uploadId = StringUtils.substringBetween(content, "<UploadId>", "</UploadId>");
+        if (!httpResponse.isStatusOk() || StringUtils.isEmpty(uploadId)) {
+            String message = String.format("Could not initiate upload of file %s. %s",
+                    getFileName(fileDescr), content);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+        return uploadId;
+    }
+
+    /**
+     * @return entity tag of the uploaded part
+     */
+    protected String uploadPart(FileDescriptor fileDescr, URL amazonUrl, String uploadId, int partNumber, byte[] data)
+            throws FileStorageException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("partNumber", String.valueOf(partNumber));
+        parameters.put("uploadId", uploadId);
+        String bodyHash = BinaryUtils.toHex(AWS4SignerBase.hash(data));
+
+        HttpUtils.HttpResponse httpResponse = executeWithRetries(
+                "upload part " + partNumber + " of " + getFileName(fileDescr), () -> {
+                    Map<String, String> headers = new HashMap<>();
+                    headers.put("x-amz-content-sha256", bodyHash);
+
+                    String authorization = createAuthorizationHeader(amazonUrl, "PUT", headers, parameters, bodyHash);
+
+                    headers.put("Authorization", authorization);
+                    return HttpUtils.invokeBinaryHttpRequest(
+                            getRequestUrl(amazonUrl, parameters), "PUT", headers, data);
+                });
+
+        String eTag = httpResponse.getHeader("ETag");
+        if (!httpResponse.isStatusOk() || eTag == null) {
+            String message = String.format("Could not upload part %d of file %s. %s",
+                    partNumber, getFileName(fileDescr), getInputStreamContent(httpResponse));
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+        IOUtils.closeQuietly(httpResponse.getInputStream());
+
+        uploadedParts.incrementAndGet();
+        uploadedBytes.addAndGet(data.length);
+        return eTag;
+    }
+
+    protected void completeMultipartUpload(FileDescriptor fileDescr, URL amazonUrl, String uploadId,
+                                           List<String> eTags) throws FileStorageException {
+        Map<String, String> parameters = Collections.singletonMap("uploadId", uploadId);
+
+        StringBuilder sb = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < eTags.size(); i++) {
+            sb.append("<Part><PartNumber>").append(i + 1).append("</PartNumber>")
+                    .append("<ETag>").append(eTags.get(i)).append("</ETag></Part>");
+        }
+        sb.append("</CompleteMultipartUpload>");
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String bodyHash = BinaryUtils.toHex(AWS4SignerBase.hash(body));
+
+        HttpUtils.HttpResponse httpResponse = executeWithRetries(
+                "complete upload of " + getFileName(fileDescr), () -> {
+                    Map<String, String> headers = new HashMap<>();
+                    headers.put("x-amz-content-sha256", bodyHash);
+
+                    String authorization = createAuthorizationHeader(amazonUrl, "POST", headers, parameters, bodyHash);
+
+                    headers.put("Authorization", authorization);
+                    return HttpUtils.invokeBinaryHttpRequest(
+                            getRequestUrl(amazonUrl, parameters), "POST", headers, body);
+                });
+
+        // Amazon S3 can report an error of the completion in the body of 200 response
+        String content = getInputStreamContent(httpResponse);
+        if (!httpResponse.isStatusOk() || StringUtils.contains(content, "<Error>")) {
+            String message = String.format("Could not complete upload of file %s. %s",
+                    getFileName(fileDescr), content);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+    }
+
+    /**
+     * Cancels the parts being uploaded and aborts the multipart upload, so the storage releases the uploaded parts.
+     */
+    protected void abortMultipartUpload(FileDescriptor fileDescr, URL amazonUrl, String uploadId,
+                                        List<Future<String>> parts) {
+        for (Future<String> part : parts) {
+            part.cancel(true);
+        }
+        abortedUploads.incrementAndGet();
+
+        Map<String, String> parameters = Collections.singletonMap("uploadId", uploadId);
+        try {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
+
+            String authorization = createAuthorizationHeader(amazonUrl, "DELETE", headers,
+                    parameters, AWS4SignerBase.EMPTY_BODY_SHA256);
+
+            headers.put("Authorization", authorization);
+            HttpUtils.HttpResponse httpResponse = HttpUtils.invokeHttpRequest(
+                    getRequestUrl(amazonUrl, parameters), "DELETE", headers, null);
+            if (!httpResponse.isStatusOk()) {
+                log.warn("Could not abort upload {} of file {}: {}",
+                        uploadId, getFileName(fileDescr), getInputStreamContent(httpResponse));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not abort upload {} of file {}", uploadId, getFileName(fileDescr), e);
+        }
+    }
+
     @Override
     public void saveFile(FileDescriptor fileDescr, byte[] data) throws FileStorageException {
         checkNotNullArgument(data, "File content is null");
@@ -145,14 +416,16 @@ public class AmazonS3FileStorage implements FileStorageAPI {
     public void removeFile(FileDescriptor fileDescr) throws FileStorageException {
         URL amazonUrl = getAmazonUrl(fileDescr);
 
-        // for a simple DELETE, we have no body so supply the precomputed 'empty' hash
-        Map<String, String> headers = new HashMap<>();
-        headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
+        HttpUtils.HttpResponse httpResponse = executeWithRetries("remove file " + getFileName(fileDescr), () -> {
+            // for a simple DELETE, we have no body so supply the precomputed 'empty' hash
+            Map<String, String> headers = new HashMap<>();
+            headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
 
-        String authorization = createAuthorizationHeader(amazonUrl, "DELETE", headers);
+            String authorization = createAuthorizationHeader(amazonUrl, "DELETE", headers);
 
-        headers.put("Authorization", authorization);
-        HttpUtils.HttpResponse httpResponse = HttpUtils.invokeHttpRequest(amazonUrl, "DELETE", headers, null);
+            headers.put("Authorization", authorization);
+            return HttpUtils.invokeHttpRequest(amazonUrl, "DELETE", headers, null);
+        });
         if (!httpResponse.isStatusOk()) {
             String message = String.format("Could not remove file %s. %s",
                     getFileName(fileDescr), getInputStreamContent(httpResponse));
@@ -162,16 +435,23 @@ public class AmazonS3FileStorage implements FileStorageAPI {
 
     @Override
     public InputStream openStream(FileDescriptor fileDescr) throws FileStorageException {
+        Long size = fileDescr.getSize();
+        if (size != null && size > getDownloadRangeSize() && getParallelism() > 1) {
+            return openRangedStream(fileDescr, size);
+        }
+
         URL amazonUrl = getAmazonUrl(fileDescr);
 
-        // for a simple GET, we have no body so supply the precomputed 'empty' hash
-        Map<String, String> headers = new HashMap<>();
-        headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
+        HttpUtils.HttpResponse httpResponse = executeWithRetries("get file " + getFileName(fileDescr), () -> {
+            // for a simple GET, we have no body so supply the precomputed 'empty' hash
+            Map<String, String> headers = new HashMap<>();
+            headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
 
-        String authorization = createAuthorizationHeader(amazonUrl, "GET", headers);
+            String authorization = createAuthorizationHeader(amazonUrl, "GET", headers);
 
-        headers.put("Authorization", authorization);
-        HttpUtils.HttpResponse httpResponse = HttpUtils.invokeHttpRequest(amazonUrl, "GET", headers, null);
+            headers.put("Authorization", authorization);
+            return HttpUtils.invokeHttpRequest(amazonUrl, "GET", headers, null);
+        });
 
         if (httpResponse.isStatusOk()) {
             return httpResponse.getInputStream();
@@ -185,6 +465,77 @@ public class AmazonS3FileStorage implements FileStorageAPI {
         }
     }
 
+    /**
+     * Opens the stream downloading the file by ranges concurrently. The first range is awaited, so a missing file is
+     * reported by this method rather than by reading the stream.
+     */
+    protected InputStream openRangedStream(FileDescriptor fileDescr, long size) throws FileStorageException {
+        RangedInputStream inputStream = new RangedInputStream(fileDescr, getAmazonUrl(fileDescr), size,
+                getDownloadRangeSize(), getParallelism());
+        try {
+            inputStream.awaitFirstRange();
+        } catch (FileStorageException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw e;
+        }
+        return inputStream;
+    }
+
+    /**
+     * Downloads the range of the file.
+     *
+     * @param end last byte position, inclusive, or -1 to download the rest of the file
+     */
+    protected byte[] downloadRange(FileDescriptor fileDescr, URL amazonUrl, long start, long end)
+            throws FileStorageException {
+        String range = "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end) : "");
+
+        HttpUtils.HttpResponse httpResponse = executeWithRetries(
+                "download range " + range + " of " + getFileName(fileDescr), () -> {
+                    Map<String, String> headers = new HashMap<>();
+                    headers.put("x-amz-content-sha256", AWS4SignerBase.EMPTY_BODY_SHA256);
+                    headers.put("Range", range);
+
+                    String authorization = createAuthorizationHeader(amazonUrl, "GET", headers);
+
+                    headers.put("Authorization", authorization);
+                    HttpUtils.HttpResponse response = HttpUtils.invokeHttpRequest(amazonUrl, "GET", headers, null);
+                    if (response.getStatus() != HttpURLConnection.HTTP_PARTIAL) {
+                        return response;
+                    }
+                    // read the content here, so a broken connection is retried as well
+                    try (InputStream inputStream = response.getInputStream()) {
+                        return new HttpUtils.HttpResponse(
+                                new ByteArrayInputStream(IOUtils.toByteArray(inputStream)), response.getStatus());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+        if (httpResponse.getStatus() == HttpURLConnection.HTTP_PARTIAL) {
+            byte[] data;
+            try {
+                data = IOUtils.toByteArray(httpResponse.getInputStream());
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e);
+            }
+            downloadedRanges.incrementAndGet();
+            downloadedBytes.addAndGet(data.length);
+            return data;
+        } else if (httpResponse.getStatus() == 416 && start > 0) {
+            // the file is shorter than its descriptor says
+            IOUtils.closeQuietly(httpResponse.getInputStream());
+            return new byte[0];
+        } else if (httpResponse.isStatusNotFound()) {
+            throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND,
+                    "File not found" + getFileName(fileDescr));
+        } else {
+            String message = String.format("Could not get range %s of file %s. Status %d. %s",
+                    range, getFileName(fileDescr), httpResponse.getStatus(), getInputStreamContent(httpResponse));
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+    }
+
     @Override
     public byte[] loadFile(FileDescriptor fileDescr) throws FileStorageException {
         InputStream inputStream = openStream(fileDescr);
@@ -231,6 +582,16 @@ public class AmazonS3FileStorage implements FileStorageAPI {
     }
 
     protected URL getAmazonUrl(FileDescriptor fileDescr) {
+        String endpointUrl = amazonS3Config.getEndpointUrl();
+        if (StringUtils.isNotBlank(endpointUrl)) {
+            // custom endpoint, the target object expressed in path style
+            try {
+                return new URL(String.format("%s/%s/%s", StringUtils.removeEnd(endpointUrl.trim(), "/"),
+                        amazonS3Config.getBucket(), resolveFileName(fileDescr)));
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Unable to parse service endpoint: " + e.getMessage());
+            }
+        }
         // the region-specific endpoint to the target object expressed in path style
         try {
             return new URL(String.format("https://%s.s3.amazonaws.com/%s",
@@ -248,16 +609,163 @@ public class AmazonS3FileStorage implements FileStorageAPI {
         }
     }
 
+    protected URL getRequestUrl(URL endpointUrl, Map<String, String> queryParameters) {
+        try {
+            return new URL(endpointUrl + "?" + AWS4SignerBase.getCanonicalizedQueryString(queryParameters));
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Unable to parse service endpoint: " + e.getMessage());
+        }
+    }
+
     protected String createAuthorizationHeader(URL endpointUrl, String method, Map<String, String> headers) {
+        return createAuthorizationHeader(endpointUrl, method, headers,
+                null, // no query parameters
+                AWS4SignerBase.EMPTY_BODY_SHA256);
+    }
+
+    protected String createAuthorizationHeader(URL endpointUrl, String method, Map<String, String> headers,
+                                               Map<String, String> queryParameters, String bodyHash) {
         AWS4SignerForAuthorizationHeader signer = new AWS4SignerForAuthorizationHeader(
                 endpointUrl, method, "s3", amazonS3Config.getRegionName());
         return signer.computeSignature(headers,
-                null, // no query parameters
-                AWS4SignerBase.EMPTY_BODY_SHA256,
+                queryParameters,
+                bodyHash,
                 amazonS3Config.getAccessKey(),
                 amazonS3Config.getSecretAccessKey());
     }
 
+    /**
+     * Executes the request repeating it on I/O errors and server error responses up to
+     * {@link AmazonS3Config#getMaxRetries()} times with exponential delay. The request must be signed on each call.
+     *
+     * @return the last response
+     */
+    protected HttpUtils.HttpResponse executeWithRetries(String description, Supplier<HttpUtils.HttpResponse> request)
+            throws FileStorageException {
+        int maxRetries = Math.max(amazonS3Config.getMaxRetries(), 0);
+        for (int attempt = 0; ; attempt++) {
+            HttpUtils.HttpResponse httpResponse = null;
+            RuntimeException error = null;
+            try {
+                httpResponse = request.get();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            boolean retryable = error != null || httpResponse.getStatus() < 0 || httpResponse.getStatus() >= 500;
+            if (!retryable) {
+                return httpResponse;
+            }
+            if (attempt >= maxRetries) {
+                if (error != null) {
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, description, error);
+                }
+                return httpResponse;
+            }
+
+            if (error != null) {
+                log.debug("Failed to {}, retrying: {}", description, error.toString());
+            } else {
+                log.debug("Failed to {} with status {}, retrying", description, httpResponse.getStatus());
+                IOUtils.closeQuietly(httpResponse.getInputStream());
+            }
+            retriedRequests.incrementAndGet();
+            try {
+                Thread.sleep(RETRY_DELAY_MS << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, description, e);
+            }
+        }
+    }
+
+    protected int getUploadPartSize() {
+        return Math.max(amazonS3Config.getPartSize(), MIN_PART_SIZE);
+    }
+
+    protected int getDownloadRangeSize() {
+        return Math.max(amazonS3Config.getPartSize(), 1);
+    }
+
+    protected int getParallelism() {
+        return Math.max(amazonS3Config.getParallelism(), 1);
+    }
+
+    protected ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) {
+            synchronized (this) {
+                if (transferExecutor == null) {
+                    // each transfer limits the number of its concurrent tasks by the parallelism, the pool limits
+                    // the number of threads of all transfers; tasks exceeding it wait in the queue
+                    int threads = Math.max(amazonS3Config.getTransferThreads(), 1);
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("AmazonS3Transfer-%d")
+                                    .setDaemon(true)
+                                    .build());
+                    executor.allowCoreThreadTimeOut(true);
+                    transferExecutor = executor;
+                }
+            }
+        }
+        return transferExecutor;
+    }
+
+    /**
+     * @return total number of bytes uploaded by this storage
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * @return number of parts uploaded by multipart uploads
+     */
+    public long getUploadedParts() {
+        return uploadedParts.get();
+    }
+
+    /**
+     * @return number of aborted multipart uploads
+     */
+    public long getAbortedUploads() {
+        return abortedUploads.get();
+    }
+
+    /**
+     * @return number of bytes downloaded by ranged requests
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    /**
+     * @return number of ranges downloaded by ranged requests
+     */
+    public long getDownloadedRanges() {
+        return downloadedRanges.get();
+    }
+
+    /**
+     * @return number of repeated requests
+     */
+    public long getRetriedRequests() {
+        return retriedRequests.get();
+    }
+
+    /**
+     * @return transfer statistics of this storage in a human-readable form
+     */
+    public String printStatistics() {
+        return "Uploaded bytes: " + getUploadedBytes() + "\n" +
+                "Uploaded parts: " + getUploadedParts() + "\n" +
+                "Aborted uploads: " + getAbortedUploads() + "\n" +
+                "Downloaded bytes: " + getDownloadedBytes() + "\n" +
+                "Downloaded ranges: " + getDownloadedRanges() + "\n" +
+                "Retried requests: " + getRetriedRequests() + "\n";
+    }
+
     protected String getInputStreamContent(HttpUtils.HttpResponse httpResponse) {
         try {
             return IOUtils.toString(httpResponse.getInputStream(), StandardCharsets.UTF_8);
@@ -265,4 +773,123 @@ public class AmazonS3FileStorage implements FileStorageAPI {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stream downloading the ranges of the file ahead of reading. At most {@code parallelism} ranges are downloaded
+     * or kept in memory at a time.
+     */
+    protected class RangedInputStream extends InputStream {
+
+        protected final FileDescriptor fileDescr;
+        protected final URL amazonUrl;
+        protected final long size;
+        protected final int rangeSize;
+
+        protected final Deque<Future<byte[]>> ranges = new ArrayDeque<>();
+        protected long nextRangeStart;
+        protected byte[] buffer = new byte[0];
+        protected int position;
+
+        public RangedInputStream(FileDescriptor fileDescr, URL amazonUrl, long size, int rangeSize, int parallelism) {
+            this.fileDescr = fileDescr;
+            this.amazonUrl = amazonUrl;
+            this.size = size;
+            this.rangeSize = rangeSize;
+
+            for (int i = 0; i < parallelism; i++) {
+                submitNextRange();
+            }
+        }
+
+        protected void submitNextRange() {
+            if (nextRangeStart >= size) {
+                return;
+            }
+            long start = nextRangeStart;
+            long end = start + rangeSize - 1;
+            // the last range is open, so the whole file is read even if its descriptor has a wrong size
+            long requestedEnd = end >= size - 1 ? -1 : end;
+            nextRangeStart = start + rangeSize;
+            ranges.add(getTransferExecutor().submit(() -> downloadRange(fileDescr, amazonUrl, start, requestedEnd)));
+        }
+
+        protected void awaitFirstRange() throws FileStorageException {
+            Future<byte[]> first = ranges.peek();
+            if (first == null) {
+                return;
+            }
+            try {
+                first.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FileStorageException) {
+                    throw (FileStorageException) e.getCause();
+                }
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, getFileName(fileDescr),
+                        e.getCause());
+            }
+        }
+
+        protected boolean nextBuffer() throws IOException {
+            Future<byte[]> range = ranges.poll();
+            if (range == null) {
+                return false;
+            }
+            submitNextRange();
+            try {
+                buffer = range.get();
+                position = 0;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading " + getFileName(fileDescr));
+            } catch (ExecutionException e) {
+                throw new IOException("Could not download file " + getFileName(fileDescr), e.getCause());
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (position >= buffer.length) {
+                if (!nextBuffer()) {
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position >= buffer.length) {
+                if (!nextBuffer()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+
+        @Override
+        public void close() {
+            for (Future<byte[]> range : ranges) {
+                range.cancel(true);
+            }
+            ranges.clear();
+            nextRangeStart = size;
+            buffer = new byte[0];
+            position = 0;
+        }
+    }
+}
@@ -22,8 +22,11 @@ import com.haulmont.bali.util.URLEncodeUtils;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,10 +37,16 @@ public class HttpUtils {
     public static class HttpResponse {
         protected InputStream inputStream;
         protected int status;
+        protected Map<String, List<String>> headers;
 
         public HttpResponse(InputStream inputStream, int status) {
+            this(inputStream, status, Collections.emptyMap());
+        }
+
+        public HttpResponse(InputStream inputStream, int status, Map<String, List<String>> headers) {
             this.inputStream = inputStream;
             this.status = status;
+            this.headers = headers;
         }
 
         public InputStream getInputStream() {
@@ -55,6 +64,18 @@ public class HttpUtils {
         public boolean isStatusNotFound() {
             return status == 404;
         }
+
+        /**
+         * @return first value of the response header, header names are case-insensitive
+         */
+        public String getHeader(String name) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
     }
 
 
@@ -80,6 +101,26 @@ public class HttpUtils {
         return executeHttpRequest(connection);
     }
 
+    /**
+     * Makes a http request with the binary body to the specified endpoint
+     */
+    public static HttpResponse invokeBinaryHttpRequest(URL endpointUrl,
+                                                       String httpMethod,
+                                                       Map<String, String> headers,
+                                                       byte[] requestBody) {
+        HttpURLConnection connection = createHttpConnection(endpointUrl, httpMethod, headers);
+        try {
+            connection.setFixedLengthStreamingMode(requestBody.length);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(requestBody);
+                outputStream.flush();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Request failed. " + e.getMessage(), e);
+        }
+        return executeHttpRequest(connection);
+    }
+
     public static HttpResponse executeHttpRequest(HttpURLConnection connection) {
         try {
             // Get Response
@@ -92,7 +133,8 @@ public class HttpUtils {
                 is = connection.getErrorStream();
             }
 
-            return new HttpResponse(is, status);
+            Map<String, List<String>> headers = connection.getHeaderFields();
+            return new HttpResponse(is, status, headers != null ? headers : Collections.emptyMap());
         } catch (Exception e) {
             throw new RuntimeException("Request failed. " + e.getMessage(), e);
         }
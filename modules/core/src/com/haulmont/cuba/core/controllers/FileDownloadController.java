@@ -20,11 +20,14 @@ import com.haulmont.bali.util.URLEncodeUtils;
 import com.haulmont.cuba.core.app.DataService;
 import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.FileLoader;
 import com.haulmont.cuba.core.global.FileStorageException;
 import com.haulmont.cuba.core.global.FileTypesHelper;
 import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.servlet.HttpRangeSupport;
+import com.haulmont.cuba.core.sys.servlet.HttpRangeSupport.ByteRange;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.global.UserSession;
 import org.apache.commons.io.FileUtils;
@@ -40,8 +43,10 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -60,6 +65,9 @@ public class FileDownloadController {
     @Inject
     private FileStorageAPI fileStorage;
 
+    @Inject
+    private FileLoader fileLoader;
+
     @Inject
     private DataService dataService;
 
@@ -88,9 +96,31 @@ public class FileDownloadController {
             InputStream is = null;
             ServletOutputStream os = null;
             try {
-                is = fd != null ? fileStorage.openStream(fd) : FileUtils.openInputStream(file);
+                long length = fd != null ? (fd.getSize() != null ? fd.getSize() : -1) : file.length();
+                ByteRange range = null;
+                if (length >= 0) {
+                    response.setHeader(HttpRangeSupport.ACCEPT_RANGES, HttpRangeSupport.BYTES_UNIT);
+                    range = getRequestedRange(request, response, length);
+                    if (range == null && response.isCommitted()) {
+                        return;
+                    }
+                }
+
+                long position = range != null ? range.getStart() : 0;
+                if (fd != null) {
+                    is = position > 0 ? fileLoader.openStream(fd, position) : fileStorage.openStream(fd);
+                } else {
+                    FileInputStream fileInputStream = FileUtils.openInputStream(file);
+                    fileInputStream.getChannel().position(position);
+                    is = fileInputStream;
+                }
+
                 os = response.getOutputStream();
-                IOUtils.copy(is, os);
+                if (range != null) {
+                    HttpRangeSupport.copy(is, os, range.getLength());
+                } else {
+                    HttpRangeSupport.copy(is, os);
+                }
                 os.flush();
             } catch (FileStorageException e) {
                 log.error("Unable to download file", e);
@@ -107,6 +137,35 @@ public class FileDownloadController {
         }
     }
 
+    /**
+     * Evaluates the {@code Range} header sent by the client tier. Entity tags are not checked, because files
+     * in the storage are immutable.
+     *
+     * @return range to send, or null if the whole file must be sent or the response has already been completed
+     */
+    protected ByteRange getRequestedRange(HttpServletRequest request, HttpServletResponse response, long length)
+            throws IOException {
+        String rangeHeader = request.getHeader(HttpRangeSupport.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+        List<ByteRange> ranges = HttpRangeSupport.parseRanges(rangeHeader, length);
+        if (ranges == null || ranges.size() > 1) {
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            response.setHeader(HttpRangeSupport.CONTENT_RANGE, HttpRangeSupport.BYTES_UNIT + " */" + length);
+            response.sendError(HttpRangeSupport.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return null;
+        }
+
+        ByteRange range = ranges.get(0);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpRangeSupport.CONTENT_RANGE, range.toContentRange(length));
+        response.setContentLengthLong(range.getLength());
+        return range;
+    }
+
     protected UserSession getSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
         UUID sessionId;
         try {
@@ -23,6 +23,8 @@ import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.FileStorageAPI;
+import com.haulmont.cuba.core.app.filestorage.FileReplicationQueue;
+import com.haulmont.cuba.core.app.filestorage.amazon.AmazonS3FileStorage;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.FileStorageException;
@@ -30,8 +32,10 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -118,6 +122,11 @@ public class FileStorage implements FileStorageMBean {
         Collection<File> filesInRootFolder = FileUtils.listFiles(storageFolder, null, false);
         //remove files of root storage folder (e.g. storage.log) from files collection
         systemFiles.removeAll(filesInRootFolder);
+        //remove content-addressed blobs of deduplicating storage
+        Path blobsPath = ((com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI)
+                .getBlobsDir(storageFolder).toPath();
+        systemFiles.removeIf(file -> file.toPath().startsWith(blobsPath)
+                || file.getName().endsWith(com.haulmont.cuba.core.app.filestorage.FileStorage.HASH_SUFFIX));
 
         List<FileDescriptor> fileDescriptors;
         Transaction tx = persistence.createTransaction();
@@ -150,4 +159,70 @@ public class FileStorage implements FileStorageMBean {
 
         return sb.toString();
     }
+
+    @Override
+    public int getReplicationQueueSize() {
+        FileReplicationQueue queue = getReplicationQueue();
+        return queue != null ? queue.getSize() : 0;
+    }
+
+    @Override
+    public long getReplicationLag() {
+        FileReplicationQueue queue = getReplicationQueue();
+        return queue != null ? queue.getLag() : 0;
+    }
+
+    @Override
+    public long getReplicatedFilesCount() {
+        FileReplicationQueue queue = getReplicationQueue();
+        return queue != null ? queue.getCompletedCount() : 0;
+    }
+
+    @Override
+    public long getReplicationFailedAttemptsCount() {
+        FileReplicationQueue queue = getReplicationQueue();
+        return queue != null ? queue.getFailedAttemptsCount() : 0;
+    }
+
+    @Override
+    public int getReplicationFailedFilesCount() {
+        FileReplicationQueue queue = getReplicationQueue();
+        return queue != null ? queue.getFailedCount() : 0;
+    }
+
+    @Override
+    public String printAmazonS3Statistics() {
+        FileStorageAPI fileStorageAPI = AppBeans.get(FileStorageAPI.class);
+        if (fileStorageAPI instanceof AmazonS3FileStorage) {
+            return ((AmazonS3FileStorage) fileStorageAPI).printStatistics();
+        } else {
+            return "<not supported>";
+        }
+    }
+
+    @Nullable
+    protected FileReplicationQueue getReplicationQueue() {
+        FileStorageAPI fileStorageAPI = AppBeans.get(FileStorageAPI.class);
+        if (fileStorageAPI instanceof com.haulmont.cuba.core.app.filestorage.FileStorage) {
+            com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage =
+                    (com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI;
+            if (fileStorage.getStorageRoots().length > 1) {
+                return fileStorage.getReplicationQueue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String deduplicateFiles() {
+        FileStorageAPI fileStorageAPI = AppBeans.get(FileStorageAPI.class);
+        if (!(fileStorageAPI instanceof com.haulmont.cuba.core.app.filestorage.FileStorage)) {
+            return "<not supported>";
+        }
+        try {
+            return ((com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI).deduplicateFiles();
+        } catch (Exception e) {
+            return ExceptionUtils.getStackTrace(e);
+        }
+    }
 }
\ No newline at end of file
@@ -38,4 +38,44 @@ public interface FileStorageMBean {
      * @return the list of files in the storage which have no corresponding descriptors in the database
      */
     String findOrphanFiles();
+
+    /**
+     * Replaces files having identical contents with hard links to content-addressed blobs and removes unused blobs.
+     * Run it to migrate an existing storage when switching on {@code cuba.fileStorageDeduplication}.
+     *
+     * @return the result of deduplication for each storage root
+     */
+    String deduplicateFiles();
+
+    /**
+     * @return number of files waiting for copying to secondary storages, including the ones waiting for retry
+     */
+    int getReplicationQueueSize();
+
+    /**
+     * @return age in milliseconds of the oldest file waiting for copying to secondary storages
+     */
+    long getReplicationLag();
+
+    /**
+     * @return number of files copied to secondary storages since startup
+     */
+    long getReplicatedFilesCount();
+
+    /**
+     * @return number of failed attempts to copy files to secondary storages since startup
+     */
+    long getReplicationFailedAttemptsCount();
+
+    /**
+     * @return number of files which have not been copied to secondary storages after all attempts.
+     * They will be copied again after restart.
+     */
+    int getReplicationFailedFilesCount();
+
+    /**
+     * @return transfer statistics of the Amazon S3 file storage: uploaded and downloaded bytes, parts, ranges and
+     * retried requests
+     */
+    String printAmazonS3Statistics();
 }
@@ -48,4 +48,9 @@ public class LockManager implements LockManagerMBean {
     public void reloadConfiguration() {
         lockManager.reloadConfiguration();
     }
+
+    @Override
+    public String printStatistics() {
+        return lockManager.printStatistics();
+    }
 }
\ No newline at end of file
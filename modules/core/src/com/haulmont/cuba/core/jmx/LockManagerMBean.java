@@ -27,4 +27,6 @@ public interface LockManagerMBean {
     String showLocks();
 
     void reloadConfiguration();
+
+    String printStatistics();
 }
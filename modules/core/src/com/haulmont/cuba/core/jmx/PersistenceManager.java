@@ -19,6 +19,8 @@ package com.haulmont.cuba.core.jmx;
 
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.*;
+import com.haulmont.cuba.core.app.BulkCommitStatistics;
+import com.haulmont.cuba.core.app.FtsChangeDispatcher;
 import com.haulmont.cuba.core.app.PersistenceConfig;
 import com.haulmont.cuba.core.app.PersistenceManagerAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
@@ -27,8 +29,11 @@ import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.QueryParser;
 import com.haulmont.cuba.core.global.QueryTransformerFactory;
+import com.haulmont.cuba.core.global.Stores;
 import com.haulmont.cuba.core.sys.DbInitializationException;
 import com.haulmont.cuba.core.sys.DbUpdater;
+import com.haulmont.cuba.core.sys.QueryPlanCache;
+import com.haulmont.cuba.core.sys.jdbc.ReadReplicaDataSource;
 import com.haulmont.cuba.core.sys.persistence.DbmsType;
 import com.haulmont.cuba.security.app.Authenticated;
 import org.apache.commons.lang3.StringUtils;
@@ -40,6 +45,7 @@ import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import javax.persistence.Table;
+import javax.sql.DataSource;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +72,15 @@ public class PersistenceManager implements PersistenceManagerMBean {
     @Inject
     protected PersistenceSecurity security;
 
+    @Inject
+    protected FtsChangeDispatcher ftsChangeDispatcher;
+
+    @Inject
+    protected QueryPlanCache queryPlanCache;
+
+    @Inject
+    protected BulkCommitStatistics bulkCommitStatistics;
+
     protected PersistenceConfig persistenceConfig;
 
     protected ServerConfig serverConfig;
@@ -245,6 +260,65 @@ public class PersistenceManager implements PersistenceManagerMBean {
         }
     }
 
+    @Override
+    public String printReadReplicaStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (String store : Stores.getAll()) {
+            DataSource dataSource;
+            try {
+                dataSource = persistence.getDataSource(store);
+            } catch (RuntimeException e) {
+                // not an RDBMS data store
+                continue;
+            }
+            if (!(dataSource instanceof ReadReplicaDataSource))
+                continue;
+            ReadReplicaDataSource replicaDataSource = (ReadReplicaDataSource) dataSource;
+            sb.append(Stores.isMain(store) ? "main" : store)
+                    .append(": primary connections=").append(replicaDataSource.getPrimaryConnections())
+                    .append(", replica connections=").append(replicaDataSource.getReplicaConnections())
+                    .append(", fallbacks=").append(replicaDataSource.getFallbacks())
+                    .append("\n");
+            for (ReadReplicaDataSource.Replica replica : replicaDataSource.getReplicas()) {
+                sb.append("    ").append(replica.getName())
+                        .append(": connections=").append(replica.getConnections())
+                        .append(", failures=").append(replica.getFailures())
+                        .append(", lag exclusions=").append(replica.getLagExclusions())
+                        .append(", last lag=").append(replica.getLag()).append(" ms")
+                        .append(replica.isExcluded() ? ", excluded" : "")
+                        .append("\n");
+            }
+        }
+        return sb.length() == 0 ? "No data stores with read replicas" : sb.toString();
+    }
+
+    @Override
+    public String printFtsChangeStatistics() {
+        return ftsChangeDispatcher.printStatistics();
+    }
+
+    @Override
+    public String printQueryPlanCacheStatistics() {
+        return queryPlanCache.printStatistics();
+    }
+
+    @Override
+    public String clearQueryPlanCache() {
+        queryPlanCache.reset();
+        return "Done";
+    }
+
+    @Override
+    public String printBulkCommitStatistics() {
+        return bulkCommitStatistics.toString();
+    }
+
+    @Override
+    public String resetBulkCommitStatistics() {
+        bulkCommitStatistics.reset();
+        return "Done";
+    }
+
     @Authenticated
     @Override
     public String refreshStatistics(String entityName) {
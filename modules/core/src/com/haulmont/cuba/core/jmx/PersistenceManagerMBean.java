@@ -138,4 +138,42 @@ public interface PersistenceManagerMBean {
      */
     @ManagedOperation(description = "Flush statistics cache. It will be reloaded on a next request")
     String flushStatisticsCache();
-}
+
+    /**
+     * Show connection routing statistics of data stores with read replicas.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Show connection routing statistics of data stores with read replicas")
+    String printReadReplicaStatistics();
+
+    /**
+     * Show statistics of passing entity changes to the Full Text Search queue.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Show statistics of passing entity changes to the Full Text Search queue")
+    String printFtsChangeStatistics();
+
+    /**
+     * Show statistics of the JPQL query plan cache.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Show statistics of the JPQL query plan cache")
+    String printQueryPlanCacheStatistics();
+
+    /**
+     * Clear the JPQL query plan cache and apply the current cuba.queryPlanCache.maxSize value.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Clear the JPQL query plan cache and apply the current cuba.queryPlanCache.maxSize value")
+    String clearQueryPlanCache();
+
+    /**
+     * Show statistics of commits performed in the bulk mode.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Show statistics of commits performed in the bulk mode")
+    String printBulkCommitStatistics();
+
+    @ManagedOperation(description = "Reset statistics of commits performed in the bulk mode")
+    String resetBulkCommitStatistics();
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import com.haulmont.cuba.core.sys.jdbc.SqlStatistics;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.List;
+
+@Component("cuba_SqlStatisticsMBean")
+public class SqlStatisticsSupport implements SqlStatisticsSupportMBean {
+
+    @Inject
+    protected SqlStatistics sqlStatistics;
+
+    @Override
+    public boolean getEnabled() {
+        return sqlStatistics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        sqlStatistics.setEnabled(enabled);
+    }
+
+    @Override
+    public long getSlowQueryThresholdMs() {
+        return sqlStatistics.getSlowQueryThresholdMs();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMs(long slowQueryThresholdMs) {
+        sqlStatistics.setSlowQueryThresholdMs(slowQueryThresholdMs);
+    }
+
+    @Override
+    public int getStatementCount() {
+        return sqlStatistics.getStatementCount();
+    }
+
+    @Override
+    public String printTopStatements(int count, String orderBy) {
+        List<SqlStatistics.StatementStatistics> statements;
+        try {
+            statements = sqlStatistics.getTopStatements(count > 0 ? count : 20, StringUtils.trimToNull(orderBy));
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Since ").append(DateFormatUtils.ISO_8601_EXTENDED_DATETIME_FORMAT.format(sqlStatistics.getStartTs()))
+                .append("\n\n");
+        for (SqlStatistics.StatementStatistics statement : statements) {
+            sb.append(statement.getSql()).append("\n")
+                    .append("    executions: ").append(statement.getExecutionCount())
+                    .append(", errors: ").append(statement.getErrorCount())
+                    .append(", total ms: ").append(statement.getTotalTime())
+                    .append(" (execution ").append(statement.getExecutionTime())
+                    .append(", fetch ").append(statement.getFetchTime()).append(")")
+                    .append(", avg ms: ").append(String.format("%.2f", statement.getAverageTime()))
+                    .append(", max ms: ").append(statement.getMaxTime())
+                    .append(", rows: ").append(statement.getRowCount())
+                    .append("\n");
+            statement.getParameterShapes().forEach((shape, shapeCount) ->
+                    sb.append("    parameters ").append(shape).append(": ").append(shapeCount).append("\n"));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String printSlowQueries() {
+        StringBuilder sb = new StringBuilder();
+        for (SqlStatistics.SlowQuery query : sqlStatistics.getSlowQueries()) {
+            sb.append(DateFormatUtils.ISO_8601_EXTENDED_DATETIME_FORMAT.format(query.getTs()))
+                    .append(" ").append(query.getExecutionTime() + query.getFetchTime()).append(" ms")
+                    .append(" (execution ").append(query.getExecutionTime())
+                    .append(", fetch ").append(query.getFetchTime()).append(")")
+                    .append(", rows: ").append(query.getRowCount())
+                    .append(query.isFailed() ? ", failed" : "")
+                    .append(", user: ").append(query.getUser())
+                    .append(", thread: ").append(query.getThread())
+                    .append("\n    ").append(query.getSql());
+            if (query.getParameterShape() != null) {
+                sb.append("\n    parameters ").append(query.getParameterShape());
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String reset() {
+        sqlStatistics.reset();
+        return "Done";
+    }
+}
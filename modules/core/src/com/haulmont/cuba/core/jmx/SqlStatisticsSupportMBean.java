@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import org.springframework.jmx.export.annotation.*;
+
+@ManagedResource(description = "Collects execution statistics of SQL statements")
+public interface SqlStatisticsSupportMBean {
+
+    @ManagedAttribute(description = "Whether the statistics are collected")
+    boolean getEnabled();
+
+    @ManagedAttribute(description = "Whether the statistics are collected")
+    void setEnabled(boolean enabled);
+
+    @ManagedAttribute(description = "Statements executed and fetched longer than this number of milliseconds " +
+            "are written to the slow query log")
+    long getSlowQueryThresholdMs();
+
+    @ManagedAttribute(description = "Statements executed and fetched longer than this number of milliseconds " +
+            "are written to the slow query log")
+    void setSlowQueryThresholdMs(long slowQueryThresholdMs);
+
+    @ManagedAttribute(description = "Number of distinct normalized statements")
+    int getStatementCount();
+
+    @ManagedOperation(description = "Print statements with the greatest values of the given metric")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "count", description = "Number of statements"),
+            @ManagedOperationParameter(name = "orderBy", description = "totalTime, averageTime, maxTime, " +
+                    "fetchTime, executionCount, rowCount or errorCount")
+    })
+    String printTopStatements(int count, String orderBy);
+
+    @ManagedOperation(description = "Print the latest slow queries")
+    String printSlowQueries();
+
+    @ManagedOperation(description = "Discard collected statistics")
+    String reset();
+}
@@ -17,6 +17,8 @@
 
 package com.haulmont.cuba.core.jmx;
 
+import com.haulmont.cuba.core.app.Sequences;
+import com.haulmont.cuba.core.app.SequencesImpl;
 import com.haulmont.cuba.core.app.UniqueNumbersAPI;
 
 import org.springframework.stereotype.Component;
@@ -28,6 +30,9 @@ public class UniqueNumbers implements UniqueNumbersMBean {
     @Inject
     protected UniqueNumbersAPI uniqueNumbers;
 
+    @Inject
+    protected Sequences sequences;
+
     @Override
     public long getCurrentNumber(String domain) {
         return uniqueNumbers.getCurrentNumber(domain);
@@ -42,4 +47,12 @@ public class UniqueNumbers implements UniqueNumbersMBean {
     public long getNextNumber(String domain) {
         return uniqueNumbers.getNextNumber(domain);
     }
+
+    @Override
+    public String printSequenceStatistics() {
+        if (sequences instanceof SequencesImpl) {
+            return ((SequencesImpl) sequences).printStatistics();
+        }
+        return "<not supported>";
+    }
 }
\ No newline at end of file
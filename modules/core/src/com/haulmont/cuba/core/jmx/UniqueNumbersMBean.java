@@ -16,6 +16,7 @@
  */
 package com.haulmont.cuba.core.jmx;
 
+import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedOperationParameter;
 import org.springframework.jmx.export.annotation.ManagedOperationParameters;
 
@@ -36,4 +37,12 @@ public interface UniqueNumbersMBean {
 
     @ManagedOperationParameters({@ManagedOperationParameter(name = "domain", description = "")})
     long getNextNumber(String domain);
+
+    /**
+     * Show usage statistics of the database sequences: values obtained from the database, values handed out
+     * from reserved blocks, reserved blocks and waits for a block.
+     * @return  operation result
+     */
+    @ManagedOperation(description = "Show usage statistics of the database sequences")
+    String printSequenceStatistics();
 }
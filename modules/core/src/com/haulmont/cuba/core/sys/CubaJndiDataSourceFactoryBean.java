@@ -16,19 +16,109 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.haulmont.cuba.core.global.Stores;
 import com.haulmont.cuba.core.sys.jdbc.ProxyDataSource;
+import com.haulmont.cuba.core.sys.jdbc.ReadReplicaDataSource;
+import com.haulmont.cuba.core.sys.jdbc.SqlStatistics;
+import org.apache.commons.lang3.StringUtils;
 
+import javax.annotation.Nullable;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Locates the data source by JNDI name defined in application properties and wraps it into {@link ProxyDataSource}.
+ * <p>
+ * If the {@code cuba.dataSourceReplicaJndiNames} property (with the {@code _<storeName>} suffix for additional
+ * stores) contains a comma-separated list of JNDI names, the data source is wrapped into
+ * {@link ReadReplicaDataSource} routing read-only loads to these replicas. The replication lag is checked by the
+ * {@code cuba.dataSourceReplicaLagQuery} query returning the lag in milliseconds and compared with
+ * {@code cuba.dataSourceReplicaMaxLagMs}, the check interval is set by {@code cuba.dataSourceReplicaCheckIntervalMs}.
+ * <p>
+ * The store is defined by {@link #setStoreName(String)} or by the {@code _<storeName>} suffix of the
+ * {@code cuba.dataSourceJndiName} JNDI name property. Data sources located by other properties are not wrapped unless
+ * the store name is set.
+ */
 public class CubaJndiDataSourceFactoryBean extends CubaJndiObjectFactoryBean {
+
+    protected SqlStatistics sqlStatistics;
+
+    protected String storeName;
+
+    protected static final String JNDI_NAME_PROPERTY = "cuba.dataSourceJndiName";
+
+    public void setSqlStatistics(SqlStatistics sqlStatistics) {
+        this.sqlStatistics = sqlStatistics;
+    }
+
+    /**
+     * @param storeName name of the data store which properties of replicas are used. If not set, the store name is
+     *                  taken from the {@code cuba.dataSourceJndiName_<storeName>} JNDI name property.
+     */
+    public void setStoreName(String storeName) {
+        this.storeName = storeName;
+    }
+
     @Override
     protected Object lookupWithFallback() throws NamingException {
         Object object = super.lookupWithFallback();
         if (object instanceof DataSource) {
-            return new ProxyDataSource((DataSource) object);
+            DataSource dataSource = new ProxyDataSource((DataSource) object, sqlStatistics);
+            String storeName = getStoreName();
+            if (storeName == null) {
+                return dataSource;
+            }
+            String replicaJndiNames = getStoreProperty(storeName, "cuba.dataSourceReplicaJndiNames");
+            if (StringUtils.isBlank(replicaJndiNames)) {
+                return dataSource;
+            }
+            return createReadReplicaDataSource(dataSource, storeName, replicaJndiNames);
         } else {
             return object;
         }
     }
+
+    protected DataSource createReadReplicaDataSource(DataSource primary, String storeName, String replicaJndiNames)
+            throws NamingException {
+        List<ReadReplicaDataSource.Replica> replicas = new ArrayList<>();
+        for (String jndiName : StringUtils.split(replicaJndiNames, ", ")) {
+            DataSource replicaDataSource = lookup(jndiName, DataSource.class);
+            replicas.add(new ReadReplicaDataSource.Replica(jndiName, new ProxyDataSource(replicaDataSource, sqlStatistics)));
+        }
+        ReadReplicaDataSource dataSource = new ReadReplicaDataSource(primary, replicas);
+        dataSource.setLagQuery(StringUtils.trimToNull(getStoreProperty(storeName, "cuba.dataSourceReplicaLagQuery")));
+        dataSource.setMaxLagMs(getLongStoreProperty(storeName, "cuba.dataSourceReplicaMaxLagMs", 10000));
+        dataSource.setCheckIntervalMs(getLongStoreProperty(storeName, "cuba.dataSourceReplicaCheckIntervalMs", 5000));
+        return dataSource;
+    }
+
+    /**
+     * @return the store name set explicitly or derived from the JNDI name property, null if the data source is not
+     * the data source of a store
+     */
+    @Nullable
+    protected String getStoreName() {
+        if (storeName != null) {
+            return storeName;
+        }
+        String jndiNameProperty = getJndiNameAppProperty();
+        if (JNDI_NAME_PROPERTY.equals(jndiNameProperty)) {
+            return Stores.MAIN;
+        }
+        if (jndiNameProperty != null && jndiNameProperty.startsWith(JNDI_NAME_PROPERTY + "_")) {
+            return StringUtils.trimToNull(jndiNameProperty.substring(JNDI_NAME_PROPERTY.length() + 1));
+        }
+        return null;
+    }
+
+    protected String getStoreProperty(String storeName, String name) {
+        return AppContext.getProperty(Stores.isMain(storeName) ? name : name + "_" + storeName);
+    }
+
+    protected long getLongStoreProperty(String storeName, String name, long defaultValue) {
+        String value = getStoreProperty(storeName, name);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
 }
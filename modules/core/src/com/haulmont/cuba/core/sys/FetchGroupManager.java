@@ -63,16 +63,38 @@ public class FetchGroupManager {
     public void setView(JpaQuery query, String queryString, @Nullable View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         if (view != null) {
-            AttributeGroup ag = view.loadPartialEntities() ? new FetchGroup() : new LoadGroup();
-            applyView(query, queryString, ag, view, singleResultExpected);
+            setView(query, view, calculateFetchGroup(queryString, view, singleResultExpected, view.loadPartialEntities()));
         } else {
             query.setHint(QueryHints.FETCH_GROUP, null);
         }
     }
 
+    /**
+     * Sets the view using the fetch group description calculated earlier by
+     * {@link #calculateFetchGroup(String, View, boolean, boolean)} with {@code useFetchGroup} equal to
+     * {@link View#loadPartialEntities()}.
+     */
+    public void setView(JpaQuery query, View view, FetchGroupDescription description) {
+        Preconditions.checkNotNullArgument(query, "query is null");
+        Preconditions.checkNotNullArgument(view, "view is null");
+        AttributeGroup ag = view.loadPartialEntities() ? new FetchGroup() : new LoadGroup();
+        applyView(query, ag, view, description);
+    }
+
     public void addView(JpaQuery query, String queryString, View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         Preconditions.checkNotNullArgument(view, "view is null");
+        addView(query, view, calculateFetchGroup(queryString, view, singleResultExpected, view.loadPartialEntities()));
+    }
+
+    /**
+     * Adds the view using the fetch group description calculated earlier by
+     * {@link #calculateFetchGroup(String, View, boolean, boolean)} with {@code useFetchGroup} equal to
+     * {@link View#loadPartialEntities()}.
+     */
+    public void addView(JpaQuery query, View view, FetchGroupDescription description) {
+        Preconditions.checkNotNullArgument(query, "query is null");
+        Preconditions.checkNotNullArgument(view, "view is null");
 
         Map<String, Object> hints = query.getHints();
         AttributeGroup ag = null;
@@ -88,16 +110,13 @@ public class FetchGroupManager {
                 ag = new LoadGroup();
         }
 
-        applyView(query, queryString, ag, view, singleResultExpected);
+        applyView(query, ag, view, description);
     }
 
-    private void applyView(JpaQuery query, String queryString, AttributeGroup attrGroup, View view,
-                           boolean singleResultExpected) {
+    private void applyView(JpaQuery query, AttributeGroup attrGroup, View view, FetchGroupDescription description) {
 
         boolean useFetchGroup = attrGroup instanceof FetchGroup;
 
-        FetchGroupDescription description = calculateFetchGroup(queryString, view, singleResultExpected, useFetchGroup);
-
         if (attrGroup instanceof FetchGroup)
             ((FetchGroup) attrGroup).setShouldLoadAll(true);
 
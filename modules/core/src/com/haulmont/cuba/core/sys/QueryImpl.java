@@ -78,6 +78,8 @@ public class QueryImpl<T> implements TypedQuery<T> {
     protected QueryTransformerFactory queryTransformerFactory;
     @Inject
     protected ServerConfig serverConfig;
+    @Inject
+    protected QueryPlanCache queryPlanCache;
 
     protected javax.persistence.EntityManager emDelegate;
     protected JpaQuery query;
@@ -85,6 +87,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
     protected boolean isNative;
     protected String queryString;
     protected String transformedQueryString;
+    protected List<FetchGroupDescription> fetchGroups;
     protected Class resultClass;
     protected Set<Param> params = new HashSet<>();
     protected LockModeType lockMode;
@@ -124,11 +127,13 @@ public class QueryImpl<T> implements TypedQuery<T> {
                 }
             } else {
                 log.trace("Creating JPQL query: {}", queryString);
-                transformedQueryString = transformQueryString();
+                QueryPlanCache.QueryPlan plan = getQueryPlan();
+                transformedQueryString = plan.getQueryString();
+                fetchGroups = plan.getFetchGroups();
                 log.trace("Transformed JPQL query: {}", transformedQueryString);
 
                 Class effectiveClass = getEffectiveResultClass();
-                query = buildJPAQuery(transformedQueryString, effectiveClass);
+                query = buildJPAQuery(transformedQueryString, effectiveClass, !plan.hasBatches());
                 if (view != null) {
                     MetaClass metaClass = metadata.getClassNN(view.getEntityClass());
                     if (!metadata.getTools().isCacheable(metaClass) || !singleResultExpected) {
@@ -172,10 +177,17 @@ public class QueryImpl<T> implements TypedQuery<T> {
                 query.setLockMode(lockMode);
 
             for (int i = 0; i < views.size(); i++) {
-                if (i == 0)
-                    fetchGroupMgr.setView(query, queryString, views.get(i), singleResultExpected);
-                else
-                    fetchGroupMgr.addView(query, queryString, views.get(i), singleResultExpected);
+                if (fetchGroups != null) {
+                    if (i == 0)
+                        fetchGroupMgr.setView(query, views.get(i), fetchGroups.get(i));
+                    else
+                        fetchGroupMgr.addView(query, views.get(i), fetchGroups.get(i));
+                } else {
+                    if (i == 0)
+                        fetchGroupMgr.setView(query, queryString, views.get(i), singleResultExpected);
+                    else
+                        fetchGroupMgr.addView(query, queryString, views.get(i), singleResultExpected);
+                }
             }
         }
         //noinspection unchecked
@@ -206,6 +218,15 @@ public class QueryImpl<T> implements TypedQuery<T> {
                 }
             }
         }
+        return buildJPAQuery(queryString, resultClass, useJPQLCache);
+    }
+
+    /**
+     * Creates the delegate query. EclipseLink JPQL parse cache is disabled for queries with batch fetching,
+     * because batch fetch hints are stored in the parsed query, which would be shared between different queries
+     * having the same text.
+     */
+    protected JpaQuery buildJPAQuery(String queryString, Class<T> resultClass, boolean useJPQLCache) {
         if (!useJPQLCache) {
             CubaUtil.setEnabledJPQLParseCache(false);
         }
@@ -225,8 +246,96 @@ public class QueryImpl<T> implements TypedQuery<T> {
             throw new IllegalStateException("Query delegate has already been created");
     }
 
+    /**
+     * Returns the plan of the query from {@link QueryPlanCache} or creates a new one. Macros are always expanded,
+     * because macro handlers collect their parameters during expansion.
+     */
+    protected QueryPlanCache.QueryPlan getQueryPlan() {
+        String expandedQuery = expandMacros(queryString);
+
+        String key = queryPlanCache.isEnabled() ? createQueryPlanKey(expandedQuery) : null;
+        if (key != null) {
+            QueryPlanCache.QueryPlan plan = queryPlanCache.get(key);
+            if (plan != null) {
+                log.trace("Using cached plan of JPQL query");
+                applyQueryPlanParams(plan);
+                return plan;
+            }
+        }
+
+        Set<String> removedParams = new HashSet<>();
+        String result = transformQueryString(expandedQuery, removedParams);
+
+        List<FetchGroupDescription> descriptions = new ArrayList<>(views.size());
+        for (View view : views) {
+            descriptions.add(fetchGroupMgr.calculateFetchGroup(queryString, view, singleResultExpected,
+                    view.loadPartialEntities()));
+        }
+
+        QueryPlanCache.QueryPlan plan = new QueryPlanCache.QueryPlan(result, removedParams, descriptions);
+        if (key != null) {
+            queryPlanCache.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Creates the key of the query plan: the expanded query text, views structure, paging and the shape of parameters
+     * that affects parameters rewriting.
+     */
+    protected String createQueryPlanKey(String expandedQuery) {
+        StringBuilder sb = new StringBuilder(expandedQuery.length() + 128);
+        sb.append(expandedQuery).append('\n');
+        sb.append(singleResultExpected ? 's' : 'l');
+        sb.append(firstResult != null && firstResult > 0 ? 'p' : '-');
+
+        List<Param> sortedParams = new ArrayList<>(params);
+        sortedParams.sort(Comparator.comparing(param -> param.name.toString()));
+        for (Param param : sortedParams) {
+            sb.append('|').append(param.isNamedParam() ? ":" : "?").append(param.name).append('=');
+            if (param.value instanceof String && ((String) param.value).startsWith("(?i)")) {
+                sb.append('i');
+            } else if (param.value instanceof Collection && ((Collection) param.value).isEmpty()) {
+                sb.append('e');
+            } else if (param.value == null) {
+                sb.append('n');
+            } else {
+                sb.append('v');
+            }
+        }
+
+        for (View view : views) {
+            sb.append('|');
+            QueryPlanCache.appendViewSignature(sb, view);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Applies the changes of parameters made by {@link #replaceParams(String, QueryParser, Set)} when the plan was
+     * created.
+     */
+    protected void applyQueryPlanParams(QueryPlanCache.QueryPlan plan) {
+        for (Iterator<Param> iterator = params.iterator(); iterator.hasNext(); ) {
+            Param param = iterator.next();
+            if (param.value instanceof String) {
+                String strValue = (String) param.value;
+                if (strValue.startsWith("(?i)")) {
+                    param.value = strValue.substring(4).toLowerCase();
+                }
+            }
+            if (param.isNamedParam() && plan.getRemovedParams().contains(param.name.toString())) {
+                iterator.remove();
+            }
+        }
+    }
+
     protected String transformQueryString() {
-        String result = expandMacros(queryString);
+        return transformQueryString(expandMacros(queryString), new HashSet<>());
+    }
+
+    protected String transformQueryString(String expandedQuery, Set<String> removedParams) {
+        String result = expandedQuery;
 
         boolean rebuildParser = false;
         QueryParser parser = queryTransformerFactory.parser(result);
@@ -253,7 +362,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
             }
         }
 
-        result = replaceParams(result, parser);
+        result = replaceParams(result, parser, removedParams);
 
         if (rebuildParser) {
             parser = queryTransformerFactory.parser(result);
@@ -286,6 +395,10 @@ public class QueryImpl<T> implements TypedQuery<T> {
     }
 
     protected String replaceParams(String query, QueryParser parser) {
+        return replaceParams(query, parser, new HashSet<>());
+    }
+
+    protected String replaceParams(String query, QueryParser parser, Set<String> removedParams) {
         String result = query;
         Set<String> paramNames = Sets.newHashSet(parser.getParamNames());
         for (Iterator<Param> iterator = params.iterator(); iterator.hasNext(); ) {
@@ -304,12 +417,14 @@ public class QueryImpl<T> implements TypedQuery<T> {
                     Collection collectionValue = (Collection) param.value;
                     if (collectionValue.isEmpty()) {
                         result = replaceInCollectionParam(result, paramName);
+                        removedParams.add(paramName);
                         iterator.remove();
                     }
                 }
                 if (param.value == null) {
                     if (parser.isParameterInCondition(paramName)) {
                         result = replaceInCollectionParam(result, paramName);
+                        removedParams.add(paramName);
                         iterator.remove();
                     }
                 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cache of JPQL query plans used by {@link QueryImpl}.
+ * <p>
+ * A plan contains the result of JPQL transformations (extended entity names, paging, parameters rewriting) and
+ * fetch group descriptions of the query views. Plans depend only on the query text after macro expansion, views
+ * structure, paging and the shape of parameters, so they are shared between all queries having the same key.
+ */
+@Component(QueryPlanCache.NAME)
+public class QueryPlanCache {
+
+    public static final String NAME = "cuba_QueryPlanCache";
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected volatile Cache<String, QueryPlan> plans;
+
+    @PostConstruct
+    protected void init() {
+        plans = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(serverConfig.getQueryPlanCacheMaxSize(), 0))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Recreates the cache, e.g. after the {@code cuba.queryPlanCache.maxSize} property change. Statistics are reset.
+     */
+    public void reset() {
+        init();
+    }
+
+    @Nullable
+    public QueryPlan get(String key) {
+        return plans.getIfPresent(key);
+    }
+
+    public void put(String key, QueryPlan plan) {
+        plans.put(key, plan);
+    }
+
+    public boolean isEnabled() {
+        return serverConfig.getQueryPlanCacheMaxSize() > 0;
+    }
+
+    public long size() {
+        return plans.size();
+    }
+
+    public double getHitRate() {
+        return plans.stats().hitRate();
+    }
+
+    public long getHitCount() {
+        return plans.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return plans.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return plans.stats().evictionCount();
+    }
+
+    public void invalidateAll() {
+        plans.invalidateAll();
+    }
+
+    public String printStatistics() {
+        CacheStats stats = plans.stats();
+        return String.format("enabled=%s, size=%d, hits=%d, misses=%d, hit rate=%.2f, evictions=%d",
+                isEnabled(), plans.size(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount());
+    }
+
+    /**
+     * Appends a string that identifies the view structure: entity class, partial loading flag and properties with
+     * fetch modes and nested views. Views are compared by structure because they are usually copied before passing
+     * to the query, and views with the same name can have different content.
+     */
+    public static void appendViewSignature(StringBuilder sb, @Nullable View view) {
+        if (view == null) {
+            sb.append("-");
+            return;
+        }
+        sb.append(view.getEntityClass().getName())
+                .append(view.loadPartialEntities() ? "[" : "{");
+        for (ViewProperty property : view.getProperties()) {
+            sb.append(property.getName()).append(':').append(property.getFetchMode().ordinal());
+            if (property.getView() != null) {
+                appendViewSignature(sb, property.getView());
+            }
+            sb.append(',');
+        }
+        sb.append(view.loadPartialEntities() ? "]" : "}");
+    }
+
+    /**
+     * Immutable result of the query transformation.
+     */
+    public static class QueryPlan {
+
+        protected final String queryString;
+        protected final Set<String> removedParams;
+        protected final List<FetchGroupDescription> fetchGroups;
+        protected final boolean batches;
+
+        public QueryPlan(String queryString, Set<String> removedParams, List<FetchGroupDescription> fetchGroups) {
+            this.queryString = queryString;
+            this.removedParams = Collections.unmodifiableSet(removedParams);
+            this.fetchGroups = Collections.unmodifiableList(fetchGroups);
+            this.batches = fetchGroups.stream().anyMatch(FetchGroupDescription::hasBatches);
+        }
+
+        /**
+         * @return transformed JPQL
+         */
+        public String getQueryString() {
+            return queryString;
+        }
+
+        /**
+         * @return names of the parameters which have been replaced in the query text and must not be set
+         */
+        public Set<String> getRemovedParams() {
+            return removedParams;
+        }
+
+        /**
+         * @return fetch group descriptions in the order of the query views
+         */
+        public List<FetchGroupDescription> getFetchGroups() {
+            return fetchGroups;
+        }
+
+        /**
+         * @return true if some of the fetch groups use batch fetching
+         */
+        public boolean hasBatches() {
+            return batches;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.haulmont.cuba.core.sys;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.haulmont.chile.core.model.MetaClass;
@@ -33,10 +35,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.*;
 
 import static com.haulmont.cuba.core.entity.BaseEntityInternalAccess.*;
@@ -63,44 +71,50 @@ public class SecurityTokenManager {
     protected static final Set SYSTEM_ATTRIBUTE_KEYS = Sets.newHashSet(READ_ONLY_ATTRIBUTES_KEY,
             REQUIRED_ATTRIBUTES_KEY, HIDDEN_ATTRIBUTES_KEY, ENTITY_NAME_KEY, ENTITY_ID_KEY);
 
+    /**
+     * First byte of a token in the binary format. Tokens in the JSON format start with '{'.
+     */
+    protected static final byte BINARY_FORMAT_VERSION = 1;
+
+    protected static final byte ID_NONE = 0;
+    protected static final byte ID_UUID = 1;
+    protected static final byte ID_LONG = 2;
+    protected static final byte ID_INTEGER = 3;
+    protected static final byte ID_STRING = 4;
+
+    protected static final int GCM_IV_LENGTH = 12;
+    protected static final int GCM_TAG_LENGTH_BITS = 128;
+
+    protected final ThreadLocal<CipherHolder> encryptCiphers = new ThreadLocal<>();
+    protected final ThreadLocal<CipherHolder> decryptCiphers = new ThreadLocal<>();
+    protected final ThreadLocal<Cipher> authenticatedCiphers = new ThreadLocal<>();
+    protected volatile SecretKeyHolder secretKey;
+    protected final SecureRandom secureRandom = new SecureRandom();
+
+    protected final Interner<String> attributeNames = Interners.newWeakInterner();
+
     /**
      * Encrypt filtered data and write the result to the security token
      */
     public void writeSecurityToken(Entity entity) {
         SecurityState securityState = getOrCreateSecurityState(entity);
         if (securityState != null) {
-            JSONObject jsonObject = new JSONObject();
             Multimap<String, Object> filtered = getFilteredData(securityState);
             if (filtered != null) {
-                Set<Map.Entry<String, Collection<Object>>> entries = filtered.asMap().entrySet();
-                String[] filteredAttributes = new String[entries.size()];
-                int i = 0;
-                for (Map.Entry<String, Collection<Object>> entry : entries) {
-                    jsonObject.put(entry.getKey(), entry.getValue());
-                    filteredAttributes[i++] = entry.getKey();
-                }
-                setFilteredAttributes(securityState, filteredAttributes);
+                setFilteredAttributes(securityState, filtered.keySet().toArray(new String[0]));
             }
-            if (!securityState.getReadonlyAttributes().isEmpty()) {
-                jsonObject.put(READ_ONLY_ATTRIBUTES_KEY, securityState.getReadonlyAttributes());
-            }
-            if (!securityState.getHiddenAttributes().isEmpty()) {
-                jsonObject.put(HIDDEN_ATTRIBUTES_KEY, securityState.getHiddenAttributes());
-            }
-            if (!securityState.getRequiredAttributes().isEmpty()) {
-                jsonObject.put(REQUIRED_ATTRIBUTES_KEY, securityState.getRequiredAttributes());
+
+            byte[] token = null;
+            if (config.getBinarySecurityToken()) {
+                token = createBinaryToken(entity, securityState);
             }
-            MetaClass metaClass = entity.getMetaClass();
-            jsonObject.put(ENTITY_NAME_KEY, metaClass.getName());
-            if (!metadata.getTools().hasCompositePrimaryKey(metaClass)) {
-                jsonObject.put(ENTITY_ID_KEY, getEntityId(entity));
+            if (token == null) {
+                token = createJsonToken(entity, securityState).getBytes(StandardCharsets.UTF_8);
             }
 
-            String json = jsonObject.toString();
             byte[] encrypted;
-            Cipher cipher = getCipher(Cipher.ENCRYPT_MODE);
             try {
-                encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+                encrypted = encrypt(token, entity.getMetaClass().getName());
             } catch (Exception e) {
                 throw new RuntimeException("An error occurred while generating security token", e);
             }
@@ -108,6 +122,105 @@ public class SecurityTokenManager {
         }
     }
 
+    protected String createJsonToken(Entity entity, SecurityState securityState) {
+        JSONObject jsonObject = new JSONObject();
+        Multimap<String, Object> filtered = getFilteredData(securityState);
+        if (filtered != null) {
+            for (Map.Entry<String, Collection<Object>> entry : filtered.asMap().entrySet()) {
+                jsonObject.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!securityState.getReadonlyAttributes().isEmpty()) {
+            jsonObject.put(READ_ONLY_ATTRIBUTES_KEY, securityState.getReadonlyAttributes());
+        }
+        if (!securityState.getHiddenAttributes().isEmpty()) {
+            jsonObject.put(HIDDEN_ATTRIBUTES_KEY, securityState.getHiddenAttributes());
+        }
+        if (!securityState.getRequiredAttributes().isEmpty()) {
+            jsonObject.put(REQUIRED_ATTRIBUTES_KEY, securityState.getRequiredAttributes());
+        }
+        MetaClass metaClass = entity.getMetaClass();
+        jsonObject.put(ENTITY_NAME_KEY, metaClass.getName());
+        if (!metadata.getTools().hasCompositePrimaryKey(metaClass)) {
+            jsonObject.put(ENTITY_ID_KEY, getEntityId(entity));
+        }
+        return jsonObject.toString();
+    }
+
+    /**
+     * Writes the token in the binary format: format version, entity name, entity id, filtered attributes with ids
+     * and arrays of read-only, hidden and required attributes.
+     *
+     * @return token or null if the token contains ids of types not supported by the binary format
+     */
+    @Nullable
+    protected byte[] createBinaryToken(Entity entity, SecurityState securityState) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(BINARY_FORMAT_VERSION);
+
+            MetaClass metaClass = entity.getMetaClass();
+            out.writeUTF(metaClass.getName());
+            if (metadata.getTools().hasCompositePrimaryKey(metaClass)) {
+                out.writeByte(ID_NONE);
+            } else if (!writeId(out, getEntityId(entity))) {
+                return null;
+            }
+
+            Multimap<String, Object> filtered = getFilteredData(securityState);
+            Map<String, Collection<Object>> filteredMap = filtered != null ? filtered.asMap() : Collections.emptyMap();
+            out.writeShort(filteredMap.size());
+            for (Map.Entry<String, Collection<Object>> entry : filteredMap.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Object id : entry.getValue()) {
+                    if (!writeId(out, id)) {
+                        return null;
+                    }
+                }
+            }
+
+            writeStrings(out, securityState.getReadonlyAttributes());
+            writeStrings(out, securityState.getHiddenAttributes());
+            writeStrings(out, securityState.getRequiredAttributes());
+        } catch (IOException e) {
+            throw new RuntimeException("An error occurred while generating security token", e);
+        }
+        return bos.toByteArray();
+    }
+
+    protected boolean writeId(DataOutput out, @Nullable Object id) throws IOException {
+        if (id instanceof IdProxy) {
+            id = ((IdProxy) id).get();
+        }
+        if (id == null) {
+            out.writeByte(ID_NONE);
+        } else if (id instanceof UUID) {
+            out.writeByte(ID_UUID);
+            out.writeLong(((UUID) id).getMostSignificantBits());
+            out.writeLong(((UUID) id).getLeastSignificantBits());
+        } else if (id instanceof Long) {
+            out.writeByte(ID_LONG);
+            out.writeLong((Long) id);
+        } else if (id instanceof Integer) {
+            out.writeByte(ID_INTEGER);
+            out.writeInt((Integer) id);
+        } else if (id instanceof String) {
+            out.writeByte(ID_STRING);
+            out.writeUTF((String) id);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    protected void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+        out.writeShort(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
     /**
      * Decrypt security token and read filtered data
      */
@@ -118,74 +231,232 @@ public class SecurityTokenManager {
         }
         Multimap<String, Object> filteredData = ArrayListMultimap.create();
         BaseEntityInternalAccess.setFilteredData(securityState, filteredData);
-        Cipher cipher = getCipher(Cipher.DECRYPT_MODE);
         try {
-            byte[] decrypted = cipher.doFinal(getSecurityToken(securityState));
-            String json = new String(decrypted, StandardCharsets.UTF_8);
-            JSONObject jsonObject = new JSONObject(json);
-            for (Object key : jsonObject.keySet()) {
-                if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
-                    String elementName = String.valueOf(key);
-                    JSONArray jsonArray = jsonObject.getJSONArray(elementName);
-                    MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        Object id = jsonArray.get(i);
-                        filteredData.put(elementName, convertId(id, metaProperty.getRange().asClass(), true));
-                    }
+            byte[] decrypted = decrypt(getSecurityToken(securityState), entity.getMetaClass().getName());
+            if (decrypted.length > 0 && decrypted[0] == BINARY_FORMAT_VERSION) {
+                readBinaryToken(entity, securityState, filteredData, decrypted);
+            } else {
+                readJsonToken(entity, securityState, filteredData, new String(decrypted, StandardCharsets.UTF_8));
+            }
+        } catch (SecurityTokenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("An error occurred while reading security token", e);
+        }
+    }
+
+    protected void readJsonToken(Entity entity, SecurityState securityState, Multimap<String, Object> filteredData,
+                                 String json) {
+        JSONObject jsonObject = new JSONObject(json);
+        for (Object key : jsonObject.keySet()) {
+            if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
+                String elementName = String.valueOf(key);
+                JSONArray jsonArray = jsonObject.getJSONArray(elementName);
+                MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    Object id = jsonArray.get(i);
+                    filteredData.put(elementName, convertId(id, metaProperty.getRange().asClass(), true));
                 }
             }
-            if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+        }
+        MetaClass metaClass = entity.getMetaClass();
+        if (!metadata.getTools().hasCompositePrimaryKey(entity.getMetaClass())
+                && !(entity instanceof EmbeddableEntity)) {
+            if (!jsonObject.has(ENTITY_ID_KEY) || !jsonObject.has(ENTITY_NAME_KEY)) {
+                throw new SecurityTokenException("Invalid format for security token");
             }
-            if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
+            String entityName = jsonObject.getString(ENTITY_NAME_KEY);
+            if (!Objects.equals(entityName, metaClass.getName())) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
             }
-            if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+            Object jsonEntityId = jsonObject.get(ENTITY_ID_KEY);
+            if (jsonEntityId == null) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
             }
-            MetaClass metaClass = entity.getMetaClass();
-            if (!metadata.getTools().hasCompositePrimaryKey(entity.getMetaClass())
-                    && !(entity instanceof EmbeddableEntity)) {
-                if (!jsonObject.has(ENTITY_ID_KEY) || !jsonObject.has(ENTITY_NAME_KEY)) {
-                    throw new SecurityTokenException("Invalid format for security token");
-                }
-                String entityName = jsonObject.getString(ENTITY_NAME_KEY);
-                if (!Objects.equals(entityName, metaClass.getName())) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
-                }
-                Object jsonEntityId = jsonObject.get(ENTITY_ID_KEY);
-                if (jsonEntityId == null) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
-                }
-                Object entityId = getEntityId(entity);
-                if (entityId != null && !Objects.equals(entityId, convertId(jsonEntityId, metaClass, false))) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
-                }
+            Object entityId = getEntityId(entity);
+            if (entityId != null && !Objects.equals(entityId, convertId(jsonEntityId, metaClass, false))) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
             }
-        } catch (SecurityTokenException e) {
+        }
+    }
+
+    protected void readBinaryToken(Entity entity, SecurityState securityState, Multimap<String, Object> filteredData,
+                                   byte[] token) throws IOException {
+        MetaClass metaClass = entity.getMetaClass();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(token));
+        in.readByte();
+
+        String entityName = in.readUTF();
+        Object tokenEntityId = readId(in);
+
+        int filteredCount = in.readUnsignedShort();
+        for (int i = 0; i < filteredCount; i++) {
+            // use the property name held by metadata instead of a new string
+            String elementName = metaClass.getPropertyNN(in.readUTF()).getName();
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                filteredData.put(elementName, readId(in));
+            }
+        }
+
+        String[] readonlyAttributes = readStrings(in);
+        if (readonlyAttributes != null) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, readonlyAttributes);
+        }
+        String[] hiddenAttributes = readStrings(in);
+        if (hiddenAttributes != null) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, hiddenAttributes);
+        }
+        String[] requiredAttributes = readStrings(in);
+        if (requiredAttributes != null) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, requiredAttributes);
+        }
+
+        if (!metadata.getTools().hasCompositePrimaryKey(metaClass) && !(entity instanceof EmbeddableEntity)) {
+            if (!Objects.equals(entityName, metaClass.getName())) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
+            }
+            if (tokenEntityId == null) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
+            }
+            Object entityId = getEntityId(entity);
+            if (entityId != null && !Objects.equals(entityId, tokenEntityId)) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
+            }
+        }
+    }
+
+    @Nullable
+    protected Object readId(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ID_NONE:
+                return null;
+            case ID_UUID:
+                return new UUID(in.readLong(), in.readLong());
+            case ID_LONG:
+                return in.readLong();
+            case ID_INTEGER:
+                return in.readInt();
+            case ID_STRING:
+                return in.readUTF();
+            default:
+                throw new SecurityTokenException("Invalid format for security token: unknown id type " + type);
+        }
+    }
+
+    @Nullable
+    protected String[] readStrings(DataInput in) throws IOException {
+        int count = in.readUnsignedShort();
+        if (count == 0) {
+            return null;
+        }
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = attributeNames.intern(in.readUTF());
+        }
+        return result;
+    }
+
+    protected byte[] encrypt(byte[] data, String entityName) throws GeneralSecurityException {
+        if (config.getAuthenticatedSecurityToken()) {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            Cipher cipher = getAuthenticatedCipher(Cipher.ENCRYPT_MODE, iv, entityName);
+            byte[] result = new byte[GCM_IV_LENGTH + cipher.getOutputSize(data.length)];
+            System.arraycopy(iv, 0, result, 0, GCM_IV_LENGTH);
+            cipher.doFinal(data, 0, data.length, result, GCM_IV_LENGTH);
+            return result;
+        }
+        return doFinal(Cipher.ENCRYPT_MODE, data);
+    }
+
+    protected byte[] decrypt(byte[] token, String entityName) throws GeneralSecurityException {
+        if (config.getAuthenticatedSecurityToken()) {
+            if (token.length <= GCM_IV_LENGTH) {
+                throw new SecurityTokenException("Invalid format for security token");
+            }
+            byte[] iv = Arrays.copyOf(token, GCM_IV_LENGTH);
+            Cipher cipher = getAuthenticatedCipher(Cipher.DECRYPT_MODE, iv, entityName);
+            try {
+                return cipher.doFinal(token, GCM_IV_LENGTH, token.length - GCM_IV_LENGTH);
+            } catch (AEADBadTagException e) {
+                throw new SecurityTokenException("Invalid security token: authentication failed");
+            }
+        }
+        return doFinal(Cipher.DECRYPT_MODE, token);
+    }
+
+    protected byte[] doFinal(int mode, byte[] data) throws GeneralSecurityException {
+        Cipher cipher = getCipher(mode);
+        try {
+            return cipher.doFinal(data);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            // do not reuse the cipher which may be left in an inconsistent state
+            (mode == Cipher.ENCRYPT_MODE ? encryptCiphers : decryptCiphers).remove();
             throw e;
-        } catch (Exception e) {
-            throw new RuntimeException("An error occurred while reading security token", e);
         }
     }
 
+    /**
+     * @return AES cipher in the given mode reused by the current thread
+     */
     protected Cipher getCipher(int mode) {
-        try {
-            Cipher cipher = Cipher.getInstance("AES");
-            byte[] encryptionKey = rightPad(substring(config.getKeyForSecurityTokenEncryption(), 0, 16), 16)
-                    .getBytes(StandardCharsets.UTF_8);
+        SecretKeySpec secretKey = getSecretKey();
+        ThreadLocal<CipherHolder> ciphers = mode == Cipher.ENCRYPT_MODE ? encryptCiphers : decryptCiphers;
+        CipherHolder holder = ciphers.get();
+        if (holder == null || holder.secretKey != secretKey) {
+            try {
+                Cipher cipher = Cipher.getInstance("AES");
+                cipher.init(mode, secretKey);
+                holder = new CipherHolder(cipher, secretKey);
+            } catch (Exception e) {
+                throw new RuntimeException("An error occurred while initiating encryption/decryption", e);
+            }
+            ciphers.set(holder);
+        }
+        return holder.cipher;
+    }
 
-            SecretKeySpec sKeySpec = new SecretKeySpec(encryptionKey, "AES");
-            cipher.init(mode, sKeySpec);
+    protected Cipher getAuthenticatedCipher(int mode, byte[] iv, String entityName) {
+        try {
+            Cipher cipher = authenticatedCiphers.get();
+            if (cipher == null) {
+                cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                authenticatedCiphers.set(cipher);
+            }
+            cipher.init(mode, getSecretKey(), new GCMParameterSpec(GCM_TAG_LENGTH_BITS, iv));
+            // bind the token to the entity type
+            cipher.updateAAD(entityName.getBytes(StandardCharsets.UTF_8));
             return cipher;
         } catch (Exception e) {
             throw new RuntimeException("An error occurred while initiating encryption/decryption", e);
         }
     }
 
+    protected SecretKeySpec getSecretKey() {
+        String key = config.getKeyForSecurityTokenEncryption();
+        SecretKeyHolder holder = secretKey;
+        if (holder == null || !holder.key.equals(key)) {
+            byte[] encryptionKey = rightPad(substring(key, 0, 16), 16).getBytes(StandardCharsets.UTF_8);
+            holder = new SecretKeyHolder(key, new SecretKeySpec(encryptionKey, "AES"));
+            secretKey = holder;
+        }
+        return holder.secretKeySpec;
+    }
+
     protected String[] parseJsonArrayAsStrings(JSONArray array) {
         List<String> result = new ArrayList<>();
         for (int i = 0; i < array.length(); i++) {
@@ -261,4 +532,24 @@ public class SecurityTokenManager {
                     "=================================================================");
         }
     }
-}
\ No newline at end of file
+
+    protected static class CipherHolder {
+        protected final Cipher cipher;
+        protected final SecretKeySpec secretKey;
+
+        protected CipherHolder(Cipher cipher, SecretKeySpec secretKey) {
+            this.cipher = cipher;
+            this.secretKey = secretKey;
+        }
+    }
+
+    protected static class SecretKeyHolder {
+        protected final String key;
+        protected final SecretKeySpec secretKeySpec;
+
+        protected SecretKeyHolder(String key, SecretKeySpec secretKeySpec) {
+            this.key = key;
+            this.secretKeySpec = secretKeySpec;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.core.sys.jdbc;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -30,6 +31,11 @@ public class ProxyCallableStatement extends ProxyPreparedStatement<CallableState
         super(statement, connection);
     }
 
+    public ProxyCallableStatement(CallableStatement statement, Connection connection,
+                                  @Nullable SqlStatistics statistics, String sql) {
+        super(statement, connection, statistics, sql);
+    }
+
     @Override
     public void registerOutParameter(int parameterIndex, int sqlType) throws SQLException {
         statement.registerOutParameter(parameterIndex, sqlType);
@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.core.sys.jdbc;
 
+import javax.annotation.Nullable;
 import java.sql.*;
 import java.util.Map;
 import java.util.Properties;
@@ -23,24 +24,30 @@ import java.util.concurrent.Executor;
 
 public class ProxyConnection implements Connection {
     protected Connection connection;
+    protected SqlStatistics statistics;
 
     public ProxyConnection(Connection connection) {
         this.connection = connection;
     }
 
+    public ProxyConnection(Connection connection, @Nullable SqlStatistics statistics) {
+        this.connection = connection;
+        this.statistics = statistics;
+    }
+
     @Override
     public Statement createStatement() throws SQLException {
-        return new ProxyStatement<>(connection.createStatement(), this);
+        return new ProxyStatement<>(connection.createStatement(), this, statistics);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql), this, statistics, sql);
     }
 
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
-        return new ProxyCallableStatement(connection.prepareCall(sql), this);
+        return new ProxyCallableStatement(connection.prepareCall(sql), this, statistics, sql);
     }
 
     @Override
@@ -125,17 +132,19 @@ public class ProxyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-        return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency), this);
+        return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency), this, statistics);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency),
+                this, statistics, sql);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency), this);
+        return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency),
+                this, statistics, sql);
     }
 
     @Override
@@ -180,32 +189,35 @@ public class ProxyConnection implements Connection {
 
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
+        return new ProxyStatement<>(connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability),
+                this, statistics);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability),
+                this, statistics, sql);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
+        return new ProxyCallableStatement(connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability),
+                this, statistics, sql);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, autoGeneratedKeys), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, autoGeneratedKeys), this, statistics, sql);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnIndexes), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnIndexes), this, statistics, sql);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnNames), this);
+        return new ProxyPreparedStatement<>(connection.prepareStatement(sql, columnNames), this, statistics, sql);
     }
 
     @Override
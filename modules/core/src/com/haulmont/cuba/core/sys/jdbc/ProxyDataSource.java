@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.core.sys.jdbc;
 
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.io.PrintWriter;
 import java.sql.Connection;
@@ -25,19 +26,25 @@ import java.util.logging.Logger;
 
 public class ProxyDataSource implements DataSource {
     protected DataSource dataSource;
+    protected SqlStatistics statistics;
 
     public ProxyDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    public ProxyDataSource(DataSource dataSource, @Nullable SqlStatistics statistics) {
+        this.dataSource = dataSource;
+        this.statistics = statistics;
+    }
+
     @Override
     public Connection getConnection() throws SQLException {
-        return new ProxyConnection(dataSource.getConnection());
+        return new ProxyConnection(dataSource.getConnection(), statistics);
     }
 
     @Override
     public Connection getConnection(String username, String password) throws SQLException {
-        return new ProxyConnection(dataSource.getConnection(username, password));
+        return new ProxyConnection(dataSource.getConnection(username, password), statistics);
     }
 
     @Override
@@ -16,131 +16,208 @@
 
 package com.haulmont.cuba.core.sys.jdbc;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Calendar;
 
 public class ProxyPreparedStatement<T extends PreparedStatement> extends ProxyStatement<T> implements PreparedStatement {
 
+    protected String sql;
+
+    /**
+     * Types of bind parameters by index, collected only if {@link SqlStatistics} is enabled.
+     */
+    protected String[] parameterTypes;
+
     public ProxyPreparedStatement(T statement, Connection connection) {
         super(statement, connection);
     }
 
+    public ProxyPreparedStatement(T statement, Connection connection, @Nullable SqlStatistics statistics, String sql) {
+        super(statement, connection, statistics);
+        this.sql = sql;
+    }
+
     @Override
     public ResultSet executeQuery() throws SQLException {
-        return executeSqlStatement(() -> statement.executeQuery());
+        return executeSqlStatement(sql, () -> statement.executeQuery());
     }
 
     @Override
     public int executeUpdate() throws SQLException {
-        return executeSqlStatement(() -> statement.executeUpdate());
+        return executeSqlStatement(sql, () -> statement.executeUpdate());
     }
 
     @Override
     public boolean execute() throws SQLException {
-        return executeSqlStatement(() -> statement.execute());
+        return executeSqlStatement(sql, () -> statement.execute());
+    }
+
+    @Override
+    protected String getBatchSql() {
+        return sql;
+    }
+
+    protected void bindParameter(int parameterIndex, String type) {
+        if (statistics == null || !statistics.isEnabled() || parameterIndex < 1) {
+            return;
+        }
+        if (parameterTypes == null) {
+            parameterTypes = new String[Math.max(parameterIndex, 8)];
+        } else if (parameterTypes.length < parameterIndex) {
+            parameterTypes = Arrays.copyOf(parameterTypes, Math.max(parameterIndex, parameterTypes.length * 2));
+        }
+        parameterTypes[parameterIndex - 1] = type;
+    }
+
+    protected void bindObjectParameter(int parameterIndex, @Nullable Object value) {
+        if (statistics != null && statistics.isEnabled()) {
+            bindParameter(parameterIndex, value == null ? "Null" : value.getClass().getSimpleName());
+        }
+    }
+
+    @Nullable
+    @Override
+    protected String getParameterShape() {
+        if (parameterTypes == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("(");
+        int count = parameterTypes.length;
+        while (count > 0 && parameterTypes[count - 1] == null) {
+            count--;
+        }
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(parameterTypes[i] != null ? parameterTypes[i] : "?");
+        }
+        return sb.append(")").toString();
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        bindParameter(parameterIndex, "Null");
         statement.setNull(parameterIndex, sqlType);
     }
 
     @Override
     public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        bindParameter(parameterIndex, "Boolean");
         statement.setBoolean(parameterIndex, x);
     }
 
     @Override
     public void setByte(int parameterIndex, byte x) throws SQLException {
+        bindParameter(parameterIndex, "Byte");
         statement.setByte(parameterIndex, x);
     }
 
     @Override
     public void setShort(int parameterIndex, short x) throws SQLException {
+        bindParameter(parameterIndex, "Short");
         statement.setShort(parameterIndex, x);
     }
 
     @Override
     public void setInt(int parameterIndex, int x) throws SQLException {
+        bindParameter(parameterIndex, "Int");
         statement.setInt(parameterIndex, x);
     }
 
     @Override
     public void setLong(int parameterIndex, long x) throws SQLException {
+        bindParameter(parameterIndex, "Long");
         statement.setLong(parameterIndex, x);
     }
 
     @Override
     public void setFloat(int parameterIndex, float x) throws SQLException {
+        bindParameter(parameterIndex, "Float");
         statement.setFloat(parameterIndex, x);
     }
 
     @Override
     public void setDouble(int parameterIndex, double x) throws SQLException {
+        bindParameter(parameterIndex, "Double");
         statement.setDouble(parameterIndex, x);
     }
 
     @Override
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        bindParameter(parameterIndex, "BigDecimal");
         statement.setBigDecimal(parameterIndex, x);
     }
 
     @Override
     public void setString(int parameterIndex, String x) throws SQLException {
+        bindParameter(parameterIndex, "String");
         statement.setString(parameterIndex, x);
     }
 
     @Override
     public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        bindParameter(parameterIndex, "Bytes");
         statement.setBytes(parameterIndex, x);
     }
 
     @Override
     public void setDate(int parameterIndex, Date x) throws SQLException {
+        bindParameter(parameterIndex, "Date");
         statement.setDate(parameterIndex, x);
     }
 
     @Override
     public void setTime(int parameterIndex, Time x) throws SQLException {
+        bindParameter(parameterIndex, "Time");
         statement.setTime(parameterIndex, x);
     }
 
     @Override
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        bindParameter(parameterIndex, "Timestamp");
         statement.setTimestamp(parameterIndex, x);
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bindParameter(parameterIndex, "AsciiStream");
         statement.setAsciiStream(parameterIndex, x, length);
     }
 
     @Override
     public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bindParameter(parameterIndex, "UnicodeStream");
         statement.setUnicodeStream(parameterIndex, x, length);
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        bindParameter(parameterIndex, "BinaryStream");
         statement.setBinaryStream(parameterIndex, x, length);
     }
 
     @Override
     public void clearParameters() throws SQLException {
+        parameterTypes = null;
         statement.clearParameters();
     }
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        bindObjectParameter(parameterIndex, x);
         statement.setObject(parameterIndex, x, targetSqlType);
     }
 
     @Override
     public void setObject(int parameterIndex, Object x) throws SQLException {
+        bindObjectParameter(parameterIndex, x);
         statement.setObject(parameterIndex, x);
     }
 
@@ -151,26 +228,31 @@ public class ProxyPreparedStatement<T extends PreparedStatement> extends ProxySt
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        bindParameter(parameterIndex, "CharacterStream");
         statement.setCharacterStream(parameterIndex, reader, length);
     }
 
     @Override
     public void setRef(int parameterIndex, Ref x) throws SQLException {
+        bindParameter(parameterIndex, "Ref");
         statement.setRef(parameterIndex, x);
     }
 
     @Override
     public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        bindParameter(parameterIndex, "Blob");
         statement.setBlob(parameterIndex, x);
     }
 
     @Override
     public void setClob(int parameterIndex, Clob x) throws SQLException {
+        bindParameter(parameterIndex, "Clob");
         statement.setClob(parameterIndex, x);
     }
 
     @Override
     public void setArray(int parameterIndex, Array x) throws SQLException {
+        bindParameter(parameterIndex, "Array");
         statement.setArray(parameterIndex, x);
     }
 
@@ -181,26 +263,31 @@ public class ProxyPreparedStatement<T extends PreparedStatement> extends ProxySt
 
     @Override
     public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        bindParameter(parameterIndex, "Date");
         statement.setDate(parameterIndex, x, cal);
     }
 
     @Override
     public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        bindParameter(parameterIndex, "Time");
         statement.setTime(parameterIndex, x, cal);
     }
 
     @Override
     public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        bindParameter(parameterIndex, "Timestamp");
         statement.setTimestamp(parameterIndex, x, cal);
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        bindParameter(parameterIndex, "Null");
         statement.setNull(parameterIndex, sqlType, typeName);
     }
 
     @Override
     public void setURL(int parameterIndex, URL x) throws SQLException {
+        bindParameter(parameterIndex, "URL");
         statement.setURL(parameterIndex, x);
     }
 
@@ -211,96 +298,115 @@ public class ProxyPreparedStatement<T extends PreparedStatement> extends ProxySt
 
     @Override
     public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        bindParameter(parameterIndex, "RowId");
         statement.setRowId(parameterIndex, x);
     }
 
     @Override
     public void setNString(int parameterIndex, String value) throws SQLException {
+        bindParameter(parameterIndex, "NString");
         statement.setNString(parameterIndex, value);
     }
 
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        bindParameter(parameterIndex, "NCharacterStream");
         statement.setNCharacterStream(parameterIndex, value, length);
     }
 
     @Override
     public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        bindParameter(parameterIndex, "NClob");
         statement.setNClob(parameterIndex, value);
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        bindParameter(parameterIndex, "Clob");
         statement.setClob(parameterIndex, reader, length);
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        bindParameter(parameterIndex, "Blob");
         statement.setBlob(parameterIndex, inputStream, length);
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        bindParameter(parameterIndex, "NClob");
         statement.setNClob(parameterIndex, reader, length);
     }
 
     @Override
     public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        bindParameter(parameterIndex, "SQLXML");
         statement.setSQLXML(parameterIndex, xmlObject);
     }
 
     @Override
     public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        bindObjectParameter(parameterIndex, x);
         statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        bindParameter(parameterIndex, "AsciiStream");
         statement.setAsciiStream(parameterIndex, x, length);
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        bindParameter(parameterIndex, "BinaryStream");
         statement.setBinaryStream(parameterIndex, x, length);
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        bindParameter(parameterIndex, "CharacterStream");
         statement.setCharacterStream(parameterIndex, reader, length);
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        bindParameter(parameterIndex, "AsciiStream");
         statement.setAsciiStream(parameterIndex, x);
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        bindParameter(parameterIndex, "BinaryStream");
         statement.setBinaryStream(parameterIndex, x);
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        bindParameter(parameterIndex, "CharacterStream");
         statement.setCharacterStream(parameterIndex, reader);
     }
 
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        bindParameter(parameterIndex, "NCharacterStream");
         statement.setNCharacterStream(parameterIndex, value);
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        bindParameter(parameterIndex, "Clob");
         statement.setClob(parameterIndex, reader);
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        bindParameter(parameterIndex, "Blob");
         statement.setBlob(parameterIndex, inputStream);
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        bindParameter(parameterIndex, "NClob");
         statement.setNClob(parameterIndex, reader);
     }
 }
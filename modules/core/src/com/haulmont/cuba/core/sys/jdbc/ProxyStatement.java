@@ -20,29 +20,48 @@ import com.haulmont.cuba.core.app.execution.ExecutionContextHolder;
 import com.haulmont.cuba.core.app.execution.ExecutionContextImpl;
 import com.haulmont.cuba.core.app.execution.ResourceCanceledException;
 
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 
 public class ProxyStatement<T extends Statement> implements Statement {
     protected T statement;
     protected Connection connection;
+    protected SqlStatistics statistics;
+
+    /**
+     * Execution whose result set is not closed yet.
+     */
+    protected SqlStatistics.Execution currentExecution;
+    protected String batchSql;
 
     public ProxyStatement(T statement, Connection connection) {
         this.statement = statement;
         this.connection = connection;
     }
 
+    public ProxyStatement(T statement, Connection connection, @Nullable SqlStatistics statistics) {
+        this.statement = statement;
+        this.connection = connection;
+        this.statistics = statistics;
+    }
+
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
-        return executeSqlStatement(() -> statement.executeQuery(sql));
+        return executeSqlStatement(sql, () -> statement.executeQuery(sql));
     }
 
     @Override
     public int executeUpdate(String sql) throws SQLException {
-        return executeSqlStatement(() -> statement.executeUpdate(sql));
+        return executeSqlStatement(sql, () -> statement.executeUpdate(sql));
     }
 
     @Override
     public void close() throws SQLException {
+        finishExecution();
         statement.close();
     }
 
@@ -103,12 +122,16 @@ public class ProxyStatement<T extends Statement> implements Statement {
 
     @Override
     public boolean execute(String sql) throws SQLException {
-        return executeSqlStatement(() -> statement.execute(sql));
+        return executeSqlStatement(sql, () -> statement.execute(sql));
     }
 
     @Override
     public ResultSet getResultSet() throws SQLException {
-        return statement.getResultSet();
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null && currentExecution != null && !currentExecution.isFinished()) {
+            return wrapResultSet(resultSet, currentExecution);
+        }
+        return resultSet;
     }
 
     @Override
@@ -153,17 +176,25 @@ public class ProxyStatement<T extends Statement> implements Statement {
 
     @Override
     public void addBatch(String sql) throws SQLException {
+        if (batchSql == null) {
+            batchSql = sql;
+        }
         statement.addBatch(sql);
     }
 
     @Override
     public void clearBatch() throws SQLException {
+        batchSql = null;
         statement.clearBatch();
     }
 
     @Override
     public int[] executeBatch() throws SQLException {
-        return executeSqlStatement(() -> statement.executeBatch());
+        try {
+            return executeSqlStatement(getBatchSql(), () -> statement.executeBatch());
+        } finally {
+            batchSql = null;
+        }
     }
 
     @Override
@@ -183,32 +214,32 @@ public class ProxyStatement<T extends Statement> implements Statement {
 
     @Override
     public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
-        return executeSqlStatement(() -> statement.executeUpdate(sql, autoGeneratedKeys));
+        return executeSqlStatement(sql, () -> statement.executeUpdate(sql, autoGeneratedKeys));
     }
 
     @Override
     public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
-        return executeSqlStatement(() -> statement.executeUpdate(sql, columnIndexes));
+        return executeSqlStatement(sql, () -> statement.executeUpdate(sql, columnIndexes));
     }
 
     @Override
     public int executeUpdate(String sql, String[] columnNames) throws SQLException {
-        return executeSqlStatement(() -> statement.executeUpdate(sql, columnNames));
+        return executeSqlStatement(sql, () -> statement.executeUpdate(sql, columnNames));
     }
 
     @Override
     public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
-        return executeSqlStatement(() -> statement.execute(sql, autoGeneratedKeys));
+        return executeSqlStatement(sql, () -> statement.execute(sql, autoGeneratedKeys));
     }
 
     @Override
     public boolean execute(String sql, int[] columnIndexes) throws SQLException {
-        return executeSqlStatement(() -> statement.execute(sql, columnIndexes));
+        return executeSqlStatement(sql, () -> statement.execute(sql, columnIndexes));
     }
 
     @Override
     public boolean execute(String sql, String[] columnNames) throws SQLException {
-        return executeSqlStatement(() -> statement.execute(sql, columnNames));
+        return executeSqlStatement(sql, () -> statement.execute(sql, columnNames));
     }
 
     @Override
@@ -252,6 +283,83 @@ public class ProxyStatement<T extends Statement> implements Statement {
     }
 
     protected <V> V executeSqlStatement(SQLCallable<V> callable) throws SQLException {
+        return executeSqlStatement(null, callable);
+    }
+
+    protected <V> V executeSqlStatement(@Nullable String sql, SQLCallable<V> callable) throws SQLException {
+        finishExecution();
+        SqlStatistics.Execution execution = statistics != null ? statistics.start(sql, getParameterShape()) : null;
+        if (execution == null) {
+            return executeCancelable(callable);
+        }
+
+        V result;
+        try {
+            result = executeCancelable(callable);
+        } catch (SQLException | RuntimeException e) {
+            execution.failed();
+            throw e;
+        }
+        execution.executed();
+        return trackResult(result, execution);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <V> V trackResult(V result, SqlStatistics.Execution execution) {
+        if (result instanceof ResultSet) {
+            currentExecution = execution;
+            return (V) wrapResultSet((ResultSet) result, execution);
+        }
+        if (result instanceof Integer) {
+            execution.addRows((Integer) result);
+        } else if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                execution.addRows(count);
+            }
+        } else if (Boolean.TRUE.equals(result)) {
+            // the result set is obtained by getResultSet()
+            currentExecution = execution;
+            return result;
+        } else if (Boolean.FALSE.equals(result)) {
+            try {
+                execution.addRows(statement.getUpdateCount());
+            } catch (SQLException e) {
+                // row count is not available
+            }
+        }
+        execution.finish();
+        return result;
+    }
+
+    protected ResultSet wrapResultSet(ResultSet resultSet, SqlStatistics.Execution execution) {
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ResultSet.class},
+                new ResultSetHandler(resultSet, execution));
+    }
+
+    protected void finishExecution() {
+        if (currentExecution != null) {
+            currentExecution.finish();
+            currentExecution = null;
+        }
+    }
+
+    /**
+     * @return SQL of the batch to be executed by {@link #executeBatch()}
+     */
+    @Nullable
+    protected String getBatchSql() {
+        return batchSql;
+    }
+
+    /**
+     * @return types of bind parameters of the statement to be executed
+     */
+    @Nullable
+    protected String getParameterShape() {
+        return null;
+    }
+
+    protected <V> V executeCancelable(SQLCallable<V> callable) throws SQLException {
         ExecutionContextImpl currentWork = (ExecutionContextImpl) ExecutionContextHolder.getCurrentContext();
         if (currentWork == null) {
             return callable.call();
@@ -275,4 +383,42 @@ public class ProxyStatement<T extends Statement> implements Statement {
     protected interface SQLCallable<V> {
         V call() throws SQLException;
     }
+
+    /**
+     * Measures time spent in {@code next()} and counts fetched rows of a result set.
+     */
+    protected class ResultSetHandler implements InvocationHandler {
+
+        protected final ResultSet resultSet;
+        protected final SqlStatistics.Execution execution;
+
+        protected ResultSetHandler(ResultSet resultSet, SqlStatistics.Execution execution) {
+            this.resultSet = resultSet;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getStatement".equals(name) && method.getParameterCount() == 0) {
+                return ProxyStatement.this;
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(resultSet, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            if ("next".equals(name)) {
+                execution.addFetchTime(System.nanoTime() - start);
+                if (Boolean.TRUE.equals(result)) {
+                    execution.addRows(1);
+                }
+            } else if ("close".equals(name) && method.getParameterCount() == 0) {
+                execution.finish();
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Data source which returns connections of replicas inside transactions marked by {@link ReadReplicaRouting} and
+ * connections of the primary data source otherwise.
+ * <p>
+ * Replicas are used in turn. If a replica cannot return a connection or its replication lag exceeds the maximum,
+ * it is excluded for the check interval and the connection is taken from the next replica or from the primary
+ * data source.
+ */
+public class ReadReplicaDataSource implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadReplicaDataSource.class);
+
+    protected final DataSource primary;
+    protected final List<Replica> replicas;
+
+    protected String lagQuery;
+    protected long maxLagMs;
+    protected long checkIntervalMs = 5000;
+
+    protected final AtomicInteger nextReplica = new AtomicInteger();
+
+    protected final LongAdder primaryConnections = new LongAdder();
+    protected final LongAdder replicaConnections = new LongAdder();
+    protected final LongAdder fallbacks = new LongAdder();
+
+    public ReadReplicaDataSource(DataSource primary, List<Replica> replicas) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+    }
+
+    /**
+     * @param lagQuery SQL query returning the replication lag of a replica in milliseconds. If null, the lag is not
+     *                 checked.
+     */
+    public void setLagQuery(@Nullable String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+
+    /**
+     * @param maxLagMs maximum replication lag allowed for a replica to be used
+     */
+    public void setMaxLagMs(long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+    }
+
+    /**
+     * @param checkIntervalMs interval of checking the replication lag and of excluding a failed replica
+     */
+    public void setCheckIntervalMs(long checkIntervalMs) {
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * @return number of connections returned by the primary data source
+     */
+    public long getPrimaryConnections() {
+        return primaryConnections.sum();
+    }
+
+    /**
+     * @return number of connections returned by replicas
+     */
+    public long getReplicaConnections() {
+        return replicaConnections.sum();
+    }
+
+    /**
+     * @return number of connections returned by the primary data source because no replica was available
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (ReadReplicaRouting.isActive() && !replicas.isEmpty()) {
+            Connection connection = getReplicaConnection();
+            if (connection != null) {
+                replicaConnections.increment();
+                return connection;
+            }
+            fallbacks.increment();
+        }
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryConnections.increment();
+        return primary.getConnection(username, password);
+    }
+
+    @Nullable
+    protected Connection getReplicaConnection() {
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.isAvailable(now))
+                continue;
+
+            Connection connection = null;
+            try {
+                connection = replica.dataSource.getConnection();
+                if (lagQuery != null && replica.startCheck(now, checkIntervalMs)) {
+                    long lag = queryLag(connection);
+                    replica.lag = lag;
+                    if (lag > maxLagMs) {
+                        log.warn("Replication lag of replica {} is {} ms, exceeding the maximum of {} ms",
+                                replica.name, lag, maxLagMs);
+                        replica.exclude(now + checkIntervalMs);
+                        replica.lagExclusions.increment();
+                        closeQuietly(connection);
+                        continue;
+                    }
+                }
+                replica.connections.increment();
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Unable to get connection from replica {}, it is excluded for {} ms: {}",
+                        replica.name, checkIntervalMs, e.toString());
+                replica.exclude(now + checkIntervalMs);
+                replica.failures.increment();
+                closeQuietly(connection);
+            }
+        }
+        return null;
+    }
+
+    protected long queryLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            if (!resultSet.next())
+                return 0;
+            long lag = resultSet.getLong(1);
+            return resultSet.wasNull() ? 0 : lag;
+        }
+    }
+
+    protected void closeQuietly(@Nullable Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Error closing replica connection", e);
+            }
+        }
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    /**
+     * Replica data source and its routing state.
+     */
+    public static class Replica {
+
+        protected final String name;
+        protected final DataSource dataSource;
+
+        protected volatile long excludedUntil;
+        protected volatile long lag;
+        protected final AtomicLong checkedTs = new AtomicLong();
+
+        protected final LongAdder connections = new LongAdder();
+        protected final LongAdder failures = new LongAdder();
+        protected final LongAdder lagExclusions = new LongAdder();
+
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        protected boolean isAvailable(long now) {
+            return now >= excludedUntil;
+        }
+
+        protected void exclude(long until) {
+            excludedUntil = until;
+            // check the lag as soon as the replica is used again
+            checkedTs.set(0);
+        }
+
+        /**
+         * @return true if the calling thread should check the lag now, false if it has been checked recently or is
+         * being checked by another thread
+         */
+        protected boolean startCheck(long now, long checkIntervalMs) {
+            long checked = checkedTs.get();
+            return now - checked >= checkIntervalMs && checkedTs.compareAndSet(checked, now);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public boolean isExcluded() {
+            return !isAvailable(System.currentTimeMillis());
+        }
+
+        /**
+         * @return replication lag in milliseconds measured by the last check
+         */
+        public long getLag() {
+            return lag;
+        }
+
+        public long getConnections() {
+            return connections.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getLagExclusions() {
+            return lagExclusions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Replica{" + name + "}";
+        }
+    }
+}
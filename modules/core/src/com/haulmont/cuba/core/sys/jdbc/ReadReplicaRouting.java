@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jdbc;
+
+import com.haulmont.cuba.core.Transaction;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Marks read-only transactions whose connections can be obtained by {@link ReadReplicaDataSource} from replicas.
+ * <p>
+ * The mark is bound to the current thread from the beginning of the transaction until its completion and is suspended
+ * together with the transaction, so nested transactions created inside get connections from the primary data source.
+ */
+public final class ReadReplicaRouting {
+
+    private static final ThreadLocal<Boolean> active = new ThreadLocal<>();
+
+    private ReadReplicaRouting() {
+    }
+
+    /**
+     * @return true if a connection obtained in the current thread can be taken from a replica
+     */
+    public static boolean isActive() {
+        return active.get() != null;
+    }
+
+    /**
+     * Creates a read-only transaction which can use replicas.
+     *
+     * @param transactionSupplier creates the transaction, must start a new read-only transaction
+     * @return the transaction created by the supplier
+     */
+    public static Transaction createTransaction(Supplier<Transaction> transactionSupplier) {
+        setActive(true);
+        Transaction transaction;
+        try {
+            transaction = transactionSupplier.get();
+        } catch (RuntimeException | Error e) {
+            setActive(false);
+            throw e;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new RoutingSynchronization());
+        } else {
+            setActive(false);
+        }
+        return transaction;
+    }
+
+    static void setActive(boolean value) {
+        if (value) {
+            active.set(Boolean.TRUE);
+        } else {
+            active.remove();
+        }
+    }
+
+    private static class RoutingSynchronization extends TransactionSynchronizationAdapter {
+
+        @Override
+        public void suspend() {
+            setActive(false);
+        }
+
+        @Override
+        public void resume() {
+            setActive(true);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            setActive(false);
+        }
+    }
+}
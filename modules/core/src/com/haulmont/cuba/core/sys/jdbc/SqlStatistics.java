@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jdbc;
+
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Collects execution statistics of JDBC statements executed through {@link ProxyDataSource}.
+ * <p>
+ * Statements are aggregated by normalized SQL: literals are replaced by {@code ?} and lists of parameters are
+ * collapsed, so the same query with different values is counted once. For each statement the number of executions
+ * and errors, execution time (until the driver returns), fetch time (spent in {@code ResultSet.next()}), number of
+ * fetched or updated rows and the shapes of bind parameters are kept. Executions longer than the threshold are
+ * written to the {@code com.haulmont.cuba.SLOW_SQL} logger and kept in the slow query log.
+ * <p>
+ * Only normalized SQL is logged and kept, so literal values which may contain personal data are not exposed.
+ * <p>
+ * Disabled by default, see {@link ServerConfig#getSqlStatisticsEnabled()}.
+ */
+@Component(SqlStatistics.NAME)
+public class SqlStatistics {
+
+    public static final String NAME = "cuba_SqlStatistics";
+
+    private static final Logger slowSqlLog = LoggerFactory.getLogger("com.haulmont.cuba.SLOW_SQL");
+
+    protected static final int MAX_SQL_LENGTH = 4000;
+    protected static final int MAX_PARAMETER_SHAPES = 10;
+    /**
+     * Part of the statements discarded at once when the limit is reached.
+     */
+    protected static final double EVICTION_RATIO = 0.1;
+
+    protected static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    protected static final Pattern NUMBER = Pattern.compile("(?<![\\w$.])\\d+(\\.\\d+)?\\b");
+    protected static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected volatile boolean enabled;
+    protected volatile long slowQueryThresholdMs;
+
+    protected final Map<String, StatementStatistics> statements = new ConcurrentHashMap<>();
+    protected final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    protected final Object evictionLock = new Object();
+
+    protected volatile long startTs = System.currentTimeMillis();
+
+    @PostConstruct
+    protected void init() {
+        enabled = serverConfig.getSqlStatisticsEnabled();
+        slowQueryThresholdMs = serverConfig.getSqlStatisticsSlowQueryThresholdMs();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowQueryThresholdMs() {
+        return slowQueryThresholdMs;
+    }
+
+    public void setSlowQueryThresholdMs(long slowQueryThresholdMs) {
+        this.slowQueryThresholdMs = slowQueryThresholdMs;
+    }
+
+    /**
+     * Starts measuring execution of a statement.
+     *
+     * @return execution to be finished by the caller, or null if the statistics are disabled
+     */
+    @Nullable
+    public Execution start(@Nullable String sql, @Nullable String parameterShape) {
+        if (!enabled || sql == null) {
+            return null;
+        }
+        return new Execution(sql, parameterShape);
+    }
+
+    protected void record(Execution execution) {
+        String normalizedSql = normalize(execution.sql);
+        StatementStatistics statistics = statements.get(normalizedSql);
+        if (statistics == null) {
+            evictIfNeeded();
+            statistics = statements.computeIfAbsent(normalizedSql, StatementStatistics::new);
+        }
+        statistics.add(execution);
+
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(execution.executionNanos + execution.fetchNanos);
+        if (totalMs >= slowQueryThresholdMs) {
+            SlowQuery slowQuery = new SlowQuery(execution, normalizedSql, getCurrentUser());
+            slowSqlLog.warn("Slow SQL ({} ms, execution {} ms, fetch {} ms, {} rows, user {}): {} {}",
+                    totalMs, slowQuery.getExecutionTime(), slowQuery.getFetchTime(), slowQuery.getRowCount(),
+                    slowQuery.getUser(), slowQuery.getSql(), StringUtils.defaultString(slowQuery.getParameterShape()));
+            int logSize = serverConfig.getSqlStatisticsSlowQueryLogSize();
+            synchronized (slowQueries) {
+                slowQueries.addFirst(slowQuery);
+                while (slowQueries.size() > logSize) {
+                    slowQueries.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the statements with the least total time when the limit is reached. A tenth of the statements is
+     * discarded at once, so the statistics are sorted once per many new statements rather than on each of them.
+     */
+    protected void evictIfNeeded() {
+        int maxStatements = serverConfig.getSqlStatisticsMaxStatements();
+        if (statements.size() < maxStatements) {
+            return;
+        }
+        synchronized (evictionLock) {
+            int size = statements.size();
+            if (size < maxStatements) {
+                // already evicted by another thread
+                return;
+            }
+            int count = Math.max(size - maxStatements + 1, (int) (maxStatements * EVICTION_RATIO));
+            List<StatementStatistics> victims = new ArrayList<>(statements.values());
+            victims.sort(Comparator.comparingLong(StatementStatistics::getTotalTimeNanos));
+            for (StatementStatistics victim : victims.subList(0, Math.min(count, victims.size()))) {
+                statements.remove(victim.getSql());
+            }
+        }
+    }
+
+    @Nullable
+    protected String getCurrentUser() {
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        return securityContext != null ? securityContext.getUser() : null;
+    }
+
+    /**
+     * @return SQL with literals replaced by {@code ?}, lists of parameters collapsed and whitespace normalized
+     */
+    public static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        boolean inLiteral = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (inLiteral) {
+                if (c == '\'') {
+                    if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                        i++;
+                    } else {
+                        inLiteral = false;
+                    }
+                }
+            } else if (c == '\'') {
+                inLiteral = true;
+                sb.append('?');
+            } else {
+                sb.append(c);
+            }
+        }
+        String result = WHITESPACE.matcher(sb).replaceAll(" ").trim();
+        result = NUMBER.matcher(result).replaceAll("?");
+        result = PARAMETER_LIST.matcher(result).replaceAll("(?, ...)");
+        return StringUtils.abbreviate(result, MAX_SQL_LENGTH);
+    }
+
+    /**
+     * @param count   maximum number of statements to return
+     * @param orderBy one of {@code totalTime}, {@code averageTime}, {@code maxTime}, {@code fetchTime},
+     *                {@code executionCount}, {@code rowCount}, {@code errorCount}; {@code totalTime} if null
+     * @return statements with the greatest values of the given metric, in descending order
+     */
+    public List<StatementStatistics> getTopStatements(int count, @Nullable String orderBy) {
+        List<StatementStatistics> result = new ArrayList<>(statements.values());
+        result.sort(getComparator(orderBy).reversed());
+        return result.size() > count ? new ArrayList<>(result.subList(0, count)) : result;
+    }
+
+    protected Comparator<StatementStatistics> getComparator(@Nullable String orderBy) {
+        if (orderBy == null || "totalTime".equals(orderBy)) {
+            return Comparator.comparingLong(StatementStatistics::getTotalTimeNanos);
+        }
+        switch (orderBy) {
+            case "averageTime":
+                return Comparator.comparingDouble(StatementStatistics::getAverageTime);
+            case "maxTime":
+                return Comparator.comparingLong(StatementStatistics::getMaxTime);
+            case "fetchTime":
+                return Comparator.comparingLong(StatementStatistics::getFetchTime);
+            case "executionCount":
+                return Comparator.comparingLong(StatementStatistics::getExecutionCount);
+            case "rowCount":
+                return Comparator.comparingLong(StatementStatistics::getRowCount);
+            case "errorCount":
+                return Comparator.comparingLong(StatementStatistics::getErrorCount);
+            default:
+                throw new IllegalArgumentException("Unsupported order: " + orderBy);
+        }
+    }
+
+    /**
+     * @return number of distinct normalized statements
+     */
+    public int getStatementCount() {
+        return statements.size();
+    }
+
+    /**
+     * @return the latest slow queries, the most recent first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    /**
+     * @return time in milliseconds since the statistics have been started or reset
+     */
+    public long getStartTs() {
+        return startTs;
+    }
+
+    /**
+     * Discards all collected statistics.
+     */
+    public void reset() {
+        statements.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+        startTs = System.currentTimeMillis();
+    }
+
+    /**
+     * Single execution of a statement, finished after the result set is closed.
+     */
+    public class Execution {
+
+        protected final String sql;
+        protected final String parameterShape;
+        protected final long startNanos = System.nanoTime();
+
+        protected long executionNanos;
+        protected long fetchNanos;
+        protected long rowCount;
+        protected boolean failed;
+        protected boolean finished;
+
+        protected Execution(String sql, @Nullable String parameterShape) {
+            this.sql = sql;
+            this.parameterShape = parameterShape;
+        }
+
+        /**
+         * Called when the driver returns from the execution.
+         */
+        public void executed() {
+            executionNanos = System.nanoTime() - startNanos;
+        }
+
+        public void failed() {
+            executed();
+            failed = true;
+            finish();
+        }
+
+        public void addRows(long rows) {
+            if (rows > 0) {
+                rowCount += rows;
+            }
+        }
+
+        public void addFetchTime(long nanos) {
+            fetchNanos += nanos;
+        }
+
+        /**
+         * Records the execution in the statistics. Subsequent calls are ignored.
+         */
+        public void finish() {
+            if (!finished) {
+                finished = true;
+                record(this);
+            }
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * Aggregated statistics of a normalized statement.
+     */
+    public static class StatementStatistics {
+
+        protected final String sql;
+        protected final LongAdder executionCount = new LongAdder();
+        protected final LongAdder errorCount = new LongAdder();
+        protected final LongAdder executionNanos = new LongAdder();
+        protected final LongAdder fetchNanos = new LongAdder();
+        protected final LongAdder rowCount = new LongAdder();
+        protected final AtomicLong maxTimeNanos = new AtomicLong();
+        protected final Map<String, LongAdder> parameterShapes = new ConcurrentHashMap<>();
+
+        protected StatementStatistics(String sql) {
+            this.sql = sql;
+        }
+
+        protected void add(Execution execution) {
+            executionCount.increment();
+            if (execution.failed) {
+                errorCount.increment();
+            }
+            executionNanos.add(execution.executionNanos);
+            fetchNanos.add(execution.fetchNanos);
+            rowCount.add(execution.rowCount);
+            maxTimeNanos.accumulateAndGet(execution.executionNanos + execution.fetchNanos, Math::max);
+
+            if (execution.parameterShape != null) {
+                LongAdder shapeCount = parameterShapes.get(execution.parameterShape);
+                if (shapeCount == null && parameterShapes.size() < MAX_PARAMETER_SHAPES) {
+                    shapeCount = parameterShapes.computeIfAbsent(execution.parameterShape, s -> new LongAdder());
+                }
+                if (shapeCount != null) {
+                    shapeCount.increment();
+                }
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutionCount() {
+            return executionCount.sum();
+        }
+
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        public long getRowCount() {
+            return rowCount.sum();
+        }
+
+        public long getTotalTimeNanos() {
+            return executionNanos.sum() + fetchNanos.sum();
+        }
+
+        /**
+         * @return total execution and fetch time in milliseconds
+         */
+        public long getTotalTime() {
+            return TimeUnit.NANOSECONDS.toMillis(getTotalTimeNanos());
+        }
+
+        /**
+         * @return total execution time in milliseconds
+         */
+        public long getExecutionTime() {
+            return TimeUnit.NANOSECONDS.toMillis(executionNanos.sum());
+        }
+
+        /**
+         * @return total fetch time in milliseconds
+         */
+        public long getFetchTime() {
+            return TimeUnit.NANOSECONDS.toMillis(fetchNanos.sum());
+        }
+
+        /**
+         * @return maximum execution and fetch time in milliseconds
+         */
+        public long getMaxTime() {
+            return TimeUnit.NANOSECONDS.toMillis(maxTimeNanos.get());
+        }
+
+        /**
+         * @return average execution and fetch time in milliseconds
+         */
+        public double getAverageTime() {
+            long count = getExecutionCount();
+            return count == 0 ? 0 : getTotalTimeNanos() / 1000000.0 / count;
+        }
+
+        /**
+         * @return types of bind parameters and the number of executions with these types
+         */
+        public Map<String, Long> getParameterShapes() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            parameterShapes.forEach((shape, count) -> result.put(shape, count.sum()));
+            return result;
+        }
+    }
+
+    /**
+     * Execution of a statement which took longer than the threshold.
+     */
+    public static class SlowQuery {
+
+        protected final long ts = System.currentTimeMillis();
+        protected final String sql;
+        protected final String parameterShape;
+        protected final long executionTime;
+        protected final long fetchTime;
+        protected final long rowCount;
+        protected final boolean failed;
+        protected final String user;
+        protected final String thread;
+
+        protected SlowQuery(Execution execution, String normalizedSql, @Nullable String user) {
+            this.sql = normalizedSql;
+            this.parameterShape = execution.parameterShape;
+            this.executionTime = TimeUnit.NANOSECONDS.toMillis(execution.executionNanos);
+            this.fetchTime = TimeUnit.NANOSECONDS.toMillis(execution.fetchNanos);
+            this.rowCount = execution.rowCount;
+            this.failed = execution.failed;
+            this.user = user;
+            this.thread = Thread.currentThread().getName();
+        }
+
+        public long getTs() {
+            return ts;
+        }
+
+        /**
+         * @return normalized SQL text without parameter values and literals
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        @Nullable
+        public String getParameterShape() {
+            return parameterShape;
+        }
+
+        public long getExecutionTime() {
+            return executionTime;
+        }
+
+        public long getFetchTime() {
+            return fetchTime;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        @Nullable
+        public String getUser() {
+            return user;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.entity.SoftDelete;
 import com.haulmont.cuba.core.entity.annotation.OnDelete;
 import com.haulmont.cuba.core.entity.annotation.OnDeleteInverse;
@@ -38,15 +39,29 @@ import javax.inject.Inject;
 import java.sql.SQLException;
 import java.util.*;
 
+/**
+ * Processes {@link OnDelete} and {@link OnDeleteInverse} policies of soft deleted entities.
+ * <p>
+ * The processor handles either a single entity set by {@link #setEntity(Entity)} or a batch of entities of the same
+ * class set by {@link #setEntities(Collection)}. In the batch mode, each policy is evaluated by queries selecting
+ * related entities of all the batch instances at once. Cascaded and unlinked entities of all the batch instances are
+ * changed after {@code BEFORE_DELETE} listeners of all of them have been invoked.
+ */
 @Component(DeletePolicyProcessor.NAME)
 @Scope("prototype")
 public class DeletePolicyProcessor {
 
     public static final String NAME = "cuba_DeletePolicyProcessor";
 
+    /**
+     * Maximum number of entities processed by the same queries.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
     private static final Logger log = LoggerFactory.getLogger(DeletePolicyProcessor.class);
 
     protected Entity entity;
+    protected List<Entity> entities = Collections.emptyList();
     protected MetaClass metaClass;
     protected String primaryKeyName;
 
@@ -63,8 +78,29 @@ public class DeletePolicyProcessor {
     }
 
     public void setEntity(Entity entity) {
-        this.entity = entity;
+        setEntities(Collections.singletonList(entity));
+    }
+
+    public List<Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Sets entities to be processed in the batch mode.
+     *
+     * @param entities non-empty collection of entities of the same class
+     */
+    public void setEntities(Collection<Entity> entities) {
+        if (entities.isEmpty())
+            throw new IllegalArgumentException("entities are empty");
+
+        this.entities = new ArrayList<>(entities);
+        this.entity = this.entities.get(0);
         this.metaClass = metadata.getSession().getClass(entity.getClass());
+        for (Entity e : this.entities) {
+            if (e.getClass() != entity.getClass())
+                throw new IllegalArgumentException("Entities of different classes: " + entity.getClass() + ", " + e.getClass());
+        }
         primaryKeyName = metadata.getTools().getPrimaryKeyName(metaClass);
 
         String storeName = metadata.getTools().getStoreName(metaClass);
@@ -72,6 +108,24 @@ public class DeletePolicyProcessor {
     }
 
     public void process() {
+        if (entities.size() <= MAX_BATCH_SIZE) {
+            processBatch();
+            return;
+        }
+        List<Entity> allEntities = entities;
+        try {
+            for (int i = 0; i < allEntities.size(); i += MAX_BATCH_SIZE) {
+                entities = allEntities.subList(i, Math.min(i + MAX_BATCH_SIZE, allEntities.size()));
+                entity = entities.get(0);
+                processBatch();
+            }
+        } finally {
+            entities = allEntities;
+            entity = allEntities.get(0);
+        }
+    }
+
+    protected void processBatch() {
         List<MetaProperty> properties = new ArrayList<MetaProperty>();
 
         fillProperties(properties, OnDeleteInverse.class.getName());
@@ -138,31 +192,31 @@ public class DeletePolicyProcessor {
                         if (!isCollectionEmpty(property))
                             throw new DeletePolicyException(this.metaClass.getName(), metaClass.getName());
                     } else {
-                        Object value = getReference(entity, property);
-                        if (value != null)
+                        if (!getReferences(property).isEmpty())
                             throw new DeletePolicyException(this.metaClass.getName(), metaClass.getName());
                     }
                     break;
                 case CASCADE:
                     if (property.getRange().getCardinality().isMany()) {
                         Collection<Entity> value = getCollection(property);
-                        if (value != null && !value.isEmpty()) {
-                            for (Entity e : value) {
-                                entityManager.remove(e);
-                            }
+                        for (Entity e : value) {
+                            entityManager.remove(e);
                         }
                     } else {
-                        Entity value = getReference(entity, property);
-                        if (value != null && checkIfEntityBelongsToMaster(property, value)) {
-                            if (!(value instanceof SoftDelete)) {
-                                if (PersistenceHelper.isLoaded(entity, property.getName())) {
-                                    entity.setValue(property.getName(), null);
-                                    entityManager.remove(value);
+                        for (Map.Entry<Entity, Entity> entry : getReferences(property).entrySet()) {
+                            Entity master = entry.getKey();
+                            Entity value = entry.getValue();
+                            if (checkIfEntityBelongsToMaster(master, property, value)) {
+                                if (!(value instanceof SoftDelete)) {
+                                    if (PersistenceHelper.isLoaded(master, property.getName())) {
+                                        master.setValue(property.getName(), null);
+                                        entityManager.remove(value);
+                                    } else {
+                                        hardDeleteNotLoadedReference(master, property, value);
+                                    }
                                 } else {
-                                    hardDeleteNotLoadedReference(entity, property, value);
+                                    entityManager.remove(value);
                                 }
-                            } else {
-                                entityManager.remove(value);
                             }
                         }
                     }
@@ -170,24 +224,25 @@ public class DeletePolicyProcessor {
                 case UNLINK:
                     if (property.getRange().getCardinality().isMany()) {
                         if (metadata.getTools().isOwningSide(property)) {
-                            Collection<Entity> value = entity.getValue(property.getName());
-                            if (value != null) {
-                                value.clear();
+                            for (Entity master : entities) {
+                                Collection<Entity> value = master.getValue(property.getName());
+                                if (value != null) {
+                                    value.clear();
+                                }
                             }
                         } else if (property.getInverse() != null) {
                             Collection<Entity> value = getCollection(property);
-                            if (value != null) {
-                                value.forEach(e -> setReferenceNull(e, property.getInverse()));
-                            }
+                            value.forEach(e -> setReferenceNull(e, property.getInverse()));
                         } else {
                             throw new UnsupportedOperationException("Unable to unlink nested collection items");
                         }
                     } else {
                         if (metadata.getTools().isOwningSide(property)) {
-                            setReferenceNull(entity, property);
-                        } else {
-                            Entity value = getReference(entity, property);
-                            if (value != null && property.getInverse() != null) {
+                            for (Entity master : entities) {
+                                setReferenceNull(master, property);
+                            }
+                        } else if (property.getInverse() != null) {
+                            for (Entity value : getReferences(property).values()) {
                                 setReferenceNull(value, property.getInverse());
                             }
                         }
@@ -273,11 +328,60 @@ public class DeletePolicyProcessor {
         }
     }
 
+    /**
+     * Returns non-null values of the reference property of the processed entities. Values of not loaded properties
+     * are selected by a single query.
+     *
+     * @return map of processed entities to referenced entities
+     */
+    protected Map<Entity, Entity> getReferences(MetaProperty property) {
+        Map<Entity, Entity> result = new LinkedHashMap<>();
+        List<Entity> notLoaded = new ArrayList<>();
+        for (Entity master : entities) {
+            if (PersistenceHelper.isLoaded(master, property.getName())) {
+                Entity value = master.getValue(property.getName());
+                if (value != null) {
+                    result.put(master, value);
+                }
+            } else {
+                notLoaded.add(master);
+            }
+        }
+
+        if (notLoaded.size() == 1) {
+            Entity value = getReference(notLoaded.get(0), property);
+            if (value != null) {
+                result.put(notLoaded.get(0), value);
+            }
+        } else if (!notLoaded.isEmpty()) {
+            Map<Object, Entity> mastersById = new HashMap<>();
+            for (Entity master : notLoaded) {
+                mastersById.put(getIdValue(master), master);
+            }
+            Query query = entityManager.createQuery(
+                    "select e." + primaryKeyName + ", e." + property.getName() + " from " + metaClass.getName()
+                            + " e where e." + primaryKeyName + " in :ids");
+            query.setParameter("ids", new ArrayList<>(mastersById.keySet()));
+            for (Object row : query.getResultList()) {
+                Object[] values = (Object[]) row;
+                Entity master = mastersById.get(values[0]);
+                if (master != null && values[1] != null) {
+                    result.put(master, (Entity) values[1]);
+                }
+            }
+        }
+        return result;
+    }
+
     protected boolean checkIfEntityBelongsToMaster(MetaProperty property, Entity entityToRemove) {
+        return checkIfEntityBelongsToMaster(entity, property, entityToRemove);
+    }
+
+    protected boolean checkIfEntityBelongsToMaster(Entity master, MetaProperty property, Entity entityToRemove) {
         MetaProperty inverseProperty = property.getInverse();
         if (inverseProperty != null && !inverseProperty.getRange().getCardinality().isMany()) {
-            Entity master = entityToRemove.getValue(inverseProperty.getName());
-            return entity.equals(master);
+            Entity actualMaster = entityToRemove.getValue(inverseProperty.getName());
+            return master.equals(actualMaster);
         } else {
             return true;
         }
@@ -287,18 +391,22 @@ public class DeletePolicyProcessor {
         MetaProperty inverseProperty = property.getInverse();
         if (inverseProperty == null) {
             log.warn("Inverse property not found for property {}", property);
-            Collection<Entity> value = entity.getValue(property.getName());
-            return value == null || value.isEmpty();
+            for (Entity master : entities) {
+                Collection<Entity> value = master.getValue(property.getName());
+                if (value != null && !value.isEmpty())
+                    return false;
+            }
+            return true;
         }
 
         String invPropName = inverseProperty.getName();
         String collectionPkName = metadata.getTools().getPrimaryKeyName(property.getRange().asClass());
 
         String qlStr = "select e." + collectionPkName + " from " + property.getRange().asClass().getName() +
-                " e where e." + invPropName + "." + primaryKeyName + " = ?1";
+                " e where " + getIdCondition("e." + invPropName);
 
         Query query = entityManager.createQuery(qlStr);
-        query.setParameter(1, entity.getId());
+        setIdParameter(query);
         query.setMaxResults(1);
         List<Entity> list = query.getResultList();
 
@@ -309,40 +417,53 @@ public class DeletePolicyProcessor {
         MetaProperty inverseProperty = property.getInverse();
         if (inverseProperty == null) {
             log.warn("Inverse property not found for property {}", property);
-            Collection<Entity> value = entity.getValue(property.getName());
-            return value == null ? Collections.EMPTY_LIST : value;
+            List<Entity> result = new ArrayList<>();
+            for (Entity master : entities) {
+                Collection<Entity> value = master.getValue(property.getName());
+                if (value != null) {
+                    result.addAll(value);
+                }
+            }
+            return result;
         }
 
         String invPropName = inverseProperty.getName();
-        String qlStr = "select e from " + property.getRange().asClass().getName() + " e where e." + invPropName + "." +
-                primaryKeyName + " = ?1";
+        String qlStr = "select e, e." + invPropName + "." + primaryKeyName + " from "
+                + property.getRange().asClass().getName() + " e where " + getIdCondition("e." + invPropName);
 
         Query query = entityManager.createQuery(qlStr);
-        query.setParameter(1, entity.getId());
-        List<Entity> list = query.getResultList();
+        setIdParameter(query);
+        List rows = query.getResultList();
 
-        // If the property is not loaded, it means it was not modified and further check is not needed
-        if (!PersistenceHelper.isLoaded(entity, property.getName())) {
-            return list;
+        Map<Object, Entity> mastersById = new HashMap<>();
+        for (Entity master : entities) {
+            mastersById.put(getIdValue(master), master);
         }
-        // Check whether the collection items still belong to the master entity, because they could be changed in the
-        // current transaction that did not affect the database yet
-        List<Entity> result = new ArrayList<>(list.size());
-        for (Entity item : list) {
-            Entity master = item.getValue(invPropName);
-            if (entity.equals(master))
+
+        List<Entity> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] values = (Object[]) row;
+            Entity item = (Entity) values[0];
+            Entity master = mastersById.get(values[1]);
+            // If the property is not loaded, it means it was not modified and further check is not needed.
+            // Otherwise check whether the collection item still belongs to the master entity, because it could be
+            // changed in the current transaction that did not affect the database yet
+            if (master == null
+                    || !PersistenceHelper.isLoaded(master, property.getName())
+                    || master.equals(item.getValue(invPropName))) {
                 result.add(item);
+            }
         }
         return result;
     }
 
     protected boolean referenceExists(String entityName, MetaProperty property) {
         String template = property.getRange().getCardinality().isMany() ?
-                "select count(e) from %s e join e.%s c where c." + primaryKeyName + "= ?1" :
-                "select count(e) from %s e where e.%s." + primaryKeyName + " = ?1";
+                "select count(e) from %s e join e.%s c where " + getIdCondition("c") :
+                "select count(e) from %s e where " + getIdCondition("e.%s");
         String qstr = String.format(template, entityName, property.getName());
         Query query = entityManager.createQuery(qstr);
-        query.setParameter(1, entity.getId());
+        setIdParameter(query);
         query.setMaxResults(1);
         Long count = (Long) query.getSingleResult();
         return count > 0;
@@ -354,11 +475,11 @@ public class DeletePolicyProcessor {
 
     protected void cascade(String entityName, MetaProperty property) {
         String template = property.getRange().getCardinality().isMany() ?
-                "select e from %s e join e.%s c where c." + primaryKeyName + " = ?1" :
-                "select e from %s e where e.%s." + primaryKeyName + " = ?1";
+                "select e from %s e join e.%s c where " + getIdCondition("c") :
+                "select e from %s e where " + getIdCondition("e.%s");
         String qstr = String.format(template, entityName, property.getName());
         Query query = entityManager.createQuery(qstr);
-        query.setParameter(1, entity.getId());
+        setIdParameter(query);
         List<Entity> list = query.getResultList();
         for (Entity e : list) {
             entityManager.remove(e);
@@ -368,17 +489,18 @@ public class DeletePolicyProcessor {
     protected void unlink(String entityName, MetaProperty property) {
         if (metadata.getTools().isOwningSide(property)) {
             String template = property.getRange().getCardinality().isMany() ?
-                    "select e from %s e join e.%s c where c." + primaryKeyName + " = ?1" :
-                    "select e from %s e where e.%s." + primaryKeyName + " = ?1";
+                    "select e from %s e join e.%s c where " + getIdCondition("c") :
+                    "select e from %s e where " + getIdCondition("e.%s");
             String qstr = String.format(template, entityName, property.getName());
             Query query = entityManager.createQuery(qstr);
-            query.setParameter(1, entity.getId());
+            setIdParameter(query);
             List<Entity> list = query.getResultList();
+            Set<Entity> entitySet = new HashSet<>(entities);
             for (Entity e : list) {
                 if (property.getRange().getCardinality().isMany()) {
                     Collection collection = e.getValue(property.getName());
                     if (collection != null) {
-                        collection.removeIf(o -> entity.equals(o));
+                        collection.removeIf(entitySet::contains);
                     }
                 } else {
                     setReferenceNull(e, property);
@@ -387,8 +509,35 @@ public class DeletePolicyProcessor {
         } else {
             MetaProperty inverseProp = property.getInverse();
             if (inverseProp != null && inverseProp.getDomain().equals(metaClass)) {
-                setReferenceNull(entity, inverseProp);
+                for (Entity master : entities) {
+                    setReferenceNull(master, inverseProp);
+                }
             }
         }
     }
+
+    /**
+     * @param path path to the reference to a processed entity
+     * @return JPQL condition selecting references to the processed entities
+     */
+    protected String getIdCondition(String path) {
+        return path + "." + primaryKeyName + (entities.size() > 1 ? " in :ids" : " = :id");
+    }
+
+    protected void setIdParameter(Query query) {
+        if (entities.size() > 1) {
+            List<Object> ids = new ArrayList<>(entities.size());
+            for (Entity e : entities) {
+                ids.add(getIdValue(e));
+            }
+            query.setParameter("ids", ids);
+        } else {
+            query.setParameter("id", entity.getId());
+        }
+    }
+
+    protected Object getIdValue(Entity entity) {
+        Object id = entity.getId();
+        return id instanceof IdProxy ? ((IdProxy) id).getNN() : id;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.persistence;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.bali.db.DbUtils;
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.app.Sequence;
+import com.haulmont.cuba.core.app.Sequences;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.app.ServerInfoAPI;
+import com.haulmont.cuba.core.app.events.AttributeChanges;
+import com.haulmont.cuba.core.app.events.EntityChangedEvent;
+import com.haulmont.cuba.core.entity.contracts.Id;
+import com.haulmont.cuba.core.global.Events;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.core.global.UuidProvider;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
+import com.haulmont.cuba.security.app.Authentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.Serializable;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches {@link EntityChangedEvent}s asynchronously after commit if enabled by
+ * {@link ServerConfig#getEntityChangedEventsAsync()}.
+ * <p>
+ * Compact records of the events are inserted into the {@code SYS_ENTITY_CHANGED_EVENT} table in the transaction
+ * which changes entities, so they are committed or rolled back together with the changes. A background thread of
+ * the cluster node which recorded the events reads the records and hands them over to dispatching threads. They
+ * publish the events in batches, each batch in a new transaction which also deletes the records of the batch, so
+ * {@code @EventListener} handlers work inside this transaction and {@code @TransactionalEventListener} handlers after
+ * its commit. Events of the same entity instance are dispatched by the same thread in the order of records.
+ * A failed batch is dispatched again with exponential delay, so handlers can receive an event more than once.
+ * Records of the batches failed after all attempts are kept in the table and dispatched after restart of the node.
+ * Records not dispatched before the node is stopped are dispatched after its restart as well.
+ * <p>
+ * Handlers work in the system session, the id of the user who changed the entity is returned by
+ * {@link EntityChangedEvent#getUserId()}. Events are dispatched only on the cluster node where the entity has been
+ * changed.
+ */
+@Component(EntityChangedEventDispatcher.NAME)
+public class EntityChangedEventDispatcher {
+
+    public static final String NAME = "cuba_EntityChangedEventDispatcher";
+
+    private static final Logger log = LoggerFactory.getLogger(EntityChangedEventDispatcher.class);
+
+    protected static final long RETRY_DELAY_MS = 200;
+    protected static final long MAX_RETRY_DELAY_MS = 30 * 1000;
+    protected static final long POLL_INTERVAL_MS = 10 * 1000;
+    protected static final int MAX_RECORDS_PER_POLL = 1000;
+
+    protected static final Sequence SEQUENCE = Sequence.withName("sys_entity_changed_event").setAllocationSize(100);
+
+    protected static final String INSERT_SQL = "insert into SYS_ENTITY_CHANGED_EVENT (ID, CREATE_TS, SERVER_ID, " +
+            "SEQ_NUM, CONTENT) values (?, ?, ?, ?, ?)";
+    protected static final String SELECT_SQL = "select ID, CONTENT from SYS_ENTITY_CHANGED_EVENT " +
+            "where SERVER_ID = ? order by SEQ_NUM";
+    protected static final String DELETE_SQL = "delete from SYS_ENTITY_CHANGED_EVENT where ID = ?";
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    @Inject
+    protected Persistence persistence;
+
+    @Inject
+    protected Events events;
+
+    @Inject
+    protected Authentication authentication;
+
+    @Inject
+    protected ApplicationContext applicationContext;
+
+    @Inject
+    protected ServerInfoAPI serverInfo;
+
+    @Inject
+    protected Sequences sequences;
+
+    @Inject
+    protected TimeSource timeSource;
+
+    protected volatile Lane[] lanes;
+    protected volatile Thread pollerThread;
+    protected volatile boolean stopped;
+
+    protected final Semaphore pollSignal = new Semaphore(0);
+    protected final Set<Object> inFlightIds = ConcurrentHashMap.newKeySet();
+    protected final Queue<Object> completedIds = new ConcurrentLinkedQueue<>();
+    protected final Set<Object> failedIds = ConcurrentHashMap.newKeySet();
+
+    protected final AtomicLong dispatchedCount = new AtomicLong();
+    protected final AtomicLong retriedCount = new AtomicLong();
+    protected final AtomicLong failedCount = new AtomicLong();
+
+    @PostConstruct
+    protected void init() {
+        AppContext.addListener(new AppContext.Listener() {
+            @Override
+            public void applicationStarted() {
+                if (serverConfig.getEntityChangedEventsAsync()) {
+                    // dispatch the records left after the previous run
+                    start();
+                }
+            }
+
+            @Override
+            public void applicationStopped() {
+                // stopped in @PreDestroy
+            }
+        });
+    }
+
+    /**
+     * Records the events in the current transaction. The events are dispatched after the transaction is committed
+     * and discarded if it is rolled back. If there is no active transaction, the events are recorded in a new one.
+     */
+    public void enqueue(Collection<EntityChangedEvent> events) {
+        if (events.isEmpty())
+            return;
+
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        UUID userId = securityContext != null && securityContext.getSession() != null
+                ? securityContext.getSession().getCurrentOrSubstitutedUser().getId()
+                : null;
+        Date createTs = timeSource.currentTimestamp();
+        String serverId = serverInfo.getServerId();
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (EntityChangedEvent event : events) {
+            rows.add(new Object[]{
+                    toSql(UuidProvider.createUuid()),
+                    toSql(createTs),
+                    serverId,
+                    sequences.createNextValue(SEQUENCE),
+                    SerializationSupport.serialize(new Record(event, userId))
+            });
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try (Transaction tx = persistence.createTransaction()) {
+                insert(rows);
+                tx.commit();
+            }
+            wakeUp();
+            return;
+        }
+        insert(rows);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                wakeUp();
+            }
+        });
+    }
+
+    protected void insert(List<Object[]> rows) {
+        DbTypeConverter converter = persistence.getDbTypeConverter();
+        int[] paramTypes = {
+                converter.getSqlType(UUID.class),
+                converter.getSqlType(Date.class),
+                Types.VARCHAR,
+                Types.BIGINT,
+                Types.LONGVARBINARY
+        };
+        try {
+            new QueryRunner().batch(persistence.getEntityManager().getConnection(), INSERT_SQL,
+                    rows.toArray(new Object[0][]), paramTypes);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error recording EntityChangedEvents", e);
+        }
+    }
+
+    protected Object toSql(Object value) {
+        return persistence.getDbTypeConverter().getSqlObject(value);
+    }
+
+    /**
+     * Starts the dispatching threads if they are not started yet and makes them read new records.
+     */
+    protected void wakeUp() {
+        start();
+        pollSignal.release();
+    }
+
+    protected void start() {
+        if (pollerThread != null || stopped) {
+            return;
+        }
+        synchronized (this) {
+            if (pollerThread != null || stopped) {
+                return;
+            }
+            ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                    .setNameFormat("EntityChangedEventDispatcher-%d")
+                    .setDaemon(true)
+                    .build();
+            Lane[] lanes = new Lane[Math.max(serverConfig.getEntityChangedEventsAsyncThreads(), 1)];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new Lane();
+                threadFactory.newThread(lanes[i]).start();
+            }
+            this.lanes = lanes;
+
+            Thread thread = threadFactory.newThread(this::poll);
+            thread.start();
+            pollerThread = thread;
+        }
+    }
+
+    protected void poll() {
+        checkListeners();
+        while (!stopped) {
+            try {
+                int count = readRecords();
+                if (count == 0) {
+                    pollSignal.tryAcquire(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    pollSignal.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable e) {
+                log.error("Error reading EntityChangedEvents", e);
+                try {
+                    Thread.sleep(POLL_INTERVAL_MS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the records of this node which are not being dispatched and hands them over to the lanes.
+     *
+     * @return number of records handed over
+     */
+    protected int readRecords() throws SQLException {
+        // ids are released only before the select, so records deleted by a concurrent commit are not read again
+        for (Object id = completedIds.poll(); id != null; id = completedIds.poll()) {
+            inFlightIds.remove(id);
+        }
+        List<Record> records = new ArrayList<>();
+        try (Transaction tx = persistence.createTransaction()) {
+            Connection connection = persistence.getEntityManager().getConnection();
+            PreparedStatement statement = connection.prepareStatement(SELECT_SQL);
+            try {
+                statement.setMaxRows(MAX_RECORDS_PER_POLL + inFlightIds.size());
+                statement.setString(1, serverInfo.getServerId());
+                ResultSet rs = statement.executeQuery();
+                while (rs.next() && records.size() < MAX_RECORDS_PER_POLL) {
+                    Object id = rs.getObject(1);
+                    if (inFlightIds.contains(id) || failedIds.contains(id)) {
+                        continue;
+                    }
+                    Record record = deserialize(id, rs.getBytes(2));
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+            } finally {
+                DbUtils.closeQuietly(statement);
+            }
+            tx.commit();
+        }
+
+        Lane[] lanes = this.lanes;
+        for (Record record : records) {
+            inFlightIds.add(record.id);
+            lanes[Math.floorMod(record.entityId.hashCode(), lanes.length)].queue.add(record);
+        }
+        return records.size();
+    }
+
+    @Nullable
+    protected Record deserialize(Object id, byte[] content) {
+        try {
+            Record record = (Record) SerializationSupport.deserialize(content);
+            record.id = id;
+            return record;
+        } catch (Exception e) {
+            log.error("Unable to read EntityChangedEvent record {}, it is kept in the table", id, e);
+            failedIds.add(id);
+            return null;
+        }
+    }
+
+    /**
+     * Warns about listeners which expect to handle the events before commit of the transaction changing the entity:
+     * they are invoked after commit and cannot prevent it.
+     */
+    protected void checkListeners() {
+        for (String beanName : applicationContext.getBeanDefinitionNames()) {
+            Class<?> beanType = applicationContext.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            ReflectionUtils.doWithMethods(ClassUtils.getUserClass(beanType), method -> {
+                if (method.getParameterCount() != 1
+                        || !EntityChangedEvent.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                    return;
+                }
+                TransactionalEventListener transactionalListener =
+                        AnnotatedElementUtils.findMergedAnnotation(method, TransactionalEventListener.class);
+                boolean beforeCommit = transactionalListener != null
+                        ? transactionalListener.phase() == TransactionPhase.BEFORE_COMMIT
+                        : AnnotatedElementUtils.hasAnnotation(method, EventListener.class);
+                if (beforeCommit) {
+                    log.warn("EntityChangedEvents are dispatched asynchronously, so {}.{} is invoked after commit " +
+                                    "of the transaction changing the entity and cannot roll it back",
+                            method.getDeclaringClass().getName(), method.getName());
+                }
+            });
+        }
+    }
+
+    protected void dispatchBatch(List<Record> batch) throws InterruptedException {
+        int maxAttempts = Math.max(serverConfig.getEntityChangedEventsAsyncMaxAttempts(), 1);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    publishInTransaction(batch);
+                    dispatchedCount.addAndGet(batch.size());
+                    return;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts) {
+                        failedCount.addAndGet(batch.size());
+                        for (Record record : batch) {
+                            failedIds.add(record.id);
+                        }
+                        log.error("Unable to dispatch {} EntityChangedEvents after {} attempts, they are kept " +
+                                "in the table until restart", batch.size(), attempt, e);
+                        return;
+                    }
+                    retriedCount.incrementAndGet();
+                    long delay = Math.min(RETRY_DELAY_MS << Math.min(attempt - 1, 20), MAX_RETRY_DELAY_MS);
+                    log.warn("Error dispatching {} EntityChangedEvents, attempt {} of {}, retrying in {} ms: {}",
+                            batch.size(), attempt, maxAttempts, delay, e.toString());
+                    Thread.sleep(delay);
+                }
+            }
+        } finally {
+            for (Record record : batch) {
+                completedIds.add(record.id);
+            }
+            // more records can be read now
+            pollSignal.release();
+        }
+    }
+
+    /**
+     * Publishes the events and deletes their records in one transaction.
+     */
+    protected void publishInTransaction(List<Record> batch) throws SQLException {
+        authentication.begin();
+        try {
+            try (Transaction tx = persistence.createTransaction()) {
+                for (Record record : batch) {
+                    publish(record);
+                }
+                Object[][] ids = new Object[batch.size()][];
+                for (int i = 0; i < batch.size(); i++) {
+                    ids[i] = new Object[]{batch.get(i).id};
+                }
+                new QueryRunner().batch(persistence.getEntityManager().getConnection(), DELETE_SQL, ids);
+                tx.commit();
+            }
+        } finally {
+            authentication.end();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void publish(Record record) {
+        events.publish(new EntityChangedEvent(this, record.entityId, record.type, record.changes, record.userId));
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        Thread pollerThread = this.pollerThread;
+        if (pollerThread != null) {
+            pollerThread.interrupt();
+        }
+        Lane[] lanes = this.lanes;
+        if (lanes != null) {
+            int size = getQueueSize();
+            if (size > 0) {
+                log.info("Stopping with {} EntityChangedEvents not dispatched, they will be dispatched after restart",
+                        size);
+            }
+            for (Lane lane : lanes) {
+                lane.stop();
+            }
+        }
+    }
+
+    /**
+     * @return number of events read from the table and waiting for dispatching
+     */
+    public int getQueueSize() {
+        return Math.max(inFlightIds.size() - completedIds.size(), 0);
+    }
+
+    /**
+     * @return number of dispatched events
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return number of repeated attempts to dispatch a batch
+     */
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    /**
+     * @return number of events which have not been dispatched after all attempts
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Compact form of an event stored in the table.
+     */
+    protected static class Record implements Serializable {
+
+        private static final long serialVersionUID = -6093553532866616134L;
+
+        protected final Id entityId;
+        protected final EntityChangedEvent.Type type;
+        protected final AttributeChanges changes;
+        protected final UUID userId;
+
+        /**
+         * Identifier of the record in the table.
+         */
+        protected transient Object id;
+
+        protected Record(EntityChangedEvent event, @Nullable UUID userId) {
+            this.entityId = event.getEntityId();
+            this.type = event.getType();
+            this.changes = event.getChanges();
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * Queue of events dispatched by one thread.
+     */
+    protected class Lane implements Runnable {
+
+        protected final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+        protected volatile Thread thread;
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (!stopped) {
+                try {
+                    List<Record> batch = new ArrayList<>();
+                    batch.add(queue.take());
+                    queue.drainTo(batch, Math.max(serverConfig.getEntityChangedEventsAsyncBatchSize(), 1) - 1);
+                    dispatchBatch(batch);
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Throwable e) {
+                    log.error("Error dispatching EntityChangedEvents", e);
+                }
+            }
+        }
+
+        protected void stop() {
+            Thread thread = this.thread;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.haulmont.cuba.core.sys.persistence;
 
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributesUtils;
 import com.haulmont.cuba.core.app.events.AttributeChanges;
 import com.haulmont.cuba.core.app.events.EntityChangedEvent;
@@ -26,6 +27,7 @@ import com.haulmont.cuba.core.entity.annotation.PublishEntityChangedEvents;
 import com.haulmont.cuba.core.entity.contracts.Id;
 import com.haulmont.cuba.core.global.Events;
 import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.global.Stores;
 import org.eclipse.persistence.descriptors.changetracking.ChangeTracker;
 import org.eclipse.persistence.internal.descriptors.changetracking.AttributeChangeListener;
 import org.eclipse.persistence.sessions.changesets.AggregateChangeRecord;
@@ -53,6 +55,12 @@ public class EntityChangedEventManager {
     @Inject
     private Events eventPublisher;
 
+    @Inject
+    private ServerConfig serverConfig;
+
+    @Inject
+    private EntityChangedEventDispatcher dispatcher;
+
     private static class PublishingInfo {
         final boolean publish;
         final boolean onCreated;
@@ -130,7 +138,28 @@ public class EntityChangedEventManager {
         return list;
     }
 
+    /**
+     * Publishes the events of the main data store.
+     *
+     * @see #publish(Collection, String)
+     */
     public void publish(Collection<EntityChangedEvent> events) {
+        publish(events, Stores.MAIN);
+    }
+
+    /**
+     * Publishes the events in the current transaction or, if the asynchronous mode is enabled by
+     * {@link ServerConfig#getEntityChangedEventsAsync()}, records them for dispatching after commit by
+     * {@link EntityChangedEventDispatcher}. Events of additional data stores are always published in the current
+     * transaction, because the records are kept in the main database.
+     *
+     * @param storeName data store of the changed entities
+     */
+    public void publish(Collection<EntityChangedEvent> events, String storeName) {
+        if (serverConfig.getEntityChangedEventsAsync() && Stores.isMain(storeName)) {
+            dispatcher.enqueue(events);
+            return;
+        }
         for (EntityChangedEvent event : events) {
             eventPublisher.publish(event);
         }
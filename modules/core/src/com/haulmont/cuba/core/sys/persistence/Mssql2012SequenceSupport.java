@@ -59,4 +59,10 @@ public class Mssql2012SequenceSupport implements SequenceSupport {
         Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
         return "select cast(CURRENT_VALUE as bigint) from SYS.SEQUENCES where NAME = '" + sequenceName.toUpperCase() + "'";
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getIncrementSql(String sequenceName) {
+        Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
+        return "select cast(INCREMENT as bigint) from SYS.SEQUENCES where NAME = '" + sequenceName.toUpperCase() + "'";
+    }
+}
@@ -20,9 +20,11 @@ package com.haulmont.cuba.core.sys.persistence;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 import com.haulmont.bali.util.StackTrace;
+import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
-import com.haulmont.cuba.core.app.FtsSender;
+import com.haulmont.cuba.core.app.FtsChange;
+import com.haulmont.cuba.core.app.FtsChangeDispatcher;
 import com.haulmont.cuba.core.app.MiddlewareStatisticsAccumulator;
 import com.haulmont.cuba.core.app.events.EntityChangedEvent;
 import com.haulmont.cuba.core.entity.*;
@@ -93,7 +95,8 @@ public class PersistenceImplSupport implements ApplicationContextAware {
     @Inject
     protected EntityLogAPI entityLog;
 
-    protected volatile FtsSender ftsSender;
+    @Inject
+    protected FtsChangeDispatcher ftsChangeDispatcher;
 
     @Inject
     protected OrmCacheSupport ormCacheSupport;
@@ -226,6 +229,7 @@ public class PersistenceImplSupport implements ApplicationContextAware {
                                Collection<Entity> instances, Set<Entity> processed, boolean warnAboutImplicitFlush) {
         boolean possiblyChanged = false;
         Set<Entity> withoutPossibleChanges = createEntitySet();
+        visitor.beforeVisit(instances);
         for (Entity instance : instances) {
             processed.add(instance);
 
@@ -307,6 +311,12 @@ public class PersistenceImplSupport implements ApplicationContextAware {
 
     public interface EntityVisitor {
         boolean visit(BaseGenericIdEntity entity);
+
+        /**
+         * Invoked before visiting each of the given instances.
+         */
+        default void beforeVisit(Collection<Entity> instances) {
+        }
     }
 
     public static class ContainerResourceHolder extends ResourceHolderSupport {
@@ -405,7 +415,16 @@ public class PersistenceImplSupport implements ApplicationContextAware {
                 log.trace("ContainerResourceSynchronization.beforeCommit: instances=" + container.getAllInstances() + ", readOnly=" + readOnly);
 
             if (!readOnly) {
-                traverseEntities(container, new OnCommitEntityVisitor(container.getStoreName()), false);
+                OnCommitEntityVisitor visitor = new OnCommitEntityVisitor(container.getStoreName());
+                Set<Entity> processed = createEntitySet();
+                Collection<Entity> toProcess = container.getAllInstances();
+                // repeat for instances registered by the FTS sender until it adds no more of them
+                while (!toProcess.isEmpty()) {
+                    beforeStore(container, visitor, toProcess, processed, false);
+                    visitor.dispatchFtsChanges();
+                    toProcess = container.getAllInstances();
+                    toProcess.removeAll(processed);
+                }
                 entityLog.flush();
             }
 
@@ -508,7 +527,7 @@ public class PersistenceImplSupport implements ApplicationContextAware {
             List<TransactionSynchronization> synchronizationsBefore = new ArrayList<>(
                     TransactionSynchronizationManager.getSynchronizations());
 
-            entityChangedEventManager.publish(collectedEvents);
+            entityChangedEventManager.publish(collectedEvents, container.getStoreName());
 
             List<TransactionSynchronization> synchronizations = new ArrayList<>(
                     TransactionSynchronizationManager.getSynchronizations());
@@ -531,12 +550,65 @@ public class PersistenceImplSupport implements ApplicationContextAware {
 
         private String storeName;
 
+        private Set<Entity> deletedInBatch = createEntitySet();
+
+        private List<FtsChange> ftsChanges = new ArrayList<>();
+
         public OnCommitEntityVisitor(String storeName) {
             this.storeName = storeName;
         }
 
+        /**
+         * Processes soft deletion of several instances of the same class together, so their delete policies are
+         * evaluated by {@link DeletePolicyProcessor} in the batch mode.
+         * <p>
+         * Note that this changes the order of listener invocations compared to deletion of a single instance:
+         * {@code BEFORE_DELETE} listeners are invoked for all instances of the group first, and only then the delete
+         * policies are applied, so listeners of cascaded or unlinked entities are invoked after all of them instead
+         * of after the listener of their master instance.
+         */
+        @Override
+        public void beforeVisit(Collection<Entity> instances) {
+            Map<Class, List<Entity>> deletedByClass = new LinkedHashMap<>();
+            for (Entity instance : instances) {
+                if (instance instanceof SoftDelete && instance instanceof ChangeTracker
+                        && instance instanceof BaseGenericIdEntity && !deletedInBatch.contains(instance)) {
+                    AttributeChangeListener changeListener =
+                            (AttributeChangeListener) ((ChangeTracker) instance)._persistence_getPropertyChangeListener();
+                    if (changeListener != null && isDeleted((BaseGenericIdEntity) instance, changeListener)) {
+                        deletedByClass.computeIfAbsent(instance.getClass(), k -> new ArrayList<>()).add(instance);
+                    }
+                }
+            }
+
+            for (List<Entity> deleted : deletedByClass.values()) {
+                MetaClass metaClass = metadata.getClassNN(deleted.get(0).getClass());
+                if (deleted.size() < 2 || metadata.getTools().hasCompositePrimaryKey(metaClass))
+                    continue;
+
+                for (Entity entity : deleted) {
+                    entityListenerManager.fireListener(entity, EntityListenerType.BEFORE_DELETE, storeName);
+                    entityLog.registerDelete(entity, true);
+                }
+
+                DeletePolicyProcessor processor = AppBeans.get(DeletePolicyProcessor.NAME); // prototype
+                processor.setEntities(deleted);
+                processor.process();
+
+                for (Entity entity : deleted) {
+                    enqueueForFts(entity, FtsChangeType.DELETE);
+                    ormCacheSupport.evictMasterEntity(entity, null);
+                }
+                deletedInBatch.addAll(deleted);
+            }
+        }
+
         @Override
         public boolean visit(BaseGenericIdEntity entity) {
+            if (deletedInBatch.contains(entity)) {
+                return true;
+            }
+
             if (BaseEntityInternalAccess.isNew(entity)
                     && !getSavedInstances(storeName).contains(entity)) {
                 entityListenerManager.fireListener(entity, EntityListenerType.BEFORE_INSERT, storeName);
@@ -587,18 +659,16 @@ public class PersistenceImplSupport implements ApplicationContextAware {
         protected void enqueueForFts(Entity entity, FtsChangeType changeType) {
             if (!FtsConfigHelper.getEnabled())
                 return;
+            ftsChanges.add(new FtsChange(entity, changeType));
+        }
+
+        protected void dispatchFtsChanges() {
             try {
-                if (ftsSender == null) {
-                    if (AppBeans.containsBean(FtsSender.NAME)) {
-                        ftsSender = AppBeans.get(FtsSender.NAME);
-                    } else {
-                        log.error("Error enqueueing changes for FTS: " + FtsSender.NAME + " bean not found");
-                    }
-                }
-                if (ftsSender != null)
-                    ftsSender.enqueue(entity, changeType);
+                ftsChangeDispatcher.dispatch(ftsChanges);
             } catch (Exception e) {
                 log.error("Error enqueueing changes for FTS", e);
+            } finally {
+                ftsChanges.clear();
             }
         }
 
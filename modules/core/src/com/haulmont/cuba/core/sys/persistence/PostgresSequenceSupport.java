@@ -57,4 +57,11 @@ public class PostgresSequenceSupport implements SequenceSupport {
         Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
         return "select last_value from " + sequenceName.toLowerCase();
     }
-}
\ No newline at end of file
+
+    @Override
+    public String getIncrementSql(String sequenceName) {
+        Preconditions.checkNotNullArgument(sequenceName, "sequenceName is null");
+        return "select cast(increment as bigint) from information_schema.sequences where sequence_name = '"
+                + sequenceName.toLowerCase() + "'";
+    }
+}
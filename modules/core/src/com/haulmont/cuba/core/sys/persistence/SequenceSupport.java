@@ -41,4 +41,13 @@ public interface SequenceSupport {
     String getNextValueSql(String sequenceName);
 
     String getCurrentValueSql(String sequenceName);
+
+    /**
+     * Returns the script selecting the increment of the existing sequence.
+     *
+     * @return script or null if the increment can not be obtained
+     */
+    default String getIncrementSql(String sequenceName) {
+        return null;
+    }
 }
@@ -17,6 +17,7 @@
 
 package com.haulmont.cuba.core;
 
+import com.haulmont.cuba.core.app.BulkCommitStatistics;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.Role;
@@ -42,6 +43,7 @@ public class DataManagerCommitTest {
     private UUID userId;
     private UUID groupId = UUID.fromString("0fa2b1a5-1d68-4d69-9fbd-dff348347f93");
     private UUID userRoleId;
+    private UUID newGroupId;
     private View view;
 
     @Before
@@ -84,6 +86,9 @@ public class DataManagerCommitTest {
     public void tearDown() throws Exception {
         cont.deleteRecord("SEC_USER_ROLE", userRoleId);
         cont.deleteRecord("SEC_USER", userId);
+        if (newGroupId != null) {
+            cont.deleteRecord("SEC_GROUP", newGroupId);
+        }
     }
 
     @Test
@@ -127,4 +132,73 @@ public class DataManagerCommitTest {
         //do second check to make sure isLoaded did not affect attribute fetch status
         assertTrue(!PersistenceHelper.isLoaded(user, "substitutions"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBulkCommit() throws Exception {
+        LoadContext<User> loadContext = LoadContext.create(User.class).setId(userId).setView(view);
+        User user = dataManager.load(loadContext);
+        assertNotNull(user);
+
+        Integer version = user.getVersion();
+        user.setName("testUser-bulk");
+
+        CommitContext commitContext = new CommitContext().setBulk(true);
+        commitContext.addInstanceToCommit(user, view);
+        EntitySet committed = dataManager.commit(commitContext);
+
+        user = committed.get(user);
+        assertNotSame(commitContext.getCommitInstances().iterator().next(), user);
+        assertTrue(PersistenceHelper.isDetached(user));
+        assertEquals(version + 1, (int) user.getVersion());
+        assertEquals("testUser-bulk", user.getName());
+
+        assertTrue(PersistenceHelper.isLoaded(user, "group"));
+        assertTrue(PersistenceHelper.isLoaded(user, "userRoles"));
+        assertFalse(PersistenceHelper.isLoaded(user, "substitutions"));
+        assertEquals(groupId, user.getGroup().getId());
+        assertEquals(1, user.getUserRoles().size());
+    }
+
+    @Test
+    public void testBulkCommitNotReloadedInstances() throws Exception {
+        BulkCommitStatistics statistics = AppBeans.get(BulkCommitStatistics.class);
+        long commits = statistics.getCommits();
+        long reloaded = statistics.getReloaded();
+        long removed = statistics.getRemoved();
+
+        User user = dataManager.load(LoadContext.create(User.class).setId(userId).setView(View.LOCAL));
+        UserRole userRole = dataManager.load(LoadContext.create(UserRole.class).setId(userRoleId).setView(View.LOCAL));
+
+        Group group = cont.metadata().create(Group.class);
+        newGroupId = group.getId();
+        group.setName("bulk-group");
+
+        user.setName("testUser-bulk");
+
+        CommitContext commitContext = new CommitContext().setBulk(true);
+        // reloaded with the local view
+        commitContext.addInstanceToCommit(user);
+        // new instance without a view and removed instance are processed as in the regular mode
+        commitContext.addInstanceToCommit(group);
+        commitContext.addInstanceToRemove(userRole);
+        EntitySet committed = dataManager.commit(commitContext);
+
+        assertEquals(3, committed.size());
+
+        User committedUser = committed.get(user);
+        assertTrue(PersistenceHelper.isDetached(committedUser));
+        assertEquals("testUser-bulk", committedUser.getName());
+
+        Group committedGroup = committed.get(group);
+        assertTrue(PersistenceHelper.isDetached(committedGroup));
+        assertEquals("bulk-group", committedGroup.getName());
+
+        UserRole committedUserRole = committed.get(userRole);
+        assertTrue(PersistenceHelper.isDetached(committedUserRole));
+        assertTrue(committedUserRole.isDeleted());
+
+        assertEquals(commits + 1, statistics.getCommits());
+        assertEquals(reloaded + 1, statistics.getReloaded());
+        assertEquals(removed + 1, statistics.getRemoved());
+    }
+}
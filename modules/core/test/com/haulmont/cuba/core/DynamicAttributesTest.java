@@ -18,10 +18,13 @@ package com.haulmont.cuba.core;
 
 import com.google.common.collect.Lists;
 import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributesManager;
 import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributesManagerAPI;
 import com.haulmont.cuba.core.app.dynamicattributes.PropertyType;
 import com.haulmont.cuba.core.entity.Category;
 import com.haulmont.cuba.core.entity.CategoryAttribute;
+import com.haulmont.cuba.core.entity.CategoryAttributeValue;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.Role;
@@ -30,12 +33,18 @@ import com.haulmont.cuba.security.entity.UserRole;
 import com.haulmont.cuba.testmodel.primary_keys.CompositeKeyEntity;
 import com.haulmont.cuba.testmodel.primary_keys.EntityKey;
 import com.haulmont.cuba.testsupport.TestContainer;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
 import org.junit.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class DynamicAttributesTest {
 
@@ -310,4 +319,66 @@ public class DynamicAttributesTest {
         });
         loadedUser.setValue("+userAttribute", "newName");
     }
+
+    @Test
+    public void testStoreDynamicAttributesOfSeveralEntities() {
+        User loadedUser = dataManager.load(LoadContext.create(User.class).setId(user.getId()).setLoadDynamicAttributes(true));
+        User loadedUser2 = dataManager.load(LoadContext.create(User.class).setId(user2.getId()).setLoadDynamicAttributes(true));
+
+        loadedUser.setValue("+userAttribute", "changedName");
+        loadedUser.setValue("+userGroupAttribute", null);
+        loadedUser2.setValue("+userGroupAttribute", null);
+        loadedUser2.setValue("+userIntCollectionAttribute", Lists.newArrayList(5, 6));
+
+        CategoryAttributeValue newValue = loadedUser2.getDynamicAttributes().get("userIntCollectionAttribute");
+        assertTrue(PersistenceHelper.isNew(newValue));
+
+        dynamicAttributesManagerAPI.storeDynamicAttributes(Arrays.asList(loadedUser, loadedUser2));
+
+        // the instance passed by the caller is not persisted itself
+        assertTrue(PersistenceHelper.isNew(newValue));
+        assertFalse(PersistenceHelper.isManaged(newValue));
+
+        loadedUser = dataManager.load(LoadContext.create(User.class).setId(user.getId()).setLoadDynamicAttributes(true));
+        assertEquals("changedName", loadedUser.getValue("+userAttribute"));
+        assertNull(loadedUser.getValue("+userGroupAttribute"));
+
+        loadedUser2 = dataManager.load(LoadContext.create(User.class).setId(user2.getId()).setLoadDynamicAttributes(true));
+        assertEquals("userName", loadedUser2.getValue("+userAttribute"));
+        assertNull(loadedUser2.getValue("+userGroupAttribute"));
+        List<Integer> intCollection = loadedUser2.getValue("+userIntCollectionAttribute");
+        assertEquals(2, intCollection.size());
+        assertTrue(intCollection.containsAll(Arrays.asList(5, 6)));
+    }
+
+    @Test
+    public void testFetchInBatches() {
+        AtomicInteger queries = new AtomicInteger();
+        MockUp<DynamicAttributesManager> mockUp = new MockUp<DynamicAttributesManager>() {
+            @Mock
+            List<CategoryAttributeValue> loadAttributeValues(Invocation invocation, MetaClass metaClass, List<Object> entityIds) {
+                queries.incrementAndGet();
+                return invocation.proceed();
+            }
+        };
+        try {
+            List<User> users = new ArrayList<>();
+            User loadedUser = dataManager.load(LoadContext.create(User.class).setId(user.getId()));
+            users.add(loadedUser);
+            users.add(metadata.getTools().copy(loadedUser));
+            for (int i = 0; i < 998; i++) {
+                users.add(metadata.create(User.class));
+            }
+
+            dynamicAttributesManagerAPI.fetchDynamicAttributes(users, Collections.emptySet());
+
+            // 999 distinct ids by 500 in a query
+            assertEquals(2, queries.get());
+            assertEquals("userName", users.get(0).getValue("+userAttribute"));
+            assertEquals("userName", users.get(1).getValue("+userAttribute"));
+            assertNull(users.get(2).getValue("+userAttribute"));
+        } finally {
+            mockUp.tearDown();
+        }
+    }
 }
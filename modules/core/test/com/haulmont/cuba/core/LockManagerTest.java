@@ -17,17 +17,20 @@
 
 package com.haulmont.cuba.core;
 
+import com.haulmont.cuba.core.app.ClusterListener;
 import com.haulmont.cuba.core.app.LockManagerAPI;
 import com.haulmont.cuba.core.entity.LockDescriptor;
 import com.haulmont.cuba.core.entity.Server;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.LockInfo;
+import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.testsupport.TestContainer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -73,5 +76,36 @@ public class LockManagerTest {
         lockInfo = lockManager.getLockInfo("sys$Server", entity.getId().toString());
         assertNull(lockInfo);
     }
+
+    @Test
+    public void testLeaseBasedState() throws Exception {
+        AppContext.setProperty("cuba.leaseBasedLocks", "true");
+        try {
+            Server entity = new Server();
+            String id = entity.getId().toString();
+
+            assertNull(lockManager.lock(entity));
+            LockInfo lockInfo = lockManager.getLockInfo("sys$Server", id);
+            assertNotNull(lockInfo);
+
+            @SuppressWarnings("unchecked")
+            ClusterListener<LockInfo> clusterListener = (ClusterListener<LockInfo>) lockManager;
+            byte[] state = clusterListener.getState();
+
+            lockManager.unlock(entity);
+            assertNull(lockManager.getLockInfo("sys$Server", id));
+
+            clusterListener.setState(state);
+            LockInfo restored = lockManager.getLockInfo("sys$Server", id);
+            assertNotNull(restored);
+            assertEquals(lockInfo.getSince(), restored.getSince());
+            assertEquals(lockInfo.getUser().getId(), restored.getUser().getId());
+            assertEquals(lockInfo.getUser().getLogin(), restored.getUser().getLogin());
+
+            lockManager.unlock(entity);
+        } finally {
+            AppContext.setProperty("cuba.leaseBasedLocks", null);
+        }
+    }
 }
 
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core;
+
+import com.haulmont.cuba.core.app.Sequence;
+import com.haulmont.cuba.core.app.SequenceStatistics;
+import com.haulmont.cuba.core.app.Sequences;
+import com.haulmont.cuba.core.app.SequencesImpl;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class SequencesTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private Sequences sequences = AppBeans.get(Sequences.NAME);
+
+    @After
+    public void tearDown() {
+        for (String name : new String[]{"test_bulk", "test_allocation"}) {
+            try {
+                sequences.deleteSequence(Sequence.withName(name));
+            } catch (IllegalStateException e) {
+                // not created
+            }
+        }
+    }
+
+    @Test
+    public void testGetNextValues() {
+        Sequence sequence = Sequence.withName("test_bulk").setStartValue(10).setIncrement(2);
+
+        assertEquals(10, sequences.createNextValue(sequence));
+        assertArrayEquals(new long[]{12, 14, 16, 18}, sequences.getNextValues(sequence, 4));
+        assertEquals(20, sequences.createNextValue(sequence));
+        assertEquals(0, sequences.getNextValues(sequence, 0).length);
+
+        SequenceStatistics statistics = ((SequencesImpl) sequences).getStatistics("test_bulk");
+        assertNotNull(statistics);
+        assertEquals(6, statistics.getDatabaseValues());
+    }
+
+    @Test
+    public void testAllocation() throws Exception {
+        Sequence sequence = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1).setAllocationSize(50);
+
+        Set<Long> values = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> {
+                    for (int j = 0; j < 250; j++) {
+                        assertTrue(values.add(sequences.createNextValue(sequence)));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1000, values.size());
+        for (long value = 1; value <= 1000; value++) {
+            assertTrue(values.contains(value));
+        }
+
+        long[] bulk = sequences.getNextValues(sequence, 10);
+        assertEquals(1001, bulk[0]);
+        assertEquals(1010, bulk[9]);
+
+        SequenceStatistics statistics = ((SequencesImpl) sequences).getStatistics("test_allocation");
+        assertNotNull(statistics);
+        assertEquals(1010, statistics.getAllocatedValues());
+        assertTrue(statistics.getAllocatedBlocks() >= 21);
+        assertTrue(statistics.getAllocatedBlocks() <= 22);
+    }
+
+    @Test
+    public void testSetCurrentValueWithAllocation() {
+        Sequence sequence = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1).setAllocationSize(10);
+
+        assertEquals(1, sequences.createNextValue(sequence));
+
+        sequences.setCurrentValue(sequence, 100);
+        assertEquals(101, sequences.createNextValue(sequence));
+
+        long[] values = sequences.getNextValues(sequence, 30);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(102 + i, values[i]);
+        }
+    }
+
+    @Test
+    public void testSetCurrentValueConcurrently() throws Exception {
+        Sequence sequence = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1).setAllocationSize(2);
+        sequences.createNextValue(sequence);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future[4];
+            for (int i = 0; i < 2; i++) {
+                futures[i] = executor.submit(() -> {
+                    for (int j = 0; j < 500; j++) {
+                        sequences.createNextValue(sequence);
+                    }
+                });
+            }
+            futures[2] = executor.submit(() -> {
+                for (int j = 0; j < 50; j++) {
+                    sequences.setCurrentValue(sequence, j * 1000);
+                }
+            });
+            // creating and deleting another sequence requires the write lock, so readers wait for it
+            Sequence other = Sequence.withName("test_bulk");
+            futures[3] = executor.submit(() -> {
+                for (int j = 0; j < 50; j++) {
+                    sequences.createNextValue(other);
+                    sequences.deleteSequence(other);
+                }
+            });
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testChangedAllocationSize() {
+        Sequence sequence = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1).setAllocationSize(10);
+        assertEquals(1, sequences.createNextValue(sequence));
+
+        // the database sequence keeps the increment of 10, so blocks of 10 values are reserved
+        Sequence changed = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1).setAllocationSize(20);
+        long[] values = sequences.getNextValues(changed, 30);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(11 + i, values[i]);
+        }
+
+        // the sequence without allocation gets the values from the database
+        Sequence plain = Sequence.withName("test_allocation").setStartValue(1).setIncrement(1);
+        assertEquals(1, sequences.createNextValue(plain) % 10);
+
+        String statistics = ((SequencesImpl) sequences).printStatistics();
+        assertTrue(statistics, statistics.contains("test_allocation"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.app.execution.ExecutionContext;
+import com.haulmont.cuba.core.app.execution.ExecutionContextHolder;
+import com.haulmont.cuba.core.app.execution.ExecutionContextImpl;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CrossDataStoreReferenceExecutorTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private CrossDataStoreReferenceExecutor executor;
+
+    private SecurityContext securityContext;
+
+    @Before
+    public void setUp() {
+        executor = new CrossDataStoreReferenceExecutor();
+        executor.serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+        securityContext = AppContext.getSecurityContext();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        ExecutionContextHolder.removeContext();
+        AppContext.setSecurityContext(securityContext);
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingThreads", null);
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingQueueCapacity", null);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertFalse(executor.isAvailable());
+
+        Future<Thread> future = executor.submit(Thread::currentThread);
+
+        assertTrue(future.isDone());
+        assertSame(Thread.currentThread(), future.get());
+        assertNull(executor.executor);
+    }
+
+    @Test
+    public void testContextsArePropagated() throws Exception {
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingThreads", "2");
+        assertTrue(executor.isAvailable());
+
+        ExecutionContext executionContext = new ExecutionContextImpl(Thread.currentThread(), "test", "test", new Date());
+        ExecutionContextHolder.setCurrentContext(executionContext);
+
+        Future<Object[]> future = executor.submit(() -> new Object[]{
+                Thread.currentThread(), AppContext.getSecurityContext(), ExecutionContextHolder.getCurrentContext()
+        });
+        Object[] result = future.get(10, TimeUnit.SECONDS);
+
+        assertNotSame(Thread.currentThread(), result[0]);
+        assertSame(securityContext, result[1]);
+        assertSame(executionContext, result[2]);
+
+        // contexts of the pool thread are cleaned up after the task
+        Future<Object[]> next = executor.executor.submit(() -> new Object[]{
+                AppContext.getSecurityContext(), ExecutionContextHolder.getCurrentContext()
+        });
+        assertArrayEquals(new Object[]{null, null}, next.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNestedTaskIsExecutedInWorkerThread() throws Exception {
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingThreads", "1");
+
+        Future<Boolean> future = executor.submit(() -> {
+            Thread worker = Thread.currentThread();
+            Future<Thread> nested = executor.submit(Thread::currentThread);
+            return !executor.isAvailable() && nested.isDone() && nested.get() == worker;
+        });
+
+        assertTrue(future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedTaskIsExecutedInCallingThread() throws Exception {
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingThreads", "1");
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingQueueCapacity", "1");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            // occupy the only thread and the queue
+            executor.submit(() -> latch.await(10, TimeUnit.SECONDS));
+            executor.submit(() -> latch.await(10, TimeUnit.SECONDS));
+
+            Future<Thread> future = executor.submit(Thread::currentThread);
+
+            assertTrue(future.isDone());
+            assertSame(Thread.currentThread(), future.get());
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testExceptionIsPassedToCaller() throws Exception {
+        AppContext.setProperty("cuba.crossDataStoreReferenceLoadingThreads", "1");
+
+        Future<Object> future = executor.submit(() -> {
+            throw new IllegalStateException("test");
+        });
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.FtsChangeType;
+import com.haulmont.cuba.core.entity.FtsQueue;
+import com.haulmont.cuba.core.entity.Server;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.FtsConfigHelper;
+import com.haulmont.cuba.core.listener.BeforeInsertEntityListener;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.listener.EntityListenerManager;
+import com.haulmont.cuba.testsupport.TestContainer;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class FtsChangeDispatcherTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private FtsChangeDispatcher dispatcher;
+    private TestFtsSender sender = new TestFtsSender();
+
+    @Before
+    public void setUp() {
+        dispatcher = AppBeans.get(FtsChangeDispatcher.NAME);
+        dispatcher.ftsSender = sender;
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.ftsSender = null;
+    }
+
+    @Test
+    public void testCoalesce() {
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        List<FtsChange> changes = FtsChange.coalesce(Arrays.asList(
+                new FtsChange("sec$User", id1, FtsChangeType.INSERT),
+                new FtsChange("sec$User", id2, FtsChangeType.UPDATE),
+                new FtsChange("sec$User", id1, FtsChangeType.UPDATE),
+                new FtsChange("sec$User", id2, FtsChangeType.DELETE),
+                new FtsChange("sec$Group", id1, FtsChangeType.UPDATE)
+        ));
+
+        assertEquals(3, changes.size());
+        assertEquals(id1, changes.get(0).getEntityId());
+        assertEquals(FtsChangeType.INSERT, changes.get(0).getChangeType());
+        assertEquals(id2, changes.get(1).getEntityId());
+        assertEquals(FtsChangeType.DELETE, changes.get(1).getChangeType());
+        assertEquals("sec$Group", changes.get(2).getEntityName());
+    }
+
+    @Test
+    public void testSyncDispatch() {
+        UUID id = UUID.randomUUID();
+        dispatcher.dispatch(Arrays.asList(
+                new FtsChange("sec$User", id, FtsChangeType.UPDATE),
+                new FtsChange("sec$User", id, FtsChangeType.UPDATE)));
+
+        assertEquals(1, sender.batches.size());
+        assertEquals(1, sender.batches.get(0).size());
+    }
+
+    @Test
+    public void testAsyncDispatch() throws Exception {
+        AppContext.setProperty("cuba.ftsAsyncEnqueue", "true");
+        AppContext.setProperty("cuba.ftsAsyncBatchDelayMs", "50");
+        try {
+            for (int i = 0; i < 10; i++) {
+                dispatcher.dispatch(Collections.singletonList(
+                        new FtsChange("sec$User", UUID.randomUUID(), FtsChangeType.INSERT)));
+            }
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (sender.getChangeCount() < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(10, sender.getChangeCount());
+            assertTrue(sender.batches.size() < 10);
+            assertEquals(0, dispatcher.getQueueSize());
+        } finally {
+            AppContext.setProperty("cuba.ftsAsyncEnqueue", null);
+            AppContext.setProperty("cuba.ftsAsyncBatchDelayMs", null);
+        }
+    }
+
+    @Test
+    public void testInstancesRegisteredBySenderAreProcessed() throws Exception {
+        new MockUp<FtsConfigHelper>() {
+            @Mock
+            public boolean getEnabled() {
+                return true;
+            }
+        };
+        EntityListenerManager entityListenerManager = AppBeans.get(EntityListenerManager.class);
+        entityListenerManager.addListener(Server.class, TestServerListener.class);
+        TestServerListener.inserted.clear();
+
+        Server server = new Server();
+        server.setName("ftsTestServer");
+        Server registered = new Server();
+        registered.setName("ftsTestServerRegisteredBySender");
+
+        dispatcher.ftsSender = new TestFtsSender() {
+            @Override
+            public void enqueue(Collection<FtsChange> changes) {
+                super.enqueue(changes);
+                if (batches.size() == 1) {
+                    cont.persistence().getEntityManager().persist(registered);
+                }
+            }
+        };
+        try {
+            cont.persistence().runInTransaction(em -> em.persist(server));
+
+            // BEFORE_INSERT listeners are invoked for the instance persisted by FtsSender in the second pass
+            assertEquals(Arrays.asList(server, registered), TestServerListener.inserted);
+            // and changes of the second pass are dispatched too
+            List<List<FtsChange>> batches = ((TestFtsSender) dispatcher.ftsSender).batches;
+            assertEquals(2, batches.size());
+            assertEquals(1, batches.get(0).size());
+            assertSame(server, batches.get(0).get(0).getEntity());
+            assertEquals(1, batches.get(1).size());
+            assertSame(registered, batches.get(1).get(0).getEntity());
+            assertEquals(FtsChangeType.INSERT, batches.get(1).get(0).getChangeType());
+            assertNotNull(cont.persistence().callInTransaction(em -> em.find(Server.class, registered.getId())));
+        } finally {
+            entityListenerManager.removeListener(Server.class, TestServerListener.class);
+            new QueryRunner(cont.persistence().getDataSource())
+                    .update("delete from SYS_SERVER where NAME like 'ftsTestServer%'");
+        }
+    }
+
+    @Test
+    public void testFtsQueueWriter() throws Exception {
+        FtsQueueWriter writer = AppBeans.get(FtsQueueWriter.NAME);
+        UUID id = UUID.randomUUID();
+        try {
+            int count;
+            try (Transaction tx = cont.persistence().createTransaction()) {
+                count = writer.write(Arrays.asList(
+                        new FtsChange("sec$User", id, FtsChangeType.INSERT),
+                        new FtsChange("test$LongEntity", 10L, FtsChangeType.UPDATE),
+                        new FtsChange("test$StringEntity", "abc", FtsChangeType.DELETE),
+                        new FtsChange(new Server(), FtsChangeType.INSERT) {
+                            @Override
+                            public Object getEntityId() {
+                                return null;
+                            }
+                        }), "testHost");
+                tx.commit();
+            }
+            assertEquals(3, count);
+
+            List<FtsQueue> records = cont.persistence().callInTransaction(em ->
+                    em.createQuery("select q from sys$FtsQueue q where q.sourceHost = 'testHost' order by q.entityName",
+                            FtsQueue.class).getResultList());
+            assertEquals(3, records.size());
+            assertEquals("sec$User", records.get(0).getEntityName());
+            assertEquals(id, records.get(0).getObjectEntityId());
+            assertEquals(FtsChangeType.INSERT, records.get(0).getChangeType());
+            assertEquals(10L, records.get(1).getObjectEntityId());
+            assertEquals(FtsChangeType.UPDATE, records.get(1).getChangeType());
+            assertEquals("abc", records.get(2).getObjectEntityId());
+            assertEquals(FtsChangeType.DELETE, records.get(2).getChangeType());
+            assertNotNull(records.get(0).getCreateTs());
+            assertFalse(records.get(0).getFake());
+        } finally {
+            new QueryRunner(cont.persistence().getDataSource())
+                    .update("delete from SYS_FTS_QUEUE where SOURCE_HOST = 'testHost'");
+        }
+    }
+
+    public static class TestServerListener implements BeforeInsertEntityListener<Server> {
+
+        protected static List<Server> inserted = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onBeforeInsert(Server entity, EntityManager entityManager) {
+            inserted.add(entity);
+        }
+    }
+
+    /**
+     * In-memory stand-in for the FTS queue.
+     */
+    protected static class TestFtsSender implements FtsSender {
+
+        protected List<List<FtsChange>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void enqueue(Collection<FtsChange> changes) {
+            batches.add(new ArrayList<>(changes));
+        }
+
+        public int getChangeCount() {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+
+        @Override
+        public void enqueue(Entity entity, FtsChangeType changeType) {
+            enqueue(Collections.singletonList(new FtsChange(entity, changeType)));
+        }
+
+        @Override
+        public void enqueue(String entityName, Object entityId, FtsChangeType changeType) {
+            enqueue(Collections.singletonList(new FtsChange(entityName, entityId, changeType)));
+        }
+
+        @Override
+        public void enqueueFake(String entityName, Object entityId) {
+        }
+
+        @Override
+        public void emptyQueue(String entityName) {
+        }
+
+        @Override
+        public void emptyFakeQueue(String entityName) {
+        }
+
+        @Override
+        public void emptyQueue() {
+        }
+
+        @Override
+        public void initDefault() {
+        }
+    }
+}
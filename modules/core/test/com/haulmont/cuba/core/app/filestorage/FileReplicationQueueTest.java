@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class FileReplicationQueueTest {
+
+    private File dir;
+    private File journalFile;
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("replication").toFile();
+        journalFile = new File(dir, FileReplicationQueue.JOURNAL_FILE);
+        source = new File(dir, "source.txt");
+        target = new File(dir, "copy/source.txt");
+        FileUtils.write(source, "content", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        FileReplicationQueue queue = new FileReplicationQueue(journalFile, 2, 10, 3, task -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("Test failure");
+            }
+            FileUtils.copyFile(task.getSource(), task.getTarget());
+        });
+        queue.start();
+        try {
+            queue.add(source, target, null, "admin");
+            assertEquals(1, queue.getSize());
+
+            waitFor(() -> queue.getCompletedCount() == 1);
+
+            assertEquals(0, queue.getSize());
+            assertEquals(2, attempts.get());
+            assertEquals(1, queue.getCompletedCount());
+            assertEquals(1, queue.getFailedAttemptsCount());
+            assertEquals(0, queue.getFailedCount());
+            assertEquals("content", FileUtils.readFileToString(target, StandardCharsets.UTF_8));
+            assertEquals(0, journalFile.length());
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void testResumeAfterRestart() throws Exception {
+        FileReplicationQueue queue = new FileReplicationQueue(journalFile, 1, 10, 1, task -> {
+            throw new IOException("Test failure");
+        });
+        queue.start();
+        queue.add(source, target, null, "admin");
+        waitFor(() -> queue.getFailedCount() == 1);
+        queue.stop();
+
+        assertFalse(target.exists());
+        assertTrue(journalFile.length() > 0);
+
+        FileReplicationQueue restartedQueue = new FileReplicationQueue(journalFile, 1, 10, 1,
+                task -> FileUtils.copyFile(task.getSource(), task.getTarget()));
+        restartedQueue.start();
+        try {
+            waitFor(() -> restartedQueue.getCompletedCount() == 1);
+            assertEquals(0, restartedQueue.getSize());
+            assertEquals("content", FileUtils.readFileToString(target, StandardCharsets.UTF_8));
+            assertEquals(0, journalFile.length());
+        } finally {
+            restartedQueue.stop();
+        }
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!condition.getAsBoolean() && System.currentTimeMillis() - start < 10000) {
+            Thread.sleep(50);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
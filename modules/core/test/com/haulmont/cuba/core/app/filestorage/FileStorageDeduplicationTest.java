@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FileStorageDeduplicationTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("filestorage").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(root);
+    }
+
+    @Test
+    public void testDuplicatesAreLinkedToBlob() throws Exception {
+        TestFileStorage storage = new TestFileStorage(root, true);
+        assumeTrue(storage.isDeduplicationSupported(root));
+
+        byte[] content = "content".getBytes();
+        File file1 = save(storage, createFileDescriptor(), content);
+        File file2 = save(storage, createFileDescriptor(), content);
+
+        assertTrue(Files.isSameFile(file1.toPath(), file2.toPath()));
+        File blob = storage.getBlobFile(root, DigestUtils.sha256Hex(content));
+        assertTrue(Files.isSameFile(blob.toPath(), file1.toPath()));
+        assertEquals(3, storage.getLinkCount(blob));
+        assertEquals(blob.getName(), storage.readContentHash(file1));
+        assertEquals(blob.getName(), storage.readContentHash(file2));
+        assertEquals(1, listBlobs().size());
+    }
+
+    @Test
+    public void testLargeDuplicatesAreLinkedToBlob() throws Exception {
+        TestFileStorage storage = new TestFileStorage(root, true);
+        assumeTrue(storage.isDeduplicationSupported(root));
+
+        byte[] content = new byte[FileStorage.DEDUPLICATION_BUFFER_SIZE * 2 + 10];
+        Arrays.fill(content, (byte) 1);
+        File file1 = save(storage, createFileDescriptor(), content);
+        File file2 = save(storage, createFileDescriptor(), content);
+
+        assertTrue(Files.isSameFile(file1.toPath(), file2.toPath()));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file2));
+        assertEquals(1, listBlobs().size());
+        // temporary files are not left
+        assertFalse(new File(file1.getParentFile(), file1.getName() + FileStorage.UPLOAD_SUFFIX).exists());
+        assertFalse(new File(file2.getParentFile(), file2.getName() + FileStorage.UPLOAD_SUFFIX).exists());
+    }
+
+    @Test
+    public void testRemoveDoesNotReadFile() throws Exception {
+        TestFileStorage storage = new TestFileStorage(root, true);
+        assumeTrue(storage.isDeduplicationSupported(root));
+
+        FileDescriptor fd1 = createFileDescriptor();
+        FileDescriptor fd2 = createFileDescriptor();
+        File file1 = save(storage, fd1, "content".getBytes());
+        File file2 = save(storage, fd2, "content".getBytes());
+        File blob = storage.getBlobFile(root, storage.readContentHash(file1));
+
+        // the blob is found by the saved hash
+        storage.hashingForbidden = true;
+
+        storage.removeFile(fd1);
+        assertFalse(file1.exists());
+        assertFalse(storage.getContentHashFile(file1).exists());
+        assertTrue(blob.exists());
+
+        storage.removeFile(fd2);
+        assertFalse(file2.exists());
+        assertFalse(storage.getContentHashFile(file2).exists());
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testOverwriteLinkedFile() throws Exception {
+        TestFileStorage storage = new TestFileStorage(root, true);
+        assumeTrue(storage.isDeduplicationSupported(root));
+
+        FileDescriptor fd1 = createFileDescriptor();
+        File file1 = save(storage, fd1, "content".getBytes());
+        File file2 = save(storage, createFileDescriptor(), "content".getBytes());
+
+        save(storage, fd1, "changed".getBytes());
+
+        assertEquals("changed", FileUtils.readFileToString(file1));
+        assertEquals("content", FileUtils.readFileToString(file2));
+        assertFalse(Files.isSameFile(file1.toPath(), file2.toPath()));
+        assertEquals(2, listBlobs().size());
+    }
+
+    @Test
+    public void testFileSystemWithoutLinkCount() throws Exception {
+        TestFileStorage storage = new TestFileStorage(root, false);
+        assertFalse(storage.isDeduplicationSupported(root));
+
+        FileDescriptor fd1 = createFileDescriptor();
+        File file1 = save(storage, fd1, "content".getBytes());
+        File file2 = save(storage, createFileDescriptor(), "content".getBytes());
+
+        // files are stored without deduplication
+        assertFalse(Files.isSameFile(file1.toPath(), file2.toPath()));
+        assertFalse(storage.getContentHashFile(file1).exists());
+        assertTrue(listBlobs().isEmpty());
+
+        // overwriting doesn't affect other files
+        save(storage, fd1, "changed".getBytes());
+        assertEquals("changed", FileUtils.readFileToString(file1));
+        assertEquals("content", FileUtils.readFileToString(file2));
+
+        storage.removeFile(fd1);
+        assertFalse(file1.exists());
+
+        assertTrue(storage.deduplicateFiles().contains("doesn't support deduplication"));
+    }
+
+    private File save(FileStorage storage, FileDescriptor fd, byte[] content) throws Exception {
+        storage.saveFile(fd, content);
+        File file = new File(storage.getStorageDir(root, fd), FileStorage.getFileName(fd));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+        return file;
+    }
+
+    private Collection<File> listBlobs() {
+        File blobsDir = new File(root, FileStorage.BLOBS_DIR);
+        return blobsDir.exists() ? FileUtils.listFiles(blobsDir, null, true) : Collections.emptyList();
+    }
+
+    private FileDescriptor createFileDescriptor() {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setCreateDate(new Date());
+        fd.setName("FileStorageDeduplicationTest");
+        fd.setExtension("txt");
+        return fd;
+    }
+
+    private static class TestFileStorage extends FileStorage {
+
+        private final boolean linkCountSupported;
+
+        private boolean hashingForbidden;
+
+        private TestFileStorage(File root, boolean linkCountSupported) {
+            this.linkCountSupported = linkCountSupported;
+            this.storageRoots = new File[]{root};
+            this.isDeduplicatingFileStorage = true;
+            this.isImmutableFileStorage = false;
+        }
+
+        @Override
+        protected int getLinkCount(File file) {
+            return linkCountSupported ? super.getLinkCount(file) : -1;
+        }
+
+        @Override
+        protected String getContentHash(File file) throws IOException {
+            if (hashingForbidden) {
+                throw new IllegalStateException("File " + file + " is read to compute its hash");
+            }
+            return super.getContentHash(file);
+        }
+
+        @Override
+        protected String getLogUser() {
+            return "test";
+        }
+
+        @Override
+        protected void writeLog(File file, boolean remove, String user) {
+        }
+    }
+}
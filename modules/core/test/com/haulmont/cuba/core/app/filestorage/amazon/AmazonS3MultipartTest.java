@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage.amazon;
+
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.FileStorageException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests multipart upload and ranged download against a minimal in-process S3-compatible server.
+ */
+public class AmazonS3MultipartTest {
+
+    private static final int PART_SIZE = AmazonS3FileStorage.MIN_PART_SIZE;
+
+    private FakeS3Server server;
+    private AmazonS3FileStorage fileStorage;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeS3Server();
+
+        TestConfig config = new TestConfig();
+        config.endpointUrl = "http://localhost:" + server.getPort();
+
+        fileStorage = new AmazonS3FileStorage();
+        fileStorage.amazonS3Config = config;
+    }
+
+    @After
+    public void tearDown() {
+        fileStorage.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void testMultipartUploadAndRangedDownload() throws Exception {
+        byte[] content = createContent(PART_SIZE * 2 + 1000);
+        FileDescriptor fd = createFileDescriptor(content.length);
+
+        // the first attempt of the second part fails
+        server.failures.put(2, 1);
+
+        fileStorage.saveStream(fd, new ByteArrayInputStream(content));
+
+        assertEquals(3, fileStorage.getUploadedParts());
+        assertEquals(content.length, fileStorage.getUploadedBytes());
+        assertEquals(1, fileStorage.getRetriedRequests());
+        assertEquals(1, server.objects.size());
+        assertArrayEquals(content, server.objects.values().iterator().next());
+
+        ((TestConfig) fileStorage.amazonS3Config).partSize = 1024 * 1024;
+        try (InputStream inputStream = fileStorage.openStream(fd)) {
+            assertArrayEquals(content, IOUtils.toByteArray(inputStream));
+        }
+        assertEquals(11, fileStorage.getDownloadedRanges());
+        assertEquals(content.length, fileStorage.getDownloadedBytes());
+    }
+
+    @Test
+    public void testAbortOnFailure() throws Exception {
+        byte[] content = createContent(PART_SIZE * 3);
+        FileDescriptor fd = createFileDescriptor(content.length);
+
+        server.failures.put(2, Integer.MAX_VALUE);
+
+        try {
+            fileStorage.saveStream(fd, new ByteArrayInputStream(content));
+            fail("FileStorageException expected");
+        } catch (FileStorageException e) {
+            // expected
+        }
+
+        assertEquals(1, fileStorage.getAbortedUploads());
+        assertEquals(1, server.abortedUploads.get());
+        assertTrue(server.objects.isEmpty());
+    }
+
+    @Test
+    public void testSmallFile() throws Exception {
+        byte[] content = "small file".getBytes(StandardCharsets.UTF_8);
+        FileDescriptor fd = createFileDescriptor(content.length);
+
+        fileStorage.saveFile(fd, content);
+        assertEquals(0, fileStorage.getUploadedParts());
+        assertArrayEquals(content, fileStorage.loadFile(fd));
+        assertEquals(0, fileStorage.getDownloadedRanges());
+    }
+
+    @Test
+    public void testFileNotFound() throws Exception {
+        FileDescriptor fd = createFileDescriptor(PART_SIZE * 2);
+        try {
+            fileStorage.openStream(fd);
+            fail("FileStorageException expected");
+        } catch (FileStorageException e) {
+            assertEquals(FileStorageException.Type.FILE_NOT_FOUND, e.getType());
+        }
+    }
+
+    private FileDescriptor createFileDescriptor(long size) {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setCreateDate(new Date());
+        fd.setSize(size);
+        fd.setName("AmazonS3MultipartTest");
+        fd.setExtension("bin");
+        return fd;
+    }
+
+    private byte[] createContent(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static class TestConfig implements AmazonS3Config {
+        String endpointUrl;
+        int partSize = PART_SIZE;
+
+        @Override
+        public String getAccessKey() {
+            return "accessKey";
+        }
+
+        @Override
+        public String getSecretAccessKey() {
+            return "secretAccessKey";
+        }
+
+        @Override
+        public String getRegionName() {
+            return "us-east-1";
+        }
+
+        @Override
+        public String getBucket() {
+            return "test";
+        }
+
+        @Override
+        public int getChunkSize() {
+            return 8192;
+        }
+
+        @Override
+        public String getEndpointUrl() {
+            return endpointUrl;
+        }
+
+        @Override
+        public int getPartSize() {
+            return partSize;
+        }
+
+        @Override
+        public int getParallelism() {
+            return 4;
+        }
+
+        @Override
+        public int getMaxRetries() {
+            return 2;
+        }
+    }
+
+    /**
+     * Supports the subset of S3 API used by the storage, signatures are not verified.
+     */
+    private static class FakeS3Server {
+
+        private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+        final Map<Integer, Integer> failures = new ConcurrentHashMap<>();
+        final AtomicInteger abortedUploads = new AtomicInteger();
+
+        private final HttpServer httpServer;
+
+        FakeS3Server() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            httpServer.createContext("/", this::handle);
+            httpServer.start();
+        }
+
+        int getPort() {
+            return httpServer.getAddress().getPort();
+        }
+
+        void stop() {
+            httpServer.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String key = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+
+            if ("POST".equals(method) && query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                send(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                        + "</UploadId></InitiateMultipartUploadResult>");
+            } else if ("PUT".equals(method) && query.containsKey("uploadId")) {
+                int partNumber = Integer.parseInt(query.get("partNumber"));
+                Integer remainingFailures = failures.get(partNumber);
+                if (remainingFailures != null && remainingFailures > 0) {
+                    failures.put(partNumber, remainingFailures - 1);
+                    send(exchange, 500, "<Error><Code>InternalError</Code></Error>");
+                    return;
+                }
+                uploads.get(query.get("uploadId")).put(partNumber, body);
+                exchange.getResponseHeaders().add("ETag", "\"" + partNumber + "\"");
+                send(exchange, 200, "");
+            } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                Matcher matcher = Pattern.compile("<PartNumber>(\\d+)</PartNumber>")
+                        .matcher(new String(body, StandardCharsets.UTF_8));
+                while (matcher.find()) {
+                    content.write(parts.get(Integer.parseInt(matcher.group(1))));
+                }
+                objects.put(key, content.toByteArray());
+                send(exchange, 200, "<CompleteMultipartUploadResult/>");
+            } else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                abortedUploads.incrementAndGet();
+                send(exchange, 204, "");
+            } else if ("PUT".equals(method)) {
+                objects.put(key, decodeChunked(body));
+                send(exchange, 200, "");
+            } else if ("GET".equals(method)) {
+                byte[] content = objects.get(key);
+                if (content == null) {
+                    send(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range == null) {
+                    send(exchange, 200, content);
+                    return;
+                }
+                Matcher matcher = RANGE_PATTERN.matcher(range);
+                assertTrue(matcher.matches());
+                int start = Integer.parseInt(matcher.group(1));
+                int end = matcher.group(2).isEmpty() ? content.length - 1
+                        : Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+                if (start >= content.length) {
+                    send(exchange, 416, "");
+                    return;
+                }
+                send(exchange, 206, Arrays.copyOfRange(content, start, end + 1));
+            } else if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(objects.containsKey(key) ? 200 : 404, -1);
+                exchange.close();
+            } else if ("DELETE".equals(method)) {
+                objects.remove(key);
+                send(exchange, 204, "");
+            } else {
+                send(exchange, 400, "");
+            }
+        }
+
+        private Map<String, String> parseQuery(String query) {
+            Map<String, String> result = new HashMap<>();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    result.put(StringUtils.substringBefore(pair, "="), StringUtils.substringAfter(pair, "="));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Decodes the body of a chunked-signed upload: {@code <hex size>;chunk-signature=<signature>\r\n<data>\r\n}.
+         */
+        private byte[] decodeChunked(byte[] body) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            int position = 0;
+            while (position < body.length) {
+                int lineEnd = position;
+                while (body[lineEnd] != '\r') {
+                    lineEnd++;
+                }
+                String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+                int size = Integer.parseInt(StringUtils.substringBefore(header, ";"), 16);
+                content.write(body, lineEnd + 2, size);
+                position = lineEnd + 2 + size + 2;
+            }
+            return content.toByteArray();
+        }
+
+        private void send(HttpExchange exchange, int status, String content) throws IOException {
+            send(exchange, status, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void send(HttpExchange exchange, int status, byte[] content) throws IOException {
+            // connections are not reused, so failures of stale connections don't affect the number of retries
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+            exchange.getResponseBody().write(content);
+            exchange.close();
+        }
+    }
+}
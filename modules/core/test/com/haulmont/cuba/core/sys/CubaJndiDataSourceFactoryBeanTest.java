@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.global.Stores;
+import com.haulmont.cuba.core.sys.jdbc.ProxyDataSource;
+import com.haulmont.cuba.core.sys.jdbc.ReadReplicaDataSource;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CubaJndiDataSourceFactoryBeanTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private Map<String, Object> jndi = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        for (String name : new String[]{"java:comp/env/jdbc/test_main", "java:comp/env/jdbc/test_main_replica",
+                "java:comp/env/jdbc/test_db1", "java:comp/env/jdbc/test_db1_replica"}) {
+            JDBCDataSource dataSource = new JDBCDataSource();
+            dataSource.setUrl("jdbc:hsqldb:mem:" + name);
+            jndi.put(name, dataSource);
+        }
+        AppContext.setProperty("cuba.dataSourceJndiName_testDb1", "java:comp/env/jdbc/test_db1");
+        AppContext.setProperty("cuba.dataSourceReplicaJndiNames", "java:comp/env/jdbc/test_main_replica");
+    }
+
+    @After
+    public void tearDown() {
+        AppContext.setProperty("cuba.dataSourceJndiName_testDb1", null);
+        AppContext.setProperty("cuba.dataSourceReplicaJndiNames", null);
+        AppContext.setProperty("cuba.dataSourceReplicaJndiNames_testDb1", null);
+    }
+
+    @Test
+    public void testAdditionalStoreDoesNotUseMainReplicas() throws Exception {
+        Object dataSource = createFactoryBean("cuba.dataSourceJndiName_testDb1").lookupWithFallback();
+
+        assertTrue(dataSource instanceof ProxyDataSource);
+    }
+
+    @Test
+    public void testAdditionalStoreReplicas() throws Exception {
+        AppContext.setProperty("cuba.dataSourceReplicaJndiNames_testDb1", "java:comp/env/jdbc/test_db1_replica");
+
+        Object dataSource = createFactoryBean("cuba.dataSourceJndiName_testDb1").lookupWithFallback();
+
+        assertTrue(dataSource instanceof ReadReplicaDataSource);
+        ReadReplicaDataSource replicaDataSource = (ReadReplicaDataSource) dataSource;
+        assertEquals(1, replicaDataSource.getReplicas().size());
+        assertEquals("java:comp/env/jdbc/test_db1_replica", replicaDataSource.getReplicas().get(0).getName());
+    }
+
+    @Test
+    public void testStoreName() {
+        assertEquals(Stores.MAIN, createFactoryBean("cuba.dataSourceJndiName").getStoreName());
+        assertEquals("testDb1", createFactoryBean("cuba.dataSourceJndiName_testDb1").getStoreName());
+        assertNull(createFactoryBean("custom.dataSourceJndiName").getStoreName());
+
+        TestFactoryBean factoryBean = createFactoryBean("custom.dataSourceJndiName");
+        factoryBean.setStoreName("testDb1");
+        assertEquals("testDb1", factoryBean.getStoreName());
+    }
+
+    private TestFactoryBean createFactoryBean(String jndiNameAppProperty) {
+        TestFactoryBean factoryBean = new TestFactoryBean();
+        factoryBean.setJndiNameAppProperty(jndiNameAppProperty);
+        factoryBean.setResourceRef(true);
+        return factoryBean;
+    }
+
+    private class TestFactoryBean extends CubaJndiDataSourceFactoryBean {
+        @Override
+        protected <T> T lookup(String jndiName, Class<T> requiredType) throws NamingException {
+            Object object = jndi.get(convertJndiName(jndiName));
+            if (object == null) {
+                throw new NameNotFoundException(jndiName);
+            }
+            return requiredType != null ? requiredType.cast(object) : (T) object;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Query;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QueryPlanCacheTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private QueryPlanCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = AppBeans.get(QueryPlanCache.class);
+        cache.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AppContext.setProperty("cuba.queryPlanCache.maxSize", null);
+        cache.reset();
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        loadUsers("admin");
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        // same query with another parameter value uses the same plan
+        loadUsers("anonymous");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+
+        // null parameter value changes the shape of the query
+        loadUsers(null);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+
+        loadUsers("admin");
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() {
+        AppContext.setProperty("cuba.queryPlanCache.maxSize", "2");
+        cache.reset();
+
+        cache.put("q1", createPlan("q1"));
+        cache.put("q2", createPlan("q2"));
+        assertNotNull(cache.get("q1"));
+
+        cache.put("q3", createPlan("q3"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+
+        // least recently used plan is evicted
+        assertNull(cache.get("q2"));
+        assertNotNull(cache.get("q1"));
+        assertNotNull(cache.get("q3"));
+    }
+
+    @Test
+    public void testDisabled() {
+        AppContext.setProperty("cuba.queryPlanCache.maxSize", "0");
+        cache.reset();
+        assertFalse(cache.isEnabled());
+
+        loadUsers("admin");
+        loadUsers("admin");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testPrintStatistics() {
+        loadUsers("admin");
+        loadUsers("admin");
+        String statistics = cache.printStatistics();
+        assertTrue(statistics, statistics.contains("hits=1"));
+        assertTrue(statistics, statistics.contains("misses=1"));
+    }
+
+    private void loadUsers(String login) {
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+            Query query = em.createQuery("select u from sec$User u where u.login = :login");
+            query.setParameter("login", login);
+            query.getResultList();
+            tx.commit();
+        }
+    }
+
+    private QueryPlanCache.QueryPlan createPlan(String queryString) {
+        return new QueryPlanCache.QueryPlan(queryString, Collections.emptySet(), Collections.emptyList());
+    }
+}
@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.sys;
 
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.SecurityState;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.testsupport.TestContainer;
@@ -25,12 +26,17 @@ import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 public class SecurityTokenManagerTest {
 
+    private static final Logger log = LoggerFactory.getLogger(SecurityTokenManagerTest.class);
+
     @ClassRule
     public static TestContainer testContainer = TestContainer.Common.INSTANCE;
 
@@ -58,4 +64,121 @@ public class SecurityTokenManagerTest {
         Assert.assertEquals(id3, userRoles.get(2));
         Assert.assertEquals(id4, userRoles.get(3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBinaryToken() throws Exception {
+        AppContext.setProperty("cuba.binarySecurityToken", "true");
+        try {
+            assertRoundTrip();
+        } finally {
+            AppContext.setProperty("cuba.binarySecurityToken", null);
+        }
+    }
+
+    @Test
+    public void testJsonToken() throws Exception {
+        assertRoundTrip();
+    }
+
+    @Test
+    public void testReadJsonTokenInBinaryMode() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user = new User();
+        UUID id = UUID.randomUUID();
+        securityTokenManager.addFiltered(user, "userRoles", id);
+
+        securityTokenManager.writeSecurityToken(user);
+        AppContext.setProperty("cuba.binarySecurityToken", "true");
+        try {
+            securityTokenManager.readSecurityToken(user);
+        } finally {
+            AppContext.setProperty("cuba.binarySecurityToken", null);
+        }
+
+        List<Object> userRoles = (List<Object>) BaseEntityInternalAccess.getFilteredData(user).get("userRoles");
+        Assert.assertEquals(Arrays.asList(id), userRoles);
+    }
+
+    @Test
+    public void testAuthenticatedToken() throws Exception {
+        AppContext.setProperty("cuba.authenticatedSecurityToken", "true");
+        try {
+            assertRoundTrip();
+
+            SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+            User user = new User();
+            securityTokenManager.addFiltered(user, "userRoles", UUID.randomUUID());
+            securityTokenManager.writeSecurityToken(user);
+
+            SecurityState securityState = BaseEntityInternalAccess.getSecurityState(user);
+            byte[] token = BaseEntityInternalAccess.getSecurityToken(securityState);
+            token[token.length - 1] ^= 1;
+            try {
+                securityTokenManager.readSecurityToken(user);
+                Assert.fail("Modified token must be rejected");
+            } catch (SecurityTokenException e) {
+                // expected
+            }
+        } finally {
+            AppContext.setProperty("cuba.authenticatedSecurityToken", null);
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkTokenFormats() throws Exception {
+        for (String binary : new String[]{"false", "true", "false", "true"}) {
+            AppContext.setProperty("cuba.binarySecurityToken", binary);
+            try {
+                SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+                User user = new User();
+                for (int i = 0; i < 20; i++) {
+                    securityTokenManager.addFiltered(user, "userRoles", UUID.randomUUID());
+                }
+                BaseEntityInternalAccess.setReadonlyAttributes(
+                        BaseEntityInternalAccess.getOrCreateSecurityState(user), new String[]{"login", "name"});
+
+                int count = 100_000;
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    securityTokenManager.writeSecurityToken(user);
+                }
+                long writeTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    securityTokenManager.readSecurityToken(user);
+                }
+                long readTime = System.nanoTime() - start;
+                int size = BaseEntityInternalAccess.getSecurityToken(user).length;
+
+                log.info("binary={}: write {} ns/op, read {} ns/op, token {} bytes",
+                        binary, writeTime / count, readTime / count, size);
+            } finally {
+                AppContext.setProperty("cuba.binarySecurityToken", null);
+            }
+        }
+    }
+
+    protected void assertRoundTrip() {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user = new User();
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        securityTokenManager.addFiltered(user, "userRoles", id1);
+        securityTokenManager.addFiltered(user, "userRoles", id2);
+        SecurityState securityState = BaseEntityInternalAccess.getOrCreateSecurityState(user);
+        BaseEntityInternalAccess.setReadonlyAttributes(securityState, new String[]{"login"});
+        BaseEntityInternalAccess.setHiddenAttributes(securityState, new String[]{"password"});
+
+        securityTokenManager.writeSecurityToken(user);
+        BaseEntityInternalAccess.setReadonlyAttributes(securityState, new String[0]);
+        BaseEntityInternalAccess.setHiddenAttributes(securityState, new String[0]);
+        securityTokenManager.readSecurityToken(user);
+
+        List<Object> userRoles = (List<Object>) BaseEntityInternalAccess.getFilteredData(user).get("userRoles");
+        Assert.assertEquals(Arrays.asList(id1, id2), userRoles);
+        Assert.assertEquals(Arrays.asList("login"), Arrays.asList(BaseEntityInternalAccess.getFilteredAttributes(user)));
+        Assert.assertTrue(securityState.getReadonlyAttributes().contains("login"));
+        Assert.assertTrue(securityState.getHiddenAttributes().contains("password"));
+    }
+}
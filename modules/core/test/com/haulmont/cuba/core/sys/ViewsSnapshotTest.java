@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.bali.util.Dom4j;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.io.FileUtils;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ViewsSnapshotTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private AbstractViewRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = (AbstractViewRepository) cont.metadata().getViewRepository();
+        try (InputStream stream = ViewRepository.class.getResourceAsStream("test.view.xml")) {
+            repository.deployViews(stream);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Document document = repository.writeSnapshot("hash", Collections.singletonList("test-views.xml"));
+        Element rootElem = Dom4j.readDocument(Dom4j.writeDocument(document, false)).getRootElement();
+
+        Map<MetaClass, Map<String, View>> views = repository.readSnapshot(rootElem);
+        assertNotNull(views);
+
+        View original = repository.getView(User.class, "test");
+        View view = views.get(cont.metadata().getClassNN(User.class)).get("test");
+        assertNotNull(view);
+        assertEquals(User.class, view.getEntityClass());
+        assertEquals(propertyNames(original), propertyNames(view));
+
+        View roleView = view.getProperty("userRoles").getView().getProperty("role").getView();
+        assertNotNull(roleView.getProperty("name"));
+        assertEquals(original.getProperty("userRoles").getFetchMode(), view.getProperty("userRoles").getFetchMode());
+    }
+
+    @Test
+    public void testUnknownEntityClass() {
+        Element rootElem = repository.writeSnapshot("hash", Collections.emptyList()).getRootElement();
+        Dom4j.elements(rootElem, "view").get(0).addAttribute("class", "com.company.UnknownEntity");
+
+        assertNull(repository.readSnapshot(rootElem));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        String configName = AppContext.getProperty("cuba.viewsConfig");
+        String location = "views-snapshot-test.xml";
+        File file = new File(AppContext.getProperty("cuba.confDir"), location);
+        try {
+            repository.getAll();
+            repository.saveSnapshot(location, configName);
+            assertTrue(file.exists());
+
+            AbstractViewRepository restored = createRepository();
+            assertTrue(restored.loadSnapshot(location, configName));
+            assertNotNull(restored.storage.get(cont.metadata().getClassNN(User.class)).get("test"));
+
+            // views files changed
+            String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+            Element rootElem = Dom4j.readDocument(content).getRootElement();
+            rootElem.addAttribute("hash", "outdated");
+            FileUtils.writeStringToFile(file, Dom4j.writeDocument(rootElem.getDocument(), false),
+                    StandardCharsets.UTF_8);
+
+            restored = createRepository();
+            assertFalse(restored.loadSnapshot(location, configName));
+            assertTrue(restored.storage.isEmpty());
+        } finally {
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private AbstractViewRepository createRepository() {
+        AbstractViewRepository result = new AbstractViewRepository();
+        result.metadata = cont.metadata();
+        result.resources = AppBeans.get(Resources.NAME);
+        return result;
+    }
+
+    private List<String> propertyNames(View view) {
+        List<String> result = new ArrayList<>();
+        for (ViewProperty property : view.getProperties()) {
+            result.add(property.getName());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jdbc;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ReadReplicaDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @Before
+    public void setUp() throws Exception {
+        primary = createDatabase("replica_test_primary");
+        replica = createDatabase("replica_test_replica");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReadReplicaRouting.setActive(false);
+        shutdown(primary);
+        shutdown(replica);
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        ReadReplicaDataSource dataSource = new ReadReplicaDataSource(primary,
+                Collections.singletonList(new ReadReplicaDataSource.Replica("replica", replica)));
+
+        assertEquals("replica_test_primary", queryName(dataSource));
+
+        ReadReplicaRouting.setActive(true);
+        assertEquals("replica_test_replica", queryName(dataSource));
+
+        ReadReplicaRouting.setActive(false);
+        assertEquals("replica_test_primary", queryName(dataSource));
+
+        assertEquals(2, dataSource.getPrimaryConnections());
+        assertEquals(1, dataSource.getReplicaConnections());
+        assertEquals(0, dataSource.getFallbacks());
+    }
+
+    @Test
+    public void testFallbackOnFailure() throws Exception {
+        JDBCDataSource failing = new JDBCDataSource();
+        failing.setUrl("jdbc:hsqldb:mem:replica_test_missing;ifexists=true");
+        failing.setUser("sa");
+
+        ReadReplicaDataSource.Replica failingReplica = new ReadReplicaDataSource.Replica("failing", failing);
+        ReadReplicaDataSource.Replica workingReplica = new ReadReplicaDataSource.Replica("replica", replica);
+        ReadReplicaDataSource dataSource = new ReadReplicaDataSource(primary, Arrays.asList(failingReplica, workingReplica));
+        dataSource.setCheckIntervalMs(60000);
+
+        ReadReplicaRouting.setActive(true);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica_test_replica", queryName(dataSource));
+        }
+        assertEquals(1, failingReplica.getFailures());
+        assertTrue(failingReplica.isExcluded());
+        assertEquals(4, workingReplica.getConnections());
+
+        ReadReplicaDataSource onlyFailing = new ReadReplicaDataSource(primary,
+                Collections.singletonList(new ReadReplicaDataSource.Replica("failing", failing)));
+        assertEquals("replica_test_primary", queryName(onlyFailing));
+        assertEquals(1, onlyFailing.getFallbacks());
+    }
+
+    @Test
+    public void testLagTolerance() throws Exception {
+        ReadReplicaDataSource.Replica lagging = new ReadReplicaDataSource.Replica("replica", replica);
+        ReadReplicaDataSource dataSource = new ReadReplicaDataSource(primary, Collections.singletonList(lagging));
+        dataSource.setLagQuery("select lag_ms from replica_lag");
+        dataSource.setMaxLagMs(1000);
+        dataSource.setCheckIntervalMs(60000);
+
+        ReadReplicaRouting.setActive(true);
+
+        execute(replica, "insert into replica_lag values (500)");
+        assertEquals("replica_test_replica", queryName(dataSource));
+        assertEquals(500, lagging.getLag());
+
+        // the lag is not checked again within the check interval
+        execute(replica, "update replica_lag set lag_ms = 5000");
+        assertEquals("replica_test_replica", queryName(dataSource));
+
+        dataSource.setCheckIntervalMs(0);
+        assertEquals("replica_test_primary", queryName(dataSource));
+        assertEquals(1, lagging.getLagExclusions());
+        assertEquals(1, dataSource.getFallbacks());
+    }
+
+    private DataSource createDatabase(String name) throws SQLException {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:" + name);
+        dataSource.setUser("sa");
+        execute(dataSource, "create table db_name (name varchar(50))");
+        execute(dataSource, "insert into db_name values ('" + name + "')");
+        execute(dataSource, "create table replica_lag (lag_ms bigint)");
+        return dataSource;
+    }
+
+    private void shutdown(DataSource dataSource) throws SQLException {
+        execute(dataSource, "shutdown");
+    }
+
+    private void execute(DataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private String queryName(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select name from db_name")) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+}
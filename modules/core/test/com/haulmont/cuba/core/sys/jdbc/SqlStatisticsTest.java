@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jdbc;
+
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SqlStatisticsTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private SqlStatistics statistics;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        statistics = new SqlStatistics();
+        statistics.serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+        statistics.init();
+        statistics.setEnabled(true);
+
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:sqlStatisticsTest");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        connection = new ProxyDataSource(dataSource, statistics).getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create table STATISTICS_TEST (ID integer, NAME varchar(50))");
+        }
+        statistics.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AppContext.setProperty("cuba.sqlStatistics.maxStatements", null);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("drop table STATISTICS_TEST");
+        }
+        connection.close();
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("select * from T where ID = ? and NAME = ?",
+                SqlStatistics.normalize("select *\n  from T\twhere ID = 10 and NAME = 'it''s'"));
+        assertEquals("select T1.ID from T1 where T1.ID in (?, ...)",
+                SqlStatistics.normalize("select T1.ID from T1 where T1.ID in (?, ?,?)"));
+        assertEquals("select T1.ID from T1 where T1.ID in (?, ...)",
+                SqlStatistics.normalize("select T1.ID from T1 where T1.ID in (1, 2)"));
+    }
+
+    @Test
+    public void testQueryRowsAndParameters() throws Exception {
+        insertRows(3);
+
+        try (PreparedStatement statement = connection.prepareStatement("select ID from STATISTICS_TEST where ID > ?")) {
+            statement.setInt(1, 0);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    assertSame(statement, resultSet.getStatement());
+                }
+                // the execution is recorded when the result set is closed
+                assertNull(find("select ID from STATISTICS_TEST where ID > ?"));
+            }
+        }
+
+        SqlStatistics.StatementStatistics select = find("select ID from STATISTICS_TEST where ID > ?");
+        assertNotNull(select);
+        assertEquals(1, select.getExecutionCount());
+        assertEquals(0, select.getErrorCount());
+        assertEquals(3, select.getRowCount());
+        assertTrue(select.getTotalTimeNanos() > 0);
+        assertEquals(1, select.getParameterShapes().size());
+
+        SqlStatistics.StatementStatistics insert = find("insert into STATISTICS_TEST (ID, NAME) values (?, ?)");
+        assertNotNull(insert);
+        assertEquals(3, insert.getExecutionCount());
+        assertEquals(3, insert.getRowCount());
+    }
+
+    @Test
+    public void testResultSetOfExecute() throws Exception {
+        insertRows(2);
+
+        try (Statement statement = connection.createStatement()) {
+            assertTrue(statement.execute("select NAME from STATISTICS_TEST"));
+            try (ResultSet resultSet = statement.getResultSet()) {
+                while (resultSet.next()) {
+                    assertNotNull(resultSet.getString(1));
+                }
+            }
+            assertFalse(statement.execute("update STATISTICS_TEST set NAME = 'changed'"));
+        }
+
+        assertEquals(2, find("select NAME from STATISTICS_TEST").getRowCount());
+        assertEquals(2, find("update STATISTICS_TEST set NAME = ?").getRowCount());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement("insert into STATISTICS_TEST (ID) values (?)")) {
+            for (int i = 0; i < 5; i++) {
+                statement.setInt(1, i);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.addBatch("update STATISTICS_TEST set NAME = 'a' where ID = 1");
+            statement.addBatch("update STATISTICS_TEST set NAME = 'b' where ID < 3");
+            statement.executeBatch();
+        }
+
+        SqlStatistics.StatementStatistics insert = find("insert into STATISTICS_TEST (ID) values (?)");
+        assertEquals(1, insert.getExecutionCount());
+        assertEquals(5, insert.getRowCount());
+
+        // a batch of plain statements is counted by the first statement
+        SqlStatistics.StatementStatistics update = find("update STATISTICS_TEST set NAME = ? where ID = ?");
+        assertEquals(1, update.getExecutionCount());
+        assertEquals(4, update.getRowCount());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeQuery("select UNKNOWN from STATISTICS_TEST");
+            fail();
+        } catch (SQLException e) {
+            // expected
+        }
+
+        SqlStatistics.StatementStatistics select = find("select UNKNOWN from STATISTICS_TEST");
+        assertEquals(1, select.getExecutionCount());
+        assertEquals(1, select.getErrorCount());
+    }
+
+    @Test
+    public void testSlowQueriesDoNotContainLiterals() throws Exception {
+        statistics.setSlowQueryThresholdMs(0);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("insert into STATISTICS_TEST (ID, NAME) values (42, 'John Smith')");
+        }
+
+        List<SqlStatistics.SlowQuery> slowQueries = statistics.getSlowQueries();
+        assertEquals(1, slowQueries.size());
+        assertEquals("insert into STATISTICS_TEST (ID, NAME) values (?, ...)", slowQueries.get(0).getSql());
+        assertEquals(1, slowQueries.get(0).getRowCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        AppContext.setProperty("cuba.sqlStatistics.maxStatements", "20");
+
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i < 50; i++) {
+                statement.executeQuery("select ID as C" + i + " from STATISTICS_TEST").close();
+            }
+        }
+
+        assertTrue(statistics.getStatementCount() <= 20);
+        // the latest statement is kept
+        assertNotNull(find("select ID as C49 from STATISTICS_TEST"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        statistics.setEnabled(false);
+
+        insertRows(1);
+
+        assertEquals(0, statistics.getStatementCount());
+    }
+
+    private void insertRows(int count) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("insert into STATISTICS_TEST (ID, NAME) values (?, ?)")) {
+            for (int i = 1; i <= count; i++) {
+                statement.setInt(1, i);
+                statement.setString(2, "name" + i);
+                assertEquals(1, statement.executeUpdate());
+            }
+        }
+    }
+
+    private SqlStatistics.StatementStatistics find(String sql) {
+        return statistics.getTopStatements(Integer.MAX_VALUE, null).stream()
+                .filter(statement -> statement.getSql().equals(sql))
+                .findFirst()
+                .orElse(null);
+    }
+}
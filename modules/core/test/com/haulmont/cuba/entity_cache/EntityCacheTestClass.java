@@ -22,6 +22,7 @@ import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TransactionParams;
 import com.haulmont.cuba.core.TypedQuery;
+import com.haulmont.cuba.core.app.RdbmsStore;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.QueryImpl;
@@ -34,6 +35,9 @@ import com.haulmont.cuba.testmodel.fetchjoin.Product;
 import com.haulmont.cuba.testsupport.TestAppender;
 import com.haulmont.cuba.testsupport.TestContainer;
 import com.haulmont.cuba.testsupport.TestNamePrinter;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
 import org.eclipse.persistence.descriptors.ClassDescriptor;
 import org.eclipse.persistence.internal.jpa.EntityManagerFactoryDelegate;
 import org.eclipse.persistence.jpa.JpaCache;
@@ -43,6 +47,8 @@ import org.junit.rules.TestRule;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.function.Predicate;
@@ -934,6 +940,43 @@ public class EntityCacheTestClass {
         assertEquals(3, appender.filterMessages(selectsOnly).count()); // UserSubstitution only, User is cached
     }
 
+    @Test
+    public void testReadReplicaNotUsedForCachedEntities() {
+        List<Boolean> readReplicaAllowed = new ArrayList<>();
+        MockUp<RdbmsStore> mockUp = new MockUp<RdbmsStore>() {
+            @Mock
+            Transaction getLoadTransaction(Invocation invocation, boolean useCurrentTransaction, boolean replicaAllowed) {
+                readReplicaAllowed.add(replicaAllowed);
+                return invocation.proceed();
+            }
+        };
+        try {
+            DataManager dataManager = AppBeans.get(DataManager.class);
+
+            // cached entity
+            dataManager.load(LoadContext.create(User.class).setId(user.getId()));
+            // not cached entity with a cached reference in the view
+            dataManager.load(LoadContext.create(UserSubstitution.class).setId(userSubstitution.getId())
+                    .setView("usersubst.edit"));
+            // not cached entity
+            dataManager.load(LoadContext.create(UserSubstitution.class).setId(userSubstitution.getId())
+                    .setView(View.LOCAL));
+            // cacheable query
+            dataManager.loadList(LoadContext.create(UserSubstitution.class)
+                    .setQuery(LoadContext.createQuery("select e from sec$UserSubstitution e").setCacheable(true))
+                    .setView(View.LOCAL));
+            // value query selecting a cached entity
+            dataManager.loadValues(ValueLoadContext.create()
+                    .setQuery(ValueLoadContext.createQuery("select u.login from sec$User u where u.id = :id")
+                            .setParameter("id", user.getId()))
+                    .addProperty("login"));
+
+            assertEquals(Arrays.asList(false, false, true, false, false), readReplicaAllowed);
+        } finally {
+            mockUp.tearDown();
+        }
+    }
+
     private void loadUserAlone() {
         try (Transaction tx = cont.persistence().createTransaction()) {
             User user = cont.entityManager().find(User.class, this.user.getId());
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.data_events
+
+import com.haulmont.bali.db.ListArrayHandler
+import com.haulmont.bali.db.QueryRunner
+import com.haulmont.cuba.core.Transaction
+import com.haulmont.cuba.core.TransactionalDataManager
+import com.haulmont.cuba.core.app.events.EntityChangedEvent
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.core.global.Metadata
+import com.haulmont.cuba.core.sys.AppContext
+import com.haulmont.cuba.security.app.Authentication
+import com.haulmont.cuba.security.global.UserSession
+import com.haulmont.cuba.testmodel.sales_1.Order
+import com.haulmont.cuba.testmodel.sales_1.TestEntityChangedEventListener
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+class EntityChangedEventAsyncTest extends Specification {
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private TestEntityChangedEventListener listener
+    private DataManager dataManager
+    private TransactionalDataManager txDataManager
+    private Metadata metadata
+    private Authentication authentication
+
+    void setup() {
+        AppContext.setProperty('cuba.entityChangedEventsAsync', 'true')
+
+        listener = AppBeans.get(TestEntityChangedEventListener)
+        metadata = cont.metadata()
+        dataManager = AppBeans.get(DataManager)
+        txDataManager = AppBeans.get(TransactionalDataManager)
+        authentication = AppBeans.get(Authentication)
+
+        listener.clear()
+    }
+
+    void cleanup() {
+        AppContext.setProperty('cuba.entityChangedEventsAsync', null)
+        listener.clear()
+    }
+
+    def "events are dispatched after commit"() {
+
+        Order order = metadata.create(Order)
+        order.setNumber('111')
+        order.setAmount(10)
+
+        when:
+
+        Order order1
+        UserSession userSession = authentication.begin()
+        try {
+            order1 = dataManager.commit(order)
+        } finally {
+            authentication.end()
+        }
+        waitForEvents(2)
+
+        then: "both listeners receive the event after the data is committed"
+
+        listener.entityChangedEvents.size() == 2
+        listener.entityChangedEvents.every { it.committedToDb }
+        listener.entityChangedEvents.every { it.event.type == EntityChangedEvent.Type.CREATED }
+        listener.entityChangedEvents[0].event.entityId.value == order.id
+        listener.entityChangedEvents[0].event.changes.isChanged('amount')
+
+        and: "the events contain the id of the user who changed the entity"
+
+        listener.entityChangedEvents.every { it.event.userId == userSession.user.id }
+
+        when: "the entity is changed several times"
+
+        listener.clear()
+
+        order1.setAmount(20)
+        Order order2 = dataManager.commit(order1)
+        order2.setAmount(30)
+        Order order3 = dataManager.commit(order2)
+        dataManager.remove(order3)
+        waitForEvents(6)
+
+        then: "events are dispatched in the order of commits"
+
+        List<EntityChangedEvent> events = listener.allEvents
+                .findAll { it.message.startsWith('EntityChangedEvent: beforeCommit') }
+                .collect { it.payload[0] as EntityChangedEvent }
+
+        events.collect { it.type } == [
+                EntityChangedEvent.Type.UPDATED, EntityChangedEvent.Type.UPDATED, EntityChangedEvent.Type.DELETED
+        ]
+        events[0].changes.getOldValue('amount') == 10
+        events[1].changes.getOldValue('amount') == 20
+
+        and: "records of the dispatched events are deleted"
+
+        waitForRecords(0) == 0
+    }
+
+    def "events of rolled back transaction are not dispatched"() {
+
+        Order order = metadata.create(Order)
+        order.setNumber('112')
+
+        Order committedOrder = metadata.create(Order)
+        committedOrder.setNumber('113')
+
+        when:
+
+        Transaction tx = cont.persistence().createTransaction()
+        try {
+            txDataManager.save(order)
+        } finally {
+            tx.end()
+        }
+        dataManager.commit(committedOrder)
+        waitForEvents(2)
+
+        then: "only the events of the committed transaction are dispatched"
+
+        listener.entityChangedEvents.size() == 2
+        listener.entityChangedEvents.every { it.event.entityId.value == committedOrder.id }
+        waitForRecords(0) == 0
+    }
+
+    private void waitForEvents(int count) {
+        long deadline = System.currentTimeMillis() + 10000
+        while (listener.entityChangedEvents.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+
+    private int waitForRecords(int count) {
+        long deadline = System.currentTimeMillis() + 10000
+        int recordCount = countRecords()
+        while (recordCount != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+            recordCount = countRecords()
+        }
+        return recordCount
+    }
+
+    private int countRecords() {
+        def runner = new QueryRunner(cont.persistence().getDataSource())
+        List<Object[]> rows = runner.query("select count(*) from SYS_ENTITY_CHANGED_EVENT", new ListArrayHandler())
+        return rows[0][0] as int
+    }
+}
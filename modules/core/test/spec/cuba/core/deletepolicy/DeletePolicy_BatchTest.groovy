@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.deletepolicy
+
+import com.haulmont.bali.db.QueryRunner
+import com.haulmont.cuba.core.Persistence
+import com.haulmont.cuba.core.global.*
+import com.haulmont.cuba.testmodel.cascadedelete.CascadeEntity
+import com.haulmont.cuba.testmodel.deletepolicy.DeletePolicy_OneToMany_First
+import com.haulmont.cuba.testmodel.deletepolicy.DeletePolicy_Root
+import com.haulmont.cuba.testmodel.many2many.Many2ManyA
+import com.haulmont.cuba.testmodel.many2many.Many2ManyB
+import com.haulmont.cuba.testsupport.TestContainer
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+class DeletePolicy_BatchTest extends Specification {
+
+    @Shared
+    @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private Persistence persistence = cont.persistence()
+    private Metadata metadata = cont.metadata()
+    private DataManager dataManager
+
+    private List<DeletePolicy_Root> roots = []
+    private List<DeletePolicy_OneToMany_First> firsts = []
+
+    private List<CascadeEntity> cascadeEntities = []
+    private List<Many2ManyA> many2ManyAs = []
+    private List<Many2ManyB> many2ManyBs = []
+
+    void setup() {
+        persistence.runInTransaction({ em ->
+            3.times { i ->
+                DeletePolicy_Root root = metadata.create(DeletePolicy_Root)
+                root.rootFld = "root fld #$i"
+                em.persist(root)
+                roots.add(root)
+
+                2.times { j ->
+                    DeletePolicy_OneToMany_First first = metadata.create(DeletePolicy_OneToMany_First)
+                    first.firstFld = "first fld #$i-$j"
+                    first.setRoot(root)
+                    em.persist(first)
+                    firsts.add(first)
+                }
+            }
+        })
+        dataManager = AppBeans.get(DataManager.class)
+    }
+
+    void cleanup() {
+        def runner = new QueryRunner(persistence.dataSource)
+        runner.update('delete from TEST_DELETE_POLICY_ONE_TO_MANY_FIRST')
+        runner.update('delete from TEST_DELETE_POLICY_ROOT')
+
+        if (!many2ManyAs.isEmpty()) {
+            cont.deleteRecord('TEST_MANY2MANY_AB_LINK2', 'A_ID', *many2ManyAs.collect { it.id })
+            cont.deleteRecord(*many2ManyAs, *many2ManyBs)
+        }
+        if (!cascadeEntities.isEmpty()) {
+            // children first
+            cont.deleteRecord(*cascadeEntities.reverse())
+        }
+    }
+
+    def "unlink @OneToMany property of several removed instances"() {
+        setup:
+
+        View firstView = new View(DeletePolicy_OneToMany_First.class)
+                .addProperty("firstFld")
+                .addProperty("root", new View(DeletePolicy_Root.class).addProperty("rootFld"))
+
+        when:
+
+        CommitContext commitContext = new CommitContext()
+        roots.each { root ->
+            commitContext.addInstanceToRemove(dataManager.load(new LoadContext<DeletePolicy_Root>(DeletePolicy_Root.class)
+                    .setView(View.LOCAL)
+                    .setId(root.id)))
+        }
+        dataManager.commit(commitContext)
+
+        List<DeletePolicy_OneToMany_First> loadedFirsts = firsts.collect { first ->
+            dataManager.load(new LoadContext<DeletePolicy_OneToMany_First>(DeletePolicy_OneToMany_First.class)
+                    .setView(firstView)
+                    .setId(first.id))
+        }
+
+        then:
+
+        roots.every { root ->
+            dataManager.load(new LoadContext<DeletePolicy_Root>(DeletePolicy_Root.class).setId(root.id)) == null
+        }
+        loadedFirsts.size() == 6
+        loadedFirsts.every { it != null && it.root == null }
+    }
+
+    def "cascade @OneToMany property of several removed instances"() {
+        setup:
+
+        List<CascadeEntity> parents = []
+        persistence.runInTransaction({ em ->
+            3.times { i ->
+                CascadeEntity parent = metadata.create(CascadeEntity)
+                parent.name = "parent #$i"
+                em.persist(parent)
+                parents.add(parent)
+                cascadeEntities.add(parent)
+
+                2.times { j ->
+                    CascadeEntity child = metadata.create(CascadeEntity)
+                    child.name = "child #$i-$j"
+                    child.father = parent
+                    em.persist(child)
+                    cascadeEntities.add(child)
+                }
+            }
+        })
+
+        when:
+
+        CommitContext commitContext = new CommitContext()
+        parents.each { parent ->
+            commitContext.addInstanceToRemove(dataManager.load(new LoadContext<CascadeEntity>(CascadeEntity.class)
+                    .setView(View.LOCAL)
+                    .setId(parent.id)))
+        }
+        dataManager.commit(commitContext)
+
+        then:
+
+        cascadeEntities.every { entity ->
+            dataManager.load(new LoadContext<CascadeEntity>(CascadeEntity.class).setId(entity.id)) == null
+        }
+        cascadeEntities.every { entity ->
+            CascadeEntity loaded = dataManager.load(new LoadContext<CascadeEntity>(CascadeEntity.class)
+                    .setSoftDeletion(false)
+                    .setId(entity.id))
+            loaded != null && loaded.deleted
+        }
+    }
+
+    def "deny removing several instances if one of them is referenced"() {
+        setup:
+
+        persistence.runInTransaction({ em ->
+            2.times {
+                Many2ManyA a = metadata.create(Many2ManyA)
+                em.persist(a)
+                many2ManyAs.add(a)
+            }
+
+            Many2ManyB b = metadata.create(Many2ManyB)
+            em.persist(b)
+            many2ManyBs.add(b)
+
+            // only the second instance is referenced
+            many2ManyAs[1].collectionOfB2 = [b] as Set
+        })
+
+        when:
+
+        CommitContext commitContext = new CommitContext()
+        many2ManyAs.each { a ->
+            commitContext.addInstanceToRemove(dataManager.load(new LoadContext<Many2ManyA>(Many2ManyA.class)
+                    .setView(View.LOCAL)
+                    .setId(a.id)))
+        }
+        dataManager.commit(commitContext)
+
+        then:
+
+        def e = thrown(Exception)
+        (ExceptionUtils.getRootCause(e) ?: e) instanceof DeletePolicyException
+
+        many2ManyAs.every { a ->
+            dataManager.load(new LoadContext<Many2ManyA>(Many2ManyA.class).setId(a.id)) != null
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.locks
+
+import com.haulmont.cuba.core.app.ClusterListener
+import com.haulmont.cuba.core.app.ClusterManagerAPI
+import com.haulmont.cuba.core.app.LockManager
+import com.haulmont.cuba.core.app.ServerConfig
+import com.haulmont.cuba.core.entity.LockDescriptor
+import com.haulmont.cuba.core.entity.Server
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.Configuration
+import com.haulmont.cuba.core.global.TimeSource
+import com.haulmont.cuba.core.global.UserSessionSource
+import com.haulmont.cuba.core.sys.AppContext
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+class LeaseBasedLocksTest extends Specification {
+
+    private static final long LEASE_DURATION_MS = 180_000
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private long now = System.currentTimeMillis()
+
+    private TestNode node1
+    private TestNode node2
+
+    void setup() {
+        AppContext.setProperty('cuba.leaseBasedLocks', 'true')
+        AppContext.setProperty('cuba.lockChangesBatchDelayMs', '0')
+
+        cont.persistence().runInTransaction({ em ->
+            LockDescriptor lockDescriptor = cont.metadata().create(LockDescriptor)
+            lockDescriptor.setName('sys$Server')
+            lockDescriptor.setTimeoutSec(3600)
+            em.persist(lockDescriptor)
+        })
+
+        List<TestNode> cluster = []
+        node1 = new TestNode(cluster, createLockManager())
+        node2 = new TestNode(cluster, createLockManager())
+    }
+
+    void cleanup() {
+        node1.lockManager.shutdown()
+        node2.lockManager.shutdown()
+
+        AppContext.setProperty('cuba.leaseBasedLocks', null)
+        AppContext.setProperty('cuba.lockChangesBatchDelayMs', null)
+
+        cont.persistence().runInTransaction({ em ->
+            em.createQuery('delete from sys$LockDescriptor d').executeUpdate()
+        })
+    }
+
+    def "lock changes made within the delay are sent in one message"() {
+
+        AppContext.setProperty('cuba.lockChangesBatchDelayMs', '1000')
+
+        def entity1 = new Server()
+        def entity2 = new Server()
+
+        when:
+
+        node1.lockManager.lock(entity1)
+        node1.lockManager.lock(entity2)
+        node1.lockManager.unlock(entity1)
+
+        then:
+
+        new PollingConditions(timeout: 5).eventually {
+            assert node1.sent.size() == 1
+        }
+        node1.sent[0].changes.size() == 3
+
+        node2.lockManager.getLockInfo('sys$Server', entity1.id.toString()) == null
+        node2.lockManager.getLockInfo('sys$Server', entity2.id.toString()).user.login == 'test_admin'
+    }
+
+    def "locks are removed when the lease of the owner expires and restored when it is renewed"() {
+
+        def entity = new Server()
+        node1.lockManager.lock(entity)
+
+        expect:
+
+        node2.lockManager.getLockInfo('sys$Server', entity.id.toString()) != null
+
+        when: "the owner has not renewed the lease"
+
+        now += LEASE_DURATION_MS + 1
+        node2.lockManager.expireLocks()
+
+        then:
+
+        node2.lockManager.getLockInfo('sys$Server', entity.id.toString()) == null
+        node2.sent.isEmpty()
+
+        when: "the owner renews the lease"
+
+        node1.lockManager.expireLocks()
+
+        then: "its locks are sent again"
+
+        node1.sent.size() == 2
+        node2.lockManager.getLockInfo('sys$Server', entity.id.toString()).since ==
+                node1.lockManager.getLockInfo('sys$Server', entity.id.toString()).since
+    }
+
+    def "lease is renewed only by a node owning locks when nothing has been sent for a half of the lease"() {
+
+        when:
+
+        node1.lockManager.expireLocks()
+
+        then:
+
+        node1.sent.isEmpty()
+
+        when:
+
+        node1.lockManager.lock(new Server())
+        now += LEASE_DURATION_MS.intdiv(2) - 1
+        node1.lockManager.expireLocks()
+
+        then:
+
+        node1.sent.size() == 1
+
+        when:
+
+        now += 1
+        node1.lockManager.expireLocks()
+
+        then:
+
+        node1.sent.size() == 2
+        node1.sent[1].changes.size() == 1
+    }
+
+    def "unlocked lock is not restored by the lease renewal"() {
+
+        def entity = new Server()
+        node1.lockManager.lock(entity)
+        node1.lockManager.unlock(entity)
+
+        when:
+
+        now += LEASE_DURATION_MS
+        node1.lockManager.lock(new Server())
+        now += LEASE_DURATION_MS
+        node1.lockManager.expireLocks()
+
+        then:
+
+        node2.lockManager.getLockInfo('sys$Server', entity.id.toString()) == null
+        node2.lockManager.currentLocks.size() == 1
+    }
+
+    private LockManager createLockManager() {
+        LockManager lockManager = new LockManager()
+        lockManager.@persistence = cont.persistence()
+        lockManager.@metadata = cont.metadata()
+        lockManager.@userSessionSource = AppBeans.get(UserSessionSource)
+        lockManager.@serverConfig = AppBeans.get(Configuration).getConfig(ServerConfig)
+        lockManager.@timeSource = Stub(TimeSource) {
+            currentTimeMillis() >> { now }
+            currentTimestamp() >> { new Date(now) }
+        }
+        return lockManager
+    }
+
+    /**
+     * Cluster node delivering sent messages to other nodes synchronously.
+     */
+    private static class TestNode {
+
+        private final List<TestNode> cluster
+        private final LockManager lockManager
+        private final Map<String, ClusterListener> listeners = [:]
+        private final List<Serializable> sent = Collections.synchronizedList([])
+
+        TestNode(List<TestNode> cluster, LockManager lockManager) {
+            this.cluster = cluster
+            this.lockManager = lockManager
+            cluster.add(this)
+
+            lockManager.setClusterManager([
+                    addListener: { Class messageClass, ClusterListener listener ->
+                        listeners.put(messageClass.name, listener)
+                    },
+                    send       : { Serializable message ->
+                        cluster.findAll { it != this }.each { it.listeners[message.class.name]?.receive(message) }
+                        sent.add(message)
+                    }
+            ] as ClusterManagerAPI)
+        }
+    }
+}
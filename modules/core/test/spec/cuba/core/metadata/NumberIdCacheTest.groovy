@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.core.metadata
+
+import com.haulmont.bali.db.ListArrayHandler
+import com.haulmont.bali.db.QueryRunner
+import com.haulmont.chile.core.model.MetaClass
+import com.haulmont.cuba.core.app.NumberIdWorker
+import com.haulmont.cuba.core.app.Sequence
+import com.haulmont.cuba.core.app.Sequences
+import com.haulmont.cuba.core.app.SequencesImpl
+import com.haulmont.cuba.core.entity.annotation.IdSequence
+import com.haulmont.cuba.core.global.AppBeans
+import com.haulmont.cuba.core.global.Metadata
+import com.haulmont.cuba.core.sys.AppContext
+import com.haulmont.cuba.core.sys.NumberIdCache
+import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory
+import com.haulmont.cuba.core.sys.persistence.SequenceSupport
+import com.haulmont.cuba.testmodel.number_id.NumberIdSingleTableRoot
+import com.haulmont.cuba.testsupport.TestContainer
+import org.junit.ClassRule
+import spock.lang.Shared
+import spock.lang.Specification
+
+class NumberIdCacheTest extends Specification {
+
+    private static final String SEQUENCE_NAME = 'seq_number_id_cache_test'
+
+    @Shared @ClassRule
+    public TestContainer cont = TestContainer.Common.INSTANCE
+
+    private Metadata metadata
+    private MetaClass metaClass
+    private NumberIdCache numberIdCache
+    private NumberIdWorker numberIdWorker
+    private SequenceSupport sequenceSupport
+
+    void setup() {
+        metadata = cont.metadata()
+        metaClass = metadata.getClassNN(NumberIdSingleTableRoot)
+        numberIdCache = AppBeans.get(NumberIdCache)
+        numberIdWorker = AppBeans.get(NumberIdWorker)
+        sequenceSupport = DbmsSpecificFactory.getSequenceSupport()
+        metaClass.getAnnotations().put(IdSequence.name, [name: SEQUENCE_NAME, cached: true])
+        deleteSequence()
+    }
+
+    void cleanup() {
+        metaClass.getAnnotations().remove(IdSequence.name)
+        AppContext.setProperty('cuba.numberIdCacheSize', null)
+        deleteSequence()
+    }
+
+    def "ids are taken from blocks prefetched in background"() {
+
+        AppContext.setProperty('cuba.numberIdCacheSize', '20')
+        long prefetchCount = numberIdCache.prefetchCount
+        long blockFetchCount = numberIdCache.blockFetchCount
+
+        when:
+
+        List<Long> ids = (1..100).collect { metadata.create(NumberIdSingleTableRoot).id }
+
+        then:
+
+        ids == (1L..100L).toList()
+        numberIdCache.blockFetchCount - blockFetchCount >= 5
+        numberIdCache.prefetchCount > prefetchCount
+        getIncrementInDatabase() == 20
+    }
+
+    def "cache size of the entity defines the block size"() {
+
+        AppContext.setProperty('cuba.numberIdCacheSize', '20')
+        metaClass.getAnnotations().put(IdSequence.name, [name: SEQUENCE_NAME, cached: true, cacheSize: 5])
+
+        when:
+
+        List<Long> ids = (1..12).collect { metadata.create(NumberIdSingleTableRoot).id }
+
+        then:
+
+        numberIdCache.getCacheSize(metaClass.name) == 5
+        ids == (1L..12L).toList()
+        getIncrementInDatabase() == 5
+    }
+
+    def "increased cache size of the existing sequence is detected"() {
+
+        def runner = new QueryRunner(cont.persistence().getDataSource())
+        runner.update(sequenceSupport.createSequenceSql(SEQUENCE_NAME, 0, 1))
+
+        metaClass.getAnnotations().put(IdSequence.name, [name: SEQUENCE_NAME, cached: true, cacheSize: 10])
+
+        when:
+
+        numberIdWorker.createCachedLongId(metaClass.name, SEQUENCE_NAME)
+
+        then:
+
+        def e = thrown(IllegalStateException)
+        e.message.contains(SEQUENCE_NAME)
+
+        when: "the cache size does not exceed the increment"
+
+        metaClass.getAnnotations().put(IdSequence.name, [name: SEQUENCE_NAME, cached: true, cacheSize: 1])
+
+        then:
+
+        numberIdWorker.createCachedLongId(metaClass.name, SEQUENCE_NAME) > 0
+    }
+
+    private Long getIncrementInDatabase() {
+        SequencesImpl sequences = AppBeans.get(Sequences) as SequencesImpl
+        return sequences.getIncrementInDatabase(Sequence.withName(SEQUENCE_NAME))
+    }
+
+    private void deleteSequence() {
+        def runner = new QueryRunner(cont.persistence().getDataSource())
+        List<Object[]> rows = runner.query(sequenceSupport.sequenceExistsSql(SEQUENCE_NAME), new ListArrayHandler())
+        if (!rows.isEmpty()) {
+            runner.update(sequenceSupport.deleteSequenceSql(SEQUENCE_NAME))
+        }
+        numberIdWorker.reset()
+        numberIdCache.reset()
+    }
+}
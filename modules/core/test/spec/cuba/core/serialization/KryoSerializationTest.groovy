@@ -21,7 +21,10 @@ import com.haulmont.cuba.core.global.AppBeans
 import com.haulmont.cuba.core.global.DataManager
 import com.haulmont.cuba.core.global.Metadata
 import com.haulmont.cuba.core.global.View
+import com.haulmont.cuba.core.sys.serialization.CompactKryoSerialization
+import com.haulmont.cuba.core.sys.AppContext
 import com.haulmont.cuba.core.sys.serialization.KryoSerialization
+import com.haulmont.cuba.core.sys.serialization.SerializationException
 import com.haulmont.cuba.testmodel.sales.Order
 import com.haulmont.cuba.testmodel.sales.OrderLine
 import com.haulmont.cuba.testsupport.TestContainer
@@ -59,6 +62,12 @@ class KryoSerializationTest extends Specification {
         })
     }
 
+    void cleanup() {
+        AppContext.setProperty('cuba.serialization.kryoCompatibleWrite', null)
+        AppContext.setProperty('cuba.serialization.kryoCompression', null)
+        AppContext.setProperty('cuba.serialization.kryoCompressionThreshold', null)
+    }
+
     //https://github.com/cuba-platform/cuba/issues/742
     def "HashSet serialization issue"() {
         setup:
@@ -91,4 +100,111 @@ class KryoSerializationTest extends Specification {
         matcher.find()
         matcher.group() != null
     }
+
+    def "compact serialization uses registration table and reads KryoSerialization data"() {
+        setup:
+        def view = new View(Order)
+                .addProperty("number")
+                .addProperty("lineSet", new View(OrderLine).addProperty("product"))
+        Order order = dataManager.load(Order).id(orderId).view(view).one()
+        KryoSerialization kryoSerialization = new KryoSerialization()
+        CompactKryoSerialization compactSerialization = new CompactKryoSerialization()
+
+        when:
+        byte[] compact = compactSerialization.serialize(order)
+        byte[] standard = kryoSerialization.serialize(order)
+        Order compactResult = (Order) compactSerialization.deserialize(compact)
+        Order standardResult = (Order) compactSerialization.deserialize(standard)
+
+        then:
+        compact.length < standard.length
+        compactResult.number == 'orderNumber#1'
+        compactResult.lineSet[0].id == orderLineId
+        standardResult.number == 'orderNumber#1'
+        standardResult.lineSet[0].id == orderLineId
+    }
+
+    def "compact serialization rejects data written with a different registration table"() {
+        setup:
+        CompactKryoSerialization compactSerialization = new CompactKryoSerialization()
+        byte[] bytes = compactSerialization.serialize(['a', 'b'])
+        // fingerprint of the registration table follows the magic bytes and flags
+        bytes[6] = (byte) (bytes[6] ^ 1)
+
+        when:
+        compactSerialization.deserialize(bytes)
+
+        then:
+        def e = thrown(SerializationException)
+        e.message.contains('Incompatible Kryo class registration table')
+
+        when:
+        compactSerialization.deserialize(new ByteArrayInputStream(bytes))
+
+        then:
+        thrown(SerializationException)
+    }
+
+    def "compatible write produces data readable by KryoSerialization"() {
+        setup:
+        AppContext.setProperty('cuba.serialization.kryoCompatibleWrite', 'true')
+        CompactKryoSerialization compactSerialization = new CompactKryoSerialization()
+        KryoSerialization kryoSerialization = new KryoSerialization()
+        Order order = dataManager.load(Order).id(orderId).view(View.LOCAL).one()
+
+        when:
+        byte[] bytes = compactSerialization.serialize(order)
+        ByteArrayOutputStream os = new ByteArrayOutputStream()
+        compactSerialization.serialize(order, os)
+
+        then:
+        bytes == kryoSerialization.serialize(order)
+        ((Order) kryoSerialization.deserialize(bytes)).number == 'orderNumber#1'
+        ((Order) kryoSerialization.deserialize(os.toByteArray())).number == 'orderNumber#1'
+        ((Order) compactSerialization.deserialize(bytes)).number == 'orderNumber#1'
+    }
+
+    def "data larger than the threshold is compressed"() {
+        setup:
+        AppContext.setProperty('cuba.serialization.kryoCompression', 'true')
+        AppContext.setProperty('cuba.serialization.kryoCompressionThreshold', '100')
+        CompactKryoSerialization compactSerialization = new CompactKryoSerialization()
+        List<String> small = ['a']
+        List<String> large = (1..1000).collect { 'value' }
+
+        when:
+        byte[] smallBytes = compactSerialization.serialize(small)
+        byte[] largeBytes = compactSerialization.serialize(large)
+        ByteArrayOutputStream os = new ByteArrayOutputStream()
+        compactSerialization.serialize(large, os)
+
+        then: "the flags byte of the header marks compressed data"
+        smallBytes[2] == 0
+        largeBytes[2] == 1
+        largeBytes.length < 1000
+        os.toByteArray() == largeBytes
+
+        compactSerialization.deserialize(smallBytes) == small
+        compactSerialization.deserialize(largeBytes) == large
+        compactSerialization.deserialize(new ByteArrayInputStream(largeBytes)) == large
+    }
+
+    def "stream overloads write and read the same format as byte arrays"() {
+        setup:
+        CompactKryoSerialization compactSerialization = new CompactKryoSerialization()
+        KryoSerialization kryoSerialization = new KryoSerialization()
+        Map<String, Object> map = [number: 1, id: orderId, date: new Date(0)]
+
+        when:
+        ByteArrayOutputStream os = new ByteArrayOutputStream()
+        compactSerialization.serialize(map, os)
+
+        then:
+        os.toByteArray() == compactSerialization.serialize(map)
+        compactSerialization.deserialize(new ByteArrayInputStream(os.toByteArray())) == map
+        compactSerialization.deserialize(os.toByteArray()) == map
+
+        and: "KryoSerialization data without the header is read from a stream"
+        compactSerialization.deserialize(new ByteArrayInputStream(kryoSerialization.serialize(map))) == map
+    }
 }
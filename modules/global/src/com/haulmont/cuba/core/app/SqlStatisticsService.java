@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.SlowSqlQueryInfo;
+import com.haulmont.cuba.core.global.SqlStatementInfo;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Provides execution statistics of SQL statements collected by the middleware JDBC layer.
+ * <p>
+ * The statistics can be enabled and reset only by the {@code SqlStatistics} JMX bean.
+ */
+public interface SqlStatisticsService {
+
+    String NAME = "cuba_SqlStatisticsService";
+
+    /**
+     * @return true if the statistics are collected
+     */
+    boolean isEnabled();
+
+    /**
+     * @param count   maximum number of statements to return
+     * @param orderBy one of {@code totalTime}, {@code averageTime}, {@code maxTime}, {@code fetchTime},
+     *                {@code executionCount}, {@code rowCount}, {@code errorCount}; {@code totalTime} if null
+     * @return statements with the greatest values of the given metric, in descending order
+     */
+    List<SqlStatementInfo> getTopStatements(int count, @Nullable String orderBy);
+
+    /**
+     * @return the latest statements executed longer than the slow query threshold, the most recent first
+     */
+    List<SlowSqlQueryInfo> getSlowQueries();
+}
@@ -35,4 +35,14 @@ public @interface IdSequence {
      * If true, the sequence will be incremented by cuba.numberIdCacheSize to cache intermediate values in memory.
      */
     boolean cached() default false;
+
+    /**
+     * Number of ids cached in memory if {@link #cached()} is true. If not positive, {@code cuba.numberIdCacheSize}
+     * is used.
+     * <p>
+     * The value defines the increment of the sequence when it is created, so it should not be changed for the
+     * existing sequence. If the cache size becomes greater than the increment of the existing sequence, ids are not
+     * generated until the increment is changed in the database, as they would be duplicated otherwise.
+     */
+    int cacheSize() default 0;
 }
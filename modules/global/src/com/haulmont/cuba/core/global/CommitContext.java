@@ -40,6 +40,7 @@ public class CommitContext implements Serializable {
     protected boolean discardCommitted;
     protected boolean authorizationRequired;
     protected boolean joinTransaction;
+    protected boolean bulk;
     protected Map<String, Object> dbHints = new HashMap<>();
 
     /**
@@ -209,6 +210,28 @@ public class CommitContext implements Serializable {
         return this;
     }
 
+    /**
+     * @return true if the commit is performed in bulk mode, see {@link #setBulk(boolean)}
+     */
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    /**
+     * Set to true to commit a large number of instances. In the bulk mode, saved instances are not fetched one by one
+     * after saving. Instead, they are reloaded after the commit by a few queries, one for each entity class and view.
+     * Reloaded instances that cannot be read by the current user according to security constraints are not returned.
+     * Removed instances, new instances without explicitly specified views and instances with composite keys are
+     * processed as in the regular mode.
+     * <p>
+     * The bulk mode does not enable JDBC batch writing, which is configured for the whole persistence unit by the
+     * {@code eclipselink.jdbc.batch-writing} and {@code eclipselink.jdbc.batch-writing.size} application properties.
+     */
+    public CommitContext setBulk(boolean bulk) {
+        this.bulk = bulk;
+        return this;
+    }
+
     private View getViewFromRepository(Entity entity, String viewName) {
         Metadata metadata = AppBeans.get(Metadata.NAME);
         return metadata.getViewRepository().getView(metadata.getClass(entity.getClass()), viewName);
@@ -18,7 +18,10 @@ package com.haulmont.cuba.core.global;
 
 import com.haulmont.cuba.core.entity.FileDescriptor;
 
+import org.apache.commons.io.IOUtils;
+
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.function.Supplier;
 
@@ -65,6 +68,38 @@ public interface FileLoader {
      */
     InputStream openStream(FileDescriptor fd) throws FileStorageException;
 
+    /**
+     * Return an input stream to load a file contents from middleware starting from the given position.
+     * Used to serve partial content without transferring the skipped part of the file.
+     *
+     * @param fd       file descriptor
+     * @param position number of bytes to skip
+     * @return input stream, must be closed after use
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default InputStream openStream(FileDescriptor fd, long position) throws FileStorageException {
+        InputStream inputStream = openStream(fd);
+        try {
+            // InputStream.skip() positions file streams without reading the skipped content
+            long remaining = position;
+            while (remaining > 0) {
+                long skipped = inputStream.skip(remaining);
+                if (skipped <= 0) {
+                    if (inputStream.read() < 0) {
+                        break;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, fd.getName(), e);
+        }
+        return inputStream;
+    }
+
     /**
      * Remove a file from the file storage.
      *
@@ -258,4 +258,13 @@ public interface GlobalConfig extends Config {
     @Factory(factory = CommaSeparatedStringListTypeFactory.class)
     @Stringify(stringify = CommaSeparatedStringListStringify.class)
     List<String> getDisableEscapingLikeForDataStores();
+
+    /**
+     * Location of the snapshot of views deployed from {@code cuba.viewsConfig} files, relative to the configuration
+     * directory. If set, the views are saved to this XML file after deployment and restored from it on the next start
+     * while the SHA-256 hash of the views files and the metadata structure stored in the snapshot matches. The
+     * snapshot can also be bundled with the application as a classpath resource. Not set by default.
+     */
+    @Property("cuba.viewsSnapshot")
+    String getViewsSnapshot();
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import ch.qos.logback.classic.Level;
 import com.haulmont.cuba.core.sys.logging.AppenderThresholdNotSupported;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
 import com.haulmont.cuba.core.sys.logging.LogFileNotFoundException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 
 import java.io.File;
 import java.util.List;
@@ -44,6 +45,16 @@ public interface LogControl {
      */
     String getTail(String fileName) throws LogControlException;
 
+    /**
+     * Reads complete log lines written after the given position. If the position is negative, exceeds the file
+     * length or lies more than 50Kb before the end of file, reads a log tail equals 50Kb instead.
+     *
+     * @param fileName name of a readable file
+     * @param position position returned by the previous call or -1
+     * @return log lines and the position to continue from
+     */
+    LogTail getTail(String fileName, long position) throws LogControlException;
+
     /**
      * Get file reference to log file
      *
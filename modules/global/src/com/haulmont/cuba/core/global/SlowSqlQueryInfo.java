@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.chile.core.annotations.MetaClass;
+import com.haulmont.chile.core.annotations.MetaProperty;
+import com.haulmont.cuba.core.entity.BaseUuidEntity;
+import com.haulmont.cuba.core.entity.annotation.SystemLevel;
+
+import java.util.Date;
+
+/**
+ * Execution of an SQL statement which took longer than the slow query threshold.
+ *
+ * @see com.haulmont.cuba.core.app.SqlStatisticsService
+ */
+@MetaClass(name = "sys$SlowSqlQueryInfo")
+@SystemLevel
+public class SlowSqlQueryInfo extends BaseUuidEntity {
+
+    private static final long serialVersionUID = -6050380478914390772L;
+
+    private final Date ts;
+    private final String sql;
+    private final String parameterShape;
+    private final Long totalTime;
+    private final Long executionTime;
+    private final Long fetchTime;
+    private final Long rowCount;
+    private final Boolean failed;
+    private final String user;
+    private final String thread;
+
+    public SlowSqlQueryInfo(Date ts, String sql, String parameterShape, long executionTime, long fetchTime,
+                            long rowCount, boolean failed, String user, String thread) {
+        this.ts = ts;
+        this.sql = sql;
+        this.parameterShape = parameterShape;
+        this.totalTime = executionTime + fetchTime;
+        this.executionTime = executionTime;
+        this.fetchTime = fetchTime;
+        this.rowCount = rowCount;
+        this.failed = failed;
+        this.user = user;
+        this.thread = thread;
+    }
+
+    @MetaProperty
+    public Date getTs() {
+        return ts;
+    }
+
+    /**
+     * @return SQL text without parameter values
+     */
+    @MetaProperty
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return types of bind parameters, e.g. {@code (String, Long)}
+     */
+    @MetaProperty
+    public String getParameterShape() {
+        return parameterShape;
+    }
+
+    /**
+     * @return execution and fetch time in milliseconds
+     */
+    @MetaProperty
+    public Long getTotalTime() {
+        return totalTime;
+    }
+
+    @MetaProperty
+    public Long getExecutionTime() {
+        return executionTime;
+    }
+
+    @MetaProperty
+    public Long getFetchTime() {
+        return fetchTime;
+    }
+
+    @MetaProperty
+    public Long getRowCount() {
+        return rowCount;
+    }
+
+    @MetaProperty
+    public Boolean getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return login of the user who executed the statement
+     */
+    @MetaProperty
+    public String getUser() {
+        return user;
+    }
+
+    @MetaProperty
+    public String getThread() {
+        return thread;
+    }
+
+    @Override
+    public String toString() {
+        return ts + " " + totalTime + " ms: " + sql;
+    }
+}
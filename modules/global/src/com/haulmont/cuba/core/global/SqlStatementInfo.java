@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.chile.core.annotations.MetaClass;
+import com.haulmont.chile.core.annotations.MetaProperty;
+import com.haulmont.cuba.core.entity.BaseUuidEntity;
+import com.haulmont.cuba.core.entity.annotation.SystemLevel;
+
+/**
+ * Aggregated execution statistics of a normalized SQL statement.
+ *
+ * @see com.haulmont.cuba.core.app.SqlStatisticsService
+ */
+@MetaClass(name = "sys$SqlStatementInfo")
+@SystemLevel
+public class SqlStatementInfo extends BaseUuidEntity {
+
+    private static final long serialVersionUID = 2204813926587419012L;
+
+    private final String sql;
+    private final Long executionCount;
+    private final Long errorCount;
+    private final Long totalTime;
+    private final Long executionTime;
+    private final Long fetchTime;
+    private final Double averageTime;
+    private final Long maxTime;
+    private final Long rowCount;
+    private final String parameterShapes;
+
+    public SqlStatementInfo(String sql, long executionCount, long errorCount, long totalTime, long executionTime,
+                            long fetchTime, double averageTime, long maxTime, long rowCount, String parameterShapes) {
+        this.sql = sql;
+        this.executionCount = executionCount;
+        this.errorCount = errorCount;
+        this.totalTime = totalTime;
+        this.executionTime = executionTime;
+        this.fetchTime = fetchTime;
+        this.averageTime = averageTime;
+        this.maxTime = maxTime;
+        this.rowCount = rowCount;
+        this.parameterShapes = parameterShapes;
+    }
+
+    /**
+     * @return SQL with literals replaced by parameters
+     */
+    @MetaProperty
+    public String getSql() {
+        return sql;
+    }
+
+    @MetaProperty
+    public Long getExecutionCount() {
+        return executionCount;
+    }
+
+    @MetaProperty
+    public Long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return total execution and fetch time in milliseconds
+     */
+    @MetaProperty
+    public Long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return total time in milliseconds until the driver returned from execution
+     */
+    @MetaProperty
+    public Long getExecutionTime() {
+        return executionTime;
+    }
+
+    /**
+     * @return total time in milliseconds spent fetching rows
+     */
+    @MetaProperty
+    public Long getFetchTime() {
+        return fetchTime;
+    }
+
+    /**
+     * @return average execution and fetch time in milliseconds
+     */
+    @MetaProperty
+    public Double getAverageTime() {
+        return averageTime;
+    }
+
+    /**
+     * @return maximum execution and fetch time in milliseconds
+     */
+    @MetaProperty
+    public Long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return total number of fetched or updated rows
+     */
+    @MetaProperty
+    public Long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return types of bind parameters with the number of executions, e.g. {@code (String, Long): 10}
+     */
+    @MetaProperty
+    public String getParameterShapes() {
+        return parameterShapes;
+    }
+
+    @Override
+    public String toString() {
+        return sql + ", executions=" + executionCount + ", totalTime=" + totalTime;
+    }
+}
@@ -25,6 +25,9 @@ import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.Range;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringTokenizer;
@@ -40,10 +43,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -56,6 +60,9 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 /**
  * Base implementation of the {@link ViewRepository}. Contains methods to store {@link View} objects and deploy
  * them from XML. <br>
+ * <br> If {@link GlobalConfig#getViewsSnapshot()} defines a resource location, views deployed from XML are saved
+ * to this location in the configuration directory as an XML document and restored on the next start while the views
+ * configuration files and the metadata remain unchanged. The snapshot can also be bundled with the application.
  * <br> Don't replace this class completely, because the framework uses it directly.
  */
 public class AbstractViewRepository implements ViewRepository {
@@ -101,6 +108,12 @@ public class AbstractViewRepository implements ViewRepository {
 
         String configName = AppContext.getProperty("cuba.viewsConfig");
         if (!StringUtils.isBlank(configName)) {
+            String snapshotLocation = AppContext.getProperty("cuba.viewsSnapshot");
+            if (isNotBlank(snapshotLocation) && loadSnapshot(snapshotLocation, configName)) {
+                initTiming.stop();
+                return;
+            }
+
             Element rootElem = DocumentHelper.createDocument().addElement("views");
 
             StringTokenizer tokenizer = new StringTokenizer(configName);
@@ -113,11 +126,224 @@ public class AbstractViewRepository implements ViewRepository {
             for (Element viewElem : Dom4j.elements(rootElem, "view")) {
                 deployView(rootElem, viewElem, new HashSet<>());
             }
+
+            if (isNotBlank(snapshotLocation)) {
+                saveSnapshot(snapshotLocation, configName);
+            }
         }
 
         initTiming.stop();
     }
 
+    /**
+     * Restores deployed views from the snapshot saved by {@link #saveSnapshot(String, String)}. The snapshot is
+     * loaded as a resource, so it can be either bundled with the application or found in the configuration directory.
+     *
+     * @return true if the snapshot is found and is valid for the current views configuration files and metadata
+     */
+    protected boolean loadSnapshot(String location, String configName) {
+        Element rootElem;
+        try (InputStream stream = resources.getResourceAsStream(location)) {
+            if (stream == null) {
+                return false;
+            }
+            rootElem = Dom4j.readDocument(stream).getRootElement();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read views snapshot {}: {}", location, e.toString());
+            return false;
+        }
+
+        List<String> fileNames = new ArrayList<>();
+        for (Element fileElem : Dom4j.elements(rootElem, "file")) {
+            fileNames.add(fileElem.attributeValue("name"));
+        }
+        String hash = getSnapshotHash(configName, fileNames);
+        if (hash == null || !hash.equals(rootElem.attributeValue("hash"))) {
+            log.info("Views snapshot {} is outdated", location);
+            return false;
+        }
+
+        Map<MetaClass, Map<String, View>> views = readSnapshot(rootElem);
+        if (views == null) {
+            log.info("Views snapshot {} is outdated", location);
+            return false;
+        }
+
+        storage.putAll(views);
+        readFileNames.addAll(fileNames);
+
+        log.info("Views restored from snapshot {}", location);
+        return true;
+    }
+
+    /**
+     * Saves deployed views to the configuration directory to restore them on the next start.
+     */
+    protected void saveSnapshot(String location, String configName) {
+        String hash = getSnapshotHash(configName, readFileNames);
+        if (hash == null) {
+            return;
+        }
+
+        File file = new File(AppContext.getProperty("cuba.confDir"), location);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            FileUtils.forceMkdirParent(file);
+            try (OutputStream stream = new FileOutputStream(tempFile)) {
+                Dom4j.writeDocument(writeSnapshot(hash, readFileNames), false, stream);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            log.info("Views snapshot saved to {}", file);
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(tempFile);
+            log.warn("Unable to save views snapshot to {}", file, e);
+        }
+    }
+
+    /**
+     * Writes the deployed views as an XML document. Each view instance is written once and referenced by its
+     * number, so nested views shared by several views and recursive views are restored as in the storage.
+     */
+    protected Document writeSnapshot(String hash, List<String> fileNames) {
+        Document document = DocumentHelper.createDocument();
+        Element rootElem = document.addElement("views-snapshot");
+        rootElem.addAttribute("hash", hash);
+        for (String fileName : fileNames) {
+            rootElem.addElement("file").addAttribute("name", fileName);
+        }
+
+        Map<View, Integer> numbers = new IdentityHashMap<>();
+        List<View> ordered = new ArrayList<>();
+        for (Map.Entry<MetaClass, Map<String, View>> entry : storage.entrySet()) {
+            for (View view : entry.getValue().values()) {
+                rootElem.addElement("stored")
+                        .addAttribute("entity", entry.getKey().getName())
+                        .addAttribute("view", String.valueOf(numberView(view, numbers, ordered)));
+            }
+        }
+        // ordered list grows while nested views are numbered
+        for (int i = 0; i < ordered.size(); i++) {
+            View view = ordered.get(i);
+            Element viewElem = rootElem.addElement("view")
+                    .addAttribute("class", view.getEntityClass().getName())
+                    .addAttribute("name", view.getName());
+            if (view.loadPartialEntities()) {
+                viewElem.addAttribute("partial", "true");
+            }
+            for (ViewProperty property : view.getProperties()) {
+                Element propertyElem = viewElem.addElement("property")
+                        .addAttribute("name", property.getName())
+                        .addAttribute("fetch", property.getFetchMode().name());
+                if (property.getView() != null) {
+                    propertyElem.addAttribute("view", String.valueOf(numberView(property.getView(), numbers, ordered)));
+                }
+            }
+        }
+        return document;
+    }
+
+    protected int numberView(View view, Map<View, Integer> numbers, List<View> ordered) {
+        Integer number = numbers.get(view);
+        if (number == null) {
+            number = ordered.size();
+            numbers.put(view, number);
+            ordered.add(view);
+        }
+        return number;
+    }
+
+    /**
+     * Creates views written by {@link #writeSnapshot(String, List)}. Entity classes are resolved only among
+     * the classes registered in the metadata.
+     *
+     * @return views by meta class, or null if the snapshot refers to entities that do not exist anymore
+     */
+    @Nullable
+    protected Map<MetaClass, Map<String, View>> readSnapshot(Element rootElem) {
+        Map<String, Class<? extends Entity>> entityClasses = new HashMap<>();
+        for (MetaClass metaClass : metadata.getSession().getClasses()) {
+            entityClasses.put(metaClass.getJavaClass().getName(), metaClass.getJavaClass());
+        }
+
+        try {
+            List<Element> viewElems = Dom4j.elements(rootElem, "view");
+            List<View> views = new ArrayList<>(viewElems.size());
+            for (Element viewElem : viewElems) {
+                Class<? extends Entity> entityClass = entityClasses.get(viewElem.attributeValue("class"));
+                if (entityClass == null) {
+                    return null;
+                }
+                View view = new View(entityClass, viewElem.attributeValue("name"), false);
+                view.setLoadPartialEntities(Boolean.parseBoolean(viewElem.attributeValue("partial")));
+                views.add(view);
+            }
+            for (int i = 0; i < viewElems.size(); i++) {
+                for (Element propertyElem : Dom4j.elements(viewElems.get(i), "property")) {
+                    String viewNumber = propertyElem.attributeValue("view");
+                    View propertyView = viewNumber != null ? views.get(Integer.parseInt(viewNumber)) : null;
+                    views.get(i).addProperty(propertyElem.attributeValue("name"), propertyView,
+                            FetchMode.valueOf(propertyElem.attributeValue("fetch")));
+                }
+            }
+
+            Map<MetaClass, Map<String, View>> result = new HashMap<>();
+            for (Element storedElem : Dom4j.elements(rootElem, "stored")) {
+                MetaClass metaClass = metadata.getClass(storedElem.attributeValue("entity"));
+                if (metaClass == null) {
+                    return null;
+                }
+                View view = views.get(Integer.parseInt(storedElem.attributeValue("view")));
+                result.computeIfAbsent(metaClass, k -> new ConcurrentHashMap<>()).put(view.getName(), view);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            log.warn("Unable to restore views from snapshot: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the hash of the snapshot inputs: views configuration files and the structure of the metadata.
+     *
+     * @return hash or null if some of the files cannot be read
+     */
+    @Nullable
+    protected String getSnapshotHash(String configName, List<String> fileNames) {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        digest.update(configName.getBytes(StandardCharsets.UTF_8));
+
+        for (String fileName : fileNames) {
+            try (InputStream stream = resources.getResourceAsStream(fileName)) {
+                if (stream == null) {
+                    return null;
+                }
+                digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+                digest.update(IOUtils.toByteArray(stream));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        List<MetaClass> metaClasses = new ArrayList<>(metadata.getSession().getClasses());
+        metaClasses.sort(Comparator.comparing(MetaClass::getName));
+        StringBuilder sb = new StringBuilder();
+        for (MetaClass metaClass : metaClasses) {
+            sb.append(metaClass.getName()).append(':').append(metaClass.getJavaClass().getName()).append('{');
+            for (MetaProperty property : metaClass.getProperties()) {
+                sb.append(property.getName()).append(':').append(property.getJavaType().getName());
+                if (property.getRange().isClass()) {
+                    sb.append(':').append(property.getRange().asClass().getName())
+                            .append(':').append(property.getRange().getCardinality());
+                }
+                sb.append(';');
+            }
+            sb.append('}');
+        }
+        digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
     protected void checkDuplicates(Element rootElem) {
         Set<String> checked = new HashSet<>();
         for (Element viewElem : Dom4j.elements(rootElem, "view")) {
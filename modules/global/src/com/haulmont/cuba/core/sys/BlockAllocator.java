@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * INTERNAL.
+ * Hands out values from blocks reserved in a database sequence.
+ * <p>
+ * Values are taken from the current block without locking. When half of a block is used, the next block is
+ * reserved in background with the caller's security context, so threads wait for the sequence only if the block is
+ * used up before the next one is reserved.
+ *
+ * @see NumberIdCache
+ */
+public abstract class BlockAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockAllocator.class);
+
+    protected final String name;
+
+    protected final Statistics statistics;
+
+    protected volatile Block block;
+
+    protected CompletableFuture<Block> nextBlock;
+
+    /**
+     * @param name       name of the sequence, used in log messages
+     * @param statistics statistics to be updated, can be shared between allocators
+     */
+    protected BlockAllocator(String name, Statistics statistics) {
+        this.name = name;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return next value
+     */
+    public long next() {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long index = current.counter.getAndIncrement();
+                if (index < current.size) {
+                    // there is no point in prefetching blocks of one value as the next block is needed right after taking it
+                    if (index == current.size / 2 && current.size > 1) {
+                        prefetch(current);
+                    }
+                    statistics.allocatedValues.incrementAndGet();
+                    return current.first + index * current.step;
+                }
+            }
+            switchBlock(current);
+        }
+    }
+
+    /**
+     * Discards the current and the prefetched blocks. Values are handed out from the given block afterwards.
+     *
+     * @param block block to continue with or null to reserve a new block on next request
+     */
+    public synchronized void reset(@Nullable Block block) {
+        // the result of a running prefetch is dropped, its values are not handed out
+        nextBlock = null;
+        this.block = block;
+    }
+
+    /**
+     * Reserves the next block in the sequence. Invoked either by the thread requesting a value or in background.
+     * <p>
+     * The requesting thread invokes it holding the monitor of the allocator, so locks acquired here must not be
+     * held by callers of {@link #reset(Block)}.
+     */
+    protected abstract Block reserveBlock();
+
+    /**
+     * @return executor reserving blocks in background
+     */
+    protected abstract Executor getExecutor();
+
+    protected Block reserveBlockWithStatistics() {
+        long start = System.nanoTime();
+        Block reserved = reserveBlock();
+        statistics.reservationTime.addAndGet(System.nanoTime() - start);
+        statistics.reservedBlocks.incrementAndGet();
+        return reserved;
+    }
+
+    protected synchronized void prefetch(Block current) {
+        if (block != current || nextBlock != null) {
+            return;
+        }
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        statistics.prefetches.incrementAndGet();
+        nextBlock = CompletableFuture.supplyAsync(
+                () -> AppContext.withSecurityContext(securityContext, this::reserveBlockWithStatistics), getExecutor());
+    }
+
+    protected synchronized void switchBlock(@Nullable Block exhausted) {
+        if (block != exhausted) {
+            // another thread has already switched the block
+            return;
+        }
+        CompletableFuture<Block> future = nextBlock;
+        nextBlock = null;
+
+        Block next = null;
+        if (future != null) {
+            if (!future.isDone()) {
+                statistics.waits.incrementAndGet();
+            }
+            try {
+                next = future.join();
+            } catch (CompletionException e) {
+                log.warn("Unable to reserve values of sequence {}, reserving them again", name, e.getCause());
+            }
+        } else if (exhausted != null) {
+            statistics.waits.incrementAndGet();
+        }
+        block = next != null ? next : reserveBlockWithStatistics();
+    }
+
+    /**
+     * Creates an executor for reserving blocks in background. A block allocator has at most one pending
+     * reservation, so the number of queued tasks does not exceed the number of allocators.
+     *
+     * @param nameFormat format of the thread names, see {@link ThreadFactoryBuilder#setNameFormat(String)}
+     * @param threads    maximum number of threads
+     */
+    public static ExecutorService createExecutor(String nameFormat, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Range of values reserved in the sequence: {@code size} values starting from {@code first} with the given step.
+     */
+    public static class Block {
+        protected final long first;
+        protected final int size;
+        protected final long step;
+        protected final AtomicLong counter = new AtomicLong();
+
+        public Block(long first, int size, long step) {
+            this.first = first;
+            this.size = size;
+            this.step = step;
+        }
+
+        public long getFirst() {
+            return first;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getStep() {
+            return step;
+        }
+    }
+
+    /**
+     * Usage statistics of block allocators.
+     */
+    public static class Statistics {
+        protected final AtomicLong allocatedValues = new AtomicLong();
+        protected final AtomicLong reservedBlocks = new AtomicLong();
+        protected final AtomicLong reservationTime = new AtomicLong();
+        protected final AtomicLong prefetches = new AtomicLong();
+        protected final AtomicLong waits = new AtomicLong();
+
+        /**
+         * @return number of values handed out from memory
+         */
+        public long getAllocatedValues() {
+            return allocatedValues.get();
+        }
+
+        /**
+         * @return number of blocks reserved in the sequence
+         */
+        public long getReservedBlocks() {
+            return reservedBlocks.get();
+        }
+
+        /**
+         * @return average time of reserving a block in milliseconds
+         */
+        public double getAverageReservationTime() {
+            long count = reservedBlocks.get();
+            return count == 0 ? 0 : reservationTime.get() / 1_000_000.0 / count;
+        }
+
+        /**
+         * @return number of blocks reserved in background
+         */
+        public long getPrefetches() {
+            return prefetches.get();
+        }
+
+        /**
+         * @return number of times a thread had to wait until the next block is reserved
+         */
+        public long getWaits() {
+            return waits.get();
+        }
+    }
+}
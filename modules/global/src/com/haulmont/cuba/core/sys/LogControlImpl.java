@@ -29,12 +29,12 @@ import com.haulmont.cuba.core.global.LogControl;
 import com.haulmont.cuba.core.sys.logging.AppenderThresholdNotSupported;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
 import com.haulmont.cuba.core.sys.logging.LogFileNotFoundException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 import org.apache.commons.io.FilenameUtils;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -74,41 +74,45 @@ public class LogControlImpl implements LogControl {
 
     @Override
     public String getTail(String fileName) throws LogControlException {
+        return readTail(fileName, -1, false).getContent();
+    }
+
+    @Override
+    public LogTail getTail(String fileName, long position) throws LogControlException {
+        return readTail(fileName, position, true);
+    }
+
+    protected LogTail readTail(String fileName, long position, boolean completeLinesOnly) throws LogControlException {
         // security check, supported only valid file names
         fileName = FilenameUtils.getName(fileName);
 
-        StringBuilder sb = new StringBuilder();
-        RandomAccessFile randomAccessFile = null;
-        try {
-            File logFile = new File(logDir, fileName);
-            if (!logFile.exists())
-                throw new LogFileNotFoundException(fileName);
+        File logFile = new File(logDir, fileName);
+        if (!logFile.exists())
+            throw new LogFileNotFoundException(fileName);
 
-            randomAccessFile = new RandomAccessFile(logFile, "r");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(logFile, "r")) {
             long lengthFile = randomAccessFile.length();
-            if (lengthFile >= LOG_TAIL_AMOUNT_BYTES) {
-                randomAccessFile.seek(lengthFile - LOG_TAIL_AMOUNT_BYTES);
-                skipFirstLine(randomAccessFile);
-            }
-            while (randomAccessFile.read() != -1) {
-                randomAccessFile.seek(randomAccessFile.getFilePointer() - 1);
-                String line = readUtf8Line(randomAccessFile);
-                if (line != null) {
-                    sb.append(line).append("\n");
-                }
+            boolean reset = position < 0 || position > lengthFile || lengthFile - position > LOG_TAIL_AMOUNT_BYTES;
+
+            long start = reset ? Math.max(0, lengthFile - LOG_TAIL_AMOUNT_BYTES) : position;
+
+            // read the whole tail with a single call instead of scanning the file byte by byte
+            byte[] block = new byte[(int) (lengthFile - start)];
+            randomAccessFile.seek(start);
+            randomAccessFile.readFully(block);
+
+            int from = reset && start > 0 ? getNextLineStart(block, 0) : 0;
+            int to = completeLinesOnly ? getLastLineEnd(block, from) : block.length;
+            if (to < from) {
+                to = from;
             }
+
+            String content = normalizeLineSeparators(new String(block, from, to - from, StandardCharsets.UTF_8));
+            return new LogTail(content, start + to, reset);
         } catch (IOException e) {
             log.error("Error reading log file", e);
             throw new LogControlException("Error reading log file: " + fileName);
-        } finally {
-            if (randomAccessFile != null) {
-                try {
-                    randomAccessFile.close();
-                } catch (IOException ignored) {
-                }
-            }
         }
-        return sb.toString();
     }
 
     @Override
@@ -208,54 +212,41 @@ public class LogControlImpl implements LogControl {
         throw new AppenderThresholdNotSupported(appenderName);
     }
 
-    protected void skipFirstLine(RandomAccessFile logFile) throws IOException {
-        boolean eol = false;
-        while (!eol) {
-            switch (logFile.read()) {
-                case -1:
-                case '\n':
-                    eol = true;
-                    break;
-                case '\r':
-                    eol = true;
-                    long cur = logFile.getFilePointer();
-                    if ((logFile.read()) != '\n') {
-                        logFile.seek(cur);
-                    }
-                    break;
-                default:
-                    break;
+    /**
+     * @return index of the first byte after the first line break found from {@code offset},
+     * or the block length if there is no line break
+     */
+    protected int getNextLineStart(byte[] block, int offset) {
+        for (int i = offset; i < block.length; i++) {
+            if (block[i] == '\n') {
+                return i + 1;
+            }
+            if (block[i] == '\r') {
+                return i + 1 < block.length && block[i + 1] == '\n' ? i + 2 : i + 1;
             }
         }
+        return block.length;
     }
 
-    protected String readUtf8Line(RandomAccessFile logFile) throws IOException {
-        int c = -1;
-        boolean eol = false;
-        ByteArrayOutputStream input = new ByteArrayOutputStream();
-
-        while (!eol) {
-            switch (c = logFile.read()) {
-                case -1:
-                case '\n':
-                    eol = true;
-                    break;
-                case '\r':
-                    eol = true;
-                    long cur = logFile.getFilePointer();
-                    if ((logFile.read()) != '\n') {
-                        logFile.seek(cur);
-                    }
-                    break;
-                default:
-                    input.write((byte)c);
-                    break;
+    /**
+     * @return index of the first byte after the last line break found from {@code offset}, or {@code offset}
+     * if the block contains no complete lines
+     */
+    protected int getLastLineEnd(byte[] block, int offset) {
+        for (int i = block.length - 1; i >= offset; i--) {
+            // a trailing '\r' can be followed by '\n' which is not written yet
+            if (block[i] == '\n' || (block[i] == '\r' && i < block.length - 1)) {
+                return i + 1;
             }
         }
-        if ((c == -1) && (input.size() == 0)) {
-            return null;
-        }
+        return offset;
+    }
 
-        return new String(input.toByteArray(), StandardCharsets.UTF_8);
+    protected String normalizeLineSeparators(String content) {
+        if (content.isEmpty()) {
+            return content;
+        }
+        content = content.replace("\r\n", "\n").replace('\r', '\n');
+        return content.endsWith("\n") ? content : content + "\n";
     }
 }
\ No newline at end of file
@@ -23,69 +23,85 @@ import com.haulmont.cuba.core.global.GlobalConfig;
 import com.haulmont.cuba.core.global.Metadata;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.*;
 
 /**
  * Intermediate cache for generated ids of entities with long/integer PK.
- * The cache size is determined by the {@code cuba.numberIdCacheSize} app property.
+ * The cache size is determined by the {@code cuba.numberIdCacheSize} app property or by
+ * {@link IdSequence#cacheSize()} of the entity.
+ * <p>
+ * Ids are handed out from blocks reserved in the sequence by {@link BlockAllocator}.
  */
 @Component(NumberIdCache.NAME)
 public class NumberIdCache {
 
     public static final String NAME = "cuba_NumberIdCache";
 
+    protected static final int PREFETCH_THREADS = 2;
+
     @Inject
     protected Metadata metadata;
 
-    protected class Generator {
-        protected long counter;
-        protected long sequenceValue;
+    protected class Generator extends BlockAllocator {
         protected String entityName;
         protected String sequenceName;
         protected boolean cached;
+        protected int cacheSize;
         protected NumberIdSequence numberIdSequence;
 
         public Generator(String entityName,
                          String sequenceName,
                          boolean cached,
+                         int cacheSize,
                          NumberIdSequence sequence) {
+            super(sequenceName != null ? sequenceName : entityName, NumberIdCache.this.statistics);
             this.entityName = entityName;
             this.sequenceName = sequenceName;
             this.cached = cached;
+            this.cacheSize = cacheSize;
             this.numberIdSequence = sequence;
-            if (useIdCache()) {
-                createCachedCounter();
-            }
         }
 
         protected boolean useIdCache() {
-            return config.getNumberIdCacheSize() != 0 && cached;
+            return getBlockSize() != 0 && cached;
+        }
+
+        protected int getBlockSize() {
+            return cacheSize > 0 ? cacheSize : config.getNumberIdCacheSize();
         }
 
-        protected void createCachedCounter() {
-            sequenceValue = numberIdSequence.createCachedLongId(entityName, sequenceName);
-            counter = sequenceValue;
+        /**
+         * Reserves ids from {@code sequenceValue + 1} to {@code sequenceValue + size}.
+         */
+        @Override
+        protected Block reserveBlock() {
+            int size = getBlockSize();
+            long sequenceValue = numberIdSequence.createCachedLongId(entityName, sequenceName);
+            return new Block(sequenceValue + 1, size, 1);
         }
 
-        public synchronized long getNext() {
+        @Override
+        protected Executor getExecutor() {
+            return getPrefetchExecutor();
+        }
+
+        public long getNext() {
             if (!useIdCache()) {
                 return numberIdSequence.createLongId(entityName, sequenceName);
-            } else {
-                long next = ++counter;
-                if (next > sequenceValue + config.getNumberIdCacheSize()) {
-                    createCachedCounter();
-                    next = ++counter;
-                }
-                return next;
             }
+            return next();
         }
     }
 
     protected ConcurrentMap<String, Generator> cache = new ConcurrentHashMap<>();
 
+    protected volatile ExecutorService prefetchExecutor;
+
+    protected final BlockAllocator.Statistics statistics = new BlockAllocator.Statistics();
+
     @Inject
     protected GlobalConfig config;
 
@@ -100,24 +116,98 @@ public class NumberIdCache {
         MetaClass metaClass = metadata.getClass(entityName);
         final boolean cached;
         final String sequenceName;
-        if (metaClass != null) {
-            Map attributes = (Map) metaClass.getAnnotations().get(IdSequence.class.getName());
-            if (attributes != null) {
-                sequenceName = (String) attributes.get("name");
-                cached = Boolean.TRUE.equals(attributes.get("cached"));
-            } else {
-                cached = true;
-                sequenceName = null;
-            }
+        final int cacheSize;
+        Map attributes = metaClass != null
+                ? (Map) metaClass.getAnnotations().get(IdSequence.class.getName())
+                : null;
+        if (attributes != null) {
+            sequenceName = (String) attributes.get("name");
+            cached = Boolean.TRUE.equals(attributes.get("cached"));
+            cacheSize = getCacheSize(attributes);
         } else {
             cached = true;
             sequenceName = null;
+            cacheSize = 0;
         }
 
-        Generator gen = cache.computeIfAbsent(getCacheKey(entityName, sequenceName), s -> new Generator(entityName, sequenceName, cached, sequence));
+        Generator gen = cache.computeIfAbsent(getCacheKey(entityName, sequenceName), s -> new Generator(entityName, sequenceName, cached, cacheSize, sequence));
         return gen.getNext();
     }
 
+    /**
+     * Returns the number of ids reserved in the sequence at once, that is the increment of the sequence.
+     *
+     * @param entityName entity name
+     * @return cache size defined for the entity by {@link IdSequence#cacheSize()} or {@code cuba.numberIdCacheSize}
+     */
+    public int getCacheSize(String entityName) {
+        MetaClass metaClass = metadata.getClass(entityName);
+        if (metaClass != null) {
+            Map attributes = (Map) metaClass.getAnnotations().get(IdSequence.class.getName());
+            if (attributes != null) {
+                int cacheSize = getCacheSize(attributes);
+                if (cacheSize > 0) {
+                    return cacheSize;
+                }
+            }
+        }
+        return config.getNumberIdCacheSize();
+    }
+
+    protected int getCacheSize(Map attributes) {
+        Object cacheSize = attributes.get("cacheSize");
+        return cacheSize instanceof Integer ? (Integer) cacheSize : 0;
+    }
+
+    protected ExecutorService getPrefetchExecutor() {
+        ExecutorService executor = prefetchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = prefetchExecutor;
+                if (executor == null) {
+                    executor = BlockAllocator.createExecutor("NumberIdCachePrefetch-%d", PREFETCH_THREADS);
+                    prefetchExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of blocks of ids fetched from sequences
+     */
+    public long getBlockFetchCount() {
+        return statistics.getReservedBlocks();
+    }
+
+    /**
+     * @return average time of fetching a block of ids from a sequence in milliseconds
+     */
+    public double getAverageBlockFetchTime() {
+        return statistics.getAverageReservationTime();
+    }
+
+    /**
+     * @return number of blocks fetched in background
+     */
+    public long getPrefetchCount() {
+        return statistics.getPrefetches();
+    }
+
+    /**
+     * @return number of times the threads generating ids had to wait for a block to be fetched
+     */
+    public long getWaitCount() {
+        return statistics.getWaits();
+    }
+
     /**
      * INTERNAL. Used by tests.
      */
@@ -128,4 +218,4 @@ public class NumberIdCache {
     protected String getCacheKey(String entityName, String sequenceName) {
         return sequenceName == null ? entityName : sequenceName;
     }
-}
\ No newline at end of file
+}
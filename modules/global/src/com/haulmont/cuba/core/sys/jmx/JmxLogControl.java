@@ -28,6 +28,7 @@ import com.haulmont.cuba.core.sys.jmx.exception.LoggerNotFoundException;
 import com.haulmont.cuba.core.sys.jmx.exception.UnrecognizedLogLevelException;
 import com.haulmont.cuba.core.sys.jmx.exception.UnrecognizedLogThresholdException;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 import com.haulmont.cuba.core.sys.logging.LoggingHelper;
 import org.springframework.stereotype.Component;
 
@@ -53,6 +54,11 @@ public class JmxLogControl implements JmxLogControlMBean {
         return logControl.getTail(fileName);
     }
 
+    @Override
+    public LogTail getTailFrom(String fileName, long position) throws LogControlException {
+        return logControl.getTail(fileName, position);
+    }
+
     @Override
     public String getLogFileLink(String fileName) throws LogControlException {
         // check log file exists
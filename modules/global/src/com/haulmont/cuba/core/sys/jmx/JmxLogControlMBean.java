@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.sys.jmx;
 
 import com.haulmont.cuba.core.sys.logging.LogControlException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,15 @@ public interface JmxLogControlMBean {
      */
     String getTail(String fileName) throws LogControlException;
 
+    /**
+     * Reads log lines written after the given position, or a log tail equal 50Kb if the position is out of date
+     *
+     * @param fileName name of a readable file
+     * @param position position returned by the previous call or -1
+     * @return log lines and the position to continue from
+     */
+    LogTail getTailFrom(String fileName, long position) throws LogControlException;
+
     /**
      * Get URL for log file downloading
      *
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.logging;
+
+import java.io.Serializable;
+
+/**
+ * Part of a log file returned by {@link com.haulmont.cuba.core.global.LogControl#getTail(String, long)}.
+ */
+public class LogTail implements Serializable {
+
+    private static final long serialVersionUID = 4319436216813402186L;
+
+    protected final String content;
+    protected final long position;
+    protected final boolean reset;
+
+    public LogTail(String content, long position, boolean reset) {
+        this.content = content;
+        this.position = position;
+        this.reset = reset;
+    }
+
+    /**
+     * @return complete log lines, separated by {@code \n}
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return position in the log file right after the returned content, to be passed to the next call
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if the content is not a continuation of the previously read part, e.g. because the file has been
+     * rotated or too many lines have been written since the last call, and it replaces all previously read lines
+     */
+    public boolean isReset() {
+        return reset;
+    }
+}
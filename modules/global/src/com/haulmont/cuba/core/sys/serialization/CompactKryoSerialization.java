@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.haulmont.cuba.core.sys.serialization;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AppContext;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Kryo serialization with a deterministic class registration table and pooled buffers.
+ * <p>
+ * All entity classes from {@link Metadata} and common JDK types are registered in the same order on every node,
+ * so Kryo writes a small class id instead of the fully qualified class name. The data starts with a header
+ * containing the fingerprint of the registration table; a node refuses to read data written with a different
+ * table instead of silently misinterpreting class ids. Data written by {@link KryoSerialization} (without the header)
+ * is read as well.
+ * <p>
+ * To use it for remoting and cluster messages, set the {@code cuba.serialization.impl} application property to
+ * the name of this class on all blocks of the application. Additional properties:
+ * <ul>
+ *     <li>{@code cuba.serialization.kryoCompatibleWrite} - if true, data is written in the {@link KryoSerialization}
+ *     format. Use it for a rolling upgrade: first deploy all nodes with this property set, then turn it off.</li>
+ *     <li>{@code cuba.serialization.kryoCompression} - if true, data larger than
+ *     {@code cuba.serialization.kryoCompressionThreshold} bytes (4096 by default) is compressed.</li>
+ * </ul>
+ */
+public class CompactKryoSerialization extends KryoSerialization {
+
+    /**
+     * The first two bytes of the header. Kryo never starts {@code writeClassAndObject} output with them, because
+     * 0x00 after a byte with the continuation bit is a non-canonical varint.
+     */
+    protected static final byte MAGIC_0 = (byte) 0xC5;
+    protected static final byte MAGIC_1 = 0x00;
+
+    protected static final int HEADER_LENGTH = 7;
+    protected static final byte FLAG_COMPRESSED = 1;
+
+    protected static final int BUFFER_SIZE = 4096;
+    protected static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    protected final boolean compatibleWrite;
+    protected final boolean compression;
+    protected final int compressionThreshold;
+
+    protected volatile RegistrationTable registrationTable;
+
+    protected final ThreadLocal<KryoHolder> holders = new ThreadLocal<>();
+
+    public CompactKryoSerialization() {
+        compatibleWrite = BooleanUtils.toBoolean(AppContext.getProperty("cuba.serialization.kryoCompatibleWrite"));
+        compression = BooleanUtils.toBoolean(AppContext.getProperty("cuba.serialization.kryoCompression"));
+        compressionThreshold = NumberUtils.toInt(
+                AppContext.getProperty("cuba.serialization.kryoCompressionThreshold"), BUFFER_SIZE);
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream os) {
+        if (compatibleWrite) {
+            super.serialize(object, os);
+            return;
+        }
+        KryoHolder holder = acquire();
+        try {
+            Output output = writeBody(holder, object);
+            writeHeaderAndBody(output, holder.table.fingerprint, os);
+            os.flush();
+        } catch (Exception e) {
+            throw new SerializationException(e);
+        } finally {
+            release(holder);
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        if (compatibleWrite) {
+            return super.serialize(object);
+        }
+        KryoHolder holder = acquire();
+        try {
+            Output output = writeBody(holder, object);
+            if (compression && output.position() > compressionThreshold) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(output.position() / 2);
+                writeHeaderAndBody(output, holder.table.fingerprint, bos);
+                return bos.toByteArray();
+            }
+            byte[] bytes = new byte[HEADER_LENGTH + output.position()];
+            writeHeader(bytes, (byte) 0, holder.table.fingerprint);
+            System.arraycopy(output.getBuffer(), 0, bytes, HEADER_LENGTH, output.position());
+            return bytes;
+        } catch (Exception e) {
+            throw new SerializationException(e);
+        } finally {
+            release(holder);
+        }
+    }
+
+    @Override
+    public Object deserialize(InputStream is) {
+        try {
+            PushbackInputStream pis = new PushbackInputStream(is, 2);
+            byte[] magic = new byte[2];
+            int count = readFully(pis, magic, 2);
+            if (count < 2 || magic[0] != MAGIC_0 || magic[1] != MAGIC_1) {
+                pis.unread(magic, 0, count);
+                return super.deserialize(pis);
+            }
+            DataInputStream dis = new DataInputStream(pis);
+            byte flags = dis.readByte();
+            int fingerprint = dis.readInt();
+
+            KryoHolder holder = acquire();
+            try {
+                checkFingerprint(holder, fingerprint);
+                InputStream bodyStream = (flags & FLAG_COMPRESSED) != 0 ? new InflaterInputStream(pis) : pis;
+                Input input = holder.input;
+                input.setInputStream(bodyStream);
+                try {
+                    return holder.kryo.readClassAndObject(input);
+                } finally {
+                    input.setInputStream(null);
+                }
+            } finally {
+                release(holder);
+            }
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+            return super.deserialize(bytes);
+        }
+        try {
+            byte flags = bytes[2];
+            int fingerprint = ((bytes[3] & 0xFF) << 24) | ((bytes[4] & 0xFF) << 16)
+                    | ((bytes[5] & 0xFF) << 8) | (bytes[6] & 0xFF);
+
+            KryoHolder holder = acquire();
+            try {
+                checkFingerprint(holder, fingerprint);
+                Input input;
+                if ((flags & FLAG_COMPRESSED) != 0) {
+                    input = holder.input;
+                    input.setInputStream(new InflaterInputStream(
+                            new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH)));
+                } else {
+                    input = new Input(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+                }
+                try {
+                    return holder.kryo.readClassAndObject(input);
+                } finally {
+                    if (input == holder.input) {
+                        input.setInputStream(null);
+                    }
+                }
+            } finally {
+                release(holder);
+            }
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException(e);
+        }
+    }
+
+    @Override
+    public Object copy(Object object) {
+        if (object == null) {
+            return null;
+        }
+        KryoHolder holder = acquire();
+        try {
+            return holder.kryo.copy(object);
+        } finally {
+            release(holder);
+        }
+    }
+
+    /**
+     * @return fingerprint of the class registration table used by this node
+     */
+    public int getRegistrationTableFingerprint() {
+        return getRegistrationTable().fingerprint;
+    }
+
+    protected Output writeBody(KryoHolder holder, Object object) {
+        prepareForSerialization(object);
+        Output output = holder.output;
+        output.clear();
+        holder.kryo.writeClassAndObject(output, object);
+        return output;
+    }
+
+    protected void writeHeaderAndBody(Output output, int fingerprint, OutputStream os) throws IOException {
+        boolean compress = compression && output.position() > compressionThreshold;
+        byte[] header = new byte[HEADER_LENGTH];
+        writeHeader(header, compress ? FLAG_COMPRESSED : 0, fingerprint);
+        os.write(header);
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                // finish instead of close: the target stream is closed by the caller
+                DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater, BUFFER_SIZE);
+                dos.write(output.getBuffer(), 0, output.position());
+                dos.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            os.write(output.getBuffer(), 0, output.position());
+        }
+    }
+
+    protected void writeHeader(byte[] bytes, byte flags, int fingerprint) {
+        bytes[0] = MAGIC_0;
+        bytes[1] = MAGIC_1;
+        bytes[2] = flags;
+        bytes[3] = (byte) (fingerprint >>> 24);
+        bytes[4] = (byte) (fingerprint >>> 16);
+        bytes[5] = (byte) (fingerprint >>> 8);
+        bytes[6] = (byte) fingerprint;
+    }
+
+    protected void checkFingerprint(KryoHolder holder, int fingerprint) {
+        if (fingerprint != holder.table.fingerprint) {
+            throw new SerializationException(String.format(
+                    "Incompatible Kryo class registration table: received %08x, local %08x. Ensure all nodes have " +
+                            "the same entity model or set cuba.serialization.kryoCompatibleWrite=true",
+                    fingerprint, holder.table.fingerprint));
+        }
+    }
+
+    protected int readFully(InputStream is, byte[] buffer, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int read = is.read(buffer, count, length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    protected KryoHolder acquire() {
+        RegistrationTable table = getRegistrationTable();
+        KryoHolder holder = holders.get();
+        if (holder == null || holder.table != table) {
+            holder = new KryoHolder(table, newKryoInstance(table));
+            holders.set(holder);
+        } else if (holder.inUse) {
+            // nested serialization in the same thread, pooled buffers are busy
+            return new KryoHolder(table, newKryoInstance(table));
+        }
+        holder.inUse = true;
+        return holder;
+    }
+
+    protected void release(KryoHolder holder) {
+        holder.inUse = false;
+        if (holder.output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+            holder.output.setBuffer(new byte[BUFFER_SIZE], -1);
+        }
+    }
+
+    protected Kryo newKryoInstance(RegistrationTable table) {
+        Kryo kryo = newKryoInstance();
+        for (Class<?> aClass : table.classes) {
+            kryo.register(aClass);
+        }
+        return kryo;
+    }
+
+    protected RegistrationTable getRegistrationTable() {
+        RegistrationTable table = registrationTable;
+        if (table == null || !table.complete && AppContext.getApplicationContext() != null) {
+            synchronized (this) {
+                table = registrationTable;
+                if (table == null || !table.complete && AppContext.getApplicationContext() != null) {
+                    boolean complete = AppContext.getApplicationContext() != null;
+                    List<Class<?>> classes = getRegisteredClasses(complete);
+                    table = new RegistrationTable(classes, calculateFingerprint(classes), complete);
+                    registrationTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param includeEntities whether metadata is available and entity classes should be included
+     * @return classes to register in addition to the ones registered by {@link KryoSerialization}, in the same order
+     * on all nodes
+     */
+    protected List<Class<?>> getRegisteredClasses(boolean includeEntities) {
+        List<Class<?>> classes = new ArrayList<>(Arrays.asList(
+                Object[].class, byte[].class, String[].class, Class.class,
+                ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+                HashSet.class, LinkedHashSet.class, TreeSet.class,
+                UUID.class, Date.class, java.sql.Date.class, java.sql.Time.class, java.sql.Timestamp.class,
+                BigDecimal.class, BigInteger.class, Locale.class,
+                LoadContext.class, LoadContext.Query.class, ValueLoadContext.class, ValueLoadContext.Query.class,
+                CommitContext.class, View.class, ViewProperty.class, FetchMode.class, KeyValueEntity.class
+        ));
+        if (includeEntities) {
+            Metadata metadata = AppBeans.get(Metadata.NAME);
+            SortedMap<String, Class<?>> entityClasses = new TreeMap<>();
+            for (MetaClass metaClass : metadata.getSession().getClasses()) {
+                Class<?> javaClass = metaClass.getJavaClass();
+                entityClasses.put(javaClass.getName(), javaClass);
+            }
+            classes.addAll(entityClasses.values());
+        }
+        return classes;
+    }
+
+    protected int calculateFingerprint(List<Class<?>> classes) {
+        // include the classes registered by KryoSerialization and Kryo itself
+        Kryo kryo = newKryoInstance();
+        for (Class<?> aClass : classes) {
+            kryo.register(aClass);
+        }
+        CRC32 crc = new CRC32();
+        for (int id = 0; id < kryo.getNextRegistrationId(); id++) {
+            Registration registration = kryo.getRegistration(id);
+            if (registration != null) {
+                crc.update(id);
+                crc.update(registration.getType().getName().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    protected static class RegistrationTable {
+        protected final List<Class<?>> classes;
+        protected final int fingerprint;
+        protected final boolean complete;
+
+        protected RegistrationTable(List<Class<?>> classes, int fingerprint, boolean complete) {
+            this.classes = classes;
+            this.fingerprint = fingerprint;
+            this.complete = complete;
+        }
+    }
+
+    protected static class KryoHolder {
+        protected final RegistrationTable table;
+        protected final Kryo kryo;
+        protected final Output output = new Output(BUFFER_SIZE, -1);
+        protected final Input input = new Input(BUFFER_SIZE);
+        protected boolean inUse;
+
+        protected KryoHolder(RegistrationTable table, Kryo kryo) {
+            this.table = table;
+            this.kryo = kryo;
+        }
+    }
+}
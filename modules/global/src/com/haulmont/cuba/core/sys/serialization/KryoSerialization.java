@@ -138,10 +138,7 @@ public class KryoSerialization implements Serialization {
     @SuppressWarnings("finally")
     public void serialize(Object object, OutputStream os) {
         try (Output output = new CubaOutput(os)) {
-            if (object instanceof BaseGenericIdEntity
-                    && BaseEntityInternalAccess.isManaged((BaseGenericIdEntity) object)) {
-                BaseEntityInternalAccess.setDetached((BaseGenericIdEntity) object, true);
-            }
+            prepareForSerialization(object);
             kryos.get().writeClassAndObject(output, object);
         } catch (Exception e) {
             throw new SerializationException(e);
@@ -180,6 +177,13 @@ public class KryoSerialization implements Serialization {
         return kryos.get().copy(object);
     }
 
+    protected void prepareForSerialization(Object object) {
+        if (object instanceof BaseGenericIdEntity
+                && BaseEntityInternalAccess.isManaged((BaseGenericIdEntity) object)) {
+            BaseEntityInternalAccess.setDetached((BaseGenericIdEntity) object, true);
+        }
+    }
+
     protected void registerEntitySerializer(Kryo kryo) {
         kryo.addDefaultSerializer(Entity.class, EntitySerializer.class);
     }
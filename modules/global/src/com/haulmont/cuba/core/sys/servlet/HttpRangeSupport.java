@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.servlet;
+
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.FileLoader;
+import com.haulmont.cuba.core.global.FileStorageException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Utility methods for conditional ({@code If-None-Match}, {@code If-Modified-Since}) and partial ({@code Range})
+ * file download requests.
+ * <p>
+ * Only single byte ranges are served as 206 responses, requests for multiple ranges are answered with the whole
+ * content, which is allowed by RFC 7233.
+ */
+public final class HttpRangeSupport {
+
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String ETAG = "ETag";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String IF_RANGE = "If-Range";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String RANGE = "Range";
+
+    public static final String BYTES_UNIT = "bytes";
+
+    public static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    private HttpRangeSupport() {
+    }
+
+    /**
+     * Byte range with inclusive bounds.
+     */
+    public static class ByteRange {
+        protected final long start;
+        protected final long end;
+
+        public ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
+
+        public String toContentRange(long totalLength) {
+            return BYTES_UNIT + " " + start + "-" + end + "/" + totalLength;
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end;
+        }
+    }
+
+    /**
+     * Creates a strong entity tag for the file contents. Files in the storage are immutable, so the identifier and
+     * the size of the descriptor are enough to identify the contents.
+     */
+    public static String createETag(FileDescriptor fd) {
+        StringBuilder sb = new StringBuilder("\"").append(fd.getId());
+        if (fd.getSize() != null) {
+            sb.append("-").append(fd.getSize());
+        }
+        return sb.append("\"").toString();
+    }
+
+    /**
+     * @return last modification time of the file truncated to seconds, or -1 if unknown
+     */
+    public static long getLastModified(FileDescriptor fd) {
+        if (fd.getCreateDate() == null) {
+            return -1;
+        }
+        return fd.getCreateDate().getTime() / 1000 * 1000;
+    }
+
+    /**
+     * Sets validator headers of the response for the given file.
+     */
+    public static void setValidators(HttpServletResponse response, FileDescriptor fd) {
+        response.setHeader(ETAG, createETag(fd));
+        long lastModified = getLastModified(fd);
+        if (lastModified >= 0) {
+            response.setDateHeader(LAST_MODIFIED, lastModified);
+        }
+        if (fd.getSize() != null) {
+            response.setHeader(ACCEPT_RANGES, BYTES_UNIT);
+        }
+    }
+
+    /**
+     * Evaluates {@code If-None-Match} and {@code If-Modified-Since} request headers.
+     * {@code If-Modified-Since} is ignored if {@code If-None-Match} is present.
+     *
+     * @return true if the client already has the current version of the file and 304 response should be sent
+     */
+    public static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, eTag);
+        }
+
+        if (lastModified >= 0) {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+        }
+        return false;
+    }
+
+    /**
+     * Determines the byte range requested by the client.
+     *
+     * @param request      request
+     * @param eTag         current entity tag of the file, used to evaluate {@code If-Range}
+     * @param lastModified last modification time of the file or -1
+     * @param length       file length
+     * @return list containing a single range to send, empty list if the range is not satisfiable,
+     * or null if the whole content must be sent
+     */
+    @Nullable
+    public static List<ByteRange> getRequestedRanges(HttpServletRequest request, String eTag, long lastModified,
+                                                     long length) {
+        String rangeHeader = request.getHeader(RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(IF_RANGE);
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(eTag)) {
+                    return null;
+                }
+            } else {
+                long ifRangeDate;
+                try {
+                    ifRangeDate = request.getDateHeader(IF_RANGE);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                if (lastModified < 0 || lastModified != ifRangeDate) {
+                    return null;
+                }
+            }
+        }
+
+        List<ByteRange> ranges = parseRanges(rangeHeader, length);
+        if (ranges != null && ranges.size() > 1) {
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * Parses the value of the {@code Range} header.
+     *
+     * @param rangeHeader header value
+     * @param length      file length
+     * @return satisfiable ranges, empty list if none of the ranges is satisfiable, or null if the header is malformed
+     * and must be ignored
+     */
+    @Nullable
+    public static List<ByteRange> parseRanges(String rangeHeader, long length) {
+        String prefix = BYTES_UNIT + "=";
+        if (!rangeHeader.startsWith(prefix)) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : StringUtils.split(rangeHeader.substring(prefix.length()), ',')) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            long start;
+            long end;
+            try {
+                if (first.isEmpty()) {
+                    // suffix range: the last N bytes
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffixLength);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    if (last.isEmpty()) {
+                        end = length - 1;
+                    } else {
+                        long lastPosition = Long.parseLong(last);
+                        if (lastPosition < start) {
+                            return null;
+                        }
+                        end = Math.min(lastPosition, length - 1);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (start < 0) {
+                return null;
+            }
+            if (start < length && start <= end) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+        return ranges.isEmpty() ? Collections.emptyList() : ranges;
+    }
+
+    /**
+     * Copies the rest of the input stream, see {@link #copy(InputStream, OutputStream, long)}.
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        return copy(inputStream, outputStream, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sends the single byte range requested by the {@code Range} header of the request, answering it with a 206
+     * or 416 response. Does nothing if the whole content must be sent, see
+     * {@link #getRequestedRanges(HttpServletRequest, String, long, long)}.
+     *
+     * @param fileLoader loader used to open the file at the start of the range
+     * @return true if the response has been completed, false if the caller must send the whole content
+     */
+    public static boolean writeRequestedRange(HttpServletRequest request, HttpServletResponse response,
+                                              FileDescriptor fd, FileLoader fileLoader)
+            throws IOException, FileStorageException {
+        if (fd.getSize() == null) {
+            return false;
+        }
+        List<ByteRange> ranges = getRequestedRanges(request, createETag(fd), getLastModified(fd), fd.getSize());
+        if (ranges == null) {
+            return false;
+        }
+        if (ranges.isEmpty()) {
+            response.setHeader(CONTENT_RANGE, BYTES_UNIT + " */" + fd.getSize());
+            response.sendError(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return true;
+        }
+
+        ByteRange range = ranges.get(0);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(CONTENT_RANGE, range.toContentRange(fd.getSize()));
+        response.setContentLengthLong(range.getLength());
+
+        OutputStream os = response.getOutputStream();
+        try (InputStream is = fileLoader.openStream(fd, range.getStart())) {
+            copy(is, os, range.getLength());
+            os.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Copies the given number of bytes from the current position of the input stream.
+     * <p>
+     * If the stream reads a local file, the bytes are read by the file channel, so the stream does not need to
+     * skip to the position. The servlet output stream is not a channel, therefore the bytes are still copied
+     * through a buffer on the heap.
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream, long count) throws IOException {
+        if (inputStream instanceof FileInputStream) {
+            FileChannel fileChannel = ((FileInputStream) inputStream).getChannel();
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = fileChannel.position();
+            long transferred = 0;
+            while (transferred < count) {
+                long n = fileChannel.transferTo(position + transferred, count - transferred, target);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+            return transferred;
+        }
+        return IOUtils.copyLarge(inputStream, outputStream, 0, count);
+    }
+
+    private static boolean matchesETag(String header, String eTag) {
+        if ("*".equals(header.trim())) {
+            return true;
+        }
+        String opaqueTag = StringUtils.removeStart(eTag, "W/");
+        for (String tag : StringUtils.split(header, ',')) {
+            if (opaqueTag.equals(StringUtils.removeStart(tag.trim(), "W/"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.sys.logging.LogTail;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class LogControlImplTest {
+
+    private LogControlImpl logControl;
+    private File logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        logControl = new LogControlImpl();
+        logControl.logDir = Files.createTempDirectory("logs").toFile();
+        logFile = new File(logControl.logDir, "app.log");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(logControl.logDir);
+    }
+
+    @Test
+    public void testTail() throws Exception {
+        FileUtils.write(logFile, "line 1\r\nline 2\rline 3\nline 4", StandardCharsets.UTF_8);
+
+        assertEquals("line 1\nline 2\nline 3\nline 4\n", logControl.getTail("app.log"));
+    }
+
+    @Test
+    public void testTailOfLargeFile() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("line ").append(i).append("\n");
+        }
+        FileUtils.write(logFile, sb.toString(), StandardCharsets.UTF_8);
+
+        String tail = logControl.getTail("app.log");
+        assertTrue(tail.length() <= 51200);
+        assertTrue(tail.startsWith("line "));
+        assertTrue(tail.endsWith("line 9999\n"));
+    }
+
+    @Test
+    public void testFollow() throws Exception {
+        FileUtils.write(logFile, "line 1\nline 2\npartial", StandardCharsets.UTF_8);
+
+        LogTail tail = logControl.getTail("app.log", -1);
+        assertTrue(tail.isReset());
+        assertEquals("line 1\nline 2\n", tail.getContent());
+
+        LogTail next = logControl.getTail("app.log", tail.getPosition());
+        assertFalse(next.isReset());
+        assertEquals("", next.getContent());
+        assertEquals(tail.getPosition(), next.getPosition());
+
+        FileUtils.write(logFile, " line 3\nline 4\n", StandardCharsets.UTF_8, true);
+
+        next = logControl.getTail("app.log", next.getPosition());
+        assertFalse(next.isReset());
+        assertEquals("partial line 3\nline 4\n", next.getContent());
+        assertEquals(logFile.length(), next.getPosition());
+
+        // file has been rotated
+        FileUtils.write(logFile, "new\n", StandardCharsets.UTF_8);
+
+        next = logControl.getTail("app.log", next.getPosition());
+        assertTrue(next.isReset());
+        assertEquals("new\n", next.getContent());
+
+        FileUtils.write(logFile, StringUtils.repeat("x\n", 30000), StandardCharsets.UTF_8, true);
+
+        next = logControl.getTail("app.log", next.getPosition());
+        assertTrue(next.isReset());
+        assertTrue(next.getContent().startsWith("x\n"));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.servlet;
+
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.FileLoader;
+import com.haulmont.cuba.core.sys.servlet.HttpRangeSupport.ByteRange;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HttpRangeSupportTest {
+
+    @Test
+    public void testParseRanges() {
+        List<ByteRange> ranges = HttpRangeSupport.parseRanges("bytes=0-99", 1000);
+        assertNotNull(ranges);
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getStart());
+        assertEquals(99, ranges.get(0).getEnd());
+        assertEquals(100, ranges.get(0).getLength());
+        assertEquals("bytes 0-99/1000", ranges.get(0).toContentRange(1000));
+
+        ranges = HttpRangeSupport.parseRanges("bytes=900-", 1000);
+        assertNotNull(ranges);
+        assertEquals(900, ranges.get(0).getStart());
+        assertEquals(999, ranges.get(0).getEnd());
+
+        ranges = HttpRangeSupport.parseRanges("bytes=-100", 1000);
+        assertNotNull(ranges);
+        assertEquals(900, ranges.get(0).getStart());
+        assertEquals(999, ranges.get(0).getEnd());
+
+        ranges = HttpRangeSupport.parseRanges("bytes=990-2000", 1000);
+        assertNotNull(ranges);
+        assertEquals(999, ranges.get(0).getEnd());
+
+        ranges = HttpRangeSupport.parseRanges("bytes=0-1, 5-9", 1000);
+        assertNotNull(ranges);
+        assertEquals(2, ranges.size());
+    }
+
+    @Test
+    public void testParseInvalidRanges() {
+        assertNull(HttpRangeSupport.parseRanges("items=0-1", 1000));
+        assertNull(HttpRangeSupport.parseRanges("bytes=abc", 1000));
+        assertNull(HttpRangeSupport.parseRanges("bytes=10-5", 1000));
+
+        List<ByteRange> ranges = HttpRangeSupport.parseRanges("bytes=1000-", 1000);
+        assertNotNull(ranges);
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayInputStream in = new ByteArrayInputStream(content);
+        assertEquals(2, in.skip(2));
+        HttpRangeSupport.copy(in, out, 3);
+        assertEquals("234", out.toString("UTF-8"));
+
+        File file = File.createTempFile("range", ".txt");
+        try {
+            Files.write(file.toPath(), content);
+            out = new ByteArrayOutputStream();
+            try (FileInputStream fileIn = new FileInputStream(file)) {
+                fileIn.getChannel().position(5);
+                HttpRangeSupport.copy(fileIn, out, 4);
+            }
+            assertEquals("5678", out.toString("UTF-8"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteRequestedRange() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setSize(10L);
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        FileLoader fileLoader = (FileLoader) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{FileLoader.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("openStream") && args.length == 2) {
+                        long position = (Long) args[1];
+                        return new ByteArrayInputStream(content, (int) position, content.length - (int) position);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        Map<String, Object> response = new HashMap<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(HttpRangeSupport.writeRequestedRange(request("bytes=2-4"), response(response, out), fd, fileLoader));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.get("status"));
+        assertEquals("bytes 2-4/10", response.get(HttpRangeSupport.CONTENT_RANGE));
+        assertEquals("234", out.toString("UTF-8"));
+
+        response.clear();
+        assertTrue(HttpRangeSupport.writeRequestedRange(request("bytes=20-"), response(response, out), fd, fileLoader));
+        assertEquals(HttpRangeSupport.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.get("error"));
+        assertEquals("bytes */10", response.get(HttpRangeSupport.CONTENT_RANGE));
+
+        response.clear();
+        assertFalse(HttpRangeSupport.writeRequestedRange(request(null), response(response, out), fd, fileLoader));
+        assertTrue(response.isEmpty());
+    }
+
+    private HttpServletRequest request(String range) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getHeader")) {
+                        return HttpRangeSupport.RANGE.equals(args[0]) ? range : null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private HttpServletResponse response(Map<String, Object> values, ByteArrayOutputStream out) {
+        ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setHeader":
+                            values.put((String) args[0], args[1]);
+                            return null;
+                        case "setStatus":
+                            values.put("status", args[0]);
+                            return null;
+                        case "sendError":
+                            values.put("error", args[0]);
+                            return null;
+                        case "setContentLengthLong":
+                            values.put("length", args[0]);
+                            return null;
+                        case "getOutputStream":
+                            return outputStream;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
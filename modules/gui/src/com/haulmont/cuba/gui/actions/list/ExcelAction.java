@@ -28,6 +28,7 @@ import com.haulmont.cuba.gui.components.actions.ListAction;
 import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
 import com.haulmont.cuba.gui.export.ExcelExporter;
 import com.haulmont.cuba.gui.export.ExportDisplay;
+import com.haulmont.cuba.gui.export.ExportFormat;
 import com.haulmont.cuba.gui.icons.CubaIcon;
 import com.haulmont.cuba.gui.icons.Icons;
 import com.haulmont.cuba.gui.model.CollectionContainer;
@@ -51,6 +52,16 @@ public class ExcelAction extends ListAction {
      */
     protected boolean exportAggregation = true;
 
+    /**
+     * Format of the document, see {@link ExcelExporter#setExportFormat(ExportFormat)}.
+     */
+    protected ExportFormat exportFormat = ExportFormat.XLS;
+
+    /**
+     * Size of pages used to export all rows matching the loader query, see {@link ExcelExporter#setLoadPageSize(int)}.
+     */
+    protected int loadPageSize;
+
     public ExcelAction() {
         super(ID);
     }
@@ -137,6 +148,22 @@ public class ExcelAction extends ListAction {
         this.exportAggregation = exportAggregation;
     }
 
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+
+    public void setExportFormat(ExportFormat exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+
+    public int getLoadPageSize() {
+        return loadPageSize;
+    }
+
+    public void setLoadPageSize(int loadPageSize) {
+        this.loadPageSize = loadPageSize;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -151,6 +178,8 @@ public class ExcelAction extends ListAction {
     protected void export(ExcelExporter.ExportMode exportMode) {
         ExcelExporter exporter = new ExcelExporter();
         exporter.setExportAggregation(exportAggregation);
+        exporter.setExportFormat(exportFormat);
+        exporter.setLoadPageSize(loadPageSize);
 
         Window window = ComponentsHelper.getWindowNN(target);
 
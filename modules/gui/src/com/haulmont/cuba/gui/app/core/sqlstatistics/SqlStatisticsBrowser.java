@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.app.core.sqlstatistics;
+
+import com.haulmont.cuba.core.app.SqlStatisticsService;
+import com.haulmont.cuba.core.global.SlowSqlQueryInfo;
+import com.haulmont.cuba.core.global.SqlStatementInfo;
+import com.haulmont.cuba.gui.components.AbstractWindow;
+import com.haulmont.cuba.gui.components.CheckBox;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.UUID;
+
+public class SqlStatisticsBrowser extends AbstractWindow {
+
+    protected static final int TOP_STATEMENTS_COUNT = 100;
+
+    @Inject
+    protected SqlStatisticsService service;
+
+    @Inject
+    protected CollectionDatasource<SqlStatementInfo, UUID> statementsDs;
+
+    @Inject
+    protected CollectionDatasource<SlowSqlQueryInfo, UUID> slowQueriesDs;
+
+    @Inject
+    protected CheckBox enabledField;
+
+    @Override
+    public void init(Map<String, Object> params) {
+        refresh();
+    }
+
+    public void refresh() {
+        enabledField.setValue(service.isEnabled());
+
+        statementsDs.clear();
+        for (SqlStatementInfo statement : service.getTopStatements(TOP_STATEMENTS_COUNT, null)) {
+            statementsDs.includeItem(statement);
+        }
+
+        slowQueriesDs.clear();
+        for (SlowSqlQueryInfo query : service.getSlowQueries()) {
+            slowQueriesDs.includeItem(query);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.haulmont.cuba.gui.components.data.datagrid;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.gui.components.data.TreeDataGridItems;
+import com.haulmont.cuba.gui.components.data.tree.ContainerHierarchyIndex;
 import com.haulmont.cuba.gui.model.CollectionContainer;
 
 import javax.annotation.Nullable;
@@ -30,40 +31,46 @@ public class ContainerTreeDataGridItems<E extends Entity>
 
     private final String hierarchyProperty;
 
+    protected final ContainerHierarchyIndex<E> hierarchyIndex;
+
     public ContainerTreeDataGridItems(CollectionContainer<E> container, String hierarchyProperty) {
         super(container);
         this.hierarchyProperty = hierarchyProperty;
+        this.hierarchyIndex = new ContainerHierarchyIndex<>(container, hierarchyProperty);
+    }
+
+    @Override
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        hierarchyIndex.collectionChanged(e);
+        super.containerCollectionChanged(e);
+    }
+
+    @Override
+    protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        hierarchyIndex.itemPropertyChanged(e);
+        super.containerItemPropertyChanged(e);
     }
 
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        return parent == null
+                ? hierarchyIndex.getRoots().size()
+                : hierarchyIndex.getChildCount(parent.getId());
     }
 
     @Override
     public Stream<E> getChildren(E item) {
         if (item == null) {
             // root items
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem == null || (container.getItemOrNull(parentItem.getId()) == null);
-                    });
+            return hierarchyIndex.getRoots().stream();
         } else {
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem != null && parentItem.equals(item);
-                    });
+            return hierarchyIndex.getChildren(item.getId()).stream();
         }
     }
 
     @Override
     public boolean hasChildren(E item) {
-        return container.getItems().stream().anyMatch(it -> {
-            E parentItem = it.getValue(hierarchyProperty);
-            return parentItem != null && parentItem.equals(item);
-        });
+        return hierarchyIndex.hasChildren(item.getId());
     }
 
     @Nullable
@@ -42,17 +42,19 @@ public class DatasourceTreeDataGridItems<E extends Entity<K>, K>
 
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        return getChildIds(parent).size();
     }
 
     @Override
     public Stream<E> getChildren(E item) {
-        Collection<K> itemIds = item == null
+        return getChildIds(item).stream()
+                .map(id -> datasource.getItem(id));
+    }
+
+    protected Collection<K> getChildIds(@Nullable E item) {
+        return item == null
                 ? getHierarchicalDatasource().getRootItemIds()
                 : getHierarchicalDatasource().getChildren(item.getId());
-
-        return itemIds.stream()
-                .map(id -> datasource.getItem(id));
     }
 
     @Override
@@ -19,9 +19,11 @@ package com.haulmont.cuba.gui.components.data.table;
 import com.haulmont.chile.core.model.Instance;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.gui.components.data.TreeTableItems;
+import com.haulmont.cuba.gui.components.data.tree.ContainerHierarchyIndex;
 import com.haulmont.cuba.gui.model.CollectionContainer;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class ContainerTreeTableItems<E extends Entity>
             extends ContainerTableItems<E>
@@ -29,9 +31,24 @@ public class ContainerTreeTableItems<E extends Entity>
 
     private final String hierarchyProperty;
 
+    protected final ContainerHierarchyIndex<E> hierarchyIndex;
+
     public ContainerTreeTableItems(CollectionContainer<E> container, String hierarchyProperty) {
         super(container);
         this.hierarchyProperty = hierarchyProperty;
+        this.hierarchyIndex = new ContainerHierarchyIndex<>(container, hierarchyProperty);
+    }
+
+    @Override
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        hierarchyIndex.collectionChanged(e);
+        super.containerCollectionChanged(e);
+    }
+
+    @Override
+    protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        hierarchyIndex.itemPropertyChanged(e);
+        super.containerItemPropertyChanged(e);
     }
 
     @Override
@@ -41,20 +58,9 @@ public class ContainerTreeTableItems<E extends Entity>
 
     @Override
     public Collection<?> getRootItemIds() {
-        Collection<?> ids = getItemIds();
-
-        if (hierarchyProperty != null) {
-            Set<Object> result = new LinkedHashSet<>();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem == null || (container.getItemOrNull(parentItem.getId()) == null))
-                    result.add(item.getId());
-            }
-            return result;
-        } else {
-            return new LinkedHashSet<>(ids);
-        }
+        return hierarchyIndex.getRoots().stream()
+                .map(Entity::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @Override
@@ -73,61 +79,24 @@ public class ContainerTreeTableItems<E extends Entity>
 
     @Override
     public Collection<?> getChildren(Object itemId) {
-        if (hierarchyProperty != null) {
-            Entity currentItem = getItem(itemId);
-            if (currentItem == null)
-                return Collections.emptyList();
-
-            List<Object> res = new ArrayList<>();
-
-            Collection ids = getItemIds();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    res.add(item.getId());
-            }
-
-            return res;
-        }
-        return Collections.emptyList();
+        return hierarchyIndex.getChildren(itemId).stream()
+                .map(Entity::getId)
+                .collect(Collectors.toList());
     }
 
     @Override
     public boolean isRoot(Object itemId) {
-        Instance item = getItem(itemId);
-        if (item == null) return false;
-
-        if (hierarchyProperty != null) {
-            Entity parentItem = item.getValue(hierarchyProperty);
-            return (parentItem == null || (container.getItemOrNull(parentItem.getId()) == null));
-        } else {
-            return true;
-        }
+        return hierarchyIndex.isRoot(itemId);
     }
 
     @Override
     public boolean hasChildren(Object itemId) {
-        Entity currentItem = getItem(itemId);
-        if (currentItem == null)
-            return false;
-
-        if (hierarchyProperty != null) {
-            Collection ids = getItemIds();
-            for (Object id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyProperty);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    return true;
-            }
-        }
-
-        return false;
+        return hierarchyIndex.hasChildren(itemId);
     }
 
     @Override
     public Object firstItemId() {
-        Collection<?> rootItemIds = getRootItemIds();
-        return rootItemIds.isEmpty() ? null : rootItemIds.iterator().next();
+        List<E> roots = hierarchyIndex.getRoots();
+        return roots.isEmpty() ? null : roots.get(0).getId();
     }
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.components.data.tree;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.gui.model.CollectionChangeType;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * INTERNAL.
+ * Parent-to-children index of the items of a {@link CollectionContainer} organized in a hierarchy by a reference
+ * property.
+ * <p>
+ * The index is built on first access and then updated by the container events passed to
+ * {@link #collectionChanged(CollectionContainer.CollectionChangeEvent)} and
+ * {@link #itemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent)}, so the children of an item, their
+ * count and the root items are obtained without scanning the whole container. Items in the lists of children and
+ * in the list of roots keep the container order.
+ * <p>
+ * An item is a root if its parent is null or is not contained in the container.
+ */
+public class ContainerHierarchyIndex<E extends Entity> {
+
+    protected final CollectionContainer<E> container;
+
+    protected final String hierarchyProperty;
+
+    /**
+     * Parent id of each contained item, null value for items without a parent. Null if the index is not built.
+     */
+    protected Map<Object, Object> parentIds;
+
+    protected Map<Object, List<E>> children;
+
+    protected List<E> roots;
+
+    public ContainerHierarchyIndex(CollectionContainer<E> container, @Nullable String hierarchyProperty) {
+        this.container = container;
+        this.hierarchyProperty = hierarchyProperty;
+    }
+
+    /**
+     * Updates the index according to the container collection change. Must be invoked before the component
+     * bound to the container is notified.
+     */
+    public void collectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        if (parentIds == null) {
+            return;
+        }
+
+        Collection<? extends E> changes = e.getChanges();
+        // rebuilding is cheaper than shifting the lists for a large part of the items
+        if (e.getChangeType() == CollectionChangeType.REFRESH
+                || changes.size() > Math.max(parentIds.size(), container.getItems().size()) / 4) {
+            invalidate();
+            return;
+        }
+
+        switch (e.getChangeType()) {
+            case ADD_ITEMS:
+            case SET_ITEM:
+                addItems(changes);
+                break;
+            case REMOVE_ITEMS:
+                removeItems(changes);
+                break;
+            default:
+                invalidate();
+        }
+    }
+
+    /**
+     * Moves the item to the new parent if the hierarchy property is changed.
+     */
+    public void itemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        if (parentIds == null || !Objects.equals(e.getProperty(), hierarchyProperty)) {
+            return;
+        }
+
+        E item = e.getItem();
+        Object id = item.getId();
+        if (!parentIds.containsKey(id)) {
+            return;
+        }
+
+        detach(id);
+        Object parentId = readParentId(item);
+        parentIds.put(id, parentId);
+        attach(item, parentId);
+    }
+
+    /**
+     * Discards the index, it will be built again on next access.
+     */
+    public void invalidate() {
+        parentIds = null;
+        children = null;
+        roots = null;
+    }
+
+    /**
+     * @return unmodifiable list of the root items
+     */
+    public List<E> getRoots() {
+        checkBuilt();
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * @return unmodifiable list of the children of the item with the given id
+     */
+    public List<E> getChildren(Object parentId) {
+        checkBuilt();
+        List<E> result = parentIds.containsKey(parentId) ? children.get(parentId) : null;
+        return result != null ? Collections.unmodifiableList(result) : Collections.emptyList();
+    }
+
+    public int getChildCount(Object parentId) {
+        return getChildren(parentId).size();
+    }
+
+    public boolean hasChildren(Object parentId) {
+        return !getChildren(parentId).isEmpty();
+    }
+
+    /**
+     * @return id of the parent item or null if the item has no parent
+     */
+    @Nullable
+    public Object getParentId(Object id) {
+        checkBuilt();
+        return parentIds.get(id);
+    }
+
+    public boolean isRoot(Object id) {
+        checkBuilt();
+        if (!parentIds.containsKey(id)) {
+            return false;
+        }
+        Object parentId = parentIds.get(id);
+        return parentId == null || !parentIds.containsKey(parentId);
+    }
+
+    protected void checkBuilt() {
+        // the container could be changed with muted events
+        if (parentIds == null || parentIds.size() != container.getItems().size()) {
+            build();
+        }
+    }
+
+    protected void build() {
+        List<E> items = container.getItems();
+
+        parentIds = new HashMap<>(items.size() * 4 / 3 + 1);
+        children = new HashMap<>();
+        roots = new ArrayList<>();
+
+        for (E item : items) {
+            Object parentId = readParentId(item);
+            parentIds.put(item.getId(), parentId);
+            if (parentId != null) {
+                children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(item);
+            }
+        }
+        for (E item : items) {
+            Object parentId = parentIds.get(item.getId());
+            if (parentId == null || !parentIds.containsKey(parentId)) {
+                roots.add(item);
+            }
+        }
+    }
+
+    protected void addItems(Collection<? extends E> items) {
+        // register all items first to know which parents are contained
+        for (E item : items) {
+            Object id = item.getId();
+            if (parentIds.containsKey(id)) {
+                // replaced instance, its children stay in place
+                detach(id);
+            }
+            parentIds.put(id, readParentId(item));
+        }
+        for (E item : items) {
+            attach(item, parentIds.get(item.getId()));
+        }
+        for (E item : items) {
+            List<E> orphans = children.get(item.getId());
+            if (orphans != null) {
+                Set<Object> orphanIds = new HashSet<>();
+                for (E orphan : orphans) {
+                    orphanIds.add(orphan.getId());
+                }
+                roots.removeIf(root -> orphanIds.contains(root.getId()));
+            }
+        }
+    }
+
+    protected void removeItems(Collection<? extends E> items) {
+        Set<Object> removedIds = new HashSet<>();
+        Set<Object> affectedParentIds = new HashSet<>();
+        for (E item : items) {
+            Object id = item.getId();
+            if (parentIds.containsKey(id)) {
+                removedIds.add(id);
+                Object parentId = parentIds.remove(id);
+                if (parentId != null) {
+                    affectedParentIds.add(parentId);
+                }
+            }
+        }
+        if (removedIds.isEmpty()) {
+            return;
+        }
+
+        roots.removeIf(root -> removedIds.contains(root.getId()));
+        for (Object parentId : affectedParentIds) {
+            List<E> siblings = children.get(parentId);
+            if (siblings != null) {
+                siblings.removeIf(sibling -> removedIds.contains(sibling.getId()));
+                if (siblings.isEmpty()) {
+                    children.remove(parentId);
+                }
+            }
+        }
+
+        // children of the removed items become roots
+        for (Object id : removedIds) {
+            List<E> orphans = children.get(id);
+            if (orphans != null) {
+                for (E orphan : orphans) {
+                    if (parentIds.containsKey(orphan.getId())) {
+                        insert(roots, orphan);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void attach(E item, @Nullable Object parentId) {
+        if (parentId != null) {
+            insert(children.computeIfAbsent(parentId, k -> new ArrayList<>()), item);
+        }
+        if (parentId == null || !parentIds.containsKey(parentId)) {
+            insert(roots, item);
+        }
+    }
+
+    /**
+     * Removes the item from the list of its parent's children and from the roots.
+     */
+    protected void detach(Object id) {
+        Object parentId = parentIds.get(id);
+        if (parentId != null) {
+            List<E> siblings = children.get(parentId);
+            if (siblings != null) {
+                remove(siblings, id);
+                if (siblings.isEmpty()) {
+                    children.remove(parentId);
+                }
+            }
+        }
+        remove(roots, id);
+    }
+
+    protected void remove(List<E> list, Object id) {
+        for (Iterator<E> it = list.iterator(); it.hasNext(); ) {
+            if (Objects.equals(it.next().getId(), id)) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts the item keeping the container order. All items of the list must be contained in the container.
+     */
+    protected void insert(List<E> list, E item) {
+        int index = container.getItemIndex(item.getId());
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (container.getItemIndex(list.get(mid).getId()) < index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        list.add(low, item);
+    }
+
+    @Nullable
+    protected Object readParentId(E item) {
+        if (hierarchyProperty == null) {
+            return null;
+        }
+        Entity parent = item.getValue(hierarchyProperty);
+        return parent != null ? parent.getId() : null;
+    }
+}
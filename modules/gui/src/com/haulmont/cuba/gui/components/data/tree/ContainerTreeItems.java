@@ -36,11 +36,14 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
 
     protected final String hierarchyProperty;
 
+    protected final ContainerHierarchyIndex<E> hierarchyIndex;
+
     protected EventHub events = new EventHub();
 
     public ContainerTreeItems(CollectionContainer<E> container, String hierarchyProperty) {
         this.container = container;
         this.hierarchyProperty = hierarchyProperty;
+        this.hierarchyIndex = new ContainerHierarchyIndex<>(container, hierarchyProperty);
         this.container.addItemChangeListener(this::containerItemChanged);
         this.container.addCollectionChangeListener(this::containerCollectionChanged);
         this.container.addItemPropertyChangeListener(this::containerItemPropertyChanged);
@@ -50,12 +53,14 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
         events.publish(SelectedItemChangeEvent.class, new SelectedItemChangeEvent<>(this, event.getItem()));
     }
 
-    protected void containerCollectionChanged(@SuppressWarnings("unused") CollectionContainer.CollectionChangeEvent<E> e) {
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        hierarchyIndex.collectionChanged(e);
         events.publish(ItemSetChangeEvent.class, new ItemSetChangeEvent<>(this));
     }
 
     @SuppressWarnings("unchecked")
     protected void containerItemPropertyChanged(CollectionContainer.ItemPropertyChangeEvent<E> e) {
+        hierarchyIndex.itemPropertyChanged(e);
         events.publish(ValueChangeEvent.class, new ValueChangeEvent(this,
                 e.getItem(), e.getProperty(), e.getPrevValue(), e.getValue()));
     }
@@ -108,33 +113,24 @@ public class ContainerTreeItems<E extends Entity> implements EntityTreeItems<E>,
 
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        return parent == null
+                ? hierarchyIndex.getRoots().size()
+                : hierarchyIndex.getChildCount(parent.getId());
     }
 
     @Override
     public Stream<E> getChildren(E item) {
         if (item == null) {
             // root items
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem == null || (container.getItemOrNull(parentItem.getId()) == null);
-                    });
+            return hierarchyIndex.getRoots().stream();
         } else {
-            return container.getItems().stream()
-                    .filter(it -> {
-                        E parentItem = it.getValue(hierarchyProperty);
-                        return parentItem != null && parentItem.equals(item);
-                    });
+            return hierarchyIndex.getChildren(item.getId()).stream();
         }
     }
 
     @Override
     public boolean hasChildren(E item) {
-        return container.getItems().stream().anyMatch(it -> {
-            E parentItem = it.getValue(hierarchyProperty);
-            return parentItem != null && parentItem.equals(item);
-        });
+        return hierarchyIndex.hasChildren(item.getId());
     }
 
     @Nullable
@@ -144,17 +144,19 @@ public class DatasourceTreeItems<E extends Entity<K>, K> implements EntityTreeIt
 
     @Override
     public int getChildCount(E parent) {
-        return Math.toIntExact(getChildren(parent).count());
+        return getChildIds(parent).size();
     }
 
     @Override
     public Stream<E> getChildren(E item) {
-        Collection<K> itemIds = item == null
+        return getChildIds(item).stream()
+                .map(id -> datasource.getItem(id));
+    }
+
+    protected Collection<K> getChildIds(@Nullable E item) {
+        return item == null
                 ? datasource.getRootItemIds()
                 : datasource.getChildren(item.getId());
-
-        return itemIds.stream()
-                .map(id -> datasource.getItem(id));
     }
 
     @Override
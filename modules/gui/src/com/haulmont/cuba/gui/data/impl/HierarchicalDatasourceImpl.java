@@ -21,14 +21,47 @@ import com.haulmont.chile.core.model.Instance;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.gui.data.HierarchicalDatasource;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
+/**
+ * Hierarchical datasource organizing its items by the reference property set by
+ * {@link #setHierarchyPropertyName(String)}.
+ * <p>
+ * The children of each item and the root items are kept in a parent-to-children index, which is built on first
+ * access and then updated on collection changes and on changes of the hierarchy property of the items, so
+ * {@link #getChildren(Object)}, {@link #hasChildren(Object)} and {@link #getRootItemIds()} do not scan all items.
+ * The lists of children and roots keep the datasource order. Subclasses defining the hierarchy in their own way
+ * override these methods, the index is not built then.
+ */
 public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
         extends CollectionDatasourceImpl<T, K>
         implements HierarchicalDatasource<T, K> {
 
     protected String hierarchyPropertyName;
 
+    /**
+     * Parent id of each contained item, null value for items without a parent. Null if the index is not built.
+     */
+    protected Map<K, K> parentIds;
+
+    /**
+     * Positions of the items increasing in the datasource order, used to insert ids into the lists of the index.
+     */
+    protected Map<K, Integer> positions;
+
+    protected Map<K, List<K>> childIds;
+
+    protected List<K> rootIds;
+
+    protected int firstPosition;
+
+    protected int lastPosition;
+
+    public HierarchicalDatasourceImpl() {
+        listener = new HierarchyItemListener();
+    }
+
     @Override
     public String getHierarchyPropertyName() {
         return hierarchyPropertyName;
@@ -37,6 +70,7 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
     @Override
     public void setHierarchyPropertyName(String hierarchyPropertyName) {
         this.hierarchyPropertyName = hierarchyPropertyName;
+        invalidateHierarchyIndex();
     }
 
     @Override
@@ -46,17 +80,9 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
             if (currentItem == null)
                 return Collections.emptyList();
 
-            List<K> res = new ArrayList<>();
-
-            Collection<K> ids = getItemIds();
-            for (K id : ids) {
-                Entity<K> item = getItemNN(id);
-                Entity<K> parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    res.add(item.getId());
-            }
-
-            return res;
+            checkHierarchyIndex();
+            List<K> children = childIds.get(itemId);
+            return children != null ? new ArrayList<>(children) : new ArrayList<>();
         }
         return Collections.emptyList();
     }
@@ -80,14 +106,11 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
         Collection<K> ids = getItemIds();
 
         if (hierarchyPropertyName != null) {
-            Set<K> result = new LinkedHashSet<>();
-            for (K id : ids) {
-                Entity<K> item = getItemNN(id);
-                Entity<K> parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem == null || !containsItem(parentItem.getId()))
-                    result.add(item.getId());
-            }
-            return result;
+            if (ids.isEmpty())
+                return new LinkedHashSet<>();
+
+            checkHierarchyIndex();
+            return new LinkedHashSet<>(rootIds);
         } else {
             return new LinkedHashSet<>(ids);
         }
@@ -113,15 +136,232 @@ public class HierarchicalDatasourceImpl<T extends Entity<K>, K>
             return false;
 
         if (hierarchyPropertyName != null) {
-            Collection<K> ids = getItemIds();
-            for (K id : ids) {
-                Entity item = getItemNN(id);
-                Entity parentItem = item.getValue(hierarchyPropertyName);
-                if (parentItem != null && parentItem.getId().equals(itemId))
-                    return true;
-            }
+            checkHierarchyIndex();
+            return childIds.containsKey(itemId);
         }
 
         return false;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void fireCollectionChanged(Operation operation, List<T> items) {
+        if (listenersSuspended) {
+            // suspended events are fired again on resume
+            invalidateHierarchyIndex();
+        } else {
+            updateHierarchyIndex(operation, items);
+        }
+        super.fireCollectionChanged(operation, items);
+    }
+
+    /**
+     * Discards the hierarchy index, it will be built again on next access.
+     */
+    protected void invalidateHierarchyIndex() {
+        parentIds = null;
+        positions = null;
+        childIds = null;
+        rootIds = null;
+    }
+
+    protected void checkHierarchyIndex() {
+        // subclasses can change the data without events
+        if (parentIds == null || parentIds.size() != data.size()) {
+            buildHierarchyIndex();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void buildHierarchyIndex() {
+        parentIds = new HashMap<>(data.size() * 4 / 3 + 1);
+        positions = new HashMap<>(data.size() * 4 / 3 + 1);
+        childIds = new HashMap<>();
+        rootIds = new ArrayList<>();
+
+        int position = 0;
+        for (Object value : data.values()) {
+            T item = (T) value;
+            K parentId = readParentId(item);
+            parentIds.put(item.getId(), parentId);
+            positions.put(item.getId(), position++);
+            if (parentId != null) {
+                childIds.computeIfAbsent(parentId, k -> new ArrayList<>()).add(item.getId());
+            }
+        }
+        for (Object value : data.values()) {
+            K id = ((T) value).getId();
+            K parentId = parentIds.get(id);
+            if (parentId == null || !parentIds.containsKey(parentId)) {
+                rootIds.add(id);
+            }
+        }
+
+        firstPosition = 0;
+        lastPosition = position - 1;
+    }
+
+    protected void updateHierarchyIndex(Operation operation, List<T> items) {
+        if (parentIds == null)
+            return;
+
+        switch (operation) {
+            case ADD:
+                for (T item : items) {
+                    if (!addToHierarchyIndex(item)) {
+                        invalidateHierarchyIndex();
+                        return;
+                    }
+                }
+                break;
+            case UPDATE:
+                for (T item : items) {
+                    if (parentIds.containsKey(item.getId())) {
+                        moveInHierarchyIndex(item.getId(), readParentId(item));
+                    }
+                }
+                break;
+            case REMOVE:
+                removeFromHierarchyIndex(items);
+                break;
+            default:
+                invalidateHierarchyIndex();
+        }
+    }
+
+    /**
+     * @return false if the position of the added item cannot be determined and the index must be rebuilt
+     */
+    protected boolean addToHierarchyIndex(T item) {
+        K id = item.getId();
+        if (!data.containsKey(id))
+            return true;
+
+        if (parentIds.containsKey(id)) {
+            // replaced instance, its children stay in place
+            moveInHierarchyIndex(id, readParentId(item));
+            return true;
+        }
+
+        if (Objects.equals(data.lastKey(), id)) {
+            positions.put(id, ++lastPosition);
+        } else if (Objects.equals(data.firstKey(), id)) {
+            positions.put(id, --firstPosition);
+        } else {
+            return false;
+        }
+
+        K parentId = readParentId(item);
+        parentIds.put(id, parentId);
+        attachToHierarchyIndex(id, parentId);
+
+        List<K> orphans = childIds.get(id);
+        if (orphans != null) {
+            rootIds.removeAll(new HashSet<>(orphans));
+        }
+        return true;
+    }
+
+    protected void removeFromHierarchyIndex(List<T> items) {
+        Set<K> removedIds = new HashSet<>();
+        for (T item : items) {
+            K id = item.getId();
+            if (parentIds.containsKey(id)) {
+                detachFromHierarchyIndex(id);
+                parentIds.remove(id);
+                positions.remove(id);
+                removedIds.add(id);
+            }
+        }
+
+        // children of the removed items become roots
+        for (K id : removedIds) {
+            List<K> orphans = childIds.get(id);
+            if (orphans != null) {
+                for (K orphanId : orphans) {
+                    if (parentIds.containsKey(orphanId)) {
+                        insertIntoHierarchyIndex(rootIds, orphanId);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void moveInHierarchyIndex(K id, @Nullable K parentId) {
+        if (Objects.equals(parentIds.get(id), parentId))
+            return;
+
+        detachFromHierarchyIndex(id);
+        parentIds.put(id, parentId);
+        attachToHierarchyIndex(id, parentId);
+    }
+
+    protected void attachToHierarchyIndex(K id, @Nullable K parentId) {
+        if (parentId != null) {
+            insertIntoHierarchyIndex(childIds.computeIfAbsent(parentId, k -> new ArrayList<>()), id);
+        }
+        if (parentId == null || !parentIds.containsKey(parentId)) {
+            insertIntoHierarchyIndex(rootIds, id);
+        }
+    }
+
+    /**
+     * Removes the item from the list of its parent's children and from the roots.
+     */
+    protected void detachFromHierarchyIndex(K id) {
+        K parentId = parentIds.get(id);
+        if (parentId != null) {
+            List<K> siblings = childIds.get(parentId);
+            if (siblings != null) {
+                siblings.remove(id);
+                if (siblings.isEmpty()) {
+                    childIds.remove(parentId);
+                }
+            }
+        }
+        rootIds.remove(id);
+    }
+
+    /**
+     * Inserts the id keeping the datasource order. All ids of the list must be contained in the index.
+     */
+    protected void insertIntoHierarchyIndex(List<K> list, K id) {
+        int position = positions.get(id);
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions.get(list.get(mid)) < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        list.add(low, id);
+    }
+
+    @Nullable
+    protected K readParentId(T item) {
+        if (hierarchyPropertyName == null)
+            return null;
+
+        Entity<K> parentItem = item.getValue(hierarchyPropertyName);
+        return parentItem == null ? null : parentItem.getId();
+    }
+
+    /**
+     * Updates the hierarchy index before the item property change is passed to the datasource listeners.
+     */
+    protected class HierarchyItemListener extends ItemListener {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void propertyChanged(Instance.PropertyChangeEvent e) {
+            if (parentIds != null && Objects.equals(e.getProperty(), hierarchyPropertyName)) {
+                T item = (T) e.getItem();
+                if (parentIds.containsKey(item.getId())) {
+                    moveInHierarchyIndex(item.getId(), readParentId(item));
+                }
+            }
+            super.propertyChanged(e);
+        }
+    }
+}
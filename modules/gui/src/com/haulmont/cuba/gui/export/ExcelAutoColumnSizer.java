@@ -16,8 +16,6 @@
  */
 package com.haulmont.cuba.gui.export;
 
-import org.apache.poi.hssf.usermodel.HSSFFont;
-
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.Map;
@@ -41,12 +39,12 @@ public class ExcelAutoColumnSizer {
     /** Graphics context used for obtaining FontMetrics objects */
     private Graphics2D graphics = null;
 
-    /** Maps a Short (HSSF font index) to a FontMetrics object */
+    /** Maps a Short (workbook font index) to a FontMetrics object */
     private Map<Short, FontMetrics> fontMetrics = new HashMap<>();
 
     private short currentWidth = WIDTH_MIN;
 
-    private FontMetrics getFontMetrics(HSSFFont hf){
+    private FontMetrics getFontMetrics(org.apache.poi.ss.usermodel.Font hf){
         FontMetrics fm;
         Short pFont = hf.getIndex();
 
@@ -101,7 +99,7 @@ public class ExcelAutoColumnSizer {
         }
     }
 
-    public void notifyCellValue(String val, HSSFFont font) {
+    public void notifyCellValue(String val, org.apache.poi.ss.usermodel.Font font) {
         if (val == null || val.length() == 0) return;
         if (font == null) throw new IllegalArgumentException("font is null");
 
@@ -28,6 +28,9 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.entity.annotation.IgnoreUserTimeZone;
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.FileStorageException;
+import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.global.Messages;
 import com.haulmont.cuba.core.global.MetadataTools;
 import com.haulmont.cuba.core.global.UserSessionSource;
@@ -36,22 +39,41 @@ import com.haulmont.cuba.gui.components.data.GroupTableItems;
 import com.haulmont.cuba.gui.components.data.TableItems;
 import com.haulmont.cuba.gui.components.data.TreeDataGridItems;
 import com.haulmont.cuba.gui.components.data.TreeTableItems;
+import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
 import com.haulmont.cuba.gui.components.data.meta.EntityDataGridItems;
 import com.haulmont.cuba.gui.components.data.meta.EntityTableItems;
 import com.haulmont.cuba.gui.data.GroupInfo;
+import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataLoader;
+import com.haulmont.cuba.gui.model.HasLoader;
+import com.haulmont.cuba.gui.upload.FileUploadingAPI;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.hssf.usermodel.*;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.util.LocaleUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.dom4j.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -60,25 +82,37 @@ import java.util.stream.Collectors;
  * Use this class to export {@link com.haulmont.cuba.gui.components.Table} into Excel format
  * and show using {@link ExportDisplay}.
  * <br>Just create an instance of this class and invoke one of <code>exportTable</code> methods.
+ * <p>
+ * By default the document is created in the XLS format in memory and is limited to {@link #MAX_ROW_COUNT} rows.
+ * Use {@link #setExportFormat(ExportFormat)} with {@link ExportFormat#XLSX} to write the document in the XLSX format
+ * keeping only a window of rows in memory, and {@link #setLoadPageSize(int)} to export all rows matching the loader
+ * query page by page instead of the rows loaded into the component.
  */
 public class ExcelExporter {
+    private static final Logger log = LoggerFactory.getLogger(ExcelExporter.class);
+
     protected static final int COL_WIDTH_MAGIC = 48;
 
     private static final int SPACE_COUNT = 10;
 
     public static final int MAX_ROW_COUNT = 65535;
 
-    protected HSSFWorkbook wb;
+    public static final int MAX_XLSX_ROW_COUNT = 1048575;
+
+    public static final int DEFAULT_STREAMING_WINDOW_SIZE = 100;
 
-    protected HSSFFont boldFont;
-    protected HSSFFont stdFont;
-    protected HSSFSheet sheet;
+    protected Workbook wb;
 
-    protected HSSFCellStyle timeFormatCellStyle;
-    protected HSSFCellStyle dateFormatCellStyle;
-    protected HSSFCellStyle dateTimeFormatCellStyle;
-    protected HSSFCellStyle integerFormatCellStyle;
-    protected HSSFCellStyle doubleFormatCellStyle;
+    protected Font boldFont;
+    protected Font stdFont;
+    protected Sheet sheet;
+
+    protected CellStyle timeFormatCellStyle;
+    protected CellStyle dateFormatCellStyle;
+    protected CellStyle dateTimeFormatCellStyle;
+    protected CellStyle integerFormatCellStyle;
+    protected CellStyle doubleFormatCellStyle;
+    protected CellStyle boldCellStyle;
 
     protected ExcelAutoColumnSizer[] sizers;
 
@@ -87,6 +121,16 @@ public class ExcelExporter {
 
     protected boolean exportAggregation = true;
 
+    protected ExportFormat exportFormat = ExportFormat.XLS;
+    protected int streamingWindowSize = DEFAULT_STREAMING_WINDOW_SIZE;
+    protected int loadPageSize;
+
+    /**
+     * Outline level of the rows being created, used in the XLSX format where rows can not be grouped after they
+     * are flushed to disk.
+     */
+    protected int outlineLevel;
+
     protected final Messages messages;
     protected final UserSessionSource userSessionSource;
     protected final MetadataTools metadataTools;
@@ -116,14 +160,26 @@ public class ExcelExporter {
     }
 
     protected void createWorkbookWithSheet() {
-        wb = new HSSFWorkbook();
+        if (isStreaming()) {
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(streamingWindowSize);
+            streamingWorkbook.setCompressTempFiles(true);
+            wb = streamingWorkbook;
+        } else {
+            wb = new HSSFWorkbook();
+        }
         sheet = wb.createSheet("Export");
+        outlineLevel = 0;
+        isRowNumberExceeded = false;
     }
 
     protected void createFonts() {
         stdFont = wb.createFont();
         boldFont = wb.createFont();
         boldFont.setBold(true);
+
+        // rich text formatting is not kept by the streaming workbook, so bold text is set by the cell style
+        boldCellStyle = wb.createCellStyle();
+        boldCellStyle.setFont(boldFont);
     }
 
     protected void createAutoColumnSizers(int count) {
@@ -158,24 +214,27 @@ public class ExcelExporter {
         if (filterDescription != null) {
             for (r = 0; r < filterDescription.size(); r++) {
                 String line = filterDescription.get(r);
-                HSSFRow row = sheet.createRow(r);
+                Row row = sheet.createRow(r);
                 if (r == 0) {
-                    HSSFRichTextString richTextFilterName = new HSSFRichTextString(line);
+                    RichTextString richTextFilterName = createRichTextString(line);
                     richTextFilterName.applyFont(boldFont);
-                    row.createCell(0).setCellValue(richTextFilterName);
+                    Cell cell = row.createCell(0);
+                    cell.setCellValue(richTextFilterName);
+                    cell.setCellStyle(boldCellStyle);
                 } else {
                     row.createCell(0).setCellValue(line);
                 }
             }
             r++;
         }
-        HSSFRow row = sheet.createRow(r);
+        Row row = sheet.createRow(r);
         createAutoColumnSizers(columns.size());
 
         float maxHeight = sheet.getDefaultRowHeightInPoints();
 
         CellStyle headerCellStyle = wb.createCellStyle();
         headerCellStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+        headerCellStyle.setFont(boldFont);
         for (Table.Column column : columns) {
             String caption = column.getCaption();
 
@@ -191,8 +250,8 @@ public class ExcelExporter {
             Table.Column column = columns.get(c);
             String caption = column.getCaption();
 
-            HSSFCell cell = row.createCell(c);
-            HSSFRichTextString richTextString = new HSSFRichTextString(caption);
+            Cell cell = row.createCell(c);
+            RichTextString richTextString = createRichTextString(caption);
             richTextString.applyFont(boldFont);
             cell.setCellValue(richTextString);
 
@@ -227,6 +286,7 @@ public class ExcelExporter {
                 }
             }
             if (table instanceof TreeTable) {
+                logLoadingByPagesIgnored(table);
                 TreeTable treeTable = (TreeTable) table;
                 TreeTableItems treeTableSource = (TreeTableItems) treeTable.getItems();
                 for (Object itemId : treeTableSource.getRootItemIds()) {
@@ -238,6 +298,7 @@ public class ExcelExporter {
                 }
             } else if (table instanceof GroupTable && tableItems instanceof GroupTableItems
                     && ((GroupTableItems) tableItems).hasGroups()) {
+                logLoadingByPagesIgnored(table);
                 GroupTableItems groupTableSource = (GroupTableItems) tableItems;
 
                 for (Object item : groupTableSource.rootGroups()) {
@@ -247,6 +308,14 @@ public class ExcelExporter {
 
                     r = createGroupRow((GroupTable) table, columns, ++r, (GroupInfo) item, 0);
                 }
+            } else if (isLoadingByPages(tableItems)) {
+                for (Entity instance : loadAll(tableItems)) {
+                    if (checkIsRowNumberExceed(r)) {
+                        break;
+                    }
+
+                    createRow(table, columns, 0, ++r, instance, 0);
+                }
             } else {
                 for (Object itemId : tableItems.getItemIds()) {
                     if (checkIsRowNumberExceed(r)) {
@@ -268,17 +337,11 @@ public class ExcelExporter {
             sheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            wb.write(out);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to write document", e);
-        }
         if (fileName == null) {
             fileName = messages.getTools().getEntityCaption(((EntityTableItems) tableItems).getEntityMetaClass());
         }
 
-        display.show(new ByteArrayDataProvider(out.toByteArray()), fileName + ".xls", ExportFormat.XLS);
+        showWorkbook(display, fileName);
     }
 
     public void exportDataGrid(DataGrid dataGrid, ExportDisplay display) {
@@ -314,24 +377,27 @@ public class ExcelExporter {
         if (filterDescription != null) {
             for (r = 0; r < filterDescription.size(); r++) {
                 String line = filterDescription.get(r);
-                HSSFRow row = sheet.createRow(r);
+                Row row = sheet.createRow(r);
                 if (r == 0) {
-                    HSSFRichTextString richTextFilterName = new HSSFRichTextString(line);
+                    RichTextString richTextFilterName = createRichTextString(line);
                     richTextFilterName.applyFont(boldFont);
-                    row.createCell(0).setCellValue(richTextFilterName);
+                    Cell cell = row.createCell(0);
+                    cell.setCellValue(richTextFilterName);
+                    cell.setCellStyle(boldCellStyle);
                 } else {
                     row.createCell(0).setCellValue(line);
                 }
             }
             r++;
         }
-        HSSFRow row = sheet.createRow(r);
+        Row row = sheet.createRow(r);
         createAutoColumnSizers(columns.size());
 
         float maxHeight = sheet.getDefaultRowHeightInPoints();
 
         CellStyle headerCellStyle = wb.createCellStyle();
         headerCellStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+        headerCellStyle.setFont(boldFont);
         for (DataGrid.Column column : columns) {
             String caption = column.getCaption();
 
@@ -347,8 +413,8 @@ public class ExcelExporter {
             DataGrid.Column column = columns.get(c);
             String caption = column.getCaption();
 
-            HSSFCell cell = row.createCell(c);
-            HSSFRichTextString richTextString = new HSSFRichTextString(caption);
+            Cell cell = row.createCell(c);
+            RichTextString richTextString = createRichTextString(caption);
             richTextString.applyFont(boldFont);
             cell.setCellValue(richTextString);
 
@@ -377,6 +443,7 @@ public class ExcelExporter {
             }
         } else {
             if (dataGrid instanceof TreeDataGrid) {
+                logLoadingByPagesIgnored(dataGrid);
                 TreeDataGrid treeDataGrid = (TreeDataGrid) dataGrid;
                 TreeDataGridItems<Entity> treeDataGridItems = (TreeDataGridItems) dataGridSource;
                 List<Entity> items = treeDataGridItems.getChildren(null).collect(Collectors.toList());
@@ -387,6 +454,14 @@ public class ExcelExporter {
 
                     r = createDataGridHierarchicalRow(treeDataGrid, treeDataGridItems, columns, 0, r, item);
                 }
+            } else if (isLoadingByPages(dataGridSource)) {
+                for (Entity item : loadAll(dataGridSource)) {
+                    if (checkIsRowNumberExceed(r)) {
+                        break;
+                    }
+
+                    createDataGridRow(dataGrid, columns, 0, ++r, item, 0);
+                }
             } else {
                 for (Object itemId : dataGridSource.getItems().map(Entity::getId).collect(Collectors.toList())) {
                     if (checkIsRowNumberExceed(r)) {
@@ -402,31 +477,177 @@ public class ExcelExporter {
             sheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            wb.write(out);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to write document", e);
-        }
         if (fileName == null) {
             fileName = messages.getTools().getEntityCaption(dataGridSource.getEntityMetaClass());
         }
 
-        display.show(new ByteArrayDataProvider(out.toByteArray()), fileName + ".xls", ExportFormat.XLS);
+        showWorkbook(display, fileName);
+    }
+
+    /**
+     * Writes the workbook and shows it using the display. The XLSX document is written to a temporary file of
+     * {@link FileUploadingAPI} which is deleted when it has been downloaded, see {@link TempFileDataProvider}.
+     */
+    protected void showWorkbook(ExportDisplay display, String fileName) {
+        if (isStreaming()) {
+            SXSSFWorkbook streamingWorkbook = (SXSSFWorkbook) wb;
+            FileUploadingAPI fileUploading = AppBeans.get(FileUploadingAPI.NAME);
+            FileUploadingAPI.FileInfo fileInfo = null;
+            try {
+                fileInfo = fileUploading.createFile();
+                try (OutputStream out = new FileOutputStream(fileInfo.getFile())) {
+                    streamingWorkbook.write(out);
+                }
+            } catch (IOException | FileStorageException e) {
+                if (fileInfo != null) {
+                    deleteTempFile(fileUploading, fileInfo.getId());
+                }
+                throw new RuntimeException("Unable to write document", e);
+            } finally {
+                streamingWorkbook.dispose();
+            }
+            display.show(new TempFileDataProvider(fileInfo.getId()), fileName + ".xlsx", ExportFormat.XLSX);
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                wb.write(out);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write document", e);
+            }
+            display.show(new ByteArrayDataProvider(out.toByteArray()), fileName + ".xls", ExportFormat.XLS);
+        }
+    }
+
+    protected void deleteTempFile(FileUploadingAPI fileUploading, UUID fileId) {
+        try {
+            fileUploading.deleteFile(fileId);
+        } catch (FileStorageException e) {
+            log.warn("Unable to delete temporary file {}", fileId, e);
+        }
+    }
+
+    protected RichTextString createRichTextString(String text) {
+        return wb.getCreationHelper().createRichTextString(text);
+    }
+
+    /**
+     * Creates a row of the sheet. In the XLSX format the row is added to the current outline group immediately,
+     * because rows flushed to disk can not be grouped later.
+     */
+    protected Row createSheetRow(int rowNumber) {
+        Row row = sheet.createRow(rowNumber);
+        if (isStreaming()) {
+            for (int i = 0; i < outlineLevel; i++) {
+                sheet.groupRow(rowNumber, rowNumber);
+            }
+        }
+        return row;
+    }
+
+    protected boolean isLoadingByPages(Object items) {
+        if (loadPageSize <= 0) {
+            return false;
+        }
+        if (getCollectionLoader(items) == null) {
+            log.warn("Items are not loaded by a CollectionLoader without load delegate, loading by pages is not applied " +
+                    "and only loaded rows are exported");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hierarchical and grouped components are exported as they are shown, so all their rows must be loaded.
+     */
+    protected void logLoadingByPagesIgnored(Component component) {
+        if (loadPageSize > 0) {
+            log.warn("Loading by pages is not applied to the hierarchical or grouped component {}, " +
+                    "only loaded rows are exported", component.getId());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    protected CollectionLoader<Entity> getCollectionLoader(Object items) {
+        if (!(items instanceof ContainerDataUnit)) {
+            return null;
+        }
+        CollectionContainer container = ((ContainerDataUnit) items).getContainer();
+        if (!(container instanceof HasLoader)) {
+            return null;
+        }
+        DataLoader loader = ((HasLoader) container).getLoader();
+        if (!(loader instanceof CollectionLoader) || ((CollectionLoader) loader).getLoadDelegate() != null) {
+            return null;
+        }
+        return (CollectionLoader<Entity>) loader;
+    }
+
+    /**
+     * Loads all instances matching the query of the items loader by pages of {@link #getLoadPageSize()}
+     * instances, without changing the container. Loading starts from the first result of the loader, the maximum
+     * number of results of the loader is not applied.
+     */
+    protected Iterable<Entity> loadAll(Object items) {
+        CollectionLoader<Entity> loader = getCollectionLoader(items);
+        if (loader == null) {
+            throw new IllegalStateException("Items are not loaded by CollectionLoader");
+        }
+        DataManager dataManager = AppBeans.get(DataManager.NAME);
+        int maxRowCount = getMaxRowCount();
+        int startResult = loader.getFirstResult();
+
+        return () -> new Iterator<Entity>() {
+            protected List<Entity> page = Collections.emptyList();
+            protected int index;
+            protected int firstResult = startResult;
+            protected boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (lastPage || firstResult - startResult >= maxRowCount) {
+                    return false;
+                }
+                LoadContext<Entity> loadContext = loader.createLoadContext();
+                LoadContext.Query query = loadContext.getQuery();
+                if (query == null) {
+                    throw new IllegalStateException("Loader query is not set");
+                }
+                query.setFirstResult(firstResult);
+                query.setMaxResults(loadPageSize);
+
+                page = dataManager.loadList(loadContext);
+                index = 0;
+                firstResult += page.size();
+                lastPage = page.size() < loadPageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Entity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
     }
 
     protected void createFormats() {
         timeFormatCellStyle = wb.createCellStyle();
-        timeFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("h:mm"));
+        timeFormatCellStyle.setDataFormat((short) BuiltinFormats.getBuiltinFormat("h:mm"));
 
         dateFormatCellStyle = wb.createCellStyle();
-        dateFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("m/d/yy"));
+        dateFormatCellStyle.setDataFormat((short) BuiltinFormats.getBuiltinFormat("m/d/yy"));
 
         dateTimeFormatCellStyle = wb.createCellStyle();
-        dateTimeFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("m/d/yy h:mm"));
+        dateTimeFormatCellStyle.setDataFormat((short) BuiltinFormats.getBuiltinFormat("m/d/yy h:mm"));
 
         integerFormatCellStyle = wb.createCellStyle();
-        integerFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("#,##0"));
+        integerFormatCellStyle.setDataFormat((short) BuiltinFormats.getBuiltinFormat("#,##0"));
 
         DataFormat format = wb.createDataFormat();
         doubleFormatCellStyle = wb.createCellStyle();
@@ -456,7 +677,7 @@ public class ExcelExporter {
 
     protected int createAggregatableRow(Table table, List<Table.Column> columns, int rowNumber,
                                         int aggregatableRow) {
-        HSSFRow row = sheet.createRow(rowNumber);
+        Row row = createSheetRow(rowNumber);
         Map<Object, Object> results = table.getAggregationResults();
 
         int i = 0;
@@ -466,7 +687,7 @@ public class ExcelExporter {
                 Object key = agr.getPropertyPath() != null ? agr.getPropertyPath() : column.getId();
                 Object aggregationResult = results.get(key);
                 if (aggregationResult != null) {
-                    HSSFCell cell = row.createCell(i);
+                    Cell cell = row.createCell(i);
                     formatValueCell(cell, aggregationResult, null, i, rowNumber, 0, null);
                 }
             }
@@ -479,7 +700,7 @@ public class ExcelExporter {
                                  GroupInfo groupInfo, int groupNumber) {
         GroupTableItems<Entity> groupTableSource = (GroupTableItems) table.getItems();
 
-        HSSFRow row = sheet.createRow(rowNumber);
+        Row row = createSheetRow(rowNumber);
         Map<Object, Object> aggregations = table.isAggregatable()
                 ? table.getAggregationResults(groupInfo)
                 : Collections.emptyMap();
@@ -488,7 +709,7 @@ public class ExcelExporter {
         int initialGroupNumber = groupNumber;
         for (Table.Column column : columns) {
             if (i == initialGroupNumber) {
-                HSSFCell cell = row.createCell(i);
+                Cell cell = row.createCell(i);
                 Object val = groupInfo.getValue();
 
                 if (val == null) {
@@ -542,7 +763,7 @@ public class ExcelExporter {
                     Object key = agr.getPropertyPath() != null ? agr.getPropertyPath() : column.getId();
                     Object aggregationResult = aggregations.get(key);
                     if (aggregationResult != null) {
-                        HSSFCell cell = row.createCell(i);
+                        Cell cell = row.createCell(i);
                         formatValueCell(cell, aggregationResult, null, i, rowNumber, 0, null);
                     }
                 }
@@ -552,22 +773,29 @@ public class ExcelExporter {
         }
 
         int oldRowNumber = rowNumber;
-        List<GroupInfo> children = groupTableSource.getChildren(groupInfo);
-        if (children.size() > 0) {
-            for (GroupInfo child : children) {
-                rowNumber = createGroupRow(table, columns, ++rowNumber, child, groupNumber);
-            }
-        } else {
-            Collection<?> itemIds = groupTableSource.getGroupItemIds(groupInfo);
-            for (Object itemId : itemIds) {
-                createRow(table, columns, groupNumber, ++rowNumber, itemId);
+        outlineLevel++;
+        try {
+            List<GroupInfo> children = groupTableSource.getChildren(groupInfo);
+            if (children.size() > 0) {
+                for (GroupInfo child : children) {
+                    rowNumber = createGroupRow(table, columns, ++rowNumber, child, groupNumber);
+                }
+            } else {
+                Collection<?> itemIds = groupTableSource.getGroupItemIds(groupInfo);
+                for (Object itemId : itemIds) {
+                    createRow(table, columns, groupNumber, ++rowNumber, itemId);
+                }
             }
+        } finally {
+            outlineLevel--;
         }
 
-        if (checkIsRowNumberExceed(rowNumber)) {
-            sheet.groupRow(oldRowNumber + 1, MAX_ROW_COUNT);
-        } else {
-            sheet.groupRow(oldRowNumber + 1, rowNumber);
+        if (!isStreaming()) {
+            if (checkIsRowNumberExceed(rowNumber)) {
+                sheet.groupRow(oldRowNumber + 1, getMaxRowCount());
+            } else {
+                sheet.groupRow(oldRowNumber + 1, rowNumber);
+            }
         }
 
         return rowNumber;
@@ -578,11 +806,10 @@ public class ExcelExporter {
             return;
         }
 
-        if (rowNumber > MAX_ROW_COUNT) {
+        if (rowNumber > getMaxRowCount()) {
             return;
         }
 
-        HSSFRow row = sheet.createRow(rowNumber);
         Entity instance = (Entity) table.getItems().getItem(itemId);
 
         int level = 0;
@@ -590,8 +817,23 @@ public class ExcelExporter {
             level = ((TreeTable) table).getLevel(itemId);
         }
 
+        createRow(table, columns, startColumn, rowNumber, instance, level);
+    }
+
+    protected void createRow(Table table, List<Table.Column> columns, int startColumn, int rowNumber,
+                             Entity instance, int level) {
+        if (startColumn >= columns.size()) {
+            return;
+        }
+
+        if (rowNumber > getMaxRowCount()) {
+            return;
+        }
+
+        Row row = createSheetRow(rowNumber);
+
         for (int c = startColumn; c < columns.size(); c++) {
-            HSSFCell cell = row.createCell(c);
+            Cell cell = row.createCell(c);
 
             Table.Column column = columns.get(c);
             Object cellValue = null;
@@ -647,15 +889,23 @@ public class ExcelExporter {
         if (startColumn >= columns.size()) {
             return;
         }
-        HSSFRow row = sheet.createRow(rowNumber);
         Entity item = (Entity) dataGrid.getItems().getItem(itemId);
 
         int level = 0;
         if (dataGrid instanceof TreeDataGrid) {
             level = ((TreeDataGrid) dataGrid).getLevel(item);
         }
+        createDataGridRow(dataGrid, columns, startColumn, rowNumber, item, level);
+    }
+
+    protected void createDataGridRow(DataGrid dataGrid, List<DataGrid.Column> columns,
+                                     int startColumn, int rowNumber, Entity item, int level) {
+        if (startColumn >= columns.size()) {
+            return;
+        }
+        Row row = createSheetRow(rowNumber);
         for (int c = startColumn; c < columns.size(); c++) {
-            HSSFCell cell = row.createCell(c);
+            Cell cell = row.createCell(c);
 
             DataGrid.Column column = columns.get(c);
             Object cellValue = null;
@@ -695,7 +945,7 @@ public class ExcelExporter {
         return sb.toString();
     }
 
-    protected void formatValueCell(HSSFCell cell, @Nullable Object cellValue, @Nullable MetaPropertyPath metaPropertyPath,
+    protected void formatValueCell(Cell cell, @Nullable Object cellValue, @Nullable MetaPropertyPath metaPropertyPath,
                                    int sizersIndex, int notificationRequired, int level, @Nullable Integer groupChildCount) {
 
         if (cellValue == null) {
@@ -805,7 +1055,7 @@ public class ExcelExporter {
                 str += createSpaceString(level);
             }
             str += ((Boolean) cellValue) ? trueStr : falseStr;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
@@ -823,13 +1073,13 @@ public class ExcelExporter {
             String instanceName = metadataTools.getInstanceName(entityVal);
             String str = sizersIndex == 0 ? createSpaceString(level) + instanceName : instanceName;
             str = str + childCountValue;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
         } else if (cellValue instanceof Collection) {
             String str = "";
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
@@ -837,7 +1087,7 @@ public class ExcelExporter {
             String strValue = cellValue == null ? "" : cellValue.toString();
             String str = sizersIndex == 0 ? createSpaceString(level) + strValue : strValue;
             str = str + childCountValue;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
@@ -845,16 +1095,72 @@ public class ExcelExporter {
     }
 
     protected boolean checkIsRowNumberExceed(int r) {
-        return isRowNumberExceeded = r >= MAX_ROW_COUNT;
+        return isRowNumberExceeded = r >= getMaxRowCount();
     }
 
     /**
-     * @return true if exported table contains more than 65536 records
+     * @return maximum row index of the sheet in the current export format
+     */
+    protected int getMaxRowCount() {
+        return isStreaming() ? MAX_XLSX_ROW_COUNT : MAX_ROW_COUNT;
+    }
+
+    protected boolean isStreaming() {
+        return exportFormat == ExportFormat.XLSX;
+    }
+
+    /**
+     * @return true if exported table contains more rows than the sheet of the current export format can hold
      */
     public boolean isXlsMaxRowNumberExceeded() {
         return isRowNumberExceeded;
     }
 
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+
+    /**
+     * Sets the format of the document.
+     *
+     * @param exportFormat {@link ExportFormat#XLS} (default) or {@link ExportFormat#XLSX}
+     */
+    public void setExportFormat(ExportFormat exportFormat) {
+        if (exportFormat != ExportFormat.XLS && exportFormat != ExportFormat.XLSX) {
+            throw new IllegalArgumentException("Unsupported export format: " + exportFormat);
+        }
+        this.exportFormat = exportFormat;
+    }
+
+    public int getStreamingWindowSize() {
+        return streamingWindowSize;
+    }
+
+    /**
+     * Sets the number of rows kept in memory when the document is written in the XLSX format.
+     */
+    public void setStreamingWindowSize(int streamingWindowSize) {
+        this.streamingWindowSize = streamingWindowSize;
+    }
+
+    public int getLoadPageSize() {
+        return loadPageSize;
+    }
+
+    /**
+     * Sets the size of pages used to load all instances of a non-hierarchical, non-grouped component when
+     * exporting {@link ExportMode#ALL_ROWS}. If the size is greater than zero and the component items are loaded
+     * by a {@link CollectionLoader} without a load delegate, all instances matching the loader query are exported
+     * instead of the instances currently loaded into the container, starting from the first result of the loader.
+     * The loader query should define a stable order.
+     * <p>
+     * Tree tables, tree data grids and grouped tables are exported as they are shown, so the size is not applied to
+     * them. Disabled by default.
+     */
+    public void setLoadPageSize(int loadPageSize) {
+        this.loadPageSize = loadPageSize;
+    }
+
     public void setExportAggregation(boolean exportAggregation) {
         this.exportAggregation = exportAggregation;
     }
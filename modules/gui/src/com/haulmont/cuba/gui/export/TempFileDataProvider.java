@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.export;
+
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.FileStorageException;
+import com.haulmont.cuba.core.global.RuntimeFileStorageException;
+import com.haulmont.cuba.gui.upload.FileUploadingAPI;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
+
+/**
+ * Data provider for a temporary file of {@link FileUploadingAPI}, e.g. a document written by {@link ExcelExporter}.
+ * <p>
+ * The file is deleted when a stream returned by {@link #provide()} has been read to the end and closed, so the
+ * document can be downloaded once. If the download is interrupted, the file is kept and can be provided again.
+ */
+public class TempFileDataProvider implements ExportDataProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(TempFileDataProvider.class);
+
+    protected UUID fileId;
+    protected FileUploadingAPI fileUploading = AppBeans.get(FileUploadingAPI.NAME);
+
+    public TempFileDataProvider(UUID fileId) {
+        checkNotNullArgument(fileId, "Null file id");
+
+        this.fileId = fileId;
+    }
+
+    @Override
+    public InputStream provide() {
+        File file = fileUploading.getFile(fileId);
+        if (file == null) {
+            throw new RuntimeFileStorageException(
+                    new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, fileId.toString()));
+        }
+        try {
+            return new ProxyInputStream(new FileInputStream(file)) {
+                protected boolean completelyRead;
+
+                @Override
+                protected void afterRead(int n) {
+                    if (n == -1) {
+                        completelyRead = true;
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (completelyRead) {
+                        deleteFile();
+                    }
+                }
+            };
+        } catch (FileNotFoundException e) {
+            throw new RuntimeFileStorageException(
+                    new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, file.getAbsolutePath(), e));
+        }
+    }
+
+    protected void deleteFile() {
+        try {
+            fileUploading.deleteFile(fileId);
+        } catch (FileStorageException e) {
+            log.warn("Unable to delete temporary file {}", fileId, e);
+        }
+    }
+}
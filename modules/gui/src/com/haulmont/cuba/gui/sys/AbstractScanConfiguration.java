@@ -41,12 +41,16 @@ public abstract class AbstractScanConfiguration {
     protected Stream<MetadataReader> scanPackage(String packageName) {
         String packageSearchPath = ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
                 resolveBasePackage(packageName) + '/' + DEFAULT_CLASS_RESOURCE_PATTERN;
+        return scanResources(packageSearchPath);
+    }
+
+    protected Stream<MetadataReader> scanResources(String locationPattern) {
         ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver(getResourceLoader());
         Resource[] resources;
         try {
-            resources = resourcePatternResolver.getResources(packageSearchPath);
+            resources = resourcePatternResolver.getResources(locationPattern);
         } catch (IOException e) {
-            throw new RuntimeException("Unable to scan package " + packageName, e);
+            throw new RuntimeException("Unable to scan " + locationPattern, e);
         }
 
         return Arrays.stream(resources)
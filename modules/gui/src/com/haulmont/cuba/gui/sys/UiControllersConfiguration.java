@@ -23,14 +23,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.core.type.classreading.MetadataReader;
 import org.springframework.core.type.classreading.MetadataReaderFactory;
 
 import javax.inject.Inject;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -38,6 +41,10 @@ import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 
 /**
  * Configuration that performs ClassPath scanning of {@link UiController}s and provides {@link UiControllerDefinition}.
+ * <p>
+ * Classpath locations containing the index generated by {@link UiControllersIndexProcessor} at build time
+ * are not scanned, controllers are read from the index instead. If the location contains classes that are not
+ * listed in the index or lacks indexed controllers, the index is ignored and the location is scanned.
  */
 public class UiControllersConfiguration extends AbstractScanConfiguration {
 
@@ -80,15 +87,153 @@ public class UiControllersConfiguration extends AbstractScanConfiguration {
     public List<UiControllerDefinition> getUiControllers() {
         log.trace("Scanning packages {}", basePackages);
 
+        Map<String, Properties> indexes = new HashMap<>();
+
         Stream<UiControllerDefinition> scannedControllersStream = basePackages.stream()
-                .flatMap(this::scanPackage)
-                .filter(this::isCandidateUiController)
-                .map(this::extractControllerDefinition);
+                .flatMap(packageName -> getPackageControllers(packageName, indexes));
 
         return Stream.concat(scannedControllersStream, explicitDefinitions.stream())
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns controllers of the package. Classpath locations that contain the index generated by
+     * {@link UiControllersIndexProcessor} are not scanned.
+     */
+    protected Stream<UiControllerDefinition> getPackageControllers(String packageName, Map<String, Properties> indexes) {
+        String packagePath = resolveBasePackage(packageName) + '/';
+        ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver(getResourceLoader());
+
+        Resource[] packageRoots;
+        try {
+            packageRoots = resourcePatternResolver.getResources(
+                    ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + packagePath);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to scan package " + packageName, e);
+        }
+        if (packageRoots.length == 0) {
+            // directory entries can be missing in jars, scan as usual
+            return scanPackage(packageName)
+                    .filter(this::isCandidateUiController)
+                    .map(this::extractControllerDefinition);
+        }
+
+        return Arrays.stream(packageRoots)
+                .flatMap(packageRoot -> {
+                    String packageUrl;
+                    try {
+                        packageUrl = packageRoot.getURL().toString();
+                    } catch (IOException e) {
+                        throw new RuntimeException("Unable to read resource " + packageRoot, e);
+                    }
+                    if (!packageUrl.endsWith(packagePath)) {
+                        return scanLocation(packageUrl);
+                    }
+
+                    String rootUrl = packageUrl.substring(0, packageUrl.length() - packagePath.length());
+                    Properties index = indexes.computeIfAbsent(rootUrl, this::loadIndex);
+                    if (index.isEmpty()) {
+                        return scanLocation(packageUrl);
+                    }
+
+                    String classNamePrefix = packagePath.replace('/', '.');
+                    List<String> controllerClassNames = index.stringPropertyNames().stream()
+                            .filter(key -> key.startsWith(classNamePrefix)
+                                    && key.endsWith(UiControllersIndexProcessor.ID_SUFFIX))
+                            .map(key -> key.substring(0, key.length() - UiControllersIndexProcessor.ID_SUFFIX.length()))
+                            .collect(Collectors.toList());
+
+                    if (!isIndexUpToDate(index, rootUrl, packageUrl, controllerClassNames)) {
+                        log.warn("UI controllers index of {} does not match the classes of package {}, " +
+                                "the package is scanned instead", rootUrl, packageName);
+                        return scanLocation(packageUrl);
+                    }
+
+                    log.trace("Using UI controllers index of {}", rootUrl);
+                    return controllerClassNames.stream()
+                            .map(className -> extractControllerDefinition(index, className));
+                });
+    }
+
+    /**
+     * Checks that the index lists all top-level classes of the package location and that all indexed controllers
+     * of the package exist. The classes are only listed, not read. A mismatch means that the location was compiled
+     * partially or without {@link UiControllersIndexProcessor}.
+     */
+    protected boolean isIndexUpToDate(Properties index, String rootUrl, String packageUrl,
+                                      Collection<String> controllerClassNames) {
+        ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver(getResourceLoader());
+
+        Set<String> classNames = new HashSet<>();
+        try {
+            for (Resource resource : resourcePatternResolver.getResources(packageUrl + DEFAULT_CLASS_RESOURCE_PATTERN)) {
+                String url = resource.getURL().toString();
+                if (!url.startsWith(rootUrl)) {
+                    return false;
+                }
+
+                String className = url.substring(rootUrl.length(), url.length() - ".class".length())
+                        .replace('/', '.');
+                classNames.add(className);
+
+                if (className.indexOf('$') < 0
+                        && !className.endsWith("package-info")
+                        && !index.containsKey(className + UiControllersIndexProcessor.CLASS_SUFFIX)) {
+                    log.debug("Class {} is not listed in the UI controllers index of {}", className, rootUrl);
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Unable to list classes of {}", packageUrl, e);
+            return false;
+        }
+
+        for (String className : controllerClassNames) {
+            if (!classNames.contains(className)) {
+                log.debug("Indexed UI controller {} is not found in {}", className, rootUrl);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected Stream<UiControllerDefinition> scanLocation(String packageUrl) {
+        return scanResources(packageUrl + DEFAULT_CLASS_RESOURCE_PATTERN)
+                .filter(this::isCandidateUiController)
+                .map(this::extractControllerDefinition);
+    }
+
+    /**
+     * @return index of the classpath location, or empty properties if there is no index
+     */
+    protected Properties loadIndex(String rootUrl) {
+        Properties properties = new Properties();
+        Resource indexResource = getResourceLoader().getResource(rootUrl + UiControllersIndexProcessor.INDEX_LOCATION);
+        if (indexResource.exists()) {
+            try (InputStream stream = indexResource.getInputStream()) {
+                properties.load(stream);
+            } catch (IOException e) {
+                log.warn("Unable to read UI controllers index {}", indexResource, e);
+                properties.clear();
+            }
+        }
+        return properties;
+    }
+
+    protected UiControllerDefinition extractControllerDefinition(Properties index, String className) {
+        String controllerId = index.getProperty(className + UiControllersIndexProcessor.ID_SUFFIX);
+
+        RouteDefinition routeDefinition = null;
+        String path = index.getProperty(className + UiControllersIndexProcessor.ROUTE_SUFFIX);
+        if (path != null) {
+            routeDefinition = new RouteDefinition(path,
+                    index.getProperty(className + UiControllersIndexProcessor.ROUTE_PARENT_PREFIX_SUFFIX, ""),
+                    Boolean.parseBoolean(index.getProperty(className + UiControllersIndexProcessor.ROUTE_ROOT_SUFFIX)));
+        }
+
+        return new UiControllerDefinition(controllerId, className, routeDefinition);
+    }
+
     protected UiControllerDefinition extractControllerDefinition(MetadataReader metadataReader) {
         Map<String, Object> uiControllerAnn =
                 metadataReader.getAnnotationMetadata().getAnnotationAttributes(UiController.class.getName());
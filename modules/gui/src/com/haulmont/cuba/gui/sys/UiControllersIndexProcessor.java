@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.sys;
+
+import com.haulmont.cuba.gui.Route;
+import com.haulmont.cuba.gui.screen.UiController;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Annotation processor that generates the index of {@link UiController}s, which is used by
+ * {@link UiControllersConfiguration} instead of classpath scanning.
+ * <p>
+ * The index is written to {@link #INDEX_LOCATION} in the class output directory and contains the screen id and the
+ * route of each concrete controller class of the module. It also lists all top-level classes compiled with the
+ * processor, so that {@link UiControllersConfiguration} can detect classes compiled without it and scan such
+ * locations instead of trusting an outdated index.
+ * <p>
+ * Compilers that process only changed sources (IDE builds) run the processor for a part of the module. The index
+ * that already exists in the class output directory is merged with the processed classes in this case: entries of
+ * recompiled classes are replaced and entries of classes that do not exist anymore are dropped.
+ * <p>
+ * Gradle 5 and later does not discover annotation processors on the compile classpath, the module that contains
+ * the processor must be added to the {@code annotationProcessor} configuration of the project:
+ * <pre>
+ * dependencies {
+ *     annotationProcessor(guiModule)
+ * }
+ * </pre>
+ * Locations without the index are scanned at runtime as usual.
+ */
+@SupportedAnnotationTypes({"com.haulmont.cuba.gui.screen.UiController"})
+public class UiControllersIndexProcessor extends AbstractProcessor {
+
+    public static final String INDEX_LOCATION = "META-INF/cuba-ui-controllers.properties";
+
+    public static final String ID_SUFFIX = ".id";
+    public static final String ROUTE_SUFFIX = ".route";
+    public static final String ROUTE_PARENT_PREFIX_SUFFIX = ".routeParentPrefix";
+    public static final String ROUTE_ROOT_SUFFIX = ".routeRoot";
+    /**
+     * Suffix of the keys that list compiled top-level classes.
+     */
+    public static final String CLASS_SUFFIX = ".class";
+
+    protected static final List<String> SUFFIXES = Arrays.asList(
+            ID_SUFFIX, ROUTE_SUFFIX, ROUTE_PARENT_PREFIX_SUFFIX, ROUTE_ROOT_SUFFIX, CLASS_SUFFIX);
+
+    protected Map<String, String> entries = new TreeMap<>();
+
+    protected boolean existingIndexLoaded;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!entries.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+
+        if (!existingIndexLoaded) {
+            loadExistingIndex();
+            existingIndexLoaded = true;
+        }
+
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement) {
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                removeEntries(className);
+                entries.put(className + CLASS_SUFFIX, "");
+            }
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(UiController.class)) {
+            if (element.getKind() == ElementKind.CLASS
+                    && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                addEntries((TypeElement) element);
+            }
+        }
+        return false;
+    }
+
+    protected void addEntries(TypeElement element) {
+        String className = processingEnv.getElementUtils().getBinaryName(element).toString();
+
+        Map<String, Object> controllerAttributes = getAnnotationAttributes(element, UiController.class.getName());
+        String id = UiDescriptorUtils.getInferredScreenId(
+                (String) controllerAttributes.get(UiController.ID_ATTRIBUTE),
+                (String) controllerAttributes.get(UiController.VALUE_ATTRIBUTE),
+                className);
+        entries.put(className + ID_SUFFIX, id);
+
+        Map<String, Object> routeAttributes = getAnnotationAttributes(element, Route.class.getName());
+        if (routeAttributes != null) {
+            Object path = routeAttributes.get(Route.PATH_ATTRIBUTE);
+            if (path == null) {
+                path = routeAttributes.get(Route.VALUE_ATTRIBUTE);
+            }
+            entries.put(className + ROUTE_SUFFIX, path != null ? (String) path : "");
+
+            Object parentPrefix = routeAttributes.get(Route.PARENT_PREFIX_ATTRIBUTE);
+            entries.put(className + ROUTE_PARENT_PREFIX_SUFFIX, parentPrefix != null ? (String) parentPrefix : "");
+
+            Object root = routeAttributes.get(Route.ROOT_ATTRIBUTE);
+            entries.put(className + ROUTE_ROOT_SUFFIX, String.valueOf(Boolean.TRUE.equals(root)));
+        }
+    }
+
+    /**
+     * Reads the index left in the class output directory by the previous compilation, omitting the entries of
+     * classes that do not exist anymore.
+     */
+    protected void loadExistingIndex() {
+        Properties properties = new Properties();
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (InputStream is = file.openInputStream()) {
+                properties.load(is);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no index yet
+            return;
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            String className = getClassName(key);
+            if (className != null
+                    && processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) != null) {
+                entries.put(key, properties.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the class and its nested classes.
+     */
+    protected void removeEntries(String className) {
+        entries.keySet().removeIf(key -> {
+            String keyClassName = getClassName(key);
+            return keyClassName != null
+                    && (keyClassName.equals(className) || keyClassName.startsWith(className + '$'));
+        });
+    }
+
+    /**
+     * @return name of the class the index key belongs to, or null if the key is unknown
+     */
+    protected static String getClassName(String key) {
+        for (String suffix : SUFFIXES) {
+            if (key.endsWith(suffix)) {
+                return key.substring(0, key.length() - suffix.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return explicitly specified attributes of the annotation, or null if the element is not annotated
+     */
+    protected Map<String, Object> getAnnotationAttributes(TypeElement element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationElement = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationElement.getQualifiedName().contentEquals(annotationName)) {
+                Map<String, Object> attributes = new HashMap<>();
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : mirror.getElementValues().entrySet()) {
+                    attributes.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+                }
+                return attributes;
+            }
+        }
+        return null;
+    }
+
+    protected void writeIndex() {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (OutputStream os = file.openOutputStream()) {
+                properties.store(os, null);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write UI controllers index: " + e);
+        }
+    }
+}
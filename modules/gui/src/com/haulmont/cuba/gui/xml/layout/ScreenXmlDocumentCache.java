@@ -18,19 +18,77 @@ package com.haulmont.cuba.gui.xml.layout;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.haulmont.cuba.client.ClientConfig;
+import com.haulmont.cuba.core.global.Configuration;
 import org.dom4j.Document;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Caches screen descriptors processed by {@link ScreenXmlLoader}.
+ * <p>
+ * Documents are cached by the descriptor text. The cache size is limited by the estimated memory occupied by
+ * the documents, see {@link ClientConfig#getScreenXmlCacheMaxMemoryKb()}. If
+ * {@link ClientConfig#getPrecompileScreenLayouts()} is true, the documents are also cached by the resource path,
+ * so the descriptor is not read again on each screen opening.
+ */
 @Component("cuba_ScreenXmlDocumentCache")
 public class ScreenXmlDocumentCache {
+
+    /**
+     * Estimated number of bytes occupied by the parsed document and the descriptor text per descriptor character.
+     */
+    protected static final int BYTES_PER_CHAR = 16;
+
+    protected static final int DEFAULT_MAX_MEMORY_KB = 32768;
+
     protected Cache<String, Document> cache;
 
+    protected Cache<String, String> templatesByPath;
+
+    protected long maxMemory;
+
     public ScreenXmlDocumentCache() {
-        this(100);
+        cache = createCache(DEFAULT_MAX_MEMORY_KB * 1024L);
+        templatesByPath = createTemplatesByPathCache();
     }
 
     protected ScreenXmlDocumentCache(int cacheDescriptorsCount) {
-        cache = CacheBuilder.newBuilder().maximumSize(cacheDescriptorsCount).build();
+        cache = CacheBuilder.newBuilder().maximumSize(cacheDescriptorsCount).recordStats().build();
+        templatesByPath = createTemplatesByPathCache();
+    }
+
+    @Inject
+    protected void setConfiguration(Configuration configuration) {
+        long configuredMaxMemory = configuration.getConfig(ClientConfig.class).getScreenXmlCacheMaxMemoryKb() * 1024L;
+        if (maxMemory > 0 && configuredMaxMemory != maxMemory) {
+            cache = createCache(configuredMaxMemory);
+        }
+    }
+
+    protected Cache<String, Document> createCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxMemory)
+                .weigher((String template, Document document) -> getWeight(template))
+                .recordStats()
+                .build();
+    }
+
+    protected Cache<String, String> createTemplatesByPathCache() {
+        // the descriptor text is referenced by the document cache while the document is cached
+        return CacheBuilder.newBuilder().weakValues().build();
+    }
+
+    protected int getWeight(String template) {
+        return (int) Math.min((long) template.length() * BYTES_PER_CHAR, Integer.MAX_VALUE);
     }
 
     public void put(String xml, Document document) {
@@ -41,7 +99,80 @@ public class ScreenXmlDocumentCache {
         return cache.getIfPresent(xml);
     }
 
+    /**
+     * Returns the cached document or creates it by the loader. Concurrent requests of the same descriptor wait for
+     * the document created by the first one.
+     */
+    public Document get(String xml, Supplier<Document> loader) {
+        try {
+            return cache.get(xml, loader::get);
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Unable to load screen descriptor", cause);
+        }
+    }
+
+    /**
+     * Remembers the descriptor text of the resource path.
+     */
+    public void putTemplate(String resourcePath, String xml) {
+        templatesByPath.put(resourcePath, xml);
+    }
+
+    /**
+     * @return descriptor text of the resource path if the document for it is still cached
+     */
+    @Nullable
+    public String getTemplate(String resourcePath) {
+        String template = templatesByPath.getIfPresent(resourcePath);
+        if (template != null && !cache.asMap().containsKey(template)) {
+            templatesByPath.invalidate(resourcePath);
+            return null;
+        }
+        return template;
+    }
+
     public void invalidateAll() {
         cache.invalidateAll();
+        templatesByPath.invalidateAll();
+    }
+
+    /**
+     * @return hit and miss statistics of the document cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of cached documents
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return estimated memory in bytes occupied by the cached documents
+     */
+    public long getEstimatedMemory() {
+        long result = 0;
+        for (String template : cache.asMap().keySet()) {
+            result += getWeight(template);
+        }
+        return result;
+    }
+
+    public String printStatistics() {
+        CacheStats stats = cache.stats();
+        return String.format("documents=%d, estimated memory=%d KB, max memory=%d KB, hits=%d, misses=%d, " +
+                        "hit rate=%.2f, evictions=%d, average load=%.1f ms",
+                cache.size(), getEstimatedMemory() / 1024, maxMemory / 1024, stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount(), stats.averageLoadPenalty() / 1_000_000);
     }
-}
\ No newline at end of file
+}
@@ -16,9 +16,14 @@
 
 package com.haulmont.cuba.gui.xml.layout;
 
+import com.haulmont.cuba.client.ClientConfig;
 import com.haulmont.cuba.core.global.BeanLocator;
+import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.DevelopmentException;
 import com.haulmont.cuba.core.global.Resources;
+import com.haulmont.cuba.core.sys.events.AppContextStartedEvent;
+import com.haulmont.cuba.gui.config.WindowConfig;
+import com.haulmont.cuba.gui.config.WindowInfo;
 import com.haulmont.cuba.gui.logging.ScreenLifeCycle;
 import com.haulmont.cuba.gui.logging.UIPerformanceLogger;
 import com.haulmont.cuba.gui.xml.XmlInheritanceProcessor;
@@ -26,12 +31,16 @@ import org.apache.commons.io.IOUtils;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.perf4j.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -42,6 +51,8 @@ public class ScreenXmlLoader {
 
     public static final String NAME = "cuba_ScreenXmlLoader";
 
+    private static final Logger log = LoggerFactory.getLogger(ScreenXmlLoader.class);
+
     @Inject
     protected Resources resources;
     @Inject
@@ -51,6 +62,13 @@ public class ScreenXmlLoader {
     @Inject
     protected BeanLocator beanLocator;
 
+    protected ClientConfig clientConfig;
+
+    @Inject
+    public void setConfiguration(Configuration configuration) {
+        clientConfig = configuration.getConfig(ClientConfig.class);
+    }
+
     /**
      * Loads a descriptor.
      *
@@ -62,8 +80,18 @@ public class ScreenXmlLoader {
     public Element load(String resourcePath, String id, Map<String, Object> params) {
         StopWatch xmlLoadWatch = UIPerformanceLogger.createStopWatch(ScreenLifeCycle.XML, id);
 
-        String template = loadTemplate(resourcePath);
+        String template = null;
+        boolean precompiled = clientConfig.getPrecompileScreenLayouts();
+        if (precompiled) {
+            template = screenXmlCache.getTemplate(resourcePath);
+        }
+        if (template == null) {
+            template = loadTemplate(resourcePath);
+        }
         Document document = getDocument(template, params);
+        if (precompiled) {
+            screenXmlCache.putTemplate(resourcePath, template);
+        }
 
         xmlLoadWatch.stop();
         return document.getRootElement();
@@ -82,12 +110,7 @@ public class ScreenXmlLoader {
     }
 
     protected Document getDocument(String template, Map<String, Object> params) {
-        Document document = screenXmlCache.get(template);
-        if (document == null) {
-            document = createDocument(template, params);
-            screenXmlCache.put(template, document);
-        }
-        return document;
+        return screenXmlCache.get(template, () -> createDocument(template, params));
     }
 
     protected Document createDocument(String template, Map<String, Object> params) {
@@ -99,4 +122,43 @@ public class ScreenXmlLoader {
 
         return resultRoot.getDocument();
     }
+
+    @EventListener(AppContextStartedEvent.class)
+    protected void applicationStarted() {
+        if (clientConfig.getPrecompileScreenLayouts()) {
+            Thread thread = new Thread(this::precompileScreenLayouts, "ScreenLayoutPrecompiler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Loads descriptors of all registered screens into the cache.
+     * <p>
+     * This is only a warm-up of {@link ScreenXmlDocumentCache}: descriptors are read, parsed and merged with their
+     * ancestors, but no components are created. Message packs are locale-dependent and are still resolved when
+     * a screen is opened. Frames and fragments included by a descriptor path rather than a registered screen id,
+     * as well as descriptors opened with parameters, are loaded on the first opening.
+     */
+    public void precompileScreenLayouts() {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            WindowConfig windowConfig = beanLocator.get(WindowConfig.NAME);
+            for (WindowInfo windowInfo : windowConfig.getWindows()) {
+                try {
+                    String template = windowInfo.getTemplate();
+                    if (template != null) {
+                        load(template, windowInfo.getId(), Collections.emptyMap());
+                        count++;
+                    }
+                } catch (Exception e) {
+                    log.warn("Unable to precompile layout of screen {}", windowInfo.getId(), e);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Unable to precompile screen layouts", e);
+        }
+        log.info("Precompiled {} screen layouts in {} ms", count, System.currentTimeMillis() - start);
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.xml.layout;
+
+import org.apache.commons.lang3.StringUtils;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScreenXmlDocumentCacheTest {
+
+    @Test
+    public void testMemoryBound() {
+        ScreenXmlDocumentCache documentCache = new ScreenXmlDocumentCache();
+        documentCache.cache = documentCache.createCache(100 * 1024);
+
+        for (int i = 0; i < 10; i++) {
+            String template = "<window id=\"" + i + "\">" + StringUtils.repeat(' ', 1024) + "</window>";
+            documentCache.put(template, DocumentHelper.createDocument());
+        }
+
+        assertTrue(documentCache.size() < 10);
+        assertTrue(documentCache.getEstimatedMemory() <= 100 * 1024);
+        assertTrue(documentCache.getStats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testStatisticsAndTemplates() {
+        ScreenXmlDocumentCache documentCache = new ScreenXmlDocumentCache();
+        String template = "<window/>";
+        Document document = DocumentHelper.createDocument();
+
+        assertSame(document, documentCache.get(template, () -> document));
+        assertSame(document, documentCache.get(template, () -> {
+            throw new AssertionError("Document must be taken from the cache");
+        }));
+        assertEquals(1, documentCache.getStats().hitCount());
+        assertEquals(1, documentCache.getStats().missCount());
+
+        documentCache.putTemplate("com/company/screen.xml", template);
+        assertEquals(template, documentCache.getTemplate("com/company/screen.xml"));
+
+        documentCache.invalidateAll();
+        assertNull(documentCache.getTemplate("com/company/screen.xml"));
+        assertNull(documentCache.get(template));
+    }
+}
@@ -19,9 +19,9 @@ package com.haulmont.restapi.controllers;
 import com.haulmont.cuba.core.app.DataService;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.servlet.HttpRangeSupport;
 import com.haulmont.cuba.core.sys.remoting.discovery.ServerSelector;
 import com.haulmont.restapi.exception.RestAPIException;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -32,6 +32,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.annotation.Resource;
 import javax.inject.Inject;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
@@ -63,6 +64,7 @@ public class FileDownloadController {
     @GetMapping("/{fileDescriptorId}")
     public void downloadFile(@PathVariable String fileDescriptorId,
                              @RequestParam(required = false) Boolean attachment,
+                             HttpServletRequest request,
                              HttpServletResponse response) {
         UUID uuid;
         try {
@@ -83,21 +85,45 @@ public class FileDownloadController {
             response.setHeader("Cache-Control", "no-cache");
             response.setHeader("Pragma", "no-cache");
             response.setDateHeader("Expires", 0);
+            HttpRangeSupport.setValidators(response, fd);
+
+            if (HttpRangeSupport.isNotModified(request,
+                    HttpRangeSupport.createETag(fd), HttpRangeSupport.getLastModified(fd))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
             response.setHeader("Content-Type", getContentType(fd));
             response.setHeader("Content-Disposition", (BooleanUtils.isTrue(attachment) ? "attachment" : "inline")
                     + "; filename=\"" + fd.getName() + "\"");
 
-            downloadFromMiddlewareAndWriteResponse(fd, response);
+            downloadFromMiddlewareAndWriteResponse(fd, request, response);
         } catch (Exception e) {
             log.error("Error on downloading the file {}", fileDescriptorId, e);
             throw new RestAPIException("Error on downloading the file", "", HttpStatus.INTERNAL_SERVER_ERROR, e);
         }
     }
 
+    protected void downloadFromMiddlewareAndWriteResponse(FileDescriptor fd, HttpServletRequest request,
+                                                          HttpServletResponse response) throws IOException {
+        boolean completed;
+        try {
+            completed = HttpRangeSupport.writeRequestedRange(request, response, fd, fileLoader);
+        } catch (FileStorageException e) {
+            throw new RestAPIException("Unable to download file from FileStorage",
+                    "Unable to download file from FileStorage: " + fd.getId(),
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    e);
+        }
+        if (!completed) {
+            downloadFromMiddlewareAndWriteResponse(fd, response);
+        }
+    }
+
     protected void downloadFromMiddlewareAndWriteResponse(FileDescriptor fd, HttpServletResponse response) throws IOException {
         ServletOutputStream os = response.getOutputStream();
         try (InputStream is = fileLoader.openStream(fd)) {
-            IOUtils.copy(is, os);
+            HttpRangeSupport.copy(is, os);
             os.flush();
         } catch (FileStorageException e) {
             throw new RestAPIException("Unable to download file from FileStorage",
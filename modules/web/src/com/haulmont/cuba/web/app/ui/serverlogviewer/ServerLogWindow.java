@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.Security;
 import com.haulmont.cuba.core.sys.logging.LogArchiver;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 import com.haulmont.cuba.core.sys.logging.LoggingHelper;
 import com.haulmont.cuba.gui.AppConfig;
 import com.haulmont.cuba.gui.WindowManager.OpenType;
@@ -53,9 +54,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -118,9 +116,18 @@ public class ServerLogWindow extends AbstractWindow {
     protected JmxInstance localJmxInstance;
     protected List<Pattern> loweredAttentionPatterns = new ArrayList<>();
 
+    protected String logTailFileName;
+    protected JmxInstance logTailConnection;
+    protected long logTailPosition = -1;
+    // pairs of source and highlighted lines
+    protected Deque<String[]> logTailLines = new ArrayDeque<>();
+    protected long logTailLength;
+
     protected static final String LAST_SELECTED_LOG_FILE_NAME = "lastSelectedLogFileName";
     protected static final String LAST_SELECTED_JMX_CONNECTION_ID = "lastSelectedJmxConnectionId";
 
+    protected static final long LOG_TAIL_MAX_LENGTH = 51200;
+
     @Override
     public void init(Map<String, Object> params) {
         initLoweredAttentionPatterns();
@@ -259,10 +266,18 @@ public class ServerLogWindow extends AbstractWindow {
     public void updateLogTail(boolean isTimedEvent) {
         if (logFileNameField.getValue() != null) {
             String logFileName = logFileNameField.getValue();
-            String value;
+            JmxInstance connection = getSelectedConnection();
+
+            // timer events load only lines written since the previous update
+            if (!isTimedEvent
+                    || !Objects.equals(logFileName, logTailFileName)
+                    || !Objects.equals(connection, logTailConnection)) {
+                logTailPosition = -1;
+            }
 
+            LogTail tail;
             try {
-                value = jmxRemoteLoggingAPI.getTail(getSelectedConnection(), logFileName);
+                tail = jmxRemoteLoggingAPI.getTail(connection, logFileName, logTailPosition);
             } catch (LogControlException | JmxControlException e) {
                 log.error("Error loading log tail", e);
                 if (!isTimedEvent)
@@ -270,46 +285,22 @@ public class ServerLogWindow extends AbstractWindow {
                 return;
             }
 
-            // transform to XHTML
-            value = StringEscapeUtils.escapeHtml4(value);
-            value = replaceSpaces(value);
-
-            // init log levels
-            List<String> logLevels = new ArrayList<>(10);
-            // highlight tomcat catalina levels
-            logLevels.add("WARNING");
-            logLevels.add("SEVERE");
-            // highlight log4j levels
-            for (Level level : LoggingHelper.getLevels()) {
-                logLevels.add(level.toString());
+            logTailFileName = logFileName;
+            logTailConnection = connection;
+            logTailPosition = tail.getPosition();
+
+            if (tail.isReset()) {
+                logTailLines.clear();
+                logTailLength = 0;
+            } else if (tail.getContent().isEmpty()) {
+                return;
             }
 
-            // highlight log
+            appendLogTailLines(tail.getContent());
+
             StringBuilder coloredLog = new StringBuilder();
-            BufferedReader reader = new BufferedReader(new StringReader(value));
-            try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // replace one level per line
-                    for (String level : logLevels) {
-                        String highlightedLine = highlightLevel(line, level);
-                        if (!Objects.equals(highlightedLine, line)) {
-                            line = highlightedLine;
-                            break;
-                        }
-                    }
-                    for (Pattern pattern : loweredAttentionPatterns) {
-                        String changedLine = highlightLoweredAttention(line, pattern);
-                        if (!Objects.equals(changedLine, line)) {
-                            line = changedLine;
-                            break;
-                        }
-                    }
-                    coloredLog.append(line).append("<br/>");
-                }
-            } catch (IOException e) {
-                log.warn("Error updating log tail", e);
-                return;
+            for (String[] line : logTailLines) {
+                coloredLog.append(line[1]).append("<br/>");
             }
             logTailLabel.setValue(coloredLog.toString());
         } else {
@@ -319,6 +310,51 @@ public class ServerLogWindow extends AbstractWindow {
         logContainer.unwrap(CubaScrollBoxLayout.class).setScrollTop(30000);
     }
 
+    protected void appendLogTailLines(String content) {
+        // init log levels
+        List<String> logLevels = new ArrayList<>(10);
+        // highlight tomcat catalina levels
+        logLevels.add("WARNING");
+        logLevels.add("SEVERE");
+        // highlight log4j levels
+        for (Level level : LoggingHelper.getLevels()) {
+            logLevels.add(level.toString());
+        }
+
+        for (String line : StringUtils.splitPreserveAllTokens(StringUtils.removeEnd(content, "\n"), '\n')) {
+            logTailLines.addLast(new String[]{line, highlightLine(line, logLevels)});
+            logTailLength += line.length() + 1;
+        }
+
+        // keep the same amount of lines as a full reload returns
+        while (logTailLength > LOG_TAIL_MAX_LENGTH && logTailLines.size() > 1) {
+            logTailLength -= logTailLines.removeFirst()[0].length() + 1;
+        }
+    }
+
+    protected String highlightLine(String line, List<String> logLevels) {
+        // transform to XHTML
+        line = StringEscapeUtils.escapeHtml4(line);
+        line = replaceSpaces(line);
+
+        // replace one level per line
+        for (String level : logLevels) {
+            String highlightedLine = highlightLevel(line, level);
+            if (!Objects.equals(highlightedLine, line)) {
+                line = highlightedLine;
+                break;
+            }
+        }
+        for (Pattern pattern : loweredAttentionPatterns) {
+            String changedLine = highlightLoweredAttention(line, pattern);
+            if (!Objects.equals(changedLine, line)) {
+                line = changedLine;
+                break;
+            }
+        }
+        return line;
+    }
+
     protected String replaceSpaces(String value) {
         String space = "&nbsp;";
         value = StringUtils.replace(value, " ", space);
@@ -558,6 +594,9 @@ public class ServerLogWindow extends AbstractWindow {
         }
 
         logTailLabel.setValue("");
+        logTailLines.clear();
+        logTailLength = 0;
+        logTailPosition = -1;
     }
 
     @Override
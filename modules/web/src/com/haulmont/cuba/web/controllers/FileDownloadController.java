@@ -25,10 +25,10 @@ import com.haulmont.cuba.core.global.FileTypesHelper;
 import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.core.sys.servlet.HttpRangeSupport;
 import com.haulmont.cuba.security.app.UserSessionService;
 import com.haulmont.cuba.security.global.NoUserSessionException;
 import com.haulmont.cuba.security.global.UserSession;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHeaders;
 import org.slf4j.Logger;
@@ -97,22 +97,44 @@ public class FileDownloadController {
             response.setDateHeader(HttpHeaders.EXPIRES, 0);
             response.setHeader(HttpHeaders.CONTENT_TYPE, getContentType(fd));
             response.setHeader(HttpHeaders.PRAGMA, "no-cache");
+            HttpRangeSupport.setValidators(response, fd);
+
+            if (HttpRangeSupport.isNotModified(request,
+                    HttpRangeSupport.createETag(fd), HttpRangeSupport.getLastModified(fd))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return null;
+            }
 
             boolean attach = Boolean.valueOf(request.getParameter("a"));
             response.setHeader("Content-Disposition", (attach ? "attachment" : "inline")
                     + "; filename=" + fileName);
 
-            downloadFromMiddlewareAndWriteResponse(fd, response);
+            downloadFromMiddlewareAndWriteResponse(fd, request, response);
         } finally {
             AppContext.setSecurityContext(null);
         }
         return null;
     }
 
+    protected void downloadFromMiddlewareAndWriteResponse(FileDescriptor fd, HttpServletRequest request,
+                                                          HttpServletResponse response) throws IOException {
+        boolean completed;
+        try {
+            completed = HttpRangeSupport.writeRequestedRange(request, response, fd, fileLoader);
+        } catch (FileStorageException e) {
+            log.error("Unable to load file from middleware", e);
+            error(response);
+            return;
+        }
+        if (!completed) {
+            downloadFromMiddlewareAndWriteResponse(fd, response);
+        }
+    }
+
     protected void downloadFromMiddlewareAndWriteResponse(FileDescriptor fd, HttpServletResponse response) throws IOException {
         ServletOutputStream os = response.getOutputStream();
         try (InputStream is = fileLoader.openStream(fd)) {
-            IOUtils.copy(is, os);
+            HttpRangeSupport.copy(is, os);
             os.flush();
         } catch (FileStorageException e) {
             log.error("Unable to load file from middleware", e);
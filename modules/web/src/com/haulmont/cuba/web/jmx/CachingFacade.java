@@ -29,6 +29,7 @@ import com.haulmont.cuba.core.sys.SecurityContext;
 import com.haulmont.cuba.gui.config.MenuConfig;
 import com.haulmont.cuba.gui.config.WindowConfig;
 import com.haulmont.cuba.gui.sys.UiControllerReflectionInspector;
+import com.haulmont.cuba.gui.xml.layout.ScreenXmlDocumentCache;
 import com.haulmont.cuba.security.app.TrustedClientService;
 import com.haulmont.cuba.security.global.LoginException;
 import com.haulmont.cuba.security.global.UserSession;
@@ -77,6 +78,9 @@ public class CachingFacade implements CachingFacadeMBean {
     @Inject
     private UiControllerReflectionInspector uiControllerReflectionInspector;
 
+    @Inject
+    private ScreenXmlDocumentCache screenXmlDocumentCache;
+
     @Override
     public int getMessagesCacheSize() {
         return messages.getCacheSize();
@@ -142,4 +146,15 @@ public class CachingFacade implements CachingFacadeMBean {
     public void clearScreenReflectionCache() {
         uiControllerReflectionInspector.clearCache();
     }
-}
\ No newline at end of file
+
+    @Override
+    public void clearScreenXmlCache() {
+        screenXmlDocumentCache.invalidateAll();
+        log.info("Screen XML cache has been cleared");
+    }
+
+    @Override
+    public String printScreenXmlCacheStatistics() {
+        return screenXmlDocumentCache.printStatistics();
+    }
+}
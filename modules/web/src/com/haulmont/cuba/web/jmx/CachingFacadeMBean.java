@@ -43,4 +43,10 @@ public interface CachingFacadeMBean {
 
     @ManagedOperation(description = "Clears reflection caches for screens")
     void clearScreenReflectionCache();
-}
\ No newline at end of file
+
+    @ManagedOperation(description = "Clears the cache of parsed screen descriptors")
+    void clearScreenXmlCache();
+
+    @ManagedOperation(description = "Shows size and hit/miss statistics of the cache of parsed screen descriptors")
+    String printScreenXmlCacheStatistics();
+}
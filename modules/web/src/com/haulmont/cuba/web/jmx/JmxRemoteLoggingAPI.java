@@ -19,6 +19,7 @@ package com.haulmont.cuba.web.jmx;
 
 import com.haulmont.cuba.core.entity.JmxInstance;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 
 import java.util.List;
 import java.util.Map;
@@ -47,6 +48,16 @@ public interface JmxRemoteLoggingAPI {
      */
     String getTail(JmxInstance instance, String fileName) throws LogControlException;
 
+    /**
+     * Reads log lines written after the given position, or a log tail equal 50Kb if the position is out of date.
+     *
+     * @param instance jmx connection
+     * @param fileName name of a readable file
+     * @param position position returned by the previous call or -1
+     * @return log lines and the position to continue from
+     */
+    LogTail getTail(JmxInstance instance, String fileName, long position) throws LogControlException;
+
     /**
      * Get URL for log file downloading.
      *
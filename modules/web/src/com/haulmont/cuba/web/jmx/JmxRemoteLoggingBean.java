@@ -21,6 +21,7 @@ import com.haulmont.cuba.core.entity.JmxInstance;
 import com.haulmont.cuba.core.sys.jmx.JmxLogControl;
 import com.haulmont.cuba.core.sys.jmx.JmxLogControlMBean;
 import com.haulmont.cuba.core.sys.logging.LogControlException;
+import com.haulmont.cuba.core.sys.logging.LogTail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +63,18 @@ public class JmxRemoteLoggingBean implements JmxRemoteLoggingAPI {
         });
     }
 
+    @Override
+    public LogTail getTail(JmxInstance instance, final String fileName, final long position)
+            throws LogControlException {
+        return withConnection(instance, new JmxAction<LogTail>() {
+            @Override
+            public LogTail perform(JmxInstance jmx, MBeanServerConnection connection) throws Exception {
+                JmxLogControlMBean logControlMBean = getRemoteLogControl(connection);
+                return logControlMBean.getTailFrom(fileName, position);
+            }
+        });
+    }
+
     @Override
     public String getLogFileLink(JmxInstance instance, final String fileName) throws LogControlException {
         return withConnection(instance, new JmxAction<String>() {
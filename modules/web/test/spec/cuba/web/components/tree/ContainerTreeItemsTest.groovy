@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.gui.components.data.tree.ContainerTreeItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.security.entity.Group
+import spec.cuba.web.WebSpec
+
+import java.util.stream.Collectors
+
+class ContainerTreeItemsTest extends WebSpec {
+
+    private CollectionContainer<Group> container
+    private ContainerTreeItems<Group> treeItems
+
+    private Group root
+    private Group child1
+    private Group child2
+    private Group grandChild
+
+    void setup() {
+        container = dataComponents.createCollectionContainer(Group)
+        treeItems = new ContainerTreeItems<>(container, 'parent')
+
+        root = new Group(name: 'root')
+        child1 = new Group(name: 'child1', parent: root)
+        child2 = new Group(name: 'child2', parent: root)
+        grandChild = new Group(name: 'grandChild', parent: child1)
+
+        container.items = [root, child1, grandChild, child2]
+    }
+
+    def "children are taken from the hierarchy"() {
+
+        expect:
+
+        children(null) == [root]
+        children(root) == [child1, child2]
+        children(child1) == [grandChild]
+        treeItems.getChildCount(root) == 2
+        treeItems.hasChildren(child1)
+        !treeItems.hasChildren(child2)
+    }
+
+    def "hierarchy follows container changes"() {
+
+        when: "an item is added between existing children"
+
+        Group child3 = new Group(name: 'child3', parent: root)
+        container.mutableItems.add(2, child3)
+
+        then: "children keep the container order"
+
+        children(root) == [child1, child3, child2]
+
+        when: "the parent of an item is removed"
+
+        container.mutableItems.remove(child1)
+
+        then: "its children become roots"
+
+        children(null) == [root, grandChild]
+        treeItems.getChildCount(root) == 2
+
+        when: "an item is moved to another parent"
+
+        grandChild.parent = child2
+
+        then:
+
+        children(null) == [root]
+        children(child2) == [grandChild]
+        treeItems.hasChildren(child2)
+    }
+
+    private List<Group> children(Group parent) {
+        treeItems.getChildren(parent).collect(Collectors.toList())
+    }
+}
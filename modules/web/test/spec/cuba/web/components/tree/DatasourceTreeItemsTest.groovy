@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.components.tree
+
+import com.haulmont.cuba.gui.components.data.datagrid.DatasourceTreeDataGridItems
+import com.haulmont.cuba.gui.components.data.table.DatasourceTreeTableItems
+import com.haulmont.cuba.gui.components.data.tree.DatasourceTreeItems
+import com.haulmont.cuba.gui.data.CollectionDatasource
+import com.haulmont.cuba.gui.data.DsBuilder
+import com.haulmont.cuba.gui.data.impl.HierarchicalDatasourceImpl
+import com.haulmont.cuba.security.entity.Group
+import spec.cuba.web.WebSpec
+
+import java.util.stream.Collectors
+import java.util.stream.Stream
+
+class DatasourceTreeItemsTest extends WebSpec {
+
+    private HierarchicalDatasourceImpl<Group, UUID> datasource
+
+    private Group root
+    private Group child1
+    private Group child2
+    private Group grandChild
+
+    @Override
+    void setup() {
+        datasource = DsBuilder.create()
+                .setJavaClass(Group)
+                .setViewName('_local')
+                .setRefreshMode(CollectionDatasource.RefreshMode.NEVER)
+                .setMaxResults(100)
+                .buildHierarchicalDatasource()
+        datasource.setHierarchyPropertyName('parent')
+        datasource.refresh()
+
+        root = new Group(name: 'root')
+        child1 = new Group(name: 'child1', parent: root)
+        child2 = new Group(name: 'child2', parent: root)
+        grandChild = new Group(name: 'grandChild', parent: child1)
+
+        [root, child1, grandChild, child2].each { datasource.includeItem(it) }
+    }
+
+    def "tree items take children from the datasource hierarchy"() {
+
+        def treeItems = new DatasourceTreeItems<Group, UUID>(datasource)
+
+        expect:
+
+        items(treeItems.getChildren(null)) == [root]
+        items(treeItems.getChildren(root)) == [child1, child2]
+        items(treeItems.getChildren(child1)) == [grandChild]
+        treeItems.getChildCount(root) == 2
+        treeItems.hasChildren(child1)
+        !treeItems.hasChildren(child2)
+        treeItems.getParent(grandChild) == child1
+    }
+
+    def "tree data grid items take children from the datasource hierarchy"() {
+
+        def gridItems = new DatasourceTreeDataGridItems<Group, UUID>(datasource)
+
+        expect:
+
+        items(gridItems.getChildren(null)) == [root]
+        items(gridItems.getChildren(root)) == [child1, child2]
+        gridItems.getChildCount(null) == 1
+        gridItems.getChildCount(child1) == 1
+        gridItems.hasChildren(root)
+        !gridItems.hasChildren(grandChild)
+        gridItems.getParent(child2) == root
+    }
+
+    def "tree table items take children from the datasource hierarchy"() {
+
+        def tableItems = new DatasourceTreeTableItems<Group, UUID>(datasource)
+
+        expect:
+
+        tableItems.getRootItemIds() as List == [root.id]
+        tableItems.firstItemId() == root.id
+        tableItems.getChildren(root.id) as List == [child1.id, child2.id]
+        tableItems.getChildren(grandChild.id).isEmpty()
+        tableItems.hasChildren(child1.id)
+        !tableItems.hasChildren(child2.id)
+        tableItems.isRoot(root.id)
+        !tableItems.isRoot(child1.id)
+        tableItems.getParent(grandChild.id) == child1.id
+    }
+
+    def "hierarchy follows datasource changes"() {
+
+        def treeItems = new DatasourceTreeItems<Group, UUID>(datasource)
+        def tableItems = new DatasourceTreeTableItems<Group, UUID>(datasource)
+
+        expect: "the index is built"
+
+        items(treeItems.getChildren(root)) == [child1, child2]
+
+        when: "items are added to the end and to the beginning"
+
+        Group child3 = new Group(name: 'child3', parent: root)
+        datasource.includeItem(child3)
+        Group child0 = new Group(name: 'child0', parent: root)
+        datasource.includeItemFirst(child0)
+
+        then: "children keep the datasource order"
+
+        items(treeItems.getChildren(root)) == [child0, child1, child2, child3]
+        tableItems.getChildren(root.id) as List == [child0.id, child1.id, child2.id, child3.id]
+
+        when: "the parent of an item is removed"
+
+        datasource.excludeItem(child1)
+
+        then: "its children become roots"
+
+        items(treeItems.getChildren(null)) == [root, grandChild]
+        tableItems.getRootItemIds() as List == [root.id, grandChild.id]
+        treeItems.getChildCount(root) == 3
+
+        when: "an item is moved to another parent"
+
+        grandChild.parent = child2
+
+        then:
+
+        items(treeItems.getChildren(null)) == [root]
+        items(treeItems.getChildren(child2)) == [grandChild]
+        tableItems.hasChildren(child2.id)
+
+        when: "the parent is returned"
+
+        datasource.includeItem(child1)
+        child3.parent = child1
+
+        then: "children are ordered by the datasource"
+
+        items(treeItems.getChildren(root)) == [child0, child2, child1]
+        items(treeItems.getChildren(child1)) == [child3]
+        !treeItems.hasChildren(child3)
+    }
+
+    def "hierarchy is rebuilt after changes with suspended listeners"() {
+
+        def treeItems = new DatasourceTreeItems<Group, UUID>(datasource)
+
+        expect:
+
+        items(treeItems.getChildren(root)) == [child1, child2]
+
+        when:
+
+        datasource.suspendListeners()
+        Group child3 = new Group(name: 'child3', parent: root)
+        datasource.includeItem(child3)
+        datasource.excludeItem(child2)
+        datasource.resumeListeners()
+
+        then:
+
+        items(treeItems.getChildren(root)) == [child1, child3]
+        items(treeItems.getChildren(null)) == [root]
+    }
+
+    def "hierarchy is taken from the new hierarchy property"() {
+
+        def treeItems = new DatasourceTreeItems<Group, UUID>(datasource)
+
+        expect:
+
+        items(treeItems.getChildren(null)) == [root]
+
+        when:
+
+        datasource.setHierarchyPropertyName(null)
+
+        then:
+
+        items(treeItems.getChildren(null)) == [root, child1, grandChild, child2]
+        !treeItems.hasChildren(root)
+    }
+
+    private static List<Group> items(Stream<Group> stream) {
+        stream.collect(Collectors.toList())
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.export
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.RuntimeFileStorageException
+import com.haulmont.cuba.gui.components.Table
+import com.haulmont.cuba.gui.components.data.table.ContainerTableItems
+import com.haulmont.cuba.gui.export.*
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.gui.upload.FileUploadingAPI
+import com.haulmont.cuba.web.testmodel.sales.Product
+import com.haulmont.cuba.web.testsupport.TestServiceProxy
+import org.apache.poi.hssf.usermodel.HSSFWorkbook
+import org.apache.poi.ss.usermodel.Workbook
+import org.apache.poi.xssf.usermodel.XSSFWorkbook
+import spec.cuba.web.WebSpec
+
+class ExcelExporterTest extends WebSpec {
+
+    private CollectionContainer<Product> container
+    private CollectionLoader<Product> loader
+    private Table<Product> table
+    private ExportDisplay display
+
+    private ExportDataProvider dataProvider
+    private String resourceName
+
+    private List<Product> products
+
+    @Override
+    void setup() {
+        products = (1..5).collect { new Product(name: "p$it") }
+
+        container = dataComponents.createCollectionContainer(Product)
+        loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select p from test$Product p order by p.name')
+
+        table = componentsFactory.createComponent(Table)
+        Table.Column column = new Table.Column(metadata.getClassNN(Product).getPropertyPath('name'))
+        column.setCaption('Name')
+        table.addColumn(column)
+        table.setItems(new ContainerTableItems(container))
+
+        display = Mock(ExportDisplay) {
+            show(_ as ExportDataProvider, _ as String, _) >> { args ->
+                dataProvider = args[0]
+                resourceName = args[1]
+            }
+        }
+    }
+
+    @Override
+    void cleanup() {
+        TestServiceProxy.clear()
+    }
+
+    def "loaded rows are exported in XLS format"() {
+
+        container.setItems(products.subList(0, 2))
+        ExcelExporter exporter = new ExcelExporter()
+
+        when:
+
+        export(exporter)
+
+        then:
+
+        resourceName == 'products.xls'
+        dataProvider instanceof ByteArrayDataProvider
+        names(new HSSFWorkbook(dataProvider.provide())) == ['Name', 'p1', 'p2']
+    }
+
+    def "XLSX document is written to a temporary file deleted after download"() {
+
+        container.setItems(products)
+        ExcelExporter exporter = new ExcelExporter()
+        exporter.setExportFormat(ExportFormat.XLSX)
+        exporter.setStreamingWindowSize(2)
+
+        when:
+
+        export(exporter)
+
+        then:
+
+        resourceName == 'products.xlsx'
+        dataProvider instanceof TempFileDataProvider
+
+        when:
+
+        File file = cont.getBean(FileUploadingAPI).getFile(((TempFileDataProvider) dataProvider).fileId)
+        byte[] content = dataProvider.provide().withStream { it.bytes }
+
+        then:
+
+        names(new XSSFWorkbook(new ByteArrayInputStream(content))) == ['Name', 'p1', 'p2', 'p3', 'p4', 'p5']
+        file != null
+        !file.exists()
+
+        when: "the document is requested again"
+
+        dataProvider.provide()
+
+        then:
+
+        thrown(RuntimeFileStorageException)
+    }
+
+    def "all rows matching the loader query are exported by pages"() {
+
+        def dataService = Mock(DataService)
+        TestServiceProxy.mock(DataService, dataService)
+
+        container.setItems(products.subList(1, 2))
+        loader.setFirstResult(1)
+        loader.setMaxResults(1)
+
+        ExcelExporter exporter = new ExcelExporter()
+        exporter.setExportFormat(ExportFormat.XLSX)
+        exporter.setLoadPageSize(2)
+
+        when:
+
+        export(exporter)
+
+        then: "pages are loaded from the first result of the loader until a page is not full"
+
+        1 * dataService.loadList({ LoadContext context -> context.query.firstResult == 1 && context.query.maxResults == 2 }) >> products.subList(1, 3)
+        1 * dataService.loadList({ LoadContext context -> context.query.firstResult == 3 }) >> products.subList(3, 5)
+        1 * dataService.loadList({ LoadContext context -> context.query.firstResult == 5 }) >> []
+
+        names(readXlsx()) == ['Name', 'p2', 'p3', 'p4', 'p5']
+
+        and: "the container is not changed"
+
+        container.items == [products[1]]
+    }
+
+    def "loaded rows are exported if the page size is set but items are not loaded by a loader"() {
+
+        container.setItems(products.subList(0, 3))
+        container.setLoader(null)
+
+        ExcelExporter exporter = new ExcelExporter()
+        exporter.setLoadPageSize(2)
+
+        when:
+
+        export(exporter)
+
+        then:
+
+        names(new HSSFWorkbook(dataProvider.provide())) == ['Name', 'p1', 'p2', 'p3']
+    }
+
+    private void export(ExcelExporter exporter) {
+        exporter.exportTable(table, table.getColumns(), false, display, null, 'products', ExcelExporter.ExportMode.ALL_ROWS)
+    }
+
+    private Workbook readXlsx() {
+        byte[] content = dataProvider.provide().withStream { it.bytes }
+        return new XSSFWorkbook(new ByteArrayInputStream(content))
+    }
+
+    private static List<String> names(Workbook workbook) {
+        def sheet = workbook.getSheetAt(0)
+        return (0..sheet.lastRowNum).collect { sheet.getRow(it).getCell(0).stringCellValue }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.sys
+
+import com.haulmont.cuba.gui.sys.UiControllerDefinition
+import com.haulmont.cuba.gui.sys.UiControllersConfiguration
+import com.haulmont.cuba.gui.sys.UiControllersIndexProcessor
+import org.springframework.core.env.Environment
+import org.springframework.core.env.StandardEnvironment
+import org.springframework.core.io.DefaultResourceLoader
+import org.springframework.core.io.ResourceLoader
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory
+import spec.cuba.web.datacontext.screens.LineScreen
+import spec.cuba.web.datacontext.screens.OrderScreen
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static com.haulmont.cuba.gui.sys.UiControllersIndexProcessor.*
+
+class UiControllersIndexTest extends Specification {
+
+    static final String PACKAGE = 'spec.cuba.web.datacontext.screens'
+
+    Path root
+    URLClassLoader classLoader
+
+    void setup() {
+        root = Files.createTempDirectory('ui-controllers-index')
+
+        copyClass(LineScreen)
+        copyClass(OrderScreen)
+    }
+
+    void cleanup() {
+        classLoader?.close()
+        root.toFile().deleteDir()
+    }
+
+    def "controllers are read from the index"() {
+        writeIndex([
+                (LineScreen.name + CLASS_SUFFIX): '',
+                (OrderScreen.name + CLASS_SUFFIX): '',
+                (LineScreen.name + ID_SUFFIX): 'indexedLineScreen',
+                (OrderScreen.name + ID_SUFFIX): 'indexedOrderScreen',
+                (OrderScreen.name + ROUTE_SUFFIX): 'orders',
+        ])
+
+        when:
+        def definitions = getDefinitions()
+
+        then:
+        definitions.keySet() == ['indexedLineScreen', 'indexedOrderScreen'] as Set
+        definitions['indexedOrderScreen'].controllerClass == OrderScreen.name
+        definitions['indexedOrderScreen'].routeDefinition.path == 'orders'
+        definitions['indexedLineScreen'].routeDefinition == null
+    }
+
+    def "location is scanned if it contains classes missing in the index"() {
+        // OrderScreen compiled without the processor
+        writeIndex([
+                (LineScreen.name + CLASS_SUFFIX): '',
+                (LineScreen.name + ID_SUFFIX): 'indexedLineScreen',
+        ])
+
+        when:
+        def definitions = getDefinitions()
+
+        then:
+        definitions.keySet() == ['LineScreen', 'OrderScreen'] as Set
+    }
+
+    def "location is scanned if indexed controllers do not exist"() {
+        writeIndex([
+                (LineScreen.name + CLASS_SUFFIX): '',
+                (OrderScreen.name + CLASS_SUFFIX): '',
+                (PACKAGE + '.RemovedScreen' + CLASS_SUFFIX): '',
+                (LineScreen.name + ID_SUFFIX): 'indexedLineScreen',
+                (OrderScreen.name + ID_SUFFIX): 'indexedOrderScreen',
+                (PACKAGE + '.RemovedScreen' + ID_SUFFIX): 'removedScreen',
+        ])
+
+        when:
+        def definitions = getDefinitions()
+
+        then:
+        definitions.keySet() == ['LineScreen', 'OrderScreen'] as Set
+    }
+
+    def "location without index is scanned"() {
+        when:
+        def definitions = getDefinitions()
+
+        then:
+        definitions.keySet() == ['LineScreen', 'OrderScreen'] as Set
+    }
+
+    protected Map<String, UiControllerDefinition> getDefinitions() {
+        classLoader = new URLClassLoader([root.toUri().toURL()] as URL[], (ClassLoader) null)
+        def resourceLoader = new DefaultResourceLoader(classLoader)
+
+        def configuration = new TestUiControllersConfiguration(resourceLoader)
+        configuration.basePackages = [PACKAGE]
+
+        return configuration.getUiControllers().collectEntries { [(it.id): it] }
+    }
+
+    protected void copyClass(Class aClass) {
+        def path = aClass.name.replace('.', '/') + '.class'
+        def target = root.resolve(path)
+        Files.createDirectories(target.parent)
+        getClass().classLoader.getResourceAsStream(path).withStream { Files.copy(it, target) }
+    }
+
+    protected void writeIndex(Map<String, String> entries) {
+        def target = root.resolve(UiControllersIndexProcessor.INDEX_LOCATION)
+        Files.createDirectories(target.parent)
+
+        def properties = new Properties()
+        properties.putAll(entries)
+        target.withOutputStream { properties.store(it, null) }
+    }
+
+    static class TestUiControllersConfiguration extends UiControllersConfiguration {
+
+        ResourceLoader resourceLoader
+        Environment environment = new StandardEnvironment()
+
+        TestUiControllersConfiguration(ResourceLoader resourceLoader) {
+            this.resourceLoader = resourceLoader
+            this.metadataReaderFactory = new SimpleMetadataReaderFactory(resourceLoader)
+        }
+
+        @Override
+        protected ResourceLoader getResourceLoader() {
+            return resourceLoader
+        }
+
+        @Override
+        protected Environment getEnvironment() {
+            return environment
+        }
+    }
+}